@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tools.internal;
+
+import java.io.*;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.graphics.ImageAtlas;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.ImageLoader;
+
+/**
+ * Packs image files into an <code>ImageAtlas</code>.
+ *
+ * WARNING! This class is not part of SWT API. It is NOT API. It is an internal
+ * tool that may be changed or removed at anytime.
+ */
+public class ImageAtlasPacker {
+
+	/* the zoom suffix of high resolution variants, as in save@2x.png or save@1.5x.png */
+	static final Pattern ZOOM_SUFFIX = Pattern.compile("@(\\d+(?:\\.\\d+)?)x(?=\\.[^./\\\\]*$|$)"); //$NON-NLS-1$
+
+	/**
+	 * Writes the images of the given files to an atlas.
+	 *
+	 * Takes 2 or more arguments
+	 * argument 0: the atlas file to write e.g. icons.atlas
+	 * argument 1 and following: the image files to pack e.g. icons/save.png icons/save@2x.png
+	 *
+	 * Each image is stored under its file name as given, without the zoom
+	 * suffix. A file named with a suffix such as @2x or @1.5x is stored at
+	 * 200% or 150% zoom, every other file at 100%. Only the first image of
+	 * a file is packed.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: ImageAtlasPacker <atlas file> <image file>..."); //$NON-NLS-1$
+			return;
+		}
+		int count = args.length - 1;
+		String[] names = new String[count];
+		int[] zooms = new int[count];
+		ImageData[] images = new ImageData[count];
+		for (int i = 0; i < count; i++) {
+			String file = args[i + 1];
+			Matcher matcher = ZOOM_SUFFIX.matcher(file);
+			if (matcher.find()) {
+				names[i] = file.substring(0, matcher.start()) + file.substring(matcher.end());
+				zooms[i] = Math.round(Float.parseFloat(matcher.group(1)) * 100);
+			} else {
+				names[i] = file;
+				zooms[i] = 100;
+			}
+			names[i] = names[i].replace('\\', '/');
+			try {
+				images[i] = new ImageLoader().load(file)[0];
+			} catch (SWTException e) {
+				System.err.println(file + ": " + e.getMessage()); //$NON-NLS-1$
+				return;
+			}
+		}
+		try (OutputStream stream = new FileOutputStream(args[0])) {
+			ImageAtlas.save(stream, names, zooms, images);
+		} catch (IOException | SWTException | IllegalArgumentException e) {
+			System.err.println(args[0] + ": " + e.getMessage()); //$NON-NLS-1$
+			return;
+		}
+		Set<String> distinct = new LinkedHashSet<>(Arrays.asList(names));
+		System.out.println("Packed " + count + " images of " + distinct.size() + " icons into " + args[0]); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,24 +14,23 @@ import java.util.*;
 import java.util.List;
 
 import org.eclipse.swt.*;
-import org.eclipse.swt.internal.*;
 import org.eclipse.swt.widgets.*;
 
 class DefaultContent implements StyledTextContent {
 	private final static String LineDelimiter = System.getProperty("line.separator");
+	/* The number of characters indexed at once in the background */
+	static final int INDEX_CHUNK = 1 << 20;
 
 	List<StyledTextListener> textListeners = new ArrayList<>(); // stores text listeners for event sending
 	char[] textStore = new char[0];	// stores the actual text
 	int gapStart = -1;	// the character position start of the gap
 	int gapEnd = -1;	// the character position after the end of the gap
-	int gapLine = -1;	// the line on which the gap exists, the gap will always be associated with one line
 	int highWatermark = 300;
 	int lowWatermark = 50;
 
-	int[][] lines = new int[50][2];	// array of character positions and lengths representing the lines of text
+	LineIndex lineIndex;	// the logical start offsets of the lines indexed so far
+	int indexedOffset;	// the logical offset up to which the lines are indexed
 	int lineCount = 0;	// the number of lines of text
-	int expandExp = 1; 	// the expansion exponent, used to increase the lines array exponentially
-	int replaceExpandExp = 1; 	// the expansion exponent, used to increase the lines array exponentially
 
 /**
  * Creates a new DefaultContent and initializes it.  A <code>StyledTextContent</> will always have
@@ -41,50 +40,6 @@ DefaultContent() {
 	super();
 	setText("");
 }
-/**
- * Adds a line to the end of the line indexes array.  Increases the size of the array if necessary.
- * <code>lineCount</code> is updated to reflect the new entry.
- * <p>
- *
- * @param start the start of the line
- * @param length the length of the line
- */
-void addLineIndex(int start, int length) {
-	int size = lines.length;
-	if (lineCount == size) {
-		// expand the lines by powers of 2
-		int[][] newLines = new int[size+Compatibility.pow2(expandExp)][2];
-		System.arraycopy(lines, 0, newLines, 0, size);
-		lines = newLines;
-		expandExp++;
-	}
-	int[] range = new int[] {start, length};
-	lines[lineCount] = range;
-	lineCount++;
-}
-/**
- * Adds a line index to the end of <code>linesArray</code>.  Increases the
- * size of the array if necessary and returns a new array.
- * <p>
- *
- * @param start the start of the line
- * @param length the length of the line
- * @param linesArray the array to which to add the line index
- * @param count the position at which to add the line
- * @return a new array of line indexes
- */
-int[][] addLineIndex(int start, int length, int[][] linesArray, int count) {
-	int size = linesArray.length;
-	int[][] newLines = linesArray;
-	if (count == size) {
-		newLines = new int[size+Compatibility.pow2(replaceExpandExp)][2];
-		replaceExpandExp++;
-		System.arraycopy(linesArray, 0, newLines, 0, size);
-	}
-	int[] range = new int[] {start, length};
-	newLines[count] = range;
-	return newLines;
-}
 /**
  * Adds a <code>TextChangeListener</code> listening for
  * <code>TextChangingEvent</code> and <code>TextChangedEvent</code>. A
@@ -110,9 +65,8 @@ public void addTextChangeListener(TextChangeListener listener) {
  *
  * @param position the position at which a change is occurring
  * @param sizeHint the size of the change
- * @param line the line where the gap will go
  */
-void adjustGap(int position, int sizeHint, int line) {
+void adjustGap(int position, int sizeHint) {
 	if (position == gapStart) {
 		// text is being inserted at the gap position
 		int size = (gapEnd - gapStart) - sizeHint;
@@ -124,35 +78,63 @@ void adjustGap(int position, int sizeHint, int line) {
 		if (lowWatermark <= size && size <= highWatermark)
 			return;
 	}
-	moveAndResizeGap(position, sizeHint, line);
+	moveAndResizeGap(position, sizeHint);
 }
 /**
- * Calculates the indexes of each line in the text store.  Assumes no gap exists.
- * Optimized to do less checking.
+ * Returns the character at the given logical offset.
+ * <p>
+ *
+ * @param offset the logical offset (i.e., does not include the gap)
+ * @return the character
  */
-void indexLines(){
-	int start = 0;
-	lineCount = 0;
-	int textLength = textStore.length;
-	int i;
-	for (i = start; i < textLength; i++) {
-		char ch = textStore[i];
+char charAt(int offset) {
+	return textStore[offset < gapStart ? offset : offset + gapEnd - gapStart];
+}
+/**
+ * Indexes the lines of the text until the text is indexed up to
+ * <code>offset</code> and the start of the line at <code>index</code>
+ * is known, or until the whole text is indexed.
+ * <p>
+ * The scan never stops between the CR and LF of a \r\n delimiter, so the
+ * indexed line starts never change when more of the text is indexed.
+ * </p>
+ *
+ * @param offset the logical offset up to which to index the text
+ * @param index the index of the line whose start should be known
+ */
+void indexLines(int offset, int index) {
+	int charCount = getCharCount();
+	int i = indexedOffset;
+	while (i < charCount && (i < offset || lineIndex.size <= index)) {
+		char ch = charAt(i++);
 		if (ch == SWT.CR) {
 			// see if the next character is a LF
-			if (i + 1 < textLength) {
-				ch = textStore[i+1];
-				if (ch == SWT.LF) {
-					i++;
-				}
-			}
-			addLineIndex(start, i - start + 1);
-			start = i + 1;
+			if (i < charCount && charAt(i) == SWT.LF) i++;
+			lineIndex.add(i);
 		} else if (ch == SWT.LF) {
-			addLineIndex(start, i - start + 1);
-			start = i + 1;
+			lineIndex.add(i);
 		}
 	}
-	addLineIndex(start, i - start);
+	indexedOffset = i;
+}
+/**
+ * Indexes the rest of the text in chunks of <code>INDEX_CHUNK</code>
+ * characters, each one run separately by the display of the current
+ * thread so that the user interface stays responsive.  Does nothing
+ * when the current thread has no display, the lines are then indexed
+ * as they are needed.
+ */
+void indexInBackground() {
+	if (indexedOffset == getCharCount()) return;
+	final Display display = Display.getCurrent();
+	if (display == null) return;
+	final LineIndex index = lineIndex;
+	display.asyncExec(() -> {
+		// stop if the text was set since
+		if (index != lineIndex) return;
+		indexLines(indexedOffset + INDEX_CHUNK, -1);
+		if (!display.isDisposed()) indexInBackground();
+	});
 }
 /**
  * Returns whether or not the given character is a line delimiter.  Both CR and LF
@@ -208,53 +190,6 @@ protected boolean isValidReplace(int start, int replaceLength, String newText){
 	}
 	return true;
 }
-/**
- * Calculates the indexes of each line of text in the given range.
- * <p>
- *
- * @param offset the logical start offset of the text lineate
- * @param length the length of the text to lineate, includes gap
- * @param numLines the number of lines to initially allocate for the line index array,
- *	passed in for efficiency (the exact number of lines may be known)
- * @return a line indexes array where each line is identified by a start offset and
- * 	a length
- */
-int[][] indexLines(int offset, int length, int numLines){
-	int[][] indexedLines = new int[numLines][2];
-	int start = 0;
-	int lineCount = 0;
-	int i;
-	replaceExpandExp = 1;
-	for (i = start; i < length; i++) {
-		int location = i + offset;
-		if ((location >= gapStart) && (location < gapEnd)) {
-			// ignore the gap
-		} else {
-			char ch = textStore[location];
-			if (ch == SWT.CR) {
-				// see if the next character is a LF
-				if (location+1 < textStore.length) {
-					ch = textStore[location+1];
-					if (ch == SWT.LF) {
-						i++;
-					}
-				}
-				indexedLines = addLineIndex(start, i - start + 1, indexedLines, lineCount);
-				lineCount++;
-				start = i + 1;
-			} else if (ch == SWT.LF) {
-				indexedLines = addLineIndex(start, i - start + 1, indexedLines, lineCount);
-				lineCount++;
-				start = i + 1;
-			}
-		}
-	}
-	int[][] newLines = new int[lineCount+1][2];
-	System.arraycopy(indexedLines, 0, newLines, 0, lineCount);
-	int[] range = new int[] {start, i - start};
-	newLines[lineCount] = range;
-	return newLines;
-}
 /**
  * Inserts text.
  * <p>
@@ -263,64 +198,12 @@ int[][] indexLines(int offset, int length, int numLines){
  * @param text the text to insert
  */
 void insert(int position, String text) {
-	if (text.length() == 0) return;
-
-	int startLine = getLineAtOffset(position);
 	int change = text.length();
-	boolean endInsert = position == getCharCount();
-	adjustGap(position, change, startLine);
-
-	// during an insert the gap will be adjusted to start at
-	// position and it will be associated with startline, the
-	// inserted text will be placed in the gap
-	int startLineOffset = getOffsetAtLine(startLine);
-	// at this point, startLineLength will include the start line
-	// and all of the newly inserted text
-	int	startLineLength = getPhysicalLine(startLine).length();
-
-	if (change > 0) {
-		// shrink gap
-		gapStart += (change);
-		for (int i = 0; i < text.length(); i++) {
-			textStore[position + i]= text.charAt(i);
-		}
-	}
-
-	// figure out the number of new lines that have been inserted
-	int [][] newLines = indexLines(startLineOffset, startLineLength, 10);
-	// only insert an empty line if it is the last line in the text
-	int numNewLines = newLines.length - 1;
-	if (newLines[numNewLines][1] == 0) {
-		// last inserted line is a new line
-		if (endInsert) {
-			// insert happening at end of the text, leave numNewLines as
-			// is since the last new line will not be concatenated with another
-			// line
-			numNewLines += 1;
-		} else {
-			numNewLines -= 1;
-		}
-	}
-
-	// make room for the new lines
-	expandLinesBy(numNewLines);
-	// shift down the lines after the replace line
-	for (int i = lineCount - 1; i > startLine; i--) {
-		lines[i + numNewLines]=lines[i];
-	}
-	// insert the new lines
-	for (int i = 0; i < numNewLines; i++) {
-		newLines[i][0] += startLineOffset;
-		lines[startLine + i]=newLines[i];
-	}
-	// update the last inserted line
-	if (numNewLines < newLines.length) {
-		newLines[numNewLines][0] += startLineOffset;
-		lines[startLine + numNewLines] = newLines[numNewLines];
-	}
-
-	lineCount += numNewLines;
-	gapLine = getLineAtPhysicalOffset(gapStart);
+	if (change == 0) return;
+	adjustGap(position, change);
+	// the gap now starts at position, the inserted text is placed in it
+	text.getChars(0, change, textStore, position);
+	gapStart += change;
 }
 /**
  * Moves the gap and adjusts its size in anticipation of a text change.
@@ -330,9 +213,8 @@ void insert(int position, String text) {
  *
  * @param position the position at which a change is occurring
  * @param size the size of the change
- * @param newGapLine the line where the gap should be put
  */
-void moveAndResizeGap(int position, int size, int newGapLine) {
+void moveAndResizeGap(int position, int size) {
 	char[] content = null;
 	int oldSize = gapEnd - gapStart;
 	int newSize;
@@ -341,16 +223,6 @@ void moveAndResizeGap(int position, int size, int newGapLine) {
 	} else {
 		newSize = lowWatermark - size;
 	}
-	// remove the old gap from the lines information
-	if (gapExists()) {
-		// adjust the line length
-		lines[gapLine][1] = lines[gapLine][1] - oldSize;
-		// adjust the offsets of the lines after the gapLine
-		for (int i = gapLine + 1; i < lineCount; i++) {
-			lines[i][0] = lines[i][0] - oldSize;
-		}
-	}
-
 	if (newSize < 0) {
 		if (oldSize > 0) {
 			// removing the gap
@@ -382,18 +254,6 @@ void moveAndResizeGap(int position, int size, int newGapLine) {
 	textStore = content;
 	gapStart = newGapStart;
 	gapEnd = newGapEnd;
-
-	// add the new gap to the lines information
-	if (gapExists()) {
-		gapLine = newGapLine;
-		// adjust the line length
-		int gapLength = gapEnd - gapStart;
-		lines[gapLine][1] = lines[gapLine][1] + (gapLength);
-		// adjust the offsets of the lines after the gapLine
-		for (int i = gapLine + 1; i < lineCount; i++) {
-			lines[i][0] = lines[i][0] + gapLength;
-		}
-	}
 }
 /**
  * Returns the number of lines that are in the specified text.
@@ -404,36 +264,19 @@ void moveAndResizeGap(int position, int size, int newGapLine) {
  * @return number of lines
  */
 int lineCount(int startOffset, int length){
-	if (length == 0) {
-		return 0;
-	}
 	int lineCount = 0;
-	int count = 0;
-	int i = startOffset;
-	if (i >= gapStart) {
-		i += gapEnd - gapStart;
-	}
-	while (count < length) {
-		if ((i >= gapStart) && (i < gapEnd)) {
-			// ignore the gap
-		} else {
-			char ch = textStore[i];
-			if (ch == SWT.CR) {
-				// see if the next character is a LF
-				if (i + 1 < textStore.length) {
-					ch = textStore[i+1];
-					if (ch == SWT.LF) {
-						i++;
-						count++;
-					}
-				}
-				lineCount++;
-			} else if (ch == SWT.LF) {
-				lineCount++;
+	int end = startOffset + length;
+	for (int i = startOffset; i < end; i++) {
+		char ch = charAt(i);
+		if (ch == SWT.CR) {
+			// see if the next character is a LF
+			if (i + 1 < end && charAt(i + 1) == SWT.LF) {
+				i++;
 			}
-			count++;
+			lineCount++;
+		} else if (ch == SWT.LF) {
+			lineCount++;
 		}
-		i++;
 	}
 	return lineCount;
 }
@@ -481,27 +324,13 @@ public int getCharCount() {
 @Override
 public String getLine(int index) {
 	if ((index >= lineCount) || (index < 0)) error(SWT.ERROR_INVALID_ARGUMENT);
-	int start = lines[index][0];
-	int length = lines[index][1];
-	int end = start + length - 1;
-	if (!gapExists() || (end < gapStart) || (start >= gapEnd)) {
-		// line is before or after the gap
-		while ((length - 1 >= 0) && isDelimiter(textStore[start+length-1])) {
-			length--;
-		}
-		return new String(textStore, start, length);
-	} else {
-		// gap is in the specified range, strip out the gap
-		StringBuffer buf = new StringBuffer();
-		int gapLength = gapEnd - gapStart;
-		buf.append(textStore, start, gapStart - start);
-		buf.append(textStore, gapEnd, length - gapLength - (gapStart - start));
-		length = buf.length();
-		while ((length - 1 >=0) && isDelimiter(buf.charAt(length - 1))) {
-			length--;
-		}
-		return buf.toString().substring(0, length);
+	indexLines(0, index + 1);
+	int start = lineIndex.get(index);
+	int end = index + 1 < lineIndex.size ? lineIndex.get(index + 1) : getCharCount();
+	while (end > start && isDelimiter(charAt(end - 1))) {
+		end--;
 	}
+	return getTextRange(start, end - start);
 }
 /**
  * Returns the line delimiter that should be used by the StyledText
@@ -516,40 +345,6 @@ public String getLine(int index) {
 public String getLineDelimiter() {
 	return LineDelimiter;
 }
-/**
- * Returns the line at the given index with delimiters.
- * <p>
- * @param index	the index of the line to return
- * @return the logical line text (i.e., without the gap) with delimiters
- */
-String getFullLine(int index) {
-	int start = lines[index][0];
-	int length = lines[index][1];
-	int end = start + length - 1;
-	if (!gapExists() || (end < gapStart) || (start >= gapEnd)) {
-		// line is before or after the gap
-		return new String(textStore, start, length);
-	} else {
-		// gap is in the specified range, strip out the gap
-		StringBuffer buffer = new StringBuffer();
-		int gapLength = gapEnd - gapStart;
-		buffer.append(textStore, start, gapStart - start);
-		buffer.append(textStore, gapEnd, length - gapLength - (gapStart - start));
-		return buffer.toString();
-	}
-}
-/**
- * Returns the physical line at the given index (i.e., with delimiters and the gap).
- * <p>
- *
- * @param index the line index
- * @return the physical line
- */
-String getPhysicalLine(int index) {
-	int start = lines[index][0];
-	int length = lines[index][1];
-	return getPhysicalText(start, length);
-}
 /**
  * @return the number of lines in the text store
  */
@@ -570,67 +365,8 @@ public int getLineCount(){
 @Override
 public int getLineAtOffset(int charPosition){
 	if ((charPosition > getCharCount()) || (charPosition < 0)) error(SWT.ERROR_INVALID_ARGUMENT);
-	int position;
-	if (charPosition < gapStart) {
-		// position is before the gap
-		position = charPosition;
-	} else {
-		// position includes the gap
-		position = charPosition + (gapEnd - gapStart);
-	}
-
-	// if last line and the line is not empty you can ask for
-	// a position that doesn't exist (the one to the right of the
-	// last character) - for inserting
-	if (lineCount > 0) {
-		int lastLine = lineCount - 1;
-		if (position == lines[lastLine][0] + lines[lastLine][1])
-			return lastLine;
-	}
-
-	int high = lineCount;
-	int low = -1;
-	int index = lineCount;
-	while (high - low > 1) {
-		index = (high + low) / 2;
-		int lineStart = lines[index][0];
-		int lineEnd = lineStart + lines[index][1] - 1;
-		if (position <= lineStart) {
-			high = index;
-		} else if (position <= lineEnd) {
-			high = index;
-			break;
-		} else {
-			low = index;
-		}
-	}
-	return high;
-}
-/**
- * Returns the line index at the given physical offset.
- * <p>
- *
- * @param position physical character offset (i.e., includes gap)
- * @return the line index
- */
-int getLineAtPhysicalOffset(int position){
-	int high = lineCount;
-	int low = -1;
-	int index = lineCount;
-	while (high - low > 1) {
-		index = (high + low) / 2;
-		int lineStart = lines[index][0];
-		int lineEnd = lineStart + lines[index][1] - 1;
-		if (position <= lineStart) {
-			high = index;
-		} else if (position <= lineEnd) {
-			high = index;
-			break;
-		} else {
-			low = index;
-		}
-	}
-	return high;
+	indexLines(charPosition, -1);
+	return lineIndex.find(charPosition);
 }
 /**
  * Returns the logical offset of the given line.
@@ -647,27 +383,8 @@ int getLineAtPhysicalOffset(int position){
 public int getOffsetAtLine(int lineIndex) {
 	if (lineIndex == 0) return 0;
 	if ((lineIndex >= lineCount) || (lineIndex < 0)) error(SWT.ERROR_INVALID_ARGUMENT);
-	int start = lines[lineIndex][0];
-	if (start > gapEnd) {
-		return start - (gapEnd - gapStart);
-	} else {
-		return start;
-	}
-}
-/**
- * Increases the line indexes array to accommodate more lines.
- * <p>
- *
- * @param numLines the number to increase the array by
- */
-void expandLinesBy(int numLines) {
-	int size = lines.length;
-	if (size - lineCount >= numLines) {
-		return;
-	}
-	int[][] newLines = new int[size+Math.max(10, numLines)][2];
-	System.arraycopy(lines, 0, newLines, 0, size);
-	lines = newLines;
+	indexLines(0, lineIndex);
+	return this.lineIndex.get(lineIndex);
 }
 /**
  * Reports an SWT error.
@@ -687,18 +404,6 @@ void error (int code) {
 boolean gapExists() {
 	return gapStart != gapEnd;
 }
-/**
- * Returns a string representing the continuous content of
- * the text store.
- * <p>
- *
- * @param start	the physical start offset of the text to return
- * @param length the physical length of the text to return
- * @return the text
- */
-String getPhysicalText(int start, int length) {
-	return new String(textStore, start, length);
-}
 /**
  * Returns a string representing the logical content of
  * the text store (i.e., gap stripped out).
@@ -790,10 +495,20 @@ public void replaceTextRange(int start, int replaceLength, String newText){
 	event.newCharCount = newText.length();
 	sendTextEvent(event);
 
+	// index the lines up to the one after the replaced text
+	int firstLine = getLineAtOffset(start);
+	// a \r\n delimiter may be completed by text inserted at a line start
+	if (firstLine > 0 && lineIndex.get(firstLine) == start) firstLine--;
+	int lastLine = getLineAtOffset(start + replaceLength) + 1;
+	indexLines(0, lastLine);
+	int regionStart = lineIndex.get(firstLine);
+	int regionEnd = lastLine < lineIndex.size ? lineIndex.get(lastLine) : getCharCount();
+
 	// first delete the text to be replaced
-	delete(start, replaceLength, event.replaceLineCount + 1);
+	delete(start, replaceLength);
 	// then insert the new text
 	insert(start, newText);
+	updateLines(firstLine, lastLine, regionStart, regionEnd, newText.length() - replaceLength);
 	// inform listeners
 	event = new StyledTextEvent(this);
 	event.type = ST.TextChanged;
@@ -819,8 +534,22 @@ public void setText (String text){
 	textStore = text.toCharArray();
 	gapStart = -1;
 	gapEnd = -1;
-	expandExp = 1;
-	indexLines();
+	lineIndex = new LineIndex();
+	lineIndex.add(0);
+	indexedOffset = 0;
+	int charCount = getCharCount();
+	if (charCount <= INDEX_CHUNK) {
+		indexLines(charCount, -1);
+		lineCount = lineIndex.size;
+	} else {
+		/*
+		* Only count the lines of a large text, StyledText needs to know
+		* how many there are right away but only the first few ones are
+		* shown. They are indexed when needed or in the background.
+		*/
+		lineCount = lineCount(0, charCount) + 1;
+		indexInBackground();
+	}
 	StyledTextEvent event = new StyledTextEvent(this);
 	event.type = ST.TextSet;
 	event.text = "";
@@ -831,26 +560,10 @@ public void setText (String text){
  * <p>
  * @param position the position at which the text to delete starts
  * @param length the length of the text to delete
- * @param numLines the number of lines that are being deleted
  */
-void delete(int position, int length, int numLines) {
+void delete(int position, int length) {
 	if (length == 0) return;
-
-	int startLine = getLineAtOffset(position);
-	int startLineOffset = getOffsetAtLine(startLine);
-	int endLine = getLineAtOffset(position + length);
-
-	String endText = "";
-	boolean splittingDelimiter = false;
-	if (position + length < getCharCount()) {
-		endText = getTextRange(position + length - 1, 2);
-		if ((endText.charAt(0) == SWT.CR) && (endText.charAt(1) == SWT.LF)) {
-			splittingDelimiter = true;
-		}
-	}
-
-	adjustGap(position + length, -length, startLine);
-	int [][] oldLines = indexLines(position, length + (gapEnd - gapStart), numLines);
+	adjustGap(position + length, -length);
 
 	// enlarge the gap - the gap can be enlarged either to the
 	// right or left
@@ -859,36 +572,43 @@ void delete(int position, int length, int numLines) {
 	} else {
 		gapEnd += length;
 	}
-
-	// figure out the length of the new concatenated line, do so by
-	// finding the first line delimiter after position
-	int j = position;
-	boolean eol = false;
-	while (j < textStore.length && !eol) {
-		if (j < gapStart || j >= gapEnd) {
-			char ch = textStore[j];
-			if (isDelimiter(ch)) {
-				if (j + 1 < textStore.length) {
-					if (ch == SWT.CR && (textStore[j+1] == SWT.LF)) {
-						j++;
-					}
-				}
-				eol = true;
-			}
+}
+/**
+ * Updates the line index after a text change.  The lines between
+ * <code>firstLine</code> and <code>lastLine</code> are indexed again
+ * and the start offsets of the lines after them are shifted.
+ * <p>
+ *
+ * @param firstLine the line before the changed lines
+ * @param lastLine the line after the changed lines, or the line count
+ *  when the change was on the last line
+ * @param regionStart the start of firstLine before the change
+ * @param regionEnd the start of lastLine before the change, or the old
+ *  character count
+ * @param delta the change in the number of characters
+ */
+void updateLines(int firstLine, int lastLine, int regionStart, int regionEnd, int delta) {
+	int[] starts = new int[8];
+	int count = 0;
+	int end = regionEnd + delta;
+	for (int i = regionStart; i < end;) {
+		char ch = charAt(i++);
+		if (ch == SWT.CR) {
+			// see if the next character is a LF
+			if (i < end && charAt(i) == SWT.LF) i++;
+		} else if (ch != SWT.LF) {
+			continue;
 		}
-		j++;
-	}
-	// update the line where the deletion started
-	lines[startLine][1] = (position - startLineOffset) + (j - position);
-	// figure out the number of lines that have been deleted
-	int numOldLines = oldLines.length - 1;
-	if (splittingDelimiter) numOldLines -= 1;
-	// shift up the lines after the last deleted line, no need to update
-	// the offset or length of the lines
-	for (int i = endLine + 1; i < lineCount; i++) {
-		lines[i - numOldLines] = lines[i];
+		if (count == starts.length) {
+			int[] newStarts = new int[count * 2];
+			System.arraycopy(starts, 0, newStarts, 0, count);
+			starts = newStarts;
+		}
+		starts[count++] = i;
 	}
-	lineCount -= numOldLines;
-	gapLine = getLineAtPhysicalOffset(gapStart);
+	int oldEnd = Math.min(lastLine + 1, lineIndex.size);
+	lineIndex.replace(firstLine + 1, oldEnd, starts, count, delta);
+	lineCount += count - (oldEnd - firstLine - 1);
+	indexedOffset += delta;
 }
 }
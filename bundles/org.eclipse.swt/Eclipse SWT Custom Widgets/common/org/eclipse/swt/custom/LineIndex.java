@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.custom;
+
+
+/**
+ * Internal class that stores the start offsets of the lines of a text,
+ * in increasing order.
+ * <p>
+ * The offsets are kept in blocks of at most <code>2 * BLOCK_SIZE</code>
+ * entries, relative to a base offset per block. An entry takes 4 bytes,
+ * and shifting the lines that follow a change only updates the entries
+ * of one block and the bases of the blocks after it.
+ * </p>
+ */
+final class LineIndex {
+
+	static final int BLOCK_SIZE = 1024;
+
+	int[][] blocks = new int[4][];
+	int[] sizes = new int[4];
+	int[] bases = new int[4];
+	/* The index of the first entry of each block */
+	int[] firsts = new int[4];
+	int blockCount, size;
+
+/**
+ * Appends an offset, which must not be smaller than the last one.
+ */
+void add(int offset) {
+	int block = blockCount - 1;
+	if (block == -1 || sizes[block] == 2 * BLOCK_SIZE) {
+		block = blockCount;
+		insertBlocks(block, 1);
+		blocks[block] = new int[16];
+		sizes[block] = 0;
+		bases[block] = offset;
+		firsts[block] = size;
+	} else if (sizes[block] == blocks[block].length) {
+		int[] newBlock = new int[Math.min(2 * BLOCK_SIZE, sizes[block] * 2)];
+		System.arraycopy(blocks[block], 0, newBlock, 0, sizes[block]);
+		blocks[block] = newBlock;
+	}
+	blocks[block][sizes[block]++] = offset - bases[block];
+	size++;
+}
+
+/**
+ * Answers the block holding the entry at index, which must be
+ * between 0 and size - 1.
+ */
+int getBlock(int index) {
+	int low = 0, high = blockCount - 1;
+	while (low < high) {
+		int mid = (low + high + 1) >>> 1;
+		if (firsts[mid] <= index) {
+			low = mid;
+		} else {
+			high = mid - 1;
+		}
+	}
+	return low;
+}
+
+/**
+ * Answers the offset at index, which must be between 0 and size - 1.
+ */
+int get(int index) {
+	int block = getBlock(index);
+	return bases[block] + blocks[block][index - firsts[block]];
+}
+
+/**
+ * Answers the index of the last offset that is not greater than
+ * the given one, or -1 when there is none.
+ */
+int find(int offset) {
+	int low = 0, high = blockCount - 1;
+	while (low < high) {
+		int mid = (low + high + 1) >>> 1;
+		if (bases[mid] + blocks[mid][0] <= offset) {
+			low = mid;
+		} else {
+			high = mid - 1;
+		}
+	}
+	if (blockCount == 0) return -1;
+	int[] block = blocks[low];
+	int relative = offset - bases[low];
+	int start = 0, end = sizes[low] - 1;
+	if (block[0] > relative) return -1;
+	while (start < end) {
+		int mid = (start + end + 1) >>> 1;
+		if (block[mid] <= relative) {
+			start = mid;
+		} else {
+			end = mid - 1;
+		}
+	}
+	return firsts[low] + start;
+}
+
+/**
+ * Replaces the entries from index start up to index end, excluded,
+ * with the first count offsets of the given array, and adds delta to
+ * the entries after them.
+ */
+void replace(int start, int end, int[] offsets, int count, int delta) {
+	if (start == size) {
+		for (int i = 0; i < count; i++) add(offsets[i]);
+		return;
+	}
+	int first = getBlock(start);
+	int last = end < size ? getBlock(end) : blockCount - 1;
+	int head = start - firsts[first];
+	int tail = firsts[last] + sizes[last] - end;
+	int[] merged = new int[head + count + tail];
+	for (int i = 0; i < head; i++) {
+		merged[i] = bases[first] + blocks[first][i];
+	}
+	System.arraycopy(offsets, 0, merged, head, count);
+	int[] lastBlock = blocks[last];
+	for (int i = 0, j = end - firsts[last]; i < tail; i++, j++) {
+		merged[head + count + i] = bases[last] + lastBlock[j] + delta;
+	}
+
+	/* Rebuild the changed blocks, splitting them when they grow too large */
+	int length = merged.length;
+	int newCount = length <= 2 * BLOCK_SIZE ? (length == 0 ? 0 : 1) : (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+	int oldCount = last - first + 1;
+	if (newCount > oldCount) {
+		insertBlocks(last + 1, newCount - oldCount);
+	} else if (newCount < oldCount) {
+		removeBlocks(first + newCount, oldCount - newCount);
+	}
+	int chunk = newCount == 1 ? length : BLOCK_SIZE;
+	for (int i = 0, offset = 0; i < newCount; i++, offset += chunk) {
+		int blockSize = Math.min(chunk, length - offset);
+		int base = merged[offset];
+		int[] block = new int[Math.max(16, blockSize)];
+		for (int j = 0; j < blockSize; j++) {
+			block[j] = merged[offset + j] - base;
+		}
+		blocks[first + i] = block;
+		sizes[first + i] = blockSize;
+		bases[first + i] = base;
+	}
+	for (int i = first + newCount; i < blockCount; i++) {
+		bases[i] += delta;
+	}
+	size += count - (end - start);
+	for (int i = first, index = first == 0 ? 0 : firsts[first - 1] + sizes[first - 1]; i < blockCount; i++) {
+		firsts[i] = index;
+		index += sizes[i];
+	}
+}
+
+void insertBlocks(int index, int count) {
+	if (blockCount + count > blocks.length) {
+		int capacity = Math.max(blocks.length * 2, blockCount + count);
+		int[][] newBlocks = new int[capacity][];
+		System.arraycopy(blocks, 0, newBlocks, 0, blockCount);
+		blocks = newBlocks;
+		int[] newSizes = new int[capacity];
+		System.arraycopy(sizes, 0, newSizes, 0, blockCount);
+		sizes = newSizes;
+		int[] newBases = new int[capacity];
+		System.arraycopy(bases, 0, newBases, 0, blockCount);
+		bases = newBases;
+		int[] newFirsts = new int[capacity];
+		System.arraycopy(firsts, 0, newFirsts, 0, blockCount);
+		firsts = newFirsts;
+	}
+	int moved = blockCount - index;
+	System.arraycopy(blocks, index, blocks, index + count, moved);
+	System.arraycopy(sizes, index, sizes, index + count, moved);
+	System.arraycopy(bases, index, bases, index + count, moved);
+	System.arraycopy(firsts, index, firsts, index + count, moved);
+	blockCount += count;
+}
+
+void removeBlocks(int index, int count) {
+	int moved = blockCount - index - count;
+	System.arraycopy(blocks, index + count, blocks, index, moved);
+	System.arraycopy(sizes, index + count, sizes, index, moved);
+	System.arraycopy(bases, index + count, bases, index, moved);
+	System.arraycopy(firsts, index + count, firsts, index, moved);
+	blockCount -= count;
+	for (int i = blockCount; i < blockCount + count; i++) blocks[i] = null;
+}
+}
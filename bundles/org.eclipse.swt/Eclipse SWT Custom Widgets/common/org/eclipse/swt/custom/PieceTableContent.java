@@ -0,0 +1,780 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.custom;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.List;
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.widgets.*;
+
+/**
+ * A <code>StyledTextContent</code> for very large documents, such as
+ * log files of hundreds of megabytes, which can be set in a
+ * <code>StyledText</code> with <code>setContent</code>.
+ * <p>
+ * The text is stored as a piece table: the original text is never
+ * modified and the inserted text is appended to a second buffer, while
+ * the document is described by a sequence of pieces of these two buffers
+ * kept in a balanced tree. Replacing text, and finding a line or the line
+ * at an offset, take a time proportional to the logarithm of the number
+ * of edits instead of the size of the document.
+ * </p><p>
+ * The original text can be a file, which is memory-mapped and decoded
+ * on demand rather than read into the heap. The file is decoded once when
+ * the content is created in order to find where its lines start, and must
+ * not be modified while the content uses it. Charsets whose decoding
+ * depends on the bytes decoded before, such as those with shift states,
+ * are not supported for files.
+ * </p><p>
+ * The line delimiters are handled like in the default content of
+ * <code>StyledText</code>: CR, LF and CR LF all end a line, and the
+ * CR LF delimiter cannot be split or partially deleted.
+ * </p>
+ *
+ * @see StyledText#setContent(StyledTextContent)
+ * @since 3.106
+ */
+public class PieceTableContent implements StyledTextContent {
+	private final static String LineDelimiter = System.getProperty("line.separator"); //$NON-NLS-1$
+
+	List<StyledTextListener> textListeners = new ArrayList<>();
+	/* The text the content was created with, and the inserted text */
+	Buffer original, added;
+	/* The root of the tree of pieces, null when the content is empty */
+	Piece root;
+	Random random = new Random();
+
+	/*
+	* The text of a piece table buffer, with the offsets that follow a line
+	* delimiter, in increasing order. A CR LF delimiter has a single offset,
+	* after the LF.
+	*/
+	static final class Buffer {
+		CharSequence text;
+		int[] breaks = new int[64];
+		int breakCount;
+		int length;
+		char last;
+
+	Buffer(CharSequence text) {
+		this.text = text;
+	}
+
+	void add(int offset) {
+		if (breakCount == breaks.length) {
+			int[] newBreaks = new int[breaks.length * 2];
+			System.arraycopy(breaks, 0, newBreaks, 0, breakCount);
+			breaks = newBreaks;
+		}
+		breaks[breakCount++] = offset;
+	}
+
+	/*
+	* Index the line delimiters of the given characters, which follow
+	* the characters indexed before.
+	*/
+	void index(char[] chars, int start, int end) {
+		for (int i = start; i < end; i++) {
+			char ch = chars[i];
+			length++;
+			if (ch == SWT.LF) {
+				/* A CR LF delimiter ends after the LF */
+				if (last == SWT.CR) {
+					breaks[breakCount - 1] = length;
+				} else {
+					add(length);
+				}
+			} else if (ch == SWT.CR) {
+				add(length);
+			}
+			last = ch;
+		}
+	}
+
+	void index(String string) {
+		char[] chars = new char[Math.min(string.length(), 8192)];
+		for (int i = 0; i < string.length(); i += chars.length) {
+			int end = Math.min(string.length(), i + chars.length);
+			string.getChars(i, end, chars, 0);
+			index(chars, 0, end - i);
+		}
+	}
+
+	/* Answer the number of offsets that are at most the given offset */
+	int getBreakIndex(int offset) {
+		int low = 0, high = breakCount;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (breaks[mid] <= offset) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+	}
+
+	/*
+	* A node of the tree of pieces, in document order. Besides its piece of
+	* a buffer, each node sums up its subtree: its size, its line breaks and
+	* whether its text starts with a LF or ends with a CR, as the line breaks
+	* of adjacent pieces can form a single CR LF delimiter.
+	*/
+	static final class Piece {
+		final Buffer buffer;
+		int start, length;
+		/* The line breaks of the piece, counting a CR at its end */
+		int breaks;
+		boolean startsWithLF, endsWithCR;
+		final int priority;
+		Piece left, right;
+		int size, lineBreaks;
+		boolean firstLF, lastCR;
+
+	Piece(Buffer buffer, int start, int length, int priority) {
+		this.buffer = buffer;
+		this.start = start;
+		this.priority = priority;
+		setLength(length);
+	}
+
+	void setLength(int length) {
+		this.length = length;
+		CharSequence text = buffer.text;
+		char last = text.charAt(start + length - 1);
+		startsWithLF = text.charAt(start) == SWT.LF;
+		endsWithCR = last == SWT.CR;
+		breaks = getInnerBreaks() + (last == SWT.CR || last == SWT.LF ? 1 : 0);
+		update();
+	}
+
+	/* Answer the line breaks before the last character of the piece */
+	int getInnerBreaks() {
+		return buffer.getBreakIndex(start + length - 1) - buffer.getBreakIndex(start);
+	}
+
+	/* Answer the offset in the piece of its given line break */
+	int getBreak(int index) {
+		if (index < getInnerBreaks()) return buffer.breaks[buffer.getBreakIndex(start) + index] - start;
+		return length;
+	}
+
+	void update() {
+		size = length;
+		lineBreaks = breaks;
+		firstLF = startsWithLF;
+		lastCR = endsWithCR;
+		if (left != null) {
+			size += left.size;
+			lineBreaks += left.lineBreaks;
+			if (left.lastCR && startsWithLF) lineBreaks--;
+			firstLF = left.firstLF;
+		}
+		if (right != null) {
+			size += right.size;
+			lineBreaks += right.lineBreaks;
+			if (endsWithCR && right.firstLF) lineBreaks--;
+			lastCR = right.lastCR;
+		}
+	}
+	}
+
+	/*
+	* The characters of a memory-mapped file. The file is decoded in blocks
+	* of about BLOCK_SIZE bytes, which are decoded again when their characters
+	* are needed. The last decoded block is kept.
+	*/
+	static final class MappedText implements CharSequence {
+		static final int REGION_SIZE = 1 << 30;
+		static final int BLOCK_SIZE = 1 << 16;
+
+		final ByteBuffer[] regions;
+		final CharsetDecoder decoder;
+		/* The byte and character offsets where each block starts, and where the file ends */
+		long[] blockBytes = new long[64];
+		int[] blockChars = new int[64];
+		int blockCount;
+		int length;
+		char[] chars;
+		int charsStart = 0, charsEnd = 0;
+
+	MappedText(File file, Charset charset, Buffer buffer) throws IOException {
+		long size;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			size = channel.size();
+			regions = new ByteBuffer[(int)((size + REGION_SIZE - 1) / REGION_SIZE)];
+			for (int i = 0; i < regions.length; i++) {
+				long position = (long)i * REGION_SIZE;
+				regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(REGION_SIZE, size - position));
+			}
+		}
+		decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		CharBuffer out = CharBuffer.allocate((int)(BLOCK_SIZE * decoder.maxCharsPerByte()) + 16);
+		long position = 0, count = 0;
+		while (position < size) {
+			int byteCount = (int)Math.min(BLOCK_SIZE, size - position);
+			ByteBuffer in = getBytes(position, byteCount);
+			int decoded = decode(in, out, position + byteCount == size);
+			int consumed = byteCount - in.remaining();
+			if (consumed == 0) break;
+			addBlock(position, (int)count);
+			buffer.index(out.array(), 0, decoded);
+			count += decoded;
+			if (count > Integer.MAX_VALUE) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+			position += consumed;
+		}
+		length = (int)count;
+		addBlock(position, length);
+		blockCount--;
+		chars = new char[out.capacity()];
+	}
+
+	void addBlock(long bytes, int offset) {
+		if (blockCount == blockChars.length) {
+			long[] newBytes = new long[blockCount * 2];
+			int[] newChars = new int[blockCount * 2];
+			System.arraycopy(blockBytes, 0, newBytes, 0, blockCount);
+			System.arraycopy(blockChars, 0, newChars, 0, blockCount);
+			blockBytes = newBytes;
+			blockChars = newChars;
+		}
+		blockBytes[blockCount] = bytes;
+		blockChars[blockCount] = offset;
+		blockCount++;
+	}
+
+	int decode(ByteBuffer in, CharBuffer out, boolean endOfInput) {
+		out.clear();
+		decoder.reset();
+		decoder.decode(in, out, endOfInput);
+		if (endOfInput) decoder.flush(out);
+		return out.position();
+	}
+
+	/* Answer the bytes of the file in the given range */
+	ByteBuffer getBytes(long position, int count) {
+		int region = (int)(position / REGION_SIZE);
+		int offset = (int)(position % REGION_SIZE);
+		if (offset + count <= REGION_SIZE) {
+			ByteBuffer bytes = regions[region].duplicate();
+			bytes.limit(offset + count).position(offset);
+			return bytes;
+		}
+		/* The range spans two regions */
+		byte[] bytes = new byte[count];
+		int head = REGION_SIZE - offset;
+		ByteBuffer first = regions[region].duplicate();
+		first.position(offset);
+		first.get(bytes, 0, head);
+		ByteBuffer second = regions[region + 1].duplicate();
+		second.get(bytes, head, count - head);
+		return ByteBuffer.wrap(bytes);
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < charsStart || index >= charsEnd) {
+			if (index < 0 || index >= length) throw new IndexOutOfBoundsException();
+			int low = 0, high = blockCount - 1;
+			while (low < high) {
+				int mid = (low + high + 1) >>> 1;
+				if (blockChars[mid] <= index) {
+					low = mid;
+				} else {
+					high = mid - 1;
+				}
+			}
+			long position = blockBytes[low];
+			ByteBuffer in = getBytes(position, (int)(blockBytes[low + 1] - position));
+			CharBuffer out = CharBuffer.wrap(chars);
+			charsEnd = 0;
+			charsStart = blockChars[low];
+			charsEnd = charsStart + decode(in, out, true);
+		}
+		return chars[index - charsStart];
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return new StringBuilder(end - start).append(this, start, end).toString();
+	}
+
+	@Override
+	public String toString() {
+		return subSequence(0, length).toString();
+	}
+	}
+
+/**
+ * Constructs a new empty content.
+ */
+public PieceTableContent() {
+	setText(""); //$NON-NLS-1$
+}
+
+/**
+ * Constructs a new content holding the text of the given file,
+ * decoded with the given charset.
+ * <p>
+ * The file is memory-mapped and only the parts of it that are shown
+ * or edited are decoded into characters. It must not be modified while
+ * the content holds it, that is until <code>setText</code> is called
+ * or the content is no longer used.
+ * </p>
+ *
+ * @param file the file to open
+ * @param charset the charset of the file
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the file or the charset is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the file holds more than <code>Integer.MAX_VALUE</code> characters</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_IO - if an IO error occurs while mapping the file</li>
+ * </ul>
+ */
+public PieceTableContent(File file, Charset charset) {
+	if (file == null || charset == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	Buffer buffer = new Buffer(null);
+	try {
+		buffer.text = new MappedText(file, charset, buffer);
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_IO, e);
+	}
+	setBuffer(buffer);
+}
+
+/**
+ * Adds a <code>TextChangeListener</code> listening for
+ * <code>TextChangingEvent</code> and <code>TextChangedEvent</code>. A
+ * <code>TextChangingEvent</code> is sent before changes to the text occur.
+ * A <code>TextChangedEvent</code> is sent after changes to the text
+ * occurred.
+ *
+ * @param listener the listener
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT when listener is null</li>
+ * </ul>
+ */
+@Override
+public void addTextChangeListener(TextChangeListener listener) {
+	if (listener == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	textListeners.add(new StyledTextListener(listener));
+}
+
+static int size(Piece piece) {
+	return piece != null ? piece.size : 0;
+}
+
+/*
+* Split the tree at the given offset. The first tree answered holds the
+* text before the offset and the second tree the text after it.
+*/
+Piece[] split(Piece node, int offset) {
+	if (node == null) return new Piece[2];
+	int leftSize = size(node.left);
+	if (offset <= leftSize) {
+		Piece[] trees = split(node.left, offset);
+		node.left = trees[1];
+		node.update();
+		trees[1] = node;
+		return trees;
+	}
+	if (offset >= leftSize + node.length) {
+		Piece[] trees = split(node.right, offset - leftSize - node.length);
+		node.right = trees[0];
+		node.update();
+		trees[0] = node;
+		return trees;
+	}
+	int cut = offset - leftSize;
+	Piece head = new Piece(node.buffer, node.start, cut, node.priority);
+	Piece tail = new Piece(node.buffer, node.start + cut, node.length - cut, random.nextInt());
+	return new Piece[] {merge(node.left, head), merge(tail, node.right)};
+}
+
+/*
+* Join two trees, the text of the first preceding the text of the second.
+*/
+Piece merge(Piece first, Piece second) {
+	if (first == null) return second;
+	if (second == null) return first;
+	if (first.priority > second.priority) {
+		first.right = merge(first.right, second);
+		first.update();
+		return first;
+	}
+	second.left = merge(first, second.left);
+	second.update();
+	return second;
+}
+
+/*
+* Extend the piece ending at the given offset by the characters just
+* appended to the buffer of inserted text, when it is the piece that
+* ends where they were appended. This is the case when typing.
+*/
+boolean extend(Piece node, int offset, int addedStart, int count) {
+	if (node == null) return false;
+	int leftSize = size(node.left);
+	boolean extended;
+	if (offset <= leftSize) {
+		extended = extend(node.left, offset, addedStart, count);
+	} else if (offset > leftSize + node.length) {
+		extended = extend(node.right, offset - leftSize - node.length, addedStart, count);
+	} else if (offset == leftSize + node.length && node.buffer == added && node.start + node.length == addedStart) {
+		node.setLength(node.length + count);
+		return true;
+	} else {
+		extended = false;
+	}
+	if (extended) node.update();
+	return extended;
+}
+
+/**
+ * @return the number of characters in the content
+ */
+@Override
+public int getCharCount() {
+	return size(root);
+}
+
+char getChar(int offset) {
+	Piece node = root;
+	while (true) {
+		int leftSize = size(node.left);
+		if (offset < leftSize) {
+			node = node.left;
+		} else if (offset < leftSize + node.length) {
+			return node.buffer.text.charAt(node.start + offset - leftSize);
+		} else {
+			offset -= leftSize + node.length;
+			node = node.right;
+		}
+	}
+}
+
+/*
+* Answer the number of line breaks at or before the given offset.
+* A line break is at the offset that follows its delimiter.
+*/
+int getBreakCount(int offset) {
+	int count = 0;
+	/* Whether the text following the current subtree starts with a LF */
+	boolean nextLF = false;
+	Piece node = root;
+	while (node != null) {
+		Piece left = node.left;
+		int leftSize = size(left);
+		if (offset <= leftSize) {
+			nextLF = node.startsWithLF;
+			node = left;
+			continue;
+		}
+		if (left != null) {
+			count += left.lineBreaks;
+			if (left.lastCR && node.startsWithLF) count--;
+		}
+		offset -= leftSize;
+		if (offset < node.length) {
+			return count + node.buffer.getBreakIndex(node.start + offset) - node.buffer.getBreakIndex(node.start);
+		}
+		count += node.breaks;
+		if (node.endsWithCR && (node.right != null ? node.right.firstLF : nextLF)) count--;
+		offset -= node.length;
+		node = node.right;
+	}
+	return count;
+}
+
+/*
+* Answer the offset of the given line break, counting from 0.
+*/
+int getBreakOffset(int index) {
+	int offset = 0;
+	boolean nextLF = false;
+	Piece node = root;
+	while (node != null) {
+		Piece left = node.left;
+		if (left != null) {
+			int leftBreaks = left.lineBreaks;
+			if (left.lastCR && node.startsWithLF) leftBreaks--;
+			if (index < leftBreaks) {
+				nextLF = node.startsWithLF;
+				node = left;
+				continue;
+			}
+			index -= leftBreaks;
+			offset += left.size;
+		}
+		int breaks = node.breaks;
+		if (node.endsWithCR && (node.right != null ? node.right.firstLF : nextLF)) breaks--;
+		if (index < breaks) return offset + node.getBreak(index);
+		index -= breaks;
+		offset += node.length;
+		node = node.right;
+	}
+	return offset;
+}
+
+/**
+ * Returns the line at <code>index</code> without delimiters.
+ *
+ * @param index	the index of the line to return
+ * @return the line text without delimiters
+ * @exception IllegalArgumentException <ul>
+ *   <li>ERROR_INVALID_ARGUMENT when index is out of range</li>
+ * </ul>
+ */
+@Override
+public String getLine(int index) {
+	int lineCount = getLineCount();
+	if (index >= lineCount || index < 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	int start = getOffsetAtLine(index);
+	int end = index + 1 < lineCount ? getBreakOffset(index) : getCharCount();
+	while (end > start && isDelimiter(getChar(end - 1))) end--;
+	return getTextRange(start, end - start);
+}
+
+/**
+ * Returns the line delimiter that should be used by the StyledText
+ * widget when inserting new lines.
+ *
+ * @return the platform line delimiter as specified in the line.separator
+ * 	system property.
+ */
+@Override
+public String getLineDelimiter() {
+	return LineDelimiter;
+}
+
+/**
+ * Returns the line at the given offset.
+ *
+ * @param offset the character offset
+ * @return the line index
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_INVALID_ARGUMENT when offset is out of range</li>
+ * </ul>
+ */
+@Override
+public int getLineAtOffset(int offset) {
+	if (offset > getCharCount() || offset < 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	return getBreakCount(offset);
+}
+
+/**
+ * @return the number of lines in the content
+ */
+@Override
+public int getLineCount() {
+	return root != null ? root.lineBreaks + 1 : 1;
+}
+
+/**
+ * Returns the offset of the given line.
+ *
+ * @param lineIndex index of line
+ * @return the starting offset of the line.  When there are not any lines,
+ * 	getOffsetAtLine(0) is a valid call that should answer 0.
+ * @exception IllegalArgumentException <ul>
+ *   <li>ERROR_INVALID_ARGUMENT when lineIndex is out of range</li>
+ * </ul>
+ */
+@Override
+public int getOffsetAtLine(int lineIndex) {
+	if (lineIndex == 0) return 0;
+	if (lineIndex >= getLineCount() || lineIndex < 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	return getBreakOffset(lineIndex - 1);
+}
+
+/**
+ * Returns the text in the given range.
+ *
+ * @param start the start offset of the text to return
+ * @param length the length of the text to return
+ * @return the text
+ * @exception IllegalArgumentException <ul>
+ *   <li>ERROR_INVALID_ARGUMENT when the range is out of the content</li>
+ * </ul>
+ */
+@Override
+public String getTextRange(int start, int length) {
+	if (start < 0 || length < 0 || start > getCharCount() - length) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	if (length == 0) return ""; //$NON-NLS-1$
+	StringBuilder builder = new StringBuilder(length);
+	getText(root, start, start + length, builder);
+	return builder.toString();
+}
+
+void getText(Piece node, int start, int end, StringBuilder builder) {
+	if (node == null || start >= end) return;
+	int leftSize = size(node.left);
+	if (start < leftSize) getText(node.left, start, Math.min(end, leftSize), builder);
+	int pieceStart = Math.max(start, leftSize), pieceEnd = Math.min(end, leftSize + node.length);
+	if (pieceStart < pieceEnd) {
+		builder.append(node.buffer.text, node.start + pieceStart - leftSize, node.start + pieceEnd - leftSize);
+	}
+	int rightStart = leftSize + node.length;
+	if (end > rightStart) getText(node.right, Math.max(0, start - rightStart), end - rightStart, builder);
+}
+
+static boolean isDelimiter(char ch) {
+	return ch == SWT.CR || ch == SWT.LF;
+}
+
+/*
+* Answer whether the replace operation keeps the CR LF delimiters whole.
+*/
+boolean isValidReplace(int start, int replaceLength) {
+	int charCount = getCharCount();
+	if (start < 0 || replaceLength < 0 || start > charCount - replaceLength) return false;
+	if (replaceLength == 0) {
+		/* Inserting text, see if a CR LF delimiter is being split */
+		if (start == 0 || start == charCount) return true;
+		return !(getChar(start - 1) == SWT.CR && getChar(start) == SWT.LF);
+	}
+	/* Deleting text, see if part of a CR LF delimiter is being deleted */
+	if (start != 0 && getChar(start) == SWT.LF && getChar(start - 1) == SWT.CR) return false;
+	int end = start + replaceLength;
+	if (end != charCount && getChar(end - 1) == SWT.CR && getChar(end) == SWT.LF) return false;
+	return true;
+}
+
+/*
+* Answer the number of line delimiters in the given text.
+*/
+static int getLineCount(String text) {
+	int lineCount = 0;
+	int length = text.length();
+	for (int i = 0; i < length; i++) {
+		char ch = text.charAt(i);
+		if (ch == SWT.CR) {
+			if (i + 1 < length && text.charAt(i + 1) == SWT.LF) i++;
+			lineCount++;
+		} else if (ch == SWT.LF) {
+			lineCount++;
+		}
+	}
+	return lineCount;
+}
+
+/**
+ * Removes the specified <code>TextChangeListener</code>.
+ *
+ * @param listener the listener which should no longer be notified
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT when listener is null</li>
+ * </ul>
+ */
+@Override
+public void removeTextChangeListener(TextChangeListener listener) {
+	if (listener == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	for (int i = 0; i < textListeners.size(); i++) {
+		TypedListener typedListener = textListeners.get(i);
+		if (typedListener.getEventListener() == listener) {
+			textListeners.remove(i);
+			break;
+		}
+	}
+}
+
+/**
+ * Replaces the text with <code>newText</code> starting at position <code>start</code>
+ * for a length of <code>replaceLength</code>.  Notifies the appropriate listeners.
+ *
+ * @param start	start offset of text to replace
+ * @param replaceLength length of text to replace
+ * @param newText the new text
+ *
+ * @exception IllegalArgumentException <ul>
+ *   <li>ERROR_INVALID_ARGUMENT when the range is out of the content, or when the
+ *      text change results in a CR LF line delimiter being split or partially deleted</li>
+ * </ul>
+ */
+@Override
+public void replaceTextRange(int start, int replaceLength, String newText) {
+	if (!isValidReplace(start, replaceLength)) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+
+	StyledTextEvent event = new StyledTextEvent(this);
+	event.type = ST.TextChanging;
+	event.start = start;
+	event.replaceLineCount = getBreakCount(start + replaceLength) - getBreakCount(start);
+	event.text = newText;
+	event.newLineCount = getLineCount(newText);
+	event.replaceCharCount = replaceLength;
+	event.newCharCount = newText.length();
+	sendTextEvent(event);
+
+	if (replaceLength > 0) {
+		Piece[] trees = split(root, start);
+		root = merge(trees[0], split(trees[1], replaceLength)[1]);
+	}
+	int count = newText.length();
+	if (count > 0) {
+		int addedStart = added.length;
+		((StringBuilder)added.text).append(newText);
+		added.index(newText);
+		if (!extend(root, start, addedStart, count)) {
+			Piece[] trees = split(root, start);
+			root = merge(merge(trees[0], new Piece(added, addedStart, count, random.nextInt())), trees[1]);
+		}
+	}
+
+	event = new StyledTextEvent(this);
+	event.type = ST.TextChanged;
+	sendTextEvent(event);
+}
+
+void sendTextEvent(StyledTextEvent event) {
+	for (int i = 0; i < textListeners.size(); i++) {
+		textListeners.get(i).handleEvent(event);
+	}
+}
+
+void setBuffer(Buffer buffer) {
+	original = buffer;
+	added = new Buffer(new StringBuilder());
+	int length = buffer.text.length();
+	root = length > 0 ? new Piece(buffer, 0, length, random.nextInt()) : null;
+}
+
+/**
+ * Sets the content to text. The text becomes the original text of the
+ * piece table, replacing any file the content was created with.
+ *
+ * @param text the text
+ */
+@Override
+public void setText(String text) {
+	Buffer buffer = new Buffer(text);
+	buffer.index(text);
+	setBuffer(buffer);
+	StyledTextEvent event = new StyledTextEvent(this);
+	event.type = ST.TextSet;
+	event.text = ""; //$NON-NLS-1$
+	sendTextEvent(event);
+}
+}
@@ -0,0 +1,450 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.custom;
+
+
+/**
+ * Internal class that stores the style ranges of a StyledTextRenderer:
+ * entries made of a start offset, a length and a style, sorted by start
+ * offset and not overlapping.
+ * <p>
+ * The entries are kept in blocks of <code>BLOCK_SIZE / 2</code> up to
+ * <code>2 * BLOCK_SIZE</code> entries, only a lone block can hold fewer:
+ * a block that overflows is split and the entries of a block that
+ * underflows are merged with those of its neighbour. The start offsets of a block are relative to the start of its
+ * first entry, its base. The bases and the sizes of the blocks are kept
+ * in two binary indexed trees holding their differences, so shifting all
+ * the entries after an offset or finding the block of an entry takes a
+ * logarithmic time instead of updating all the entries that follow. The
+ * trees are only rebuilt when blocks are split, merged or removed.
+ * </p>
+ * <p>
+ * The styles are interned in a table shared by all the entries: styles
+ * that are similar, that is that only differ in their start and length,
+ * are stored once and the entries only hold the index of their style in
+ * the table. The table counts the entries using each style and reuses
+ * the slots of the styles that are no longer used.
+ * </p>
+ */
+final class StyleStore {
+
+	static final int BLOCK_SIZE = 256;
+
+	static final class Block {
+		int[] starts, lengths, ids;
+		int size;
+
+		Block(int capacity) {
+			starts = new int[capacity];
+			lengths = new int[capacity];
+			ids = new int[capacity];
+		}
+	}
+
+	Block[] blocks = new Block[0];
+	int blockCount, size;
+	/* Binary indexed trees of the differences between the block bases and of the block sizes */
+	int[] baseTree = new int[1], sizeTree = new int[1];
+
+	/* The style table, indexed by style id */
+	StyleRange[] table = new StyleRange[16];
+	int[] counts = new int[16], hashes = new int[16];
+	/* The hash chains and the list of free ids, holding an id + 1 or 0 at the end */
+	int[] buckets = new int[16], next = new int[16];
+	int tableSize, styleCount, freeId;
+
+int getBase(int block) {
+	int sum = 0;
+	for (int i = block + 1; i > 0; i -= i & -i) sum += baseTree[i];
+	return sum;
+}
+
+void addBase(int block, int delta) {
+	for (int i = block + 1; i <= blockCount; i += i & -i) baseTree[i] += delta;
+}
+
+/*
+* Answer the index of the first entry of the block.
+*/
+int getFirst(int block) {
+	int sum = 0;
+	for (int i = block; i > 0; i -= i & -i) sum += sizeTree[i];
+	return sum;
+}
+
+/*
+* Answer the block holding the entry at index, which must be
+* between 0 and size - 1.
+*/
+int getBlock(int index) {
+	int block = 0, mask = Integer.highestOneBit(blockCount);
+	for (; mask != 0; mask >>= 1) {
+		int next = block + mask;
+		if (next <= blockCount && sizeTree[next] <= index) {
+			block = next;
+			index -= sizeTree[next];
+		}
+	}
+	return block;
+}
+
+int getStart(int index) {
+	int block = getBlock(index);
+	return getBase(block) + blocks[block].starts[index - getFirst(block)];
+}
+
+int getLength(int index) {
+	int block = getBlock(index);
+	return blocks[block].lengths[index - getFirst(block)];
+}
+
+int getEnd(int index) {
+	int block = getBlock(index);
+	int i = index - getFirst(block);
+	return getBase(block) + blocks[block].starts[i] + blocks[block].lengths[i];
+}
+
+StyleRange getStyle(int index) {
+	int block = getBlock(index);
+	return table[blocks[block].ids[index - getFirst(block)]];
+}
+
+void setLength(int index, int length) {
+	int block = getBlock(index);
+	blocks[block].lengths[index - getFirst(block)] = length;
+}
+
+/**
+ * Sets the start of the entry at index, which must stay between
+ * the end of the entry before it and the start of the one after it.
+ */
+void setStart(int index, int start) {
+	int block = getBlock(index);
+	int i = index - getFirst(block);
+	Block b = blocks[block];
+	if (i > 0) {
+		b.starts[i] = start - getBase(block);
+		return;
+	}
+	int delta = start - getBase(block);
+	if (delta == 0) return;
+	for (int j = 1; j < b.size; j++) b.starts[j] -= delta;
+	addBase(block, delta);
+	if (block + 1 < blockCount) addBase(block + 1, -delta);
+}
+
+/**
+ * Adds delta to the start of the entries from index on.
+ */
+void shift(int index, int delta) {
+	if (delta == 0 || index >= size) return;
+	int block = getBlock(index);
+	int i = index - getFirst(block);
+	if (i == 0) {
+		addBase(block, delta);
+		return;
+	}
+	Block b = blocks[block];
+	for (int j = i; j < b.size; j++) b.starts[j] += delta;
+	if (block + 1 < blockCount) addBase(block + 1, delta);
+}
+
+/**
+ * Answers the index of the first entry that ends after offset,
+ * or size when there is none.
+ */
+int find(int offset) {
+	int low = 0, high = blockCount;
+	while (low < high) {
+		int mid = (low + high) >>> 1;
+		Block b = blocks[mid];
+		if (getBase(mid) + b.starts[b.size - 1] + b.lengths[b.size - 1] > offset) {
+			high = mid;
+		} else {
+			low = mid + 1;
+		}
+	}
+	if (low == blockCount) return size;
+	Block b = blocks[low];
+	int relative = offset - getBase(low);
+	int start = 0, end = b.size - 1;
+	while (start < end) {
+		int mid = (start + end) >>> 1;
+		if (b.starts[mid] + b.lengths[mid] > relative) {
+			end = mid;
+		} else {
+			start = mid + 1;
+		}
+	}
+	return getFirst(low) + start;
+}
+
+/**
+ * Answers the id of the given style in the table, adding it when
+ * no similar style is there, and counts one more entry using it.
+ */
+int intern(StyleRange style) {
+	int hash = style.hashCode();
+	int bucket = (hash ^ (hash >>> 16)) & (buckets.length - 1);
+	for (int id = buckets[bucket] - 1; id != -1; id = next[id] - 1) {
+		if (hashes[id] == hash && table[id].similarTo(style)) {
+			counts[id]++;
+			return id;
+		}
+	}
+	int id;
+	if (freeId != 0) {
+		id = freeId - 1;
+		freeId = next[id];
+	} else {
+		if (tableSize == table.length) {
+			int capacity = tableSize * 2;
+			StyleRange[] newTable = new StyleRange[capacity];
+			System.arraycopy(table, 0, newTable, 0, tableSize);
+			table = newTable;
+			int[] newCounts = new int[capacity];
+			System.arraycopy(counts, 0, newCounts, 0, tableSize);
+			counts = newCounts;
+			int[] newHashes = new int[capacity];
+			System.arraycopy(hashes, 0, newHashes, 0, tableSize);
+			hashes = newHashes;
+			int[] newNext = new int[capacity];
+			System.arraycopy(next, 0, newNext, 0, tableSize);
+			next = newNext;
+		}
+		id = tableSize++;
+	}
+	table[id] = style;
+	counts[id] = 1;
+	hashes[id] = hash;
+	next[id] = buckets[bucket];
+	buckets[bucket] = id + 1;
+	if (++styleCount > buckets.length * 3 / 4) rehash(buckets.length * 2);
+	return id;
+}
+
+/*
+* Count one entry less using the style with the given id and remove
+* the style from the table when no entry uses it anymore.
+*/
+void release(int id) {
+	if (--counts[id] != 0) return;
+	int hash = hashes[id];
+	int bucket = (hash ^ (hash >>> 16)) & (buckets.length - 1);
+	if (buckets[bucket] == id + 1) {
+		buckets[bucket] = next[id];
+	} else {
+		int previous = buckets[bucket] - 1;
+		while (next[previous] != id + 1) previous = next[previous] - 1;
+		next[previous] = next[id];
+	}
+	table[id] = null;
+	next[id] = freeId;
+	freeId = id + 1;
+	styleCount--;
+}
+
+void rehash(int capacity) {
+	buckets = new int[capacity];
+	for (int id = 0; id < tableSize; id++) {
+		if (table[id] == null) continue;
+		int hash = hashes[id];
+		int bucket = (hash ^ (hash >>> 16)) & (capacity - 1);
+		next[id] = buckets[bucket];
+		buckets[bucket] = id + 1;
+	}
+}
+
+/**
+ * Answers a copy of the receiver holding clones of its styles.
+ */
+StyleStore copy() {
+	StyleStore store = new StyleStore();
+	store.blocks = new Block[blockCount];
+	for (int i = 0; i < blockCount; i++) {
+		Block b = blocks[i], newBlock = new Block(b.size);
+		System.arraycopy(b.starts, 0, newBlock.starts, 0, b.size);
+		System.arraycopy(b.lengths, 0, newBlock.lengths, 0, b.size);
+		System.arraycopy(b.ids, 0, newBlock.ids, 0, b.size);
+		newBlock.size = b.size;
+		store.blocks[i] = newBlock;
+	}
+	store.blockCount = blockCount;
+	store.size = size;
+	store.baseTree = baseTree.clone();
+	store.sizeTree = sizeTree.clone();
+	store.table = new StyleRange[table.length];
+	for (int id = 0; id < tableSize; id++) {
+		if (table[id] != null) store.table[id] = (StyleRange)table[id].clone();
+	}
+	store.counts = counts.clone();
+	store.hashes = hashes.clone();
+	store.buckets = buckets.clone();
+	store.next = next.clone();
+	store.tableSize = tableSize;
+	store.styleCount = styleCount;
+	store.freeId = freeId;
+	return store;
+}
+
+/**
+ * Replaces the entries from index start up to index end, excluded,
+ * with count entries, given by their start offset and length in ranges
+ * and by their style in styles.
+ */
+void replace(int start, int end, int[] ranges, StyleRange[] styles, int count) {
+	int[] ids = new int[count];
+	for (int i = 0; i < count; i++) ids[i] = intern(styles[i]);
+	if (blockCount == 0) {
+		size = count;
+		rebuild(new int[0], 0, 0, ranges, ids, count);
+		return;
+	}
+	int first = start < size ? getBlock(start) : blockCount - 1;
+	int last = end < size ? getBlock(end) : blockCount - 1;
+	int firstIndex = getFirst(first), lastIndex = getFirst(last);
+	for (int block = first, index = firstIndex; index < end; index += blocks[block++].size) {
+		Block b = blocks[block];
+		for (int i = Math.max(0, start - index); i < b.size && index + i < end; i++) release(b.ids[i]);
+	}
+	int head = start - firstIndex;
+	int tail = lastIndex + blocks[last].size - end;
+	int length = head + count + tail;
+	if (first == last && length <= 2 * BLOCK_SIZE && (length >= BLOCK_SIZE / 2 || (blockCount == 1 && length > 0))) {
+		replace(first, head, end - firstIndex, tail, ranges, ids, count);
+		return;
+	}
+	if (length < BLOCK_SIZE / 2 && last - first + 1 < blockCount) {
+		/* Too few entries are left for a block, merge them with a neighbour */
+		if (last + 1 < blockCount) {
+			last++;
+			tail += blocks[last].size;
+		} else {
+			first--;
+			firstIndex = getFirst(first);
+			head = start - firstIndex;
+		}
+		length = head + count + tail;
+	}
+	int[] merged = new int[length * 2];
+	int[] mergedIds = new int[length];
+	copy(firstIndex, start, merged, mergedIds, 0);
+	System.arraycopy(ranges, 0, merged, head * 2, count * 2);
+	System.arraycopy(ids, 0, mergedIds, head, count);
+	copy(end, end + tail, merged, mergedIds, head + count);
+	size += count - (end - start);
+	int[] bases = new int[blockCount];
+	for (int i = 0; i < blockCount; i++) bases[i] = getBase(i);
+	rebuild(bases, first, last + 1, merged, mergedIds, length);
+}
+
+/*
+* Copy the entries from index start up to index end, excluded, to ranges
+* and ids from index offset on.
+*/
+void copy(int start, int end, int[] ranges, int[] ids, int offset) {
+	while (start < end) {
+		int block = getBlock(start), base = getBase(block);
+		Block b = blocks[block];
+		for (int i = start - getFirst(block); i < b.size && start < end; i++, start++, offset++) {
+			ranges[offset * 2] = base + b.starts[i];
+			ranges[offset * 2 + 1] = b.lengths[i];
+			ids[offset] = b.ids[i];
+		}
+	}
+}
+
+/*
+* Replace the entries of the block from index head up to index end,
+* excluded, with count entries when the block does not need to be split,
+* merged or removed. The blocks stay the same, only the size and the base of
+* this one are updated in the trees.
+*/
+void replace(int block, int head, int end, int tail, int[] ranges, int[] ids, int count) {
+	Block b = blocks[block];
+	int length = head + count + tail;
+	if (length > b.starts.length) {
+		Block newBlock = new Block(Math.min(2 * BLOCK_SIZE, Math.max(length, b.starts.length * 2)));
+		System.arraycopy(b.starts, 0, newBlock.starts, 0, head);
+		System.arraycopy(b.lengths, 0, newBlock.lengths, 0, head);
+		System.arraycopy(b.ids, 0, newBlock.ids, 0, head);
+		System.arraycopy(b.starts, end, newBlock.starts, head + count, tail);
+		System.arraycopy(b.lengths, end, newBlock.lengths, head + count, tail);
+		System.arraycopy(b.ids, end, newBlock.ids, head + count, tail);
+		blocks[block] = b = newBlock;
+	} else {
+		System.arraycopy(b.starts, end, b.starts, head + count, tail);
+		System.arraycopy(b.lengths, end, b.lengths, head + count, tail);
+		System.arraycopy(b.ids, end, b.ids, head + count, tail);
+	}
+	b.size = length;
+	int base = getBase(block);
+	for (int i = 0; i < count; i++) {
+		b.starts[head + i] = ranges[i * 2] - base;
+		b.lengths[head + i] = ranges[i * 2 + 1];
+		b.ids[head + i] = ids[i];
+	}
+	int delta = b.starts[0];
+	if (delta != 0) {
+		for (int i = 0; i < length; i++) b.starts[i] -= delta;
+		addBase(block, delta);
+		if (block + 1 < blockCount) addBase(block + 1, -delta);
+	}
+	size += count - (end - head);
+	for (int i = block + 1; i <= blockCount; i += i & -i) sizeTree[i] += count - (end - head);
+}
+
+Block createBlock(int[] ranges, int[] ids, int offset, int count) {
+	Block block = new Block(count);
+	int base = ranges[offset * 2];
+	for (int i = 0; i < count; i++) {
+		block.starts[i] = ranges[(offset + i) * 2] - base;
+		block.lengths[i] = ranges[(offset + i) * 2 + 1];
+		block.ids[i] = ids[offset + i];
+	}
+	block.size = count;
+	return block;
+}
+
+/*
+* Replace the blocks from index start up to index end, excluded, with
+* blocks of even sizes holding the given entries and rebuild the trees.
+*/
+void rebuild(int[] bases, int start, int end, int[] ranges, int[] ids, int count) {
+	int newCount = count == 0 ? 0 : count <= 2 * BLOCK_SIZE ? 1 : (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+	int total = blockCount - (end - start) + newCount;
+	Block[] newBlocks = new Block[total];
+	int[] newBases = new int[total];
+	System.arraycopy(blocks, 0, newBlocks, 0, start);
+	System.arraycopy(bases, 0, newBases, 0, start);
+	for (int i = 0; i < newCount; i++) {
+		int offset = (int)((long)count * i / newCount);
+		int next = (int)((long)count * (i + 1) / newCount);
+		newBlocks[start + i] = createBlock(ranges, ids, offset, next - offset);
+		newBases[start + i] = ranges[offset * 2];
+	}
+	System.arraycopy(blocks, end, newBlocks, start + newCount, blockCount - end);
+	System.arraycopy(bases, end, newBases, start + newCount, blockCount - end);
+	blocks = newBlocks;
+	blockCount = total;
+	baseTree = new int[total + 1];
+	sizeTree = new int[total + 1];
+	for (int i = 1; i <= total; i++) {
+		baseTree[i] += newBases[i - 1] - (i > 1 ? newBases[i - 2] : 0);
+		sizeTree[i] += newBlocks[i - 1].size;
+		int parent = i + (i & -i);
+		if (parent <= total) {
+			baseTree[parent] += baseTree[i];
+			sizeTree[parent] += sizeTree[i];
+		}
+	}
+}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -309,9 +309,11 @@ public class StyledText extends Canvas {
 				printerRenderer.setLineIndent(i, 1, indent * printerDPI.x / screenDPI.x);
 			}
 		}
-		StyleRange[] styles = printerRenderer.styles;
-		for (int i = 0; i < printerRenderer.styleCount; i++) {
-			StyleRange style = styles[i];
+		/* The ranges share the styles of the table, convert each style once */
+		StyleStore styles = printerRenderer.styles;
+		for (int i = 0; styles != null && i < styles.tableSize; i++) {
+			StyleRange style = styles.table[i];
+			if (style == null) continue;
 			Font font = style.font;
 			if (style.font != null) {
 				Font printerFont = (Font)resources.get(font);
@@ -541,7 +543,7 @@ public class StyledText extends Canvas {
 					}
 				}
 			}
-			printerRenderer.disposeTextLayout(layout);
+			printerRenderer.disposeTextLayout(layout, i);
 		}
 		if (page <= endPage && paintY > clientArea.y) {
 			// close partial page
@@ -1756,7 +1758,7 @@ public Point computeSize (int wHint, int hHint, boolean changed) {
 			height += rect.height;
 			width = Math.max(width, rect.width);
 			layout.setWidth(wrapWidth);
-			renderer.disposeTextLayout(layout);
+			renderer.disposeTextLayout(layout, lineIndex);
 			if (isFixedLineHeight() && height > maxHeight) break;
 		}
 		if (isFixedLineHeight()) {
@@ -2345,7 +2347,7 @@ void doBackspace() {
 			}
 			TextLayout layout = renderer.getTextLayout(lineIndex);
 			int start = layout.getPreviousOffset(caretOffset - lineOffset, isSurrogate ? SWT.MOVEMENT_CLUSTER : SWT.MOVEMENT_CHAR);
-			renderer.disposeTextLayout(layout);
+			renderer.disposeTextLayout(layout, lineIndex);
 			event.start = start + lineOffset;
 			event.end = caretOffset;
 		}
@@ -2679,7 +2681,7 @@ void doLineDown(boolean select) {
 			y = layout.getLineBounds(lineIndex + 1).y;
 			y++; // bug 485722: workaround for fractional line heights
 		}
-		renderer.disposeTextLayout(layout);
+		renderer.disposeTextLayout(layout, getCaretLine());
 	} else {
 		lastLine = caretLine == lineCount - 1;
 		caretLine++;
@@ -2716,7 +2718,7 @@ void doLineEnd() {
 		int lineIndex = getVisualLineIndex(layout, offsetInLine);
 		int[] offsets = layout.getLineOffsets();
 		lineEndOffset = lineOffset + offsets[lineIndex + 1];
-		renderer.disposeTextLayout(layout);
+		renderer.disposeTextLayout(layout, caretLine);
 	} else {
 		int lineLength = content.getLine(caretLine).length();
 		lineEndOffset = lineOffset + lineLength;
@@ -2736,7 +2738,7 @@ void doLineStart() {
 		int lineIndex = getVisualLineIndex(layout, offsetInLine);
 		int[] offsets = layout.getLineOffsets();
 		lineOffset += offsets[lineIndex];
-		renderer.disposeTextLayout(layout);
+		renderer.disposeTextLayout(layout, caretLine);
 	}
 	setCaretOffset(lineOffset, OFFSET_LEADING);
 	showCaret();
@@ -2766,7 +2768,7 @@ void doLineUp(boolean select) {
 			y = layout.getLineBounds(lineIndex - 1).y;
 			y++; // bug 485722: workaround for fractional line heights
 		}
-		renderer.disposeTextLayout(layout);
+		renderer.disposeTextLayout(layout, getCaretLine());
 	} else {
 		firstLine = caretLine == 0;
 		caretLine--;
@@ -3027,7 +3029,7 @@ void doPageDown(boolean select, int height) {
 							break;
 						}
 					}
-					renderer.disposeTextLayout(layout);
+					renderer.disposeTextLayout(layout, lineIndex);
 				}
 			}
 		} else {
@@ -3043,7 +3045,7 @@ void doPageDown(boolean select, int height) {
 						break;
 					}
 				}
-				renderer.disposeTextLayout(layout);
+				renderer.disposeTextLayout(layout, lineIndex);
 			} else {
 				height = topLineY + renderer.getLineHeight(lineIndex);
 			}
@@ -3054,7 +3056,7 @@ void doPageDown(boolean select, int height) {
 			int offsetInLine = caretOffset - content.getOffsetAtLine(caretLine);
 			lineIndex = getVisualLineIndex(layout, offsetInLine);
 			caretHeight += layout.getLineBounds(lineIndex).y;
-			renderer.disposeTextLayout(layout);
+			renderer.disposeTextLayout(layout, caretLine);
 		}
 		lineIndex = caretLine;
 		lineHeight = renderer.getLineHeight(lineIndex);
@@ -3098,7 +3100,7 @@ void doPageEnd() {
 			} else {
 				bottomOffset = content.getOffsetAtLine(lineIndex) + Math.max(0, layout.getLineOffsets()[index + 1] - 1);
 			}
-			renderer.disposeTextLayout(layout);
+			renderer.disposeTextLayout(layout, lineIndex);
 		} else {
 			int lineIndex = getBottomIndex();
 			bottomOffset = content.getOffsetAtLine(lineIndex) + content.getLine(lineIndex).length();
@@ -3136,7 +3138,7 @@ void doPageStart() {
 		} else {
 			topOffset = content.getOffsetAtLine(lineIndex) + layout.getLineOffsets()[index];
 		}
-		renderer.disposeTextLayout(layout);
+		renderer.disposeTextLayout(layout, lineIndex);
 	} else {
 		topOffset = content.getOffsetAtLine(topIndex);
 	}
@@ -3204,7 +3206,7 @@ void doPageUp(boolean select, int height) {
 							break;
 						}
 					}
-					renderer.disposeTextLayout(layout);
+					renderer.disposeTextLayout(layout, lineIndex);
 				}
 			}
 		} else {
@@ -3220,7 +3222,7 @@ void doPageUp(boolean select, int height) {
 						break;
 					}
 				}
-				renderer.disposeTextLayout(layout);
+				renderer.disposeTextLayout(layout, lineIndex);
 			} else {
 				height = clientAreaHeight - topLineY;
 			}
@@ -3231,7 +3233,7 @@ void doPageUp(boolean select, int height) {
 			int offsetInLine = caretOffset - content.getOffsetAtLine(caretLine);
 			lineIndex = getVisualLineIndex(layout, offsetInLine);
 			caretHeight += layout.getBounds().height - layout.getLineBounds(lineIndex).y;
-			renderer.disposeTextLayout(layout);
+			renderer.disposeTextLayout(layout, caretLine);
 		}
 		lineIndex = caretLine;
 		lineHeight = renderer.getLineHeight(lineIndex);
@@ -3315,7 +3317,7 @@ void doSelectionCursorNext() {
 		TextLayout layout = renderer.getTextLayout(caretLine);
 		offsetInLine = layout.getNextOffset(offsetInLine, SWT.MOVEMENT_CLUSTER);
 		int lineStart = layout.getLineOffsets()[layout.getLineIndex(offsetInLine)];
-		renderer.disposeTextLayout(layout);
+		renderer.disposeTextLayout(layout, caretLine);
 		offset = offsetInLine + lineOffset;
 		alignment = offsetInLine == lineStart ? OFFSET_LEADING : PREVIOUS_OFFSET_TRAILING;
 		setCaretOffset(offset, alignment);
@@ -3549,7 +3551,7 @@ public int getBaseline(int offset) {
 	TextLayout layout = renderer.getTextLayout(lineIndex);
 	int lineInParagraph = layout.getLineIndex(Math.min(offset - lineOffset, layout.getText().length()));
 	FontMetrics metrics = layout.getLineMetrics(lineInParagraph);
-	renderer.disposeTextLayout(layout);
+	renderer.disposeTextLayout(layout, lineIndex);
 	return metrics.getAscent() + metrics.getLeading();
 }
 /**
@@ -3721,7 +3723,7 @@ Rectangle getBoundsAtOffset(int offset) {
 		} else {
 			bounds = layout.getBounds(offsetInLine, offsetInLine);
 		}
-		renderer.disposeTextLayout(layout);
+		renderer.disposeTextLayout(layout, lineIndex);
 	} else {
 		bounds = new Rectangle (0, 0, 0, renderer.getLineHeight());
 	}
@@ -3768,7 +3770,7 @@ int getClusterNext(int offset, int lineIndex) {
 	offset -= lineOffset;
 	offset = layout.getNextOffset(offset, SWT.MOVEMENT_CLUSTER);
 	offset += lineOffset;
-	renderer.disposeTextLayout(layout);
+	renderer.disposeTextLayout(layout, lineIndex);
 	return offset;
 }
 int getClusterPrevious(int offset, int lineIndex) {
@@ -3777,7 +3779,7 @@ int getClusterPrevious(int offset, int lineIndex) {
 	offset -= lineOffset;
 	offset = layout.getPreviousOffset(offset, SWT.MOVEMENT_CLUSTER);
 	offset += lineOffset;
-	renderer.disposeTextLayout(layout);
+	renderer.disposeTextLayout(layout, lineIndex);
 	return offset;
 }
 /**
@@ -4167,7 +4169,7 @@ public int getLineHeight(int offset) {
 	TextLayout layout = renderer.getTextLayout(lineIndex);
 	int lineInParagraph = layout.getLineIndex(Math.min(offset - lineOffset, layout.getText().length()));
 	int height = layout.getLineBounds(lineInParagraph).height;
-	renderer.disposeTextLayout(layout);
+	renderer.disposeTextLayout(layout, lineIndex);
 	return height;
 }
 /**
@@ -4525,7 +4527,7 @@ int getOffsetAtPoint(int x, int y, int lineIndex, int[] alignment) {
 			}
 		}
 	}
-	renderer.disposeTextLayout(layout);
+	renderer.disposeTextLayout(layout, lineIndex);
 	return offsetInLine + content.getOffsetAtLine(lineIndex);
 }
 int getOffsetAtPoint(int x, int y, int[] trailing, boolean inTextOnly) {
@@ -4544,7 +4546,7 @@ int getOffsetAtPoint(int x, int y, int[] trailing, boolean inTextOnly) {
 	y -= getLinePixel(lineIndex);
 	int offset = layout.getOffset(x, y, trailing);
 	Rectangle rect = layout.getLineBounds(layout.getLineIndex(offset));
-	renderer.disposeTextLayout(layout);
+	renderer.disposeTextLayout(layout, lineIndex);
 	if (inTextOnly && !(rect.x  <= x && x <=  rect.x + rect.width)) {
 		return -1;
 	}
@@ -5244,7 +5246,7 @@ public Rectangle getTextBounds(int start, int end) {
 		} else {
 			height += renderer.getLineHeight();
 		}
-		renderer.disposeTextLayout(layout);
+		renderer.disposeTextLayout(layout, i);
 	}
 	rect = new Rectangle (left, y, right-left, height);
 	rect.x += leftMargin - horizontalScrollOffset;
@@ -5391,7 +5393,7 @@ int getCaretDirection() {
 	}
 	TextLayout layout = renderer.getTextLayout(caretLine);
 	int level = layout.getLevel(offset);
-	renderer.disposeTextLayout(layout);
+	renderer.disposeTextLayout(layout, caretLine);
 	return ((level & 1) != 0) ? SWT.RIGHT : SWT.LEFT;
 }
 /*
@@ -5428,7 +5430,7 @@ int getWordNext (int offset, int movement, boolean ignoreListener) {
 		} else {
 			TextLayout layout = renderer.getTextLayout(lineIndex);
 			newOffset = lineOffset + layout.getNextOffset(offset - lineOffset, movement);
-			renderer.disposeTextLayout(layout);
+			renderer.disposeTextLayout(layout, lineIndex);
 		}
 	}
 	if (ignoreListener) return newOffset;
@@ -5457,7 +5459,7 @@ int getWordPrevious(int offset, int movement, boolean ignoreListener) {
 			int layoutOffset = Math.min(offset - lineOffset, lineText.length());
 			TextLayout layout = renderer.getTextLayout(lineIndex);
 			newOffset = lineOffset + layout.getPreviousOffset(layoutOffset, movement);
-			renderer.disposeTextLayout(layout);
+			renderer.disposeTextLayout(layout, lineIndex);
 		}
 	}
 	if (ignoreListener) return newOffset;
@@ -5552,7 +5554,7 @@ Point getPointAtOffset(int offset) {
 	} else {
 		point = new Point(layout.getIndent(), 0);
 	}
-	renderer.disposeTextLayout(layout);
+	renderer.disposeTextLayout(layout, lineIndex);
 	point.x += leftMargin - horizontalScrollOffset;
 	point.y += getLinePixel(lineIndex);
 	return point;
@@ -5827,7 +5829,7 @@ void internalRedrawRange(int start, int length) {
 			rect.x += lineX;
 			rect.y += startLineY;
 			super.redraw(rect.x, rect.y, rect.width, rect.height, false);
-			renderer.disposeTextLayout(layout);
+			renderer.disposeTextLayout(layout, startLine);
 			return;
 		}
 	}
@@ -5847,7 +5849,7 @@ void internalRedrawRange(int start, int length) {
 
 	/* Redraw end line from the beginning of the line to the end offset */
 	if (startLine != endLine) {
-		renderer.disposeTextLayout(layout);
+		renderer.disposeTextLayout(layout, startLine);
 		layout = renderer.getTextLayout(endLine);
 		offsets = layout.getLineOffsets();
 	}
@@ -5861,7 +5863,7 @@ void internalRedrawRange(int start, int length) {
 	endRect.x += lineX;
 	endRect.y += getLinePixel(endLine);
 	super.redraw(endRect.x, endRect.y, endRect.width, endRect.height, false);
-	renderer.disposeTextLayout(layout);
+	renderer.disposeTextLayout(layout, endLine);
 
 	/* Redraw all lines in between start and end line */
 	int y = startRect.y + startRect.height;
@@ -5912,7 +5914,7 @@ void handleCompositionChanged(Event event) {
 			int lineOffset = content.getOffsetAtLine(lineIndex);
 			TextLayout layout = renderer.getTextLayout(lineIndex);
 			caretWidth = layout.getBounds(start - lineOffset, start + length - 1 - lineOffset).width;
-			renderer.disposeTextLayout(layout);
+			renderer.disposeTextLayout(layout, lineIndex);
 			alignment = OFFSET_LEADING;
 		}
 		setCaretOffset(ime.getCaretOffset(), alignment);
@@ -6637,7 +6639,7 @@ void initializeAccessible() {
 				} else {
 					TextLayout layout = st.renderer.getTextLayout(lineIndex);
 					rect.width = layout.getBounds().width - rect.x;
-					st.renderer.disposeTextLayout(layout);
+					st.renderer.disposeTextLayout(layout, lineIndex);
 				}
 				rects [index++] = rect = display.map(st, null, rect);
 				if (bounds == null) {
@@ -6901,7 +6903,7 @@ void initializeAccessible() {
 		public void getTextAttributes(AccessibleTextAttributeEvent e) {
 			StyledText st = StyledText.this;
 			int contentLength = st.getCharCount();
-			if (!isListening(ST.LineGetStyle) && st.renderer.styleCount == 0) {
+			if (!isListening(ST.LineGetStyle) && st.renderer.getStyleCount() == 0) {
 				e.start = 0;
 				e.end = contentLength;
 				e.textStyle = new TextStyle(st.getFont(), st.foreground, st.background);
@@ -6944,7 +6946,7 @@ void initializeAccessible() {
 			}
 
 			int[] ranges = layout.getRanges();
-			st.renderer.disposeTextLayout(layout);
+			st.renderer.disposeTextLayout(layout, lineIndex);
 			int index = 0;
 			int end = 0;
 			while (index < ranges.length) {
@@ -7409,12 +7411,12 @@ void modifyContent(Event event, boolean updateCaret) {
 				int levelStart = layout.getLevel(event.start - lineOffset);
 				int lineIndexEnd = content.getLineAtOffset(event.end);
 				if (lineIndex != lineIndexEnd) {
-					renderer.disposeTextLayout(layout);
+					renderer.disposeTextLayout(layout, lineIndex);
 					lineOffset = content.getOffsetAtLine(lineIndexEnd);
 					layout = renderer.getTextLayout(lineIndexEnd);
 				}
 				int levelEnd = layout.getLevel(event.end - lineOffset);
-				renderer.disposeTextLayout(layout);
+				renderer.disposeTextLayout(layout, lineIndexEnd);
 				if (levelStart != levelEnd) {
 					caretAlignment = PREVIOUS_OFFSET_TRAILING;
 				} else {
@@ -8326,7 +8328,7 @@ int sendTextEvent(int left, int right, int lineIndex, String text, boolean fillW
 			if (fillWithSpaces) {
 				TextLayout layout = renderer.getTextLayout(lineIndex);
 				lineWidth = layout.getBounds().width;
-				renderer.disposeTextLayout(layout);
+				renderer.disposeTextLayout(layout, lineIndex);
 			}
 		} else {
 			start += trailing[0];
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -32,8 +32,7 @@ class StyledTextRenderer {
 	int averageCharWidth;
 
 	/* Line data */
-	int topIndex = -1;
-	TextLayout[] layouts;
+	TextLayoutCache layouts;
 	int lineCount;
 	int[] lineWidth;
 	int[] lineHeight;
@@ -44,24 +43,19 @@ class StyledTextRenderer {
 
 	/* Bullet */
 	Bullet[] bullets;
-	int[] bulletsIndices;
+	/* Whether the bullets are given by LineStyleEvents and kept with the layouts */
+	boolean eventBullets;
 	int[] redrawLines;
 
 	/* Style data */
-	int[] ranges;
-	int styleCount;
-	StyleRange[] styles;
-	StyleRange[] stylesSet;
-	int stylesSetCount = 0;
+	StyleStore styles;
 	boolean hasLinks, fixedPitch;
 	final static int BULLET_MARGIN = 8;
 
-	final static boolean COMPACT_STYLES = true;
 	final static boolean MERGE_STYLES = true;
 
 	final static int GROW = 32;
 	final static int IDLE_TIME = 50;
-	final static int CACHE_SIZE = 128;
 
 	final static int BACKGROUND = 1 << 0;
 	final static int ALIGNMENT = 1 << 1;
@@ -109,100 +103,54 @@ StyledTextRenderer(Device device, StyledText styledText) {
 	this.styledText = styledText;
 }
 int addMerge(int[] mergeRanges, StyleRange[] mergeStyles, int mergeCount, int modifyStart, int modifyEnd) {
-	int rangeCount = styleCount << 1;
+	int styleCount = styles.size;
 	StyleRange endStyle = null;
 	int endStart = 0, endLength = 0;
-	if (modifyEnd < rangeCount) {
-		endStyle = styles[modifyEnd >> 1];
-		endStart = ranges[modifyEnd];
-		endLength = ranges[modifyEnd + 1];
-	}
-	int grow = mergeCount - (modifyEnd - modifyStart);
-	if (rangeCount + grow >= ranges.length) {
-		int[] tmpRanges = new int[ranges.length + grow + (GROW << 1)];
-		System.arraycopy(ranges, 0, tmpRanges, 0, modifyStart);
-		StyleRange[] tmpStyles = new StyleRange[styles.length + (grow >> 1) + GROW];
-		System.arraycopy(styles, 0, tmpStyles, 0, modifyStart >> 1);
-		if (rangeCount > modifyEnd) {
-			System.arraycopy(ranges, modifyEnd, tmpRanges, modifyStart + mergeCount, rangeCount - modifyEnd);
-			System.arraycopy(styles, modifyEnd >> 1, tmpStyles, (modifyStart + mergeCount) >> 1, styleCount - (modifyEnd >> 1));
-		}
-		ranges = tmpRanges;
-		styles = tmpStyles;
-	} else {
-		if (rangeCount > modifyEnd) {
-			System.arraycopy(ranges, modifyEnd, ranges, modifyStart + mergeCount, rangeCount - modifyEnd);
-			System.arraycopy(styles, modifyEnd >> 1, styles, (modifyStart + mergeCount) >> 1, styleCount - (modifyEnd >> 1));
-		}
-	}
-	if (MERGE_STYLES) {
-		int j = modifyStart;
-		for (int i = 0; i < mergeCount; i += 2) {
-			if (j > 0 && ranges[j - 2] + ranges[j - 1] == mergeRanges[i] && mergeStyles[i >> 1].similarTo(styles[(j - 2) >> 1])) {
-				ranges[j - 1] += mergeRanges[i + 1];
-			} else {
-				styles[j >> 1] = mergeStyles[i >> 1];
-				ranges[j++] = mergeRanges[i];
-				ranges[j++] = mergeRanges[i + 1];
-			}
-		}
-		if (endStyle != null && ranges[j - 2] + ranges[j - 1] == endStart && endStyle.similarTo(styles[(j - 2) >> 1])) {
-			ranges[j - 1] += endLength;
-			modifyEnd += 2;
-			mergeCount += 2;
-		}
-		if (rangeCount > modifyEnd) {
-			System.arraycopy(ranges, modifyStart + mergeCount, ranges, j, rangeCount - modifyEnd);
-			System.arraycopy(styles, (modifyStart + mergeCount) >> 1, styles, j >> 1, styleCount - (modifyEnd >> 1));
-		}
-		grow = (j - modifyStart) - (modifyEnd - modifyStart);
-	} else {
-		System.arraycopy(mergeRanges, 0, ranges, modifyStart, mergeCount);
-		System.arraycopy(mergeStyles, 0, styles, modifyStart >> 1, mergeCount >> 1);
-	}
-	styleCount += grow >> 1;
-	return grow;
-}
-int addMerge(StyleRange[] mergeStyles, int mergeCount, int modifyStart, int modifyEnd) {
-	int grow = mergeCount - (modifyEnd - modifyStart);
-	StyleRange endStyle = null;
-	if (modifyEnd < styleCount) endStyle = styles[modifyEnd];
-	if (styleCount + grow >= styles.length) {
-		StyleRange[] tmpStyles = new StyleRange[styles.length + grow + GROW];
-		System.arraycopy(styles, 0, tmpStyles, 0, modifyStart);
-		if (styleCount > modifyEnd) {
-			System.arraycopy(styles, modifyEnd, tmpStyles, modifyStart + mergeCount, styleCount - modifyEnd);
-		}
-		styles = tmpStyles;
-	} else {
-		if (styleCount > modifyEnd) {
-			System.arraycopy(styles, modifyEnd, styles, modifyStart + mergeCount, styleCount - modifyEnd);
-		}
+	if (modifyEnd < styleCount) {
+		endStyle = styles.getStyle(modifyEnd);
+		endStart = styles.getStart(modifyEnd);
+		endLength = styles.getLength(modifyEnd);
 	}
+	int grow;
 	if (MERGE_STYLES) {
-		int j = modifyStart;
+		int[] ranges = new int[mergeCount << 1];
+		StyleRange[] newStyles = new StyleRange[mergeCount];
+		/* The length added to the style before modifyStart when the first new ones are merged into it */
+		int previous = modifyStart - 1, previousEnd = previous >= 0 ? styles.getEnd(previous) : 0, previousGrow = 0;
+		int j = 0;
 		for (int i = 0; i < mergeCount; i++) {
-			StyleRange newStyle = mergeStyles[i], style;
-			if (j > 0 && (style = styles[j - 1]).start + style.length == newStyle.start && newStyle.similarTo(style)) {
-				style.length += newStyle.length;
-			} else {
-				styles[j++] = newStyle;
+			if (j > 0) {
+				if (ranges[(j << 1) - 2] + ranges[(j << 1) - 1] == mergeRanges[i << 1] && mergeStyles[i].similarTo(newStyles[j - 1])) {
+					ranges[(j << 1) - 1] += mergeRanges[(i << 1) + 1];
+					continue;
+				}
+			} else if (previous >= 0 && previousEnd + previousGrow == mergeRanges[i << 1] && mergeStyles[i].similarTo(styles.getStyle(previous))) {
+				previousGrow += mergeRanges[(i << 1) + 1];
+				continue;
+			}
+			newStyles[j] = mergeStyles[i];
+			ranges[j << 1] = mergeRanges[i << 1];
+			ranges[(j << 1) + 1] = mergeRanges[(i << 1) + 1];
+			j++;
+		}
+		if (endStyle != null) {
+			if (j > 0) {
+				if (ranges[(j << 1) - 2] + ranges[(j << 1) - 1] == endStart && endStyle.similarTo(newStyles[j - 1])) {
+					ranges[(j << 1) - 1] += endLength;
+					modifyEnd++;
+				}
+			} else if (previousEnd + previousGrow == endStart && endStyle.similarTo(styles.getStyle(previous))) {
+				previousGrow += endLength;
+				modifyEnd++;
 			}
 		}
-		StyleRange style = styles[j - 1];
-		if (endStyle != null && style.start + style.length == endStyle.start && endStyle.similarTo(style)) {
-			style.length += endStyle.length;
-			modifyEnd++;
-			mergeCount++;
-		}
-		if (styleCount > modifyEnd) {
-			System.arraycopy(styles, modifyStart + mergeCount, styles, j, styleCount - modifyEnd);
-		}
-		grow = (j - modifyStart) - (modifyEnd - modifyStart);
+		if (previousGrow != 0) styles.setLength(previous, styles.getLength(previous) + previousGrow);
+		styles.replace(modifyStart, modifyEnd, ranges, newStyles, j);
+		grow = j - (modifyEnd - modifyStart);
 	} else {
-		System.arraycopy(mergeStyles, 0, styles, modifyStart, mergeCount);
+		styles.replace(modifyStart, modifyEnd, mergeRanges, mergeStyles, mergeCount);
+		grow = mergeCount - (modifyEnd - modifyStart);
 	}
-	styleCount += grow;
 	return grow;
 }
 void calculate(int startLine, int lineCount) {
@@ -217,7 +165,7 @@ void calculate(int startLine, int lineCount) {
 			Rectangle rect = layout.getBounds();
 			lineWidth[i] = rect.width + hTrim;
 			lineHeight[i] = rect.height;
-			disposeTextLayout(layout);
+			disposeTextLayout(layout, i);
 		}
 		if (lineWidth[i] > maxWidth) {
 			maxWidth = lineWidth[i];
@@ -293,17 +241,7 @@ void clearLineStyle(int startLine, int count) {
 	}
 }
 void copyInto(StyledTextRenderer renderer) {
-	if (ranges != null) {
-		int[] newRanges = renderer.ranges = new int[styleCount << 1];
-		System.arraycopy(ranges, 0, newRanges, 0, newRanges.length);
-	}
-	if (styles != null) {
-		StyleRange[] newStyles = renderer.styles = new StyleRange[styleCount];
-		for (int i = 0; i < newStyles.length; i++) {
-			newStyles[i] = (StyleRange)styles[i].clone();
-		}
-		renderer.styleCount = styleCount;
-	}
+	if (styles != null) renderer.styles = styles.copy();
 	if (lines != null) {
 		LineInfo[] newLines = renderer.lines = new LineInfo[lineCount];
 		for (int i = 0; i < newLines.length; i++) {
@@ -322,12 +260,8 @@ void dispose() {
 	device = null;
 	styledText = null;
 }
-void disposeTextLayout (TextLayout layout) {
-	if (layouts != null) {
-		for (int i = 0; i < layouts.length; i++) {
-			if (layouts[i] == layout) return;
-		}
-	}
+void disposeTextLayout (TextLayout layout, int lineIndex) {
+	if (layouts != null && layouts.contains(lineIndex, layout)) return;
 	layout.dispose();
 }
 void drawBullet(Bullet bullet, GC gc, int paintX, int paintY, int index, int lineAscent, int lineDescent) {
@@ -405,19 +339,17 @@ int drawLine(int lineIndex, int paintX, int paintY, GC gc, Color widgetBackgroun
 	// draw objects
 	Bullet bullet = null;
 	int bulletIndex = -1;
-	if (bullets != null) {
-		if (bulletsIndices != null) {
-			int index = lineIndex - topIndex;
-			if (0 <= index && index < CACHE_SIZE) {
-				bullet = bullets[index];
-				bulletIndex = bulletsIndices[index];
-			}
-		} else {
-			for (int i = 0; i < bullets.length; i++) {
-				bullet = bullets[i];
-				bulletIndex = bullet.indexOf(lineIndex);
-				if (bulletIndex != -1) break;
-			}
+	if (eventBullets) {
+		int index = layouts != null ? layouts.indexOf(lineIndex) : -1;
+		if (index >= 0) {
+			bullet = layouts.bullets[index];
+			bulletIndex = layouts.bulletIndices[index];
+		}
+	} else if (bullets != null) {
+		for (int i = 0; i < bullets.length; i++) {
+			bullet = bullets[i];
+			bulletIndex = bullet.indexOf(lineIndex);
+			if (bulletIndex != -1) break;
 		}
 	}
 	if (bulletIndex != -1 && bullet != null) {
@@ -446,7 +378,7 @@ int drawLine(int lineIndex, int paintX, int paintY, GC gc, Color widgetBackgroun
 			styledText.paintObject(gc, point.x + paintX, point.y + paintY, lineAscent, metrics.getDescent(), style, null, 0);
 		}
 	}
-	disposeTextLayout(layout);
+	disposeTextLayout(layout, lineIndex);
 	return height;
 }
 int getBaseline() {
@@ -521,13 +453,12 @@ boolean hasLink(int offset) {
 			}
 		}
 	}  else {
-		if (ranges != null) {
-			int rangeCount = styleCount << 1;
-			int index = getRangeIndex(offset, -1, rangeCount);
-			if (index >= rangeCount) return false;
-			int rangeStart = ranges[index];
-			int rangeLength = ranges[index + 1];
-			StyleRange rangeStyle = styles[index >> 1];
+		if (styles != null) {
+			int index = styles.find(offset);
+			if (index >= styles.size) return false;
+			int rangeStart = styles.getStart(index);
+			int rangeLength = styles.getLength(index);
+			StyleRange rangeStyle = styles.getStyle(index);
 			if (rangeStart <= offset && offset < rangeStart + rangeLength && rangeStyle.underline && rangeStyle.underlineStyle == SWT.UNDERLINE_LINK) {
 				return true;
 			}
@@ -553,7 +484,6 @@ Color getLineBackground(int index, Color defaultBackground) {
 }
 Bullet getLineBullet (int index, Bullet defaultBullet) {
 	if (bullets == null) return defaultBullet;
-	if (bulletsIndices != null) return defaultBullet;
 	for (int i = 0; i < bullets.length; i++) {
 		Bullet bullet = bullets[i];
 		if (bullet.indexOf(index) != -1) return bullet;
@@ -601,56 +531,19 @@ int[] getLineTabStops(int index, int[] defaultTabStops) {
 	}
 	return defaultTabStops;
 }
-int getRangeIndex(int offset, int low, int high) {
-	if (styleCount == 0) return 0;
-	if (ranges != null)  {
-		while (high - low > 2) {
-			int index = ((high + low) / 2) / 2 * 2;
-			int end = ranges[index] + ranges[index + 1];
-			if (end > offset) {
-				high = index;
-			} else {
-				low = index;
-			}
-		}
-	} else {
-		while (high - low > 1) {
-			int index = ((high + low) / 2);
-			int end = styles[index].start + styles[index].length;
-			if (end > offset) {
-				high = index;
-			} else {
-				low = index;
-			}
-		}
-	}
-	return high;
-}
 int[] getRanges(int start, int length) {
-	if (length == 0) return null;
-	int[] newRanges;
+	if (length == 0 || styles == null) return null;
 	int end = start + length - 1;
-	if (ranges != null) {
-		int rangeCount = styleCount << 1;
-		int rangeStart = getRangeIndex(start, -1, rangeCount);
-		if (rangeStart >= rangeCount) return null;
-		if (ranges[rangeStart] > end) return null;
-		int rangeEnd = Math.min(rangeCount - 2, getRangeIndex(end, rangeStart - 1, rangeCount));
-		if (ranges[rangeEnd] > end) rangeEnd = Math.max(rangeStart, rangeEnd - 2);
-		newRanges = new int[rangeEnd - rangeStart + 2];
-		System.arraycopy(ranges, rangeStart, newRanges, 0, newRanges.length);
-	} else {
-		int rangeStart = getRangeIndex(start, -1, styleCount);
-		if (rangeStart >= styleCount) return null;
-		if (styles[rangeStart].start > end) return null;
-		int rangeEnd = Math.min(styleCount - 1, getRangeIndex(end, rangeStart - 1, styleCount));
-		if (styles[rangeEnd].start > end) rangeEnd = Math.max(rangeStart, rangeEnd - 1);
-		newRanges = new int[(rangeEnd - rangeStart + 1) << 1];
-		for (int i = rangeStart, j = 0; i <= rangeEnd; i++, j += 2) {
-			StyleRange style = styles[i];
-			newRanges[j] = style.start;
-			newRanges[j + 1] = style.length;
-		}
+	int styleCount = styles.size;
+	int rangeStart = styles.find(start);
+	if (rangeStart >= styleCount) return null;
+	if (styles.getStart(rangeStart) > end) return null;
+	int rangeEnd = Math.min(styleCount - 1, styles.find(end));
+	if (styles.getStart(rangeEnd) > end) rangeEnd = Math.max(rangeStart, rangeEnd - 1);
+	int[] newRanges = new int[(rangeEnd - rangeStart + 1) << 1];
+	for (int i = rangeStart, j = 0; i <= rangeEnd; i++, j += 2) {
+		newRanges[j] = styles.getStart(i);
+		newRanges[j + 1] = styles.getLength(i);
 	}
 	if (start > newRanges[0]) {
 		newRanges[1] = newRanges[0] + newRanges[1] - start;
@@ -661,46 +554,36 @@ int[] getRanges(int start, int length) {
 	}
 	return newRanges;
 }
+int getStyleCount() {
+	return styles != null ? styles.size : 0;
+}
 StyleRange[] getStyleRanges(int start, int length, boolean includeRanges) {
-	if (length == 0) return null;
-	StyleRange[] newStyles;
+	if (length == 0 || styles == null) return null;
 	int end = start + length - 1;
-	if (ranges != null) {
-		int rangeCount = styleCount << 1;
-		int rangeStart = getRangeIndex(start, -1, rangeCount);
-		if (rangeStart >= rangeCount) return null;
-		if (ranges[rangeStart] > end) return null;
-		int rangeEnd = Math.min(rangeCount - 2, getRangeIndex(end, rangeStart - 1, rangeCount));
-		if (ranges[rangeEnd] > end) rangeEnd = Math.max(rangeStart, rangeEnd - 2);
-		newStyles = new StyleRange[((rangeEnd - rangeStart) >> 1) + 1];
+	int styleCount = styles.size;
+	int rangeStart = styles.find(start);
+	if (rangeStart >= styleCount) return null;
+	if (styles.getStart(rangeStart) > end) return null;
+	int rangeEnd = Math.min(styleCount - 1, styles.find(end));
+	if (styles.getStart(rangeEnd) > end) rangeEnd = Math.max(rangeStart, rangeEnd - 1);
+	StyleRange[] newStyles = new StyleRange[rangeEnd - rangeStart + 1];
+	for (int i = rangeStart, j = 0; i <= rangeEnd; i++, j++) {
+		StyleRange style = styles.getStyle(i);
 		if (includeRanges) {
-			for (int i = rangeStart, j = 0; i <= rangeEnd; i += 2, j++) {
-				newStyles[j] = (StyleRange)styles[i >> 1].clone();
-				newStyles[j].start = ranges[i];
-				newStyles[j].length = ranges[i + 1];
-			}
-		} else {
-			System.arraycopy(styles, rangeStart >> 1, newStyles, 0, newStyles.length);
+			style = (StyleRange)style.clone();
+			style.start = styles.getStart(i);
+			style.length = styles.getLength(i);
 		}
-	} else {
-		int rangeStart = getRangeIndex(start, -1, styleCount);
-		if (rangeStart >= styleCount) return null;
-		if (styles[rangeStart].start > end) return null;
-		int rangeEnd = Math.min(styleCount - 1, getRangeIndex(end, rangeStart - 1, styleCount));
-		if (styles[rangeEnd].start > end) rangeEnd = Math.max(rangeStart, rangeEnd - 1);
-		newStyles = new StyleRange[rangeEnd - rangeStart + 1];
-		System.arraycopy(styles, rangeStart, newStyles, 0, newStyles.length);
-	}
-	if (includeRanges || ranges == null) {
+		newStyles[j] = style;
+	}
+	if (includeRanges) {
 		StyleRange style = newStyles[0];
 		if (start > style.start) {
-			newStyles[0] = style = (StyleRange)style.clone();
 			style.length = style.start + style.length - start;
 			style.start = start;
 		}
 		style = newStyles[newStyles.length - 1];
 		if (end < style.start + style.length - 1) {
-			newStyles[newStyles.length - 1] = style = (StyleRange)style.clone();
 			style.length = end - style.start + 1;
 		}
 	}
@@ -722,52 +605,17 @@ TextLayout getTextLayout(int lineIndex, int orientation, int width, int lineSpac
 	TextLayout layout = null;
 	if (styledText != null) {
 		int topIndex = styledText.topIndex > 0 ? styledText.topIndex - 1 : 0;
-		if (layouts == null || topIndex != this.topIndex) {
-			TextLayout[] newLayouts = new TextLayout[CACHE_SIZE];
-			if (layouts != null) {
-				for (int i = 0; i < layouts.length; i++) {
-					if (layouts[i] != null) {
-						int layoutIndex = (i + this.topIndex) - topIndex;
-						if (0 <= layoutIndex && layoutIndex < newLayouts.length) {
-							newLayouts[layoutIndex] = layouts[i];
-						} else {
-							layouts[i].dispose();
-						}
-					}
-				}
-			}
-			if (bullets != null && bulletsIndices != null && topIndex != this.topIndex) {
-				int delta = topIndex - this.topIndex;
-				if (delta > 0) {
-					if (delta < bullets.length) {
-						System.arraycopy(bullets, delta, bullets, 0, bullets.length - delta);
-						System.arraycopy(bulletsIndices, delta, bulletsIndices, 0, bulletsIndices.length - delta);
-					}
-					int startIndex = Math.max(0, bullets.length - delta);
-					for (int i = startIndex; i < bullets.length; i++) bullets[i] = null;
-				} else {
-					if (-delta < bullets.length) {
-						System.arraycopy(bullets, 0, bullets, -delta, bullets.length + delta);
-						System.arraycopy(bulletsIndices, 0, bulletsIndices, -delta, bulletsIndices.length + delta);
-					}
-					int endIndex = Math.min(bullets.length, -delta);
-					for (int i = 0; i < endIndex; i++) bullets[i] = null;
-				}
-			}
-			this.topIndex = topIndex;
-			layouts = newLayouts;
-		}
-		if (layouts != null) {
-			int layoutIndex = lineIndex - topIndex;
-			if (0 <= layoutIndex && layoutIndex < layouts.length) {
-				layout = layouts[layoutIndex];
-				if (layout != null) {
-					if (lineWidth[lineIndex] != -1) return layout;
-				} else {
-					layout = layouts[layoutIndex] = new TextLayout(device);
-				}
-			}
-		}
+		if (layouts == null) layouts = new TextLayoutCache();
+		/* Keep the layouts of the lines from a page above the viewport to a page below it */
+		int pageSize = styledText.clientAreaHeight / Math.max(1, getLineHeight()) + 1;
+		layouts.viewportStart = topIndex - pageSize;
+		layouts.viewportEnd = topIndex + 2 * pageSize;
+		layout = layouts.get(lineIndex);
+		if (layout != null && lineWidth[lineIndex] != -1) {
+			layouts.hits++;
+			return layout;
+		}
+		layouts.misses++;
 	}
 	if (layout == null) layout = new TextLayout(device);
 	String line = content.getLine(lineIndex);
@@ -784,6 +632,7 @@ TextLayout getTextLayout(int lineIndex, int orientation, int width, int lineSpac
 	int[] ranges = null;
 	StyleRange[] styles = null;
 	int rangeStart = 0, styleCount = 0;
+	StyleStore store = null;
 	StyledTextEvent event = null;
 	if (styledText != null) {
 		event = styledText.getBidiSegments(lineOffset, line);
@@ -825,14 +674,9 @@ TextLayout getTextLayout(int lineIndex, int orientation, int width, int lineSpac
 				}
 			}
 		}
-		if (bullets == null || bulletsIndices == null) {
-			bullets = new Bullet[CACHE_SIZE];
-			bulletsIndices = new int[CACHE_SIZE];
-		}
-		int index = lineIndex - topIndex;
-		if (0 <= index && index < CACHE_SIZE) {
-			bullets[index] = bullet;
-			bulletsIndices[index] = event.bulletIndex;
+		if (!eventBullets) {
+			eventBullets = true;
+			bullets = null;
 		}
 	} else {
 		if (lines != null) {
@@ -847,10 +691,7 @@ TextLayout getTextLayout(int lineIndex, int orientation, int width, int lineSpac
 				if ((info.flags & TABSTOPS) != 0) tabs = info.tabStops;
 			}
 		}
-		if (bulletsIndices != null) {
-			bullets = null;
-			bulletsIndices = null;
-		}
+		eventBullets = false;
 		if (bullets != null) {
 			for (int i = 0; i < bullets.length; i++) {
 				if (bullets[i].indexOf(lineIndex) != -1) {
@@ -859,13 +700,9 @@ TextLayout getTextLayout(int lineIndex, int orientation, int width, int lineSpac
 				}
 			}
 		}
-		ranges = this.ranges;
-		styles = this.styles;
-		styleCount = this.styleCount;
-		if (ranges != null) {
-			rangeStart = getRangeIndex(lineOffset, -1, styleCount << 1);
-		} else {
-			rangeStart = getRangeIndex(lineOffset, -1, styleCount);
+		if (this.styles != null) {
+			store = this.styles;
+			rangeStart = store.find(lineOffset);
 		}
 	}
 	if (bullet != null) {
@@ -891,7 +728,25 @@ TextLayout getTextLayout(int lineIndex, int orientation, int width, int lineSpac
 
 	int lastOffset = 0;
 	int length = line.length();
-	if (styles != null) {
+	if (store != null) {
+		for (int i = rangeStart; i < store.size; i++) {
+			int start, end;
+			int styleStart = store.getStart(i), styleLength = store.getLength(i);
+			if (lineOffset > styleStart) {
+				start = 0;
+				end = Math.min (length, styleLength - lineOffset + styleStart);
+			} else {
+				start = styleStart - lineOffset;
+				end = Math.min(length, start + styleLength);
+			}
+			if (start >= length) break;
+			if (lastOffset < start) {
+				layout.setStyle(null, lastOffset, start - 1);
+			}
+			layout.setStyle(getStyleRange(store.getStyle(i)), start, end);
+			lastOffset = Math.max(lastOffset, end);
+		}
+	} else if (styles != null) {
 		if (ranges != null) {
 			int rangeCount = styleCount << 1;
 			for (int i = rangeStart; i < rangeCount; i += 2) {
@@ -983,6 +838,10 @@ TextLayout getTextLayout(int lineIndex, int orientation, int width, int lineSpac
 		}
 	}
 
+	if (styledText != null) {
+		layouts.put(lineIndex, layout, length);
+		if (event != null) layouts.setBullet(lineIndex, bullet, event.bulletIndex);
+	}
 	if (styledText != null && styledText.isFixedLineHeight()) {
 		int index = -1;
 		int lineCount = layout.getLineCount();
@@ -999,10 +858,10 @@ TextLayout getTextLayout(int lineIndex, int orientation, int width, int lineSpac
 			ascent = metrics.getAscent() + metrics.getLeading();
 			descent = metrics.getDescent();
 			if (layouts != null) {
-				for (int i = 0; i < layouts.length; i++) {
-					if (layouts[i] != null && layouts[i] != layout) {
-						layouts[i].setAscent(ascent);
-						layouts[i].setDescent(descent);
+				for (int i = 0; i < layouts.count; i++) {
+					if (layouts.layouts[i] != layout) {
+						layouts.layouts[i].setAscent(ascent);
+						layouts.layouts[i].setDescent(descent);
 					}
 				}
 			}
@@ -1032,22 +891,16 @@ int getWidth() {
 }
 void reset() {
 	if (layouts != null) {
-		for (int i = 0; i < layouts.length; i++) {
-			TextLayout layout = layouts[i];
-			if (layout != null) layout.dispose();
-		}
+		layouts.clear();
 		layouts = null;
 	}
-	topIndex = -1;
-	stylesSetCount = styleCount = lineCount = 0;
-	ranges = null;
+	lineCount = 0;
 	styles = null;
-	stylesSet = null;
 	lines = null;
 	lineWidth = null;
 	lineHeight = null;
 	bullets = null;
-	bulletsIndices = null;
+	eventBullets = false;
 	redrawLines = null;
 	hasLinks = false;
 }
@@ -1142,10 +995,7 @@ void setLineBackground(int startLine, int count, Color background) {
 	}
 }
 void setLineBullet(int startLine, int count, Bullet bullet) {
-	if (bulletsIndices != null) {
-		bulletsIndices = null;
-		bullets = null;
-	}
+	eventBullets = false;
 	if (bullets == null) {
 		if (bullet == null) return;
 		bullets = new Bullet[1];
@@ -1232,155 +1082,71 @@ void setLineTabStops(int startLine, int count, int[] tabStops) {
 }
 void setStyleRanges (int[] newRanges, StyleRange[] newStyles) {
 	if (newStyles == null) {
-		stylesSetCount = styleCount = 0;
-		ranges = null;
 		styles = null;
-		stylesSet = null;
 		hasLinks = false;
 		return;
 	}
-	if (newRanges == null && COMPACT_STYLES) {
+	if (newRanges == null) {
 		newRanges = new int[newStyles.length << 1];
-		StyleRange[] tmpStyles = new StyleRange[newStyles.length];
-		if (stylesSet == null) stylesSet = new StyleRange[4];
 		for (int i = 0, j = 0; i < newStyles.length; i++) {
-			StyleRange newStyle = newStyles[i];
-			newRanges[j++] = newStyle.start;
-			newRanges[j++] = newStyle.length;
-			int index = 0;
-			while (index < stylesSetCount) {
-				if (stylesSet[index].similarTo(newStyle)) break;
-				index++;
-			}
-			if (index == stylesSetCount) {
-				if (stylesSetCount == stylesSet.length) {
-					StyleRange[] tmpStylesSet = new StyleRange[stylesSetCount + 4];
-					System.arraycopy(stylesSet, 0, tmpStylesSet, 0, stylesSetCount);
-					stylesSet = tmpStylesSet;
-				}
-				stylesSet[stylesSetCount++] = newStyle;
-			}
-			tmpStyles[i] = stylesSet[index];
+			newRanges[j++] = newStyles[i].start;
+			newRanges[j++] = newStyles[i].length;
 		}
-		newStyles = tmpStyles;
 	}
-
-	if (styleCount == 0) {
-		if (newRanges != null) {
-			ranges = new int[newRanges.length];
-			System.arraycopy(newRanges, 0, ranges, 0, ranges.length);
-		}
-		styles = new StyleRange[newStyles.length];
-		System.arraycopy(newStyles, 0, styles, 0, styles.length);
-		styleCount = newStyles.length;
+	if (styles == null || styles.size == 0) {
+		styles = new StyleStore();
+		styles.replace(0, 0, newRanges, newStyles, newStyles.length);
 		return;
 	}
-	if (newRanges != null && ranges == null) {
-		ranges = new int[styles.length << 1];
-		for (int i = 0, j = 0; i < styleCount; i++) {
-			ranges[j++] = styles[i].start;
-			ranges[j++] = styles[i].length;
-		}
-	}
-	if (newRanges == null && ranges != null) {
-		newRanges = new int[newStyles.length << 1];
-		for (int i = 0, j = 0; i < newStyles.length; i++) {
-			newRanges[j++] = newStyles[i].start;
-			newRanges[j++] = newStyles[i].length;
-		}
+	int styleCount = styles.size;
+	int start = newRanges[0];
+	int modifyStart = styles.find(start), modifyEnd;
+	boolean insert = modifyStart == styleCount;
+	if (!insert) {
+		int end = newRanges[newRanges.length - 2] + newRanges[newRanges.length - 1];
+		modifyEnd = styles.find(end);
+		insert = modifyStart == modifyEnd && styles.getStart(modifyStart) >= end;
+	}
+	if (insert) {
+		addMerge(newRanges, newStyles, newRanges.length >> 1, modifyStart, modifyStart);
+		return;
 	}
-	if (ranges != null) {
-		int rangeCount = styleCount << 1;
-		int start = newRanges[0];
-		int modifyStart = getRangeIndex(start, -1, rangeCount), modifyEnd;
-		boolean insert = modifyStart == rangeCount;
-		if (!insert) {
-			int end = newRanges[newRanges.length - 2] + newRanges[newRanges.length - 1];
-			modifyEnd = getRangeIndex(end, modifyStart - 1, rangeCount);
-			insert = modifyStart == modifyEnd && ranges[modifyStart] >= end;
-		}
-		if (insert) {
-			addMerge(newRanges, newStyles, newRanges.length, modifyStart, modifyStart);
-			return;
+	modifyEnd = modifyStart;
+	int[] mergeRanges = new int[6];
+	StyleRange[] mergeStyles = new StyleRange[3];
+	for (int i = 0; i < newRanges.length; i += 2) {
+		int newStart = newRanges[i];
+		int newEnd = newStart + newRanges[i + 1];
+		if (newStart == newEnd) continue;
+		int modifyLast = 0, mergeCount = 0;
+		while (modifyEnd < styleCount) {
+			if (newStart >= styles.getEnd(modifyStart)) modifyStart++;
+			if (styles.getEnd(modifyEnd) > newEnd) break;
+			modifyEnd++;
 		}
-		modifyEnd = modifyStart;
-		int[] mergeRanges = new int[6];
-		StyleRange[] mergeStyles = new StyleRange[3];
-		for (int i = 0; i < newRanges.length; i += 2) {
-			int newStart = newRanges[i];
-			int newEnd = newStart + newRanges[i + 1];
-			if (newStart == newEnd) continue;
-			int modifyLast = 0, mergeCount = 0;
-			while (modifyEnd < rangeCount) {
-				if (newStart >= ranges[modifyStart] + ranges[modifyStart + 1]) modifyStart += 2;
-				if (ranges[modifyEnd] + ranges[modifyEnd + 1] > newEnd) break;
-				modifyEnd += 2;
-			}
-			if (ranges[modifyStart] < newStart && newStart < ranges[modifyStart] + ranges[modifyStart + 1]) {
-				mergeStyles[mergeCount >> 1] = styles[modifyStart >> 1];
-				mergeRanges[mergeCount] = ranges[modifyStart];
-				mergeRanges[mergeCount + 1] = newStart - ranges[modifyStart];
+		if (modifyStart < styleCount) {
+			int styleStart = styles.getStart(modifyStart);
+			if (styleStart < newStart && newStart < styles.getEnd(modifyStart)) {
+				mergeStyles[mergeCount >> 1] = styles.getStyle(modifyStart);
+				mergeRanges[mergeCount] = styleStart;
+				mergeRanges[mergeCount + 1] = newStart - styleStart;
 				mergeCount += 2;
 			}
-			mergeStyles[mergeCount >> 1] = newStyles[i >> 1];
-			mergeRanges[mergeCount] = newStart;
-			mergeRanges[mergeCount + 1] = newRanges[i + 1];
-			mergeCount += 2;
-			if (modifyEnd < rangeCount && ranges[modifyEnd] < newEnd && newEnd < ranges[modifyEnd] + ranges[modifyEnd + 1]) {
-				mergeStyles[mergeCount >> 1] = styles[modifyEnd >> 1];
-				mergeRanges[mergeCount] = newEnd;
-				mergeRanges[mergeCount + 1] = ranges[modifyEnd] + ranges[modifyEnd + 1] - newEnd;
-				mergeCount += 2;
-				modifyLast = 2;
-			}
-			int grow = addMerge(mergeRanges, mergeStyles, mergeCount, modifyStart, modifyEnd + modifyLast);
-			rangeCount += grow;
-			modifyStart = modifyEnd += grow;
 		}
-	} else {
-		int start = newStyles[0].start;
-		int modifyStart = getRangeIndex(start, -1, styleCount), modifyEnd;
-		boolean insert = modifyStart == styleCount;
-		if (!insert) {
-			int end = newStyles[newStyles.length - 1].start + newStyles[newStyles.length - 1].length;
-			modifyEnd = getRangeIndex(end, modifyStart - 1, styleCount);
-			insert = modifyStart == modifyEnd && styles[modifyStart].start >= end;
-		}
-		if (insert) {
-			addMerge(newStyles, newStyles.length, modifyStart, modifyStart);
-			return;
-		}
-		modifyEnd = modifyStart;
-		StyleRange[] mergeStyles = new StyleRange[3];
-		for (int i = 0; i < newStyles.length; i++) {
-			StyleRange newStyle = newStyles[i], style;
-			int newStart = newStyle.start;
-			int newEnd = newStart + newStyle.length;
-			if (newStart == newEnd) continue;
-			int modifyLast = 0, mergeCount = 0;
-			while (modifyEnd < styleCount) {
-				if (newStart >= styles[modifyStart].start + styles[modifyStart].length) modifyStart++;
-				if (styles[modifyEnd].start + styles[modifyEnd].length > newEnd) break;
-				modifyEnd++;
-			}
-			style = styles[modifyStart];
-			if (style.start < newStart && newStart < style.start + style.length) {
-				style = mergeStyles[mergeCount++] = (StyleRange)style.clone();
-				style.length = newStart - style.start;
-			}
-			mergeStyles[mergeCount++] = newStyle;
-			if (modifyEnd < styleCount) {
-				style = styles[modifyEnd];
-				if (style.start < newEnd && newEnd < style.start + style.length) {
-					style = mergeStyles[mergeCount++] = (StyleRange)style.clone();
-					style.length += style.start - newEnd;
-					style.start = newEnd;
-					modifyLast = 1;
-				}
-			}
-			int grow = addMerge(mergeStyles, mergeCount, modifyStart, modifyEnd + modifyLast);
-			modifyStart = modifyEnd += grow;
+		mergeStyles[mergeCount >> 1] = newStyles[i >> 1];
+		mergeRanges[mergeCount] = newStart;
+		mergeRanges[mergeCount + 1] = newRanges[i + 1];
+		mergeCount += 2;
+		if (modifyEnd < styleCount && styles.getStart(modifyEnd) < newEnd && newEnd < styles.getEnd(modifyEnd)) {
+			mergeStyles[mergeCount >> 1] = styles.getStyle(modifyEnd);
+			mergeRanges[mergeCount] = newEnd;
+			mergeRanges[mergeCount + 1] = styles.getEnd(modifyEnd) - newEnd;
+			mergeCount += 2;
+			modifyLast = 1;
 		}
+		int grow = addMerge(mergeRanges, mergeStyles, mergeCount >> 1, modifyStart, modifyEnd + modifyLast);
+		styleCount += grow;
+		modifyStart = modifyEnd += grow;
 	}
 }
 void textChanging(TextChangingEvent event) {
@@ -1425,54 +1191,7 @@ void textChanging(TextChangingEvent event) {
 			lineWidth[i] = lineHeight[i] = -1;
 		}
 		if (layouts != null) {
-			int layoutStartLine = startLine - topIndex;
-			int layoutEndLine = layoutStartLine + replaceLineCount + 1;
-			for (int i = layoutStartLine; i < layoutEndLine; i++) {
-				if (0 <= i && i < layouts.length) {
-					if (layouts[i] != null) layouts[i].dispose();
-					layouts[i] = null;
-					if (bullets != null && bulletsIndices != null) bullets[i] = null;
-				}
-			}
-			if (delta > 0) {
-				for (int i = layouts.length - 1; i >= layoutEndLine; i--) {
-					if (0 <= i && i < layouts.length) {
-						endIndex = i + delta;
-						if (0 <= endIndex && endIndex < layouts.length) {
-							layouts[endIndex] = layouts[i];
-							layouts[i] = null;
-							if (bullets != null && bulletsIndices != null) {
-								bullets[endIndex] = bullets[i];
-								bulletsIndices[endIndex] = bulletsIndices[i];
-								bullets[i] = null;
-							}
-						} else {
-							if (layouts[i] != null) layouts[i].dispose();
-							layouts[i] = null;
-							if (bullets != null && bulletsIndices != null) bullets[i] = null;
-						}
-					}
-				}
-			} else if (delta < 0) {
-				for (int i = layoutEndLine; i < layouts.length; i++) {
-					if (0 <= i && i < layouts.length) {
-						endIndex = i + delta;
-						if (0 <= endIndex && endIndex < layouts.length) {
-							layouts[endIndex] = layouts[i];
-							layouts[i] = null;
-							if (bullets != null && bulletsIndices != null) {
-								bullets[endIndex] = bullets[i];
-								bulletsIndices[endIndex] = bulletsIndices[i];
-								bullets[i] = null;
-							}
-						} else {
-							if (layouts[i] != null) layouts[i].dispose();
-							layouts[i] = null;
-							if (bullets != null && bulletsIndices != null) bullets[i] = null;
-						}
-					}
-				}
-			}
+			layouts.replace(startLine, startLine + replaceLineCount + 1, delta);
 		}
 		if (replaceLineCount != 0 || newLineCount != 0) {
 			int startLineOffset = content.getOffsetAtLine(startLine);
@@ -1505,7 +1224,6 @@ void textChanging(TextChangingEvent event) {
 }
 void updateBullets(int startLine, int replaceLineCount, int newLineCount, boolean update) {
 	if (bullets == null) return;
-	if (bulletsIndices != null) return;
 	for (int i = 0; i < bullets.length; i++) {
 		Bullet bullet = bullets[i];
 		int[] lines = bullet.removeIndices(startLine, replaceLineCount, newLineCount, update);
@@ -1538,106 +1256,42 @@ void updateBullets(int startLine, int replaceLineCount, int newLineCount, boolea
 	}
 }
 void updateRanges(int start, int replaceCharCount, int newCharCount) {
-	if (styleCount == 0 || (replaceCharCount == 0 && newCharCount == 0)) return;
-	if (ranges != null) {
-		int rangeCount = styleCount << 1;
-		int modifyStart = getRangeIndex(start, -1, rangeCount);
-		if (modifyStart == rangeCount) return;
-		int end = start + replaceCharCount;
-		int modifyEnd = getRangeIndex(end, modifyStart - 1, rangeCount);
-		int offset = newCharCount - replaceCharCount;
-		if (modifyStart == modifyEnd && ranges[modifyStart] < start && end < ranges[modifyEnd] + ranges[modifyEnd + 1]) {
-			if (newCharCount == 0) {
-				ranges[modifyStart + 1] -= replaceCharCount;
-				modifyEnd += 2;
-			} else {
-				if (rangeCount + 2 > ranges.length) {
-					int[] newRanges = new int[ranges.length + (GROW << 1)];
-					System.arraycopy(ranges, 0, newRanges, 0, rangeCount);
-					ranges = newRanges;
-					StyleRange[] newStyles = new StyleRange[styles.length + GROW];
-					System.arraycopy(styles, 0, newStyles, 0, styleCount);
-					styles = newStyles;
-				}
-				System.arraycopy(ranges, modifyStart + 2, ranges, modifyStart + 4, rangeCount - (modifyStart + 2));
-				System.arraycopy(styles, (modifyStart + 2) >> 1, styles, (modifyStart + 4) >> 1, styleCount - ((modifyStart + 2) >> 1));
-				ranges[modifyStart + 3] = ranges[modifyStart] + ranges[modifyStart + 1] - end;
-				ranges[modifyStart + 2] = start + newCharCount;
-				ranges[modifyStart + 1] = start - ranges[modifyStart];
-				styles[(modifyStart >> 1) + 1] = styles[modifyStart >> 1];
-				rangeCount += 2;
-				styleCount++;
-				modifyEnd += 4;
-			}
-			if (offset != 0) {
-				for (int i = modifyEnd; i < rangeCount; i += 2) {
-					ranges[i] += offset;
-				}
-			}
+	if (styles == null || styles.size == 0 || (replaceCharCount == 0 && newCharCount == 0)) return;
+	int styleCount = styles.size;
+	int modifyStart = styles.find(start);
+	if (modifyStart == styleCount) return;
+	int end = start + replaceCharCount;
+	int modifyEnd = styles.find(end);
+	int offset = newCharCount - replaceCharCount;
+	int styleStart = styles.getStart(modifyStart), styleEnd = styles.getEnd(modifyStart);
+	if (modifyStart == modifyEnd && styleStart < start && end < styleEnd) {
+		if (newCharCount == 0) {
+			styles.setLength(modifyStart, styles.getLength(modifyStart) - replaceCharCount);
+			modifyEnd++;
 		} else {
-			if (ranges[modifyStart] < start && start < ranges[modifyStart] + ranges[modifyStart + 1]) {
-				ranges[modifyStart + 1] = start - ranges[modifyStart];
-				modifyStart += 2;
-			}
-			if (modifyEnd < rangeCount && ranges[modifyEnd] < end && end < ranges[modifyEnd] + ranges[modifyEnd + 1]) {
-				ranges[modifyEnd + 1] = ranges[modifyEnd] + ranges[modifyEnd + 1] - end;
-				ranges[modifyEnd] = end;
-			}
-			if (offset != 0) {
-				for (int i = modifyEnd; i < rangeCount; i += 2) {
-					ranges[i] += offset;
-				}
-			}
-			System.arraycopy(ranges, modifyEnd, ranges, modifyStart, rangeCount - modifyEnd);
-			System.arraycopy(styles, modifyEnd >> 1, styles, modifyStart >> 1, styleCount - (modifyEnd >> 1));
-			styleCount -= (modifyEnd - modifyStart) >> 1;
+			int[] splitRanges = {styleStart, start - styleStart, start + newCharCount, styleEnd - end};
+			StyleRange style = styles.getStyle(modifyStart);
+			styles.replace(modifyStart, modifyStart + 1, splitRanges, new StyleRange[] {style, style}, 2);
+			modifyEnd += 2;
+			/* The start of the second part already includes the offset */
+			if (offset != 0) styles.shift(modifyEnd, offset);
+			return;
 		}
+		styles.shift(modifyEnd, offset);
 	} else {
-		int modifyStart = getRangeIndex(start, -1, styleCount);
-		if (modifyStart == styleCount) return;
-		int end = start + replaceCharCount;
-		int modifyEnd = getRangeIndex(end, modifyStart - 1, styleCount);
-		int offset = newCharCount - replaceCharCount;
-		if (modifyStart == modifyEnd && styles[modifyStart].start < start && end < styles[modifyEnd].start + styles[modifyEnd].length) {
-			if (newCharCount == 0) {
-				styles[modifyStart].length -= replaceCharCount;
-				modifyEnd++;
-			} else {
-				if (styleCount + 1 > styles.length) {
-					StyleRange[] newStyles = new StyleRange[styles.length + GROW];
-					System.arraycopy(styles, 0, newStyles, 0, styleCount);
-					styles = newStyles;
-				}
-				System.arraycopy(styles, modifyStart + 1, styles, modifyStart + 2, styleCount - (modifyStart + 1));
-				styles[modifyStart + 1] = (StyleRange)styles[modifyStart].clone();
-				styles[modifyStart + 1].length = styles[modifyStart].start + styles[modifyStart].length - end;
-				styles[modifyStart + 1].start = start + newCharCount;
-				styles[modifyStart].length = start - styles[modifyStart].start;
-				styleCount++;
-				modifyEnd += 2;
-			}
-			if (offset != 0) {
-				for (int i = modifyEnd; i < styleCount; i++) {
-					styles[i].start += offset;
-				}
-			}
-		} else {
-			if (styles[modifyStart].start < start && start < styles[modifyStart].start + styles[modifyStart].length) {
-				styles[modifyStart].length = start - styles[modifyStart].start;
-				modifyStart++;
-			}
-			if (modifyEnd < styleCount && styles[modifyEnd].start < end && end < styles[modifyEnd].start + styles[modifyEnd].length) {
-				styles[modifyEnd].length = styles[modifyEnd].start + styles[modifyEnd].length - end;
-				styles[modifyEnd].start = end;
-			}
-			if (offset != 0) {
-				for (int i = modifyEnd; i < styleCount; i++) {
-					styles[i].start += offset;
-				}
+		if (styleStart < start && start < styleEnd) {
+			styles.setLength(modifyStart, start - styleStart);
+			modifyStart++;
+		}
+		if (modifyEnd < styleCount) {
+			int endStart = styles.getStart(modifyEnd), endEnd = styles.getEnd(modifyEnd);
+			if (endStart < end && end < endEnd) {
+				styles.setLength(modifyEnd, endEnd - end);
+				styles.setStart(modifyEnd, end);
 			}
-			System.arraycopy(styles, modifyEnd, styles, modifyStart, styleCount - modifyEnd);
-			styleCount -= modifyEnd - modifyStart;
 		}
+		styles.shift(modifyEnd, offset);
+		styles.replace(modifyStart, modifyEnd, new int[0], new StyleRange[0], 0);
 	}
 }
 }
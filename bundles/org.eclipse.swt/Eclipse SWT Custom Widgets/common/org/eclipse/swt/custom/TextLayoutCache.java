@@ -0,0 +1,253 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.custom;
+
+
+import org.eclipse.swt.graphics.*;
+
+/**
+ * Internal class that caches the text layouts of the lines of a
+ * StyledTextRenderer, sorted by line index.
+ * <p>
+ * The cache holds at most <code>maxCount</code> layouts and at most
+ * <code>maxMemory</code> bytes of native memory, as estimated from the
+ * length of their text. When it is full, the least recently used layout
+ * is disposed, except for the layouts of the lines near the viewport,
+ * which are kept. Layouts of lines away from the viewport, such as those
+ * only created to measure the lines, are the first ones to go. The bullet
+ * given by the LineStyleEvent of a line is kept with its layout.
+ * </p><p>
+ * The caps can be changed with the
+ * <code>org.eclipse.swt.custom.TextLayoutCache.size</code> and
+ * <code>org.eclipse.swt.custom.TextLayoutCache.memory</code> system
+ * properties. The number of layouts requested from the cache, created
+ * and disposed to make room are answered by <code>getHitCount()</code>,
+ * <code>getMissCount()</code> and <code>getEvictionCount()</code>. When the
+ * <code>org.eclipse.swt.custom.TextLayoutCache.debug</code> system property
+ * is set, they are printed each time the cache is cleared, that is when the
+ * text of the StyledText is set and when it is disposed.
+ * </p>
+ */
+final class TextLayoutCache {
+
+	static final int MAX_COUNT = Integer.getInteger("org.eclipse.swt.custom.TextLayoutCache.size", 512).intValue(); //$NON-NLS-1$
+	static final int MAX_MEMORY = Integer.getInteger("org.eclipse.swt.custom.TextLayoutCache.memory", 16 * 1024 * 1024).intValue(); //$NON-NLS-1$
+	static final boolean DEBUG = Boolean.getBoolean("org.eclipse.swt.custom.TextLayoutCache.debug"); //$NON-NLS-1$
+
+	/* Estimated native memory of a layout and of each of its characters */
+	static final int LAYOUT_MEMORY = 1024, CHAR_MEMORY = 64;
+
+	int maxCount = Math.max(2, MAX_COUNT), maxMemory = MAX_MEMORY;
+	int[] lines = new int[16];
+	TextLayout[] layouts = new TextLayout[16];
+	long[] memory = new long[16];
+	long[] stamps = new long[16];
+	Bullet[] bullets = new Bullet[16];
+	int[] bulletIndices = new int[16];
+	int count;
+	long totalMemory, clock;
+	/* The lines near the viewport, from viewportStart up to viewportEnd, excluded */
+	int viewportStart, viewportEnd;
+	int hits, misses, evictions;
+
+/**
+ * Answers the index of the layout of the line, or -(insertion point + 1)
+ * when the line has no layout.
+ */
+int indexOf(int line) {
+	int low = 0, high = count - 1;
+	while (low <= high) {
+		int mid = (low + high) >>> 1;
+		if (lines[mid] < line) {
+			low = mid + 1;
+		} else if (lines[mid] > line) {
+			high = mid - 1;
+		} else {
+			return mid;
+		}
+	}
+	return -(low + 1);
+}
+
+boolean isNearViewport(int line) {
+	return viewportStart <= line && line < viewportEnd;
+}
+
+/**
+ * Answers whether the layout is the one cached for the line.
+ */
+boolean contains(int line, TextLayout layout) {
+	int index = indexOf(line);
+	return index >= 0 && layouts[index] == layout;
+}
+
+/**
+ * Answers the cached layout of the line, or null.
+ */
+TextLayout get(int line) {
+	int index = indexOf(line);
+	if (index < 0) return null;
+	stamps[index] = ++clock;
+	return layouts[index];
+}
+
+/**
+ * Adds the layout of the line, or updates it and the length of its text
+ * when the line is already cached, and disposes the layouts that do not
+ * fit.
+ */
+void put(int line, TextLayout layout, int length) {
+	long size = LAYOUT_MEMORY + (long)length * CHAR_MEMORY;
+	int index = indexOf(line);
+	if (index < 0) {
+		index = -index - 1;
+		if (count == lines.length) {
+			int capacity = count * 2;
+			int[] newLines = new int[capacity];
+			System.arraycopy(lines, 0, newLines, 0, count);
+			lines = newLines;
+			TextLayout[] newLayouts = new TextLayout[capacity];
+			System.arraycopy(layouts, 0, newLayouts, 0, count);
+			layouts = newLayouts;
+			long[] newMemory = new long[capacity];
+			System.arraycopy(memory, 0, newMemory, 0, count);
+			memory = newMemory;
+			long[] newStamps = new long[capacity];
+			System.arraycopy(stamps, 0, newStamps, 0, count);
+			stamps = newStamps;
+			Bullet[] newBullets = new Bullet[capacity];
+			System.arraycopy(bullets, 0, newBullets, 0, count);
+			bullets = newBullets;
+			int[] newBulletIndices = new int[capacity];
+			System.arraycopy(bulletIndices, 0, newBulletIndices, 0, count);
+			bulletIndices = newBulletIndices;
+		}
+		System.arraycopy(lines, index, lines, index + 1, count - index);
+		System.arraycopy(layouts, index, layouts, index + 1, count - index);
+		System.arraycopy(memory, index, memory, index + 1, count - index);
+		System.arraycopy(stamps, index, stamps, index + 1, count - index);
+		System.arraycopy(bullets, index, bullets, index + 1, count - index);
+		System.arraycopy(bulletIndices, index, bulletIndices, index + 1, count - index);
+		lines[index] = line;
+		layouts[index] = layout;
+		memory[index] = 0;
+		stamps[index] = isNearViewport(line) ? ++clock : 0;
+		bullets[index] = null;
+		bulletIndices[index] = -1;
+		count++;
+	} else if (layouts[index] != layout) {
+		layouts[index].dispose();
+		layouts[index] = layout;
+	}
+	totalMemory += size - memory[index];
+	memory[index] = size;
+	while (count > maxCount || totalMemory > maxMemory) {
+		int oldest = -1;
+		for (int i = 0; i < count; i++) {
+			if (lines[i] == line || isNearViewport(lines[i])) continue;
+			if (oldest == -1 || stamps[i] < stamps[oldest]) oldest = i;
+		}
+		if (oldest == -1) break;
+		remove(oldest);
+		evictions++;
+	}
+}
+
+void remove(int index) {
+	layouts[index].dispose();
+	totalMemory -= memory[index];
+	count--;
+	System.arraycopy(lines, index + 1, lines, index, count - index);
+	System.arraycopy(layouts, index + 1, layouts, index, count - index);
+	System.arraycopy(memory, index + 1, memory, index, count - index);
+	System.arraycopy(stamps, index + 1, stamps, index, count - index);
+	System.arraycopy(bullets, index + 1, bullets, index, count - index);
+	System.arraycopy(bulletIndices, index + 1, bulletIndices, index, count - index);
+	layouts[count] = null;
+	bullets[count] = null;
+}
+
+/**
+ * Sets the bullet of the line, when it is cached.
+ */
+void setBullet(int line, Bullet bullet, int bulletIndex) {
+	int index = indexOf(line);
+	if (index < 0) return;
+	bullets[index] = bullet;
+	bulletIndices[index] = bulletIndex;
+}
+
+/**
+ * Disposes the layouts of the lines from start up to end, excluded,
+ * and adds delta to the index of the lines that follow.
+ */
+void replace(int start, int end, int delta) {
+	int index = indexOf(start);
+	if (index < 0) index = -index - 1;
+	while (index < count && lines[index] < end) remove(index);
+	for (int i = index; i < count; i++) lines[i] += delta;
+}
+
+/**
+ * Disposes all the layouts.
+ */
+void clear() {
+	if (DEBUG) System.out.println(this);
+	for (int i = 0; i < count; i++) {
+		layouts[i].dispose();
+		layouts[i] = null;
+		bullets[i] = null;
+	}
+	count = 0;
+	totalMemory = 0;
+}
+
+/**
+ * Answers the number of cached layouts.
+ */
+int getCount() {
+	return count;
+}
+
+/**
+ * Answers the estimated native memory of the cached layouts, in bytes.
+ */
+long getMemory() {
+	return totalMemory;
+}
+
+/**
+ * Answers the number of layouts that were found in the cache.
+ */
+int getHitCount() {
+	return hits;
+}
+
+/**
+ * Answers the number of layouts that were created because they were not
+ * in the cache.
+ */
+int getMissCount() {
+	return misses;
+}
+
+/**
+ * Answers the number of layouts disposed to make room for others.
+ */
+int getEvictionCount() {
+	return evictions;
+}
+
+@Override
+public String toString() {
+	return "TextLayoutCache {count=" + count + ", memory=" + totalMemory + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "}"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -4110,6 +4110,126 @@ public class SWT {
 	 */
 	public static final int TRANSPARENCY_PIXEL = 1 << 2;
 
+	/**
+	 * Porter-Duff compositing rule that clears the destination; neither
+	 * the source nor the destination is kept (value is 0).
+	 *
+	 * @see org.eclipse.swt.graphics.ImageData#composite(org.eclipse.swt.graphics.ImageData, int, int, int, int, int, int, int, int)
+	 *
+	 * @since 3.106
+	 */
+	public static final int COMPOSITE_CLEAR = 0;
+
+	/**
+	 * Porter-Duff compositing rule that replaces the destination with
+	 * the source (value is 1).
+	 *
+	 * @see org.eclipse.swt.graphics.ImageData#composite(org.eclipse.swt.graphics.ImageData, int, int, int, int, int, int, int, int)
+	 *
+	 * @since 3.106
+	 */
+	public static final int COMPOSITE_SRC = 1;
+
+	/**
+	 * Porter-Duff compositing rule that keeps the destination and
+	 * ignores the source (value is 2).
+	 *
+	 * @see org.eclipse.swt.graphics.ImageData#composite(org.eclipse.swt.graphics.ImageData, int, int, int, int, int, int, int, int)
+	 *
+	 * @since 3.106
+	 */
+	public static final int COMPOSITE_DST = 2;
+
+	/**
+	 * Porter-Duff compositing rule that draws the source over the
+	 * destination (value is 3).
+	 *
+	 * @see org.eclipse.swt.graphics.ImageData#composite(org.eclipse.swt.graphics.ImageData, int, int, int, int, int, int, int, int)
+	 *
+	 * @since 3.106
+	 */
+	public static final int COMPOSITE_SRC_OVER = 3;
+
+	/**
+	 * Porter-Duff compositing rule that draws the destination over the
+	 * source (value is 4).
+	 *
+	 * @see org.eclipse.swt.graphics.ImageData#composite(org.eclipse.swt.graphics.ImageData, int, int, int, int, int, int, int, int)
+	 *
+	 * @since 3.106
+	 */
+	public static final int COMPOSITE_DST_OVER = 4;
+
+	/**
+	 * Porter-Duff compositing rule that keeps the part of the source
+	 * inside the destination (value is 5).
+	 *
+	 * @see org.eclipse.swt.graphics.ImageData#composite(org.eclipse.swt.graphics.ImageData, int, int, int, int, int, int, int, int)
+	 *
+	 * @since 3.106
+	 */
+	public static final int COMPOSITE_SRC_IN = 5;
+
+	/**
+	 * Porter-Duff compositing rule that keeps the part of the
+	 * destination inside the source (value is 6).
+	 *
+	 * @see org.eclipse.swt.graphics.ImageData#composite(org.eclipse.swt.graphics.ImageData, int, int, int, int, int, int, int, int)
+	 *
+	 * @since 3.106
+	 */
+	public static final int COMPOSITE_DST_IN = 6;
+
+	/**
+	 * Porter-Duff compositing rule that keeps the part of the source
+	 * outside the destination (value is 7).
+	 *
+	 * @see org.eclipse.swt.graphics.ImageData#composite(org.eclipse.swt.graphics.ImageData, int, int, int, int, int, int, int, int)
+	 *
+	 * @since 3.106
+	 */
+	public static final int COMPOSITE_SRC_OUT = 7;
+
+	/**
+	 * Porter-Duff compositing rule that keeps the part of the
+	 * destination outside the source (value is 8).
+	 *
+	 * @see org.eclipse.swt.graphics.ImageData#composite(org.eclipse.swt.graphics.ImageData, int, int, int, int, int, int, int, int)
+	 *
+	 * @since 3.106
+	 */
+	public static final int COMPOSITE_DST_OUT = 8;
+
+	/**
+	 * Porter-Duff compositing rule that draws the part of the source
+	 * inside the destination over the destination (value is 9).
+	 *
+	 * @see org.eclipse.swt.graphics.ImageData#composite(org.eclipse.swt.graphics.ImageData, int, int, int, int, int, int, int, int)
+	 *
+	 * @since 3.106
+	 */
+	public static final int COMPOSITE_SRC_ATOP = 9;
+
+	/**
+	 * Porter-Duff compositing rule that draws the part of the
+	 * destination inside the source over the source (value is 10).
+	 *
+	 * @see org.eclipse.swt.graphics.ImageData#composite(org.eclipse.swt.graphics.ImageData, int, int, int, int, int, int, int, int)
+	 *
+	 * @since 3.106
+	 */
+	public static final int COMPOSITE_DST_ATOP = 10;
+
+	/**
+	 * Porter-Duff compositing rule that keeps the parts of the source
+	 * and the destination outside each other (value is 11).
+	 *
+	 * @see org.eclipse.swt.graphics.ImageData#composite(org.eclipse.swt.graphics.ImageData, int, int, int, int, int, int, int, int)
+	 *
+	 * @since 3.106
+	 */
+	public static final int COMPOSITE_XOR = 11;
+
 	/**
 	 * The character movement type (value is 1&lt;&lt;0).
 	 * This constant is used to move a text offset over a character.
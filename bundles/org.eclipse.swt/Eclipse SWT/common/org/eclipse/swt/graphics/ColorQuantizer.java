@@ -0,0 +1,250 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+
+/**
+ * Internal class that chooses the palette of an image reduced to a
+ * limited number of colors.
+ * <p>
+ * The colors of the image are first gathered in an octree: each level of
+ * the tree splits the colors on one more bit of their red, green and blue
+ * components, and the leaves hold the sum of the colors that reached them.
+ * Whenever there are more leaves than <code>HISTOGRAM_SIZE</code>, the
+ * children of the deepest node are merged into it, so the memory taken
+ * does not depend on the size of the image.
+ * </p><p>
+ * The leaves are then split into the requested number of colors with a
+ * median cut: the group of leaves whose colors vary the most is cut in
+ * two at the median of its widest component, until there are enough
+ * groups, and each group gives the average of its colors.
+ * </p>
+ */
+final class ColorQuantizer {
+
+	static final int MAX_LEVEL = 8;
+	static final int HISTOGRAM_SIZE = 4096;
+
+	static final class Node {
+		Node[] children;
+		boolean leaf;
+		int childCount;
+		long count, red, green, blue;
+		Node next;
+	}
+
+	final int maxColors;
+	final Node root = new Node();
+	/* The nodes with children, one list per level */
+	final Node[] reducible = new Node[MAX_LEVEL];
+	int leafCount;
+
+	/* The leaves of the tree, while choosing the colors */
+	Node[] leaves;
+
+/**
+ * Constructs a quantizer choosing at most maxColors colors,
+ * which must be at least 1.
+ */
+ColorQuantizer(int maxColors) {
+	this.maxColors = maxColors;
+}
+
+/**
+ * Adds count pixels of the given RGB color.
+ */
+void add(int rgb, int count) {
+	int red = (rgb >> 16) & 0xFF, green = (rgb >> 8) & 0xFF, blue = rgb & 0xFF;
+	Node node = root;
+	for (int level = 0; !node.leaf; level++) {
+		if (level == MAX_LEVEL) {
+			node.leaf = true;
+			leafCount++;
+			break;
+		}
+		int shift = 7 - level;
+		int child = (((red >> shift) & 1) << 2) | (((green >> shift) & 1) << 1) | ((blue >> shift) & 1);
+		if (node.children == null) {
+			node.children = new Node[8];
+			node.next = reducible[level];
+			reducible[level] = node;
+		}
+		Node next = node.children[child];
+		if (next == null) {
+			next = node.children[child] = new Node();
+			node.childCount++;
+		}
+		node = next;
+	}
+	node.count += count;
+	node.red += (long)red * count;
+	node.green += (long)green * count;
+	node.blue += (long)blue * count;
+	while (leafCount > HISTOGRAM_SIZE) reduce();
+}
+
+/**
+ * Adds count pixels of a row of ARGB values, skipping those with an
+ * alpha of 0. Runs of the same color are added at once.
+ */
+void addRow(int[] row, int count) {
+	int i = 0;
+	while (i < count) {
+		int pixel = row[i], start = i++;
+		while (i < count && row[i] == pixel) i++;
+		if ((pixel >>> 24) != 0) add(pixel & 0xFFFFFF, i - start);
+	}
+}
+
+/*
+* Merge the children of the most recently split node of the
+* deepest level into it. The deeper levels have no nodes with
+* children, so all of its children are leaves.
+*/
+void reduce() {
+	int level = MAX_LEVEL - 1;
+	while (reducible[level] == null) level--;
+	Node node = reducible[level];
+	reducible[level] = node.next;
+	node.next = null;
+	for (int i = 0; i < 8; i++) {
+		Node child = node.children[i];
+		if (child == null) continue;
+		node.count += child.count;
+		node.red += child.red;
+		node.green += child.green;
+		node.blue += child.blue;
+	}
+	node.children = null;
+	node.leaf = true;
+	leafCount += 1 - node.childCount;
+}
+
+/**
+ * Answers the chosen colors, as many as there are different colors in
+ * the image but no more than the maximum.
+ */
+RGB[] getRGBs() {
+	leaves = new Node[leafCount];
+	collect(root, 0);
+	int count = leaves.length;
+	int[] starts = new int[maxColors], ends = new int[maxColors], axes = new int[maxColors];
+	double[] variances = new double[maxColors];
+	int boxCount = 0;
+	if (count > 0) {
+		ends[0] = count;
+		boxCount = 1;
+		variances[0] = getVariance(0, count, axes, 0);
+	}
+	while (boxCount < maxColors) {
+		int box = -1;
+		for (int i = 0; i < boxCount; i++) {
+			if (variances[i] > 0 && (box == -1 || variances[i] > variances[box])) box = i;
+		}
+		if (box == -1) break;
+		int split = split(starts[box], ends[box], axes[box]);
+		starts[boxCount] = split;
+		ends[boxCount] = ends[box];
+		ends[box] = split;
+		variances[box] = getVariance(starts[box], ends[box], axes, box);
+		variances[boxCount] = getVariance(starts[boxCount], ends[boxCount], axes, boxCount);
+		boxCount++;
+	}
+	RGB[] rgbs = new RGB[boxCount];
+	for (int i = 0; i < boxCount; i++) {
+		long total = 0, red = 0, green = 0, blue = 0;
+		for (int j = starts[i]; j < ends[i]; j++) {
+			Node node = leaves[j];
+			total += node.count;
+			red += node.red;
+			green += node.green;
+			blue += node.blue;
+		}
+		long half = total / 2;
+		rgbs[i] = new RGB((int)((red + half) / total), (int)((green + half) / total), (int)((blue + half) / total));
+	}
+	leaves = null;
+	return rgbs;
+}
+
+int collect(Node node, int index) {
+	if (node.leaf) {
+		leaves[index++] = node;
+	} else if (node.children != null) {
+		for (int i = 0; i < 8; i++) {
+			Node child = node.children[i];
+			if (child != null) index = collect(child, index);
+		}
+	}
+	return index;
+}
+
+/*
+* Answer the sum of the variances of the components of the leaves between
+* start and end, weighted by their number of pixels, and store the component
+* that varies the most, 16 for red, 8 for green and 0 for blue, in axes.
+*/
+double getVariance(int start, int end, int[] axes, int box) {
+	double total = 0;
+	double[] sums = new double[3], squares = new double[3];
+	for (int i = start; i < end; i++) {
+		Node node = leaves[i];
+		double count = node.count;
+		total += count;
+		sums[0] += node.red;
+		sums[1] += node.green;
+		sums[2] += node.blue;
+		squares[0] += (double)node.red * node.red / count;
+		squares[1] += (double)node.green * node.green / count;
+		squares[2] += (double)node.blue * node.blue / count;
+	}
+	double variance = 0, max = -1;
+	for (int i = 0; i < 3; i++) {
+		double channel = squares[i] - sums[i] * sums[i] / total;
+		variance += channel;
+		if (channel > max) {
+			max = channel;
+			axes[box] = 16 - i * 8;
+		}
+	}
+	return end - start > 1 ? variance : 0;
+}
+
+/*
+* Sort the leaves between start and end by the average of the given
+* component and answer the index where their pixels are cut in halves,
+* leaving at least one leaf on each side.
+*/
+int split(int start, int end, int axis) {
+	long[] keys = new long[end - start];
+	long total = 0;
+	for (int i = start; i < end; i++) {
+		Node node = leaves[i];
+		long sum = axis == 16 ? node.red : axis == 8 ? node.green : node.blue;
+		keys[i - start] = ((sum / node.count) << 32) | (i - start);
+		total += node.count;
+	}
+	java.util.Arrays.sort(keys);
+	Node[] sorted = new Node[keys.length];
+	for (int i = 0; i < keys.length; i++) {
+		sorted[i] = leaves[start + (int)keys[i]];
+	}
+	System.arraycopy(sorted, 0, leaves, start, sorted.length);
+	long half = total / 2, count = 0;
+	int split = start + 1;
+	for (int i = start; i < end - 1; i++) {
+		count += leaves[i].count;
+		split = i + 1;
+		if (count >= half) break;
+	}
+	return split;
+}
+}
@@ -0,0 +1,401 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.eclipse.swt.*;
+
+/**
+ * Instances of this class are read only collections of named images,
+ * each available at one or more zoom levels, packed in a single file.
+ * <p>
+ * The images are stored uncompressed, already converted to the layout
+ * used by the native image of the platform where possible, and the file
+ * is mapped into memory when it is opened. Creating an image from an atlas
+ * therefore needs neither decoding nor conversion, which makes atlases
+ * suited to applications that create many icons at startup. Images are
+ * created from an atlas with the <code>ImageDataProvider</code> answered
+ * by <code>getImageDataProvider(String)</code>:
+ * </p>
+ * <pre>
+ *    ImageAtlas atlas = new ImageAtlas("icons.atlas");
+ *    Image image = new Image(display, atlas.getImageDataProvider("icons/save.png"));
+ * </pre>
+ * <p>
+ * Atlases are written with <code>save(OutputStream, String[], int[], ImageData[])</code>.
+ * </p>
+ *
+ * @see Image#Image(Device, ImageDataProvider)
+ * @since 3.106
+ */
+public final class ImageAtlas {
+
+	/*
+	* The file starts with a header of four big endian ints: the magic
+	* number, the version and the number of images. For each image follow
+	* its name as a short length and UTF-8 bytes, then four ints: the zoom,
+	* the width, the height and the offset of its pixels in the file. The
+	* pixels are premultiplied ARGB as little endian ints, with no padding
+	* between rows, which is the Cairo ARGB32 layout on little endian
+	* machines. Pixels start on a four byte boundary.
+	*/
+	static final int MAGIC = 0x53575441; // SWTA
+	static final int VERSION = 1;
+
+	final ByteBuffer buffer;
+	final String[] names;
+	final int[] zooms, widths, heights, offsets;
+	final Map<String, int[]> indices = new LinkedHashMap<>();
+
+	static final class Provider implements ImageDataProvider {
+		final ImageAtlas atlas;
+		final String name;
+
+		Provider(ImageAtlas atlas, String name) {
+			this.atlas = atlas;
+			this.name = name;
+		}
+
+		@Override
+		public ImageData getImageData(int zoom) {
+			return atlas.getImageData(name, zoom);
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Provider)) return false;
+			Provider provider = (Provider) object;
+			return atlas == provider.atlas && name.equals(provider.name);
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(atlas) * 31 + name.hashCode();
+		}
+	}
+
+/**
+ * Constructs an instance of this class by opening the atlas in the file
+ * with the specified name. On platforms other than Windows the file is
+ * mapped into memory, and must not be modified while the atlas is in use.
+ *
+ * @param filename the name of the atlas file
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the file name is null</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_IO - if an IO error occurs while reading from the file</li>
+ *    <li>ERROR_INVALID_IMAGE - if the atlas file contains invalid data</li>
+ *    <li>ERROR_UNSUPPORTED_FORMAT - if the file is not an atlas, or an atlas of a later version</li>
+ * </ul>
+ */
+public ImageAtlas(String filename) {
+	if (filename == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	buffer = read(filename);
+	if (buffer.remaining() < 12 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+		SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
+	}
+	int count = buffer.getInt();
+	if (count < 0 || count > buffer.remaining() / 18) SWT.error(SWT.ERROR_INVALID_IMAGE);
+	names = new String[count];
+	zooms = new int[count];
+	widths = new int[count];
+	heights = new int[count];
+	offsets = new int[count];
+	try {
+		for (int i = 0; i < count; i++) {
+			byte[] name = new byte[buffer.getShort() & 0xFFFF];
+			buffer.get(name);
+			names[i] = new String(name, StandardCharsets.UTF_8);
+			zooms[i] = buffer.getInt();
+			int width = widths[i] = buffer.getInt();
+			int height = heights[i] = buffer.getInt();
+			int offset = offsets[i] = buffer.getInt();
+			if (width <= 0 || height <= 0 || offset < 0 || (offset & 3) != 0 || (long) width * height * 4 > buffer.limit() - offset) {
+				SWT.error(SWT.ERROR_INVALID_IMAGE);
+			}
+			int[] entries = indices.get(names[i]);
+			if (entries == null) {
+				entries = new int[] {i};
+			} else {
+				entries = Arrays.copyOf(entries, entries.length + 1);
+				entries[entries.length - 1] = i;
+			}
+			indices.put(names[i], entries);
+		}
+	} catch (BufferUnderflowException e) {
+		SWT.error(SWT.ERROR_INVALID_IMAGE, e);
+	}
+}
+
+static ByteBuffer read(String filename) {
+	try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+		long size = channel.size();
+		if (size > Integer.MAX_VALUE) SWT.error(SWT.ERROR_INVALID_IMAGE);
+		/* A mapped file cannot be deleted or replaced on Windows until the mapping is garbage collected */
+		if (!"win32".equals(SWT.getPlatform())) { //$NON-NLS-1$
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate((int) size);
+		while (buffer.hasRemaining() && channel.read(buffer) != -1) {}
+		buffer.flip();
+		return buffer;
+	} catch (IOException | InvalidPathException e) {
+		SWT.error(SWT.ERROR_IO, e);
+	}
+	return null;
+}
+
+/**
+ * Returns the names of the images in the receiver, in the order
+ * they were saved.
+ *
+ * @return the names of the images
+ */
+public String[] getNames() {
+	return indices.keySet().toArray(new String[indices.size()]);
+}
+
+/**
+ * Returns the zoom levels at which the image with the given name
+ * is available in the receiver.
+ *
+ * @param name the name of the image
+ * @return the zoom levels of the image, empty if there is no image with that name
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the name is null</li>
+ * </ul>
+ */
+public int[] getZooms(String name) {
+	if (name == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	int[] entries = indices.get(name);
+	if (entries == null) return new int[0];
+	int[] result = new int[entries.length];
+	for (int i = 0; i < entries.length; i++) {
+		result[i] = zooms[entries[i]];
+	}
+	return result;
+}
+
+/**
+ * Returns the image with the given name at the given zoom level,
+ * or <code>null</code> if the receiver does not have it. The image
+ * is 32 bits deep and has alpha data.
+ *
+ * @param name the name of the image
+ * @param zoom the zoom level of the image in percent
+ * @return the image, or <code>null</code>
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the name is null</li>
+ * </ul>
+ */
+public ImageData getImageData(String name, int zoom) {
+	if (name == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	int index = indexOf(name, zoom);
+	if (index == -1) return null;
+	int width = widths[index], height = heights[index];
+	byte[] data = new byte[width * height * 4];
+	getPixels(index, 0, height, data, width * 4, true);
+	byte[] alphaData = new byte[width * height];
+	for (int i = 0, offset = 0; i < alphaData.length; i++, offset += 4) {
+		int a = data[offset] & 0xFF;
+		alphaData[i] = (byte) a;
+		data[offset] = 0;
+		if (a != 0 && a != 0xFF) {
+			/* undo the pre-multiplied alpha */
+			for (int j = 1; j < 4; j++) {
+				data[offset + j] = (byte) (((data[offset + j] & 0xFF) * 0xFF + a / 2) / a);
+			}
+		}
+	}
+	ImageData image = new ImageData(width, height, 32, new PaletteData(0xFF0000, 0xFF00, 0xFF), 4, data);
+	image.alphaData = alphaData;
+	return image;
+}
+
+/**
+ * Returns a provider for the image with the given name, to create
+ * <code>Image</code>s from. The provider answers the image at each
+ * zoom level the receiver has it, and <code>null</code> at the others.
+ *
+ * @param name the name of the image
+ * @return a provider of the image
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the name is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the receiver does not have an image with that name at 100% zoom</li>
+ * </ul>
+ */
+public ImageDataProvider getImageDataProvider(String name) {
+	if (name == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	if (indexOf(name, 100) == -1) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	return new Provider(this, name);
+}
+
+/**
+ * Answer the index of the image with the given name and zoom,
+ * or -1 if there is none.
+ */
+int indexOf(String name, int zoom) {
+	int[] entries = indices.get(name);
+	if (entries != null) {
+		for (int index : entries) {
+			if (zooms[index] == zoom) return index;
+		}
+	}
+	return -1;
+}
+
+/**
+ * Copy the premultiplied ARGB pixels of the given number of rows of the
+ * image at the given index, starting at row y, into dest, with rows stride
+ * bytes apart. The ints are written with the most significant byte first
+ * when bigEndian is true, and the least significant byte first otherwise.
+ */
+void getPixels(int index, int y, int height, byte[] dest, int stride, boolean bigEndian) {
+	int width = widths[index], rowBytes = width * 4;
+	ByteBuffer source = buffer.duplicate();
+	source.position(offsets[index] + y * rowBytes);
+	if (stride == rowBytes) {
+		source.get(dest, 0, rowBytes * height);
+	} else {
+		for (int row = 0; row < height; row++) {
+			source.get(dest, row * stride, rowBytes);
+		}
+	}
+	if (bigEndian) {
+		for (int row = 0; row < height; row++) {
+			for (int offset = row * stride, end = offset + rowBytes; offset < end; offset += 4) {
+				byte b = dest[offset], g = dest[offset + 1];
+				dest[offset] = dest[offset + 3];
+				dest[offset + 1] = dest[offset + 2];
+				dest[offset + 2] = g;
+				dest[offset + 3] = b;
+			}
+		}
+	}
+}
+
+/**
+ * Writes an atlas with the given images to the specified stream.
+ * The image at each index of <code>images</code> is stored under the
+ * name and the zoom level at the same index of <code>names</code> and
+ * <code>zooms</code>. Every name needs an image at 100% zoom. The
+ * transparency of the images is kept as alpha.
+ *
+ * @param stream the output stream to write the atlas to
+ * @param names the names of the images
+ * @param zooms the zoom levels of the images in percent
+ * @param images the images
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if any of the arguments or their elements is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the arrays have different lengths, a zoom level is not positive,
+ *        an image appears twice with the same name and zoom level, or a name has no image at 100% zoom</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_IO - if an IO error occurs while writing to the stream</li>
+ * </ul>
+ */
+public static void save(OutputStream stream, String[] names, int[] zooms, ImageData[] images) {
+	if (stream == null || names == null || zooms == null || images == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	int count = names.length;
+	if (zooms.length != count || images.length != count) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	Set<String> keys = new HashSet<>();
+	byte[][] encodedNames = new byte[count][];
+	int headerSize = 12;
+	for (int i = 0; i < count; i++) {
+		if (names[i] == null || images[i] == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+		if (zooms[i] <= 0 || !keys.add(zooms[i] + ":" + names[i])) SWT.error(SWT.ERROR_INVALID_ARGUMENT); //$NON-NLS-1$
+		encodedNames[i] = names[i].getBytes(StandardCharsets.UTF_8);
+		if (encodedNames[i].length > 0xFFFF) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+		headerSize += 2 + encodedNames[i].length + 16;
+	}
+	for (String name : names) {
+		if (!keys.contains("100:" + name)) SWT.error(SWT.ERROR_INVALID_ARGUMENT); //$NON-NLS-1$
+	}
+	try {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(count);
+		long offset = (headerSize + 3) & ~3;
+		for (int i = 0; i < count; i++) {
+			out.writeShort(encodedNames[i].length);
+			out.write(encodedNames[i]);
+			out.writeInt(zooms[i]);
+			out.writeInt(images[i].width);
+			out.writeInt(images[i].height);
+			if (offset > Integer.MAX_VALUE) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+			out.writeInt((int) offset);
+			offset += (long) images[i].width * images[i].height * 4;
+		}
+		for (int i = headerSize; (i & 3) != 0; i++) {
+			out.write(0);
+		}
+		for (ImageData image : images) {
+			writePixels(out, image);
+		}
+		out.flush();
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_IO, e);
+	}
+}
+
+/**
+ * Write the image as premultiplied little endian ARGB, with the same
+ * alpha that Image gives it: opaque or transparent from the transparency
+ * mask or transparent pixel, else the global alpha or the alpha data.
+ */
+static void writePixels(DataOutputStream out, ImageData image) throws IOException {
+	int width = image.width, height = image.height;
+	int[] pixels = image.palette.isDirect ? null : image.getARGBPixels(false);
+	ImageData mask = image.maskData != null || image.transparentPixel != -1 ? image.getTransparencyMask() : null;
+	int[] row = new int[width];
+	byte[] bytes = new byte[width * 4];
+	for (int y = 0; y < height; y++) {
+		image.getARGBRow(y, row, pixels, false);
+		for (int x = 0, offset = 0; x < width; x++, offset += 4) {
+			int alpha;
+			if (mask != null) {
+				alpha = mask.getPixel(x, y) == 0 ? 0 : 0xFF;
+			} else if (image.alpha != -1) {
+				alpha = image.alpha;
+			} else if (image.alphaData != null) {
+				alpha = image.alphaData[y * width + x] & 0xFF;
+			} else {
+				alpha = 0xFF;
+			}
+			int pixel = row[x];
+			bytes[offset] = (byte) premultiply(pixel & 0xFF, alpha);
+			bytes[offset + 1] = (byte) premultiply((pixel >> 8) & 0xFF, alpha);
+			bytes[offset + 2] = (byte) premultiply((pixel >> 16) & 0xFF, alpha);
+			bytes[offset + 3] = (byte) alpha;
+		}
+		out.write(bytes);
+	}
+}
+
+static int premultiply(int component, int alpha) {
+	int value = component * alpha + 128;
+	return (value + (value >> 8)) >> 8;
+}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,7 @@ package org.eclipse.swt.graphics;
 
 
 import java.io.*;
+import java.nio.*;
 
 import org.eclipse.swt.*;
 import org.eclipse.swt.internal.*;
@@ -26,6 +27,12 @@ import org.eclipse.swt.internal.*;
  * <code>disposalMethod</code> and <code>delayTime</code> are
  * typically only used when the image is in a set of images used
  * for animation.
+ * </p><p>
+ * The raster operations <code>composite</code>, <code>copyArea</code>,
+ * <code>fillRectangle</code>, <code>applyMask</code> and
+ * <code>transformColors</code> work on the image data alone, without a
+ * <code>Device</code> or a <code>GC</code>. Different instances can be
+ * processed on different threads at the same time.
  * </p>
  *
  * @see Image
@@ -223,6 +230,15 @@ public final class ImageData implements Cloneable {
 	}
 	static final byte[] ONE_TO_ONE_MAPPING = ANY_TO_EIGHT[8];
 
+	/**
+	 * Unscaled blits into direct palette images are done a row at
+	 * a time by the kernels in blitRows() unless the system property
+	 * org.eclipse.swt.graphics.ImageData.blitKernels is false, which
+	 * forces the comprehensive per pixel blit. Tests set the field to
+	 * compare the two.
+	 */
+	static boolean blitKernels = !"false".equals(System.getProperty("org.eclipse.swt.graphics.ImageData.blitKernels")); //$NON-NLS-1$ //$NON-NLS-2$
+
 	/**
 	 * Scaled 8x8 Bayer dither matrix.
 	 */
@@ -585,6 +601,246 @@ public Object clone() {
 		delayTime);
 }
 
+/**
+ * Multiplies the alpha of the pixels of the receiver covered by
+ * <code>mask</code>, placed at <code>x</code>, <code>y</code>, by the
+ * coverage of the mask. The coverage is the alpha of the mask when it
+ * has transparency, and the intensity of its color otherwise, so that
+ * both images with alpha and black and white masks, such as the ones
+ * answered by <code>getTransparencyMask()</code>, can be used. The
+ * pixels outside the mask are not changed.
+ * <p>
+ * A transparency mask, transparent pixel or global alpha of the
+ * receiver is replaced by alpha data.
+ * </p>
+ *
+ * @param mask the mask to apply
+ * @param x the x coordinate of the mask in the receiver
+ * @param y the y coordinate of the mask in the receiver
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the mask is null</li>
+ * </ul>
+ *
+ * @since 3.106
+ */
+public void applyMask(ImageData mask, int x, int y) {
+	if (mask == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	boolean intensity = mask.getTransparencyType() == SWT.TRANSPARENCY_NONE && mask.alpha == -1;
+	composite(mask, intensity, 0, 0, 0, mask.width, mask.height, x, y, SWT.COMPOSITE_DST_IN, 0xFF);
+}
+
+/**
+ * Composites the rectangular area of <code>source</code> at
+ * <code>srcX</code>, <code>srcY</code> into the receiver at
+ * <code>destX</code>, <code>destY</code>, using a Porter-Duff
+ * compositing rule. The alpha of the source and of the receiver
+ * comes from their alpha data, transparency mask, transparent pixel
+ * or global alpha. The alpha of the source is multiplied by
+ * <code>alpha</code>. The area is clipped to the bounds of the
+ * receiver, and the source may be the receiver itself.
+ * <p>
+ * The result is stored in the pixels and the alpha data of the
+ * receiver. A transparency mask, transparent pixel or global alpha
+ * of the receiver is replaced by alpha data, and a receiver without
+ * transparency gets alpha data when the result is not opaque. The
+ * colors of an indirect palette receiver are the closest colors of
+ * its palette.
+ * </p>
+ *
+ * @param source the image to composite into the receiver
+ * @param srcX the x coordinate of the area in the source
+ * @param srcY the y coordinate of the area in the source
+ * @param width the width of the area
+ * @param height the height of the area
+ * @param destX the x coordinate of the area in the receiver
+ * @param destY the y coordinate of the area in the receiver
+ * @param rule the compositing rule, one of <code>SWT.COMPOSITE_CLEAR</code>,
+ * <code>SWT.COMPOSITE_SRC</code>, <code>SWT.COMPOSITE_DST</code>,
+ * <code>SWT.COMPOSITE_SRC_OVER</code>, <code>SWT.COMPOSITE_DST_OVER</code>,
+ * <code>SWT.COMPOSITE_SRC_IN</code>, <code>SWT.COMPOSITE_DST_IN</code>,
+ * <code>SWT.COMPOSITE_SRC_OUT</code>, <code>SWT.COMPOSITE_DST_OUT</code>,
+ * <code>SWT.COMPOSITE_SRC_ATOP</code>, <code>SWT.COMPOSITE_DST_ATOP</code>
+ * or <code>SWT.COMPOSITE_XOR</code>
+ * @param alpha the alpha to multiply the alpha of the source by,
+ * between 0 (transparent) and 255 (opaque)
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the source is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the area is not inside the source</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the rule is not one of the compositing rules</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the alpha is not between 0 and 255</li>
+ * </ul>
+ *
+ * @since 3.106
+ */
+public void composite(ImageData source, int srcX, int srcY, int width, int height, int destX, int destY, int rule, int alpha) {
+	if (source == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	if (srcX < 0 || srcY < 0 || width < 0 || height < 0 || srcX + width > source.width || srcY + height > source.height) {
+		SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	}
+	if (rule < SWT.COMPOSITE_CLEAR || rule > SWT.COMPOSITE_XOR) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	if (alpha < 0 || alpha > 0xFF) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	composite(source, false, 0, srcX, srcY, width, height, destX, destY, rule, alpha);
+}
+
+/**
+ * Copies the rectangular area of <code>source</code> at
+ * <code>srcX</code>, <code>srcY</code> into the receiver at
+ * <code>destX</code>, <code>destY</code>, replacing the pixels and
+ * the alpha of the receiver. This is <code>composite</code> with the
+ * <code>SWT.COMPOSITE_SRC</code> rule. When the source has no
+ * transparency and the same depth and palette as the receiver, the
+ * pixel values are copied as they are.
+ *
+ * @param source the image to copy from
+ * @param srcX the x coordinate of the area in the source
+ * @param srcY the y coordinate of the area in the source
+ * @param width the width of the area
+ * @param height the height of the area
+ * @param destX the x coordinate of the area in the receiver
+ * @param destY the y coordinate of the area in the receiver
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the source is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the area is not inside the source</li>
+ * </ul>
+ *
+ * @see #composite(ImageData, int, int, int, int, int, int, int, int)
+ *
+ * @since 3.106
+ */
+public void copyArea(ImageData source, int srcX, int srcY, int width, int height, int destX, int destY) {
+	composite(source, srcX, srcY, width, height, destX, destY, SWT.COMPOSITE_SRC, 0xFF);
+}
+
+/**
+ * Fills the rectangle at <code>x</code>, <code>y</code> of the receiver
+ * with the given color and alpha, using a Porter-Duff compositing rule.
+ * <code>SWT.COMPOSITE_SRC</code> replaces the pixels of the rectangle,
+ * and <code>SWT.COMPOSITE_SRC_OVER</code> paints the color over them.
+ * The rectangle is clipped to the bounds of the receiver.
+ *
+ * @param x the x coordinate of the rectangle
+ * @param y the y coordinate of the rectangle
+ * @param width the width of the rectangle
+ * @param height the height of the rectangle
+ * @param rgb the color to fill the rectangle with
+ * @param alpha the alpha of the color, between 0 (transparent) and 255 (opaque)
+ * @param rule the compositing rule, see
+ * <code>composite(ImageData, int, int, int, int, int, int, int, int)</code>
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the rgb is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the rule is not one of the compositing rules</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the alpha is not between 0 and 255</li>
+ * </ul>
+ *
+ * @see #composite(ImageData, int, int, int, int, int, int, int, int)
+ *
+ * @since 3.106
+ */
+public void fillRectangle(int x, int y, int width, int height, RGB rgb, int alpha, int rule) {
+	if (rgb == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	if (rule < SWT.COMPOSITE_CLEAR || rule > SWT.COMPOSITE_XOR) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	if (alpha < 0 || alpha > 0xFF) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	int color = (alpha << 24) | (rgb.red << 16) | (rgb.green << 8) | rgb.blue;
+	composite(null, false, color, 0, 0, width, height, x, y, rule, 0xFF);
+}
+
+/**
+ * Returns the pixels of the rectangle at <code>x</code>, <code>y</code>
+ * of the receiver as ARGB values, with the alpha in the most significant
+ * byte and the blue in the least significant byte. Row <code>i</code> of
+ * the rectangle starts at <code>offset + i * scanSize</code> in
+ * <code>argb</code>. The alpha of each pixel comes from the transparency
+ * mask or the transparent pixel of the receiver if there is one, else
+ * from its global alpha or alpha data, and is 255 when the receiver has
+ * no transparency.
+ * <p>
+ * Unlike <code>getPixels</code> and <code>PaletteData.getRGB</code>, this
+ * converts whole rows at a time and creates no objects per pixel.
+ * </p>
+ *
+ * @param x the x coordinate of the rectangle
+ * @param y the y coordinate of the rectangle
+ * @param width the width of the rectangle
+ * @param height the height of the rectangle
+ * @param argb the array to put the ARGB values into
+ * @param offset the index of the first value in the array
+ * @param scanSize the distance between the rows of the rectangle in the array
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if argb is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the rectangle is not inside the receiver</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the rectangle does not fit in the array</li>
+ * </ul>
+ *
+ * @see #setARGB(int, int, int, int, int[], int, int)
+ *
+ * @since 3.106
+ */
+public void getARGB(int x, int y, int width, int height, int[] argb, int offset, int scanSize) {
+	if (argb == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	checkARGBArea(x, y, width, height, argb.length, offset, scanSize);
+	int[] pixels = palette.isDirect ? null : getARGBPixels(maskData == null);
+	int[] row = new int[width];
+	for (int i = 0; i < height; i++) {
+		getARGBSpan(x, y + i, width, row, pixels);
+		System.arraycopy(row, 0, argb, offset + i * scanSize, width);
+	}
+}
+
+/**
+ * Returns the pixels of the rectangle at <code>x</code>, <code>y</code>
+ * of the receiver as ARGB values, see
+ * <code>getARGB(int, int, int, int, int[], int, int)</code>. The values
+ * are put row by row at the position of the buffer, which is advanced by
+ * <code>width * height</code>.
+ *
+ * @param x the x coordinate of the rectangle
+ * @param y the y coordinate of the rectangle
+ * @param width the width of the rectangle
+ * @param height the height of the rectangle
+ * @param buffer the buffer to put the ARGB values into
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if buffer is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the rectangle is not inside the receiver</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the rectangle does not fit in the remaining buffer</li>
+ * </ul>
+ *
+ * @see #getARGB(int, int, int, int, int[], int, int)
+ *
+ * @since 3.106
+ */
+public void getARGB(int x, int y, int width, int height, IntBuffer buffer) {
+	if (buffer == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	checkARGBArea(x, y, width, height, buffer.remaining(), 0, width);
+	if (buffer.hasArray() && !buffer.isReadOnly()) {
+		int position = buffer.position();
+		getARGB(x, y, width, height, buffer.array(), buffer.arrayOffset() + position, width);
+		buffer.position(position + width * height);
+		return;
+	}
+	int[] pixels = palette.isDirect ? null : getARGBPixels(maskData == null);
+	int[] row = new int[width];
+	for (int i = 0; i < height; i++) {
+		getARGBSpan(x, y + i, width, row, pixels);
+		buffer.put(row, 0, width);
+	}
+}
+
+void checkARGBArea(int x, int y, int width, int height, int length, int offset, int scanSize) {
+	if (x < 0 || y < 0 || width < 0 || height < 0 || x + width > this.width || y + height > this.height) {
+		SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	}
+	if (width == 0 || height == 0) return;
+	if (offset < 0 || scanSize < width || offset + (long)(height - 1) * scanSize + width > length) {
+		SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	}
+}
+
 /**
  * Returns the alpha value at offset <code>x</code> in
  * scanline <code>y</code> in the receiver's alpha data.
@@ -1098,6 +1354,101 @@ int getByteOrder() {
 	return depth != 16 ? MSB_FIRST : LSB_FIRST;
 }
 
+/**
+ * Returns a copy of the receiver with an indirect palette of at most
+ * <code>1 &lt;&lt; depth</code> colors, suitable for the formats that
+ * only store indirect palette images, such as GIF.
+ * <p>
+ * The colors of the palette are chosen from the colors of the receiver
+ * with an octree, and every pixel gets the closest color of the palette.
+ * When <code>dither</code> is true, the difference between the color of
+ * each pixel and its palette color is spread over the next pixels with
+ * Floyd-Steinberg error diffusion, which hides the bands that appear in
+ * gradients at the cost of some noise.
+ * </p><p>
+ * The transparent pixel of the receiver, if any, keeps an entry of the
+ * palette of its own, at the end of the palette. The mask, alpha data and
+ * global alpha of the receiver are copied, as are its position, type,
+ * disposal method and delay.
+ * </p>
+ *
+ * @param depth the color depth of the copy, one of 1, 2, 4 or 8
+ * @param dither <code>true</code> to spread the color errors over the
+ *    neighbouring pixels, <code>false</code> to map each pixel on its own
+ * @return a copy of the receiver with an indirect palette
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_INVALID_ARGUMENT - if the depth is not one of 1, 2, 4 or 8</li>
+ * </ul>
+ *
+ * @since 3.106
+ */
+public ImageData quantize(int depth, boolean dither) {
+	if (depth != 1 && depth != 2 && depth != 4 && depth != 8) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+
+	/* Choose the palette, keeping an entry for the transparent pixel */
+	int maxColors = 1 << depth;
+	if (transparentPixel != -1) maxColors--;
+	ColorQuantizer quantizer = new ColorQuantizer(maxColors);
+	int[] pixels = palette.isDirect ? null : getARGBPixels(true);
+	int transparent = palette.isDirect ? transparentPixel : -1;
+	ImageData source = this;
+	if (!palette.isDirect) {
+		/* Indirect palette images are mapped from a direct copy */
+		source = new ImageData(width, height, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+	}
+	int[] row = new int[width];
+	for (int y = 0; y < height; y++) {
+		getRGBRow(0, y, width, row, pixels, transparent);
+		quantizer.addRow(row, width);
+		if (source != this) writeDirectRow(TYPE_GENERIC_24, row, width, source.data, y * source.bytesPerLine);
+	}
+	RGB[] colors = quantizer.getRGBs();
+	if (colors.length == 0) colors = new RGB[] {new RGB(0, 0, 0)};
+	RGB[] rgbs = colors;
+	int newTransparentPixel = -1;
+	if (transparentPixel != -1) {
+		newTransparentPixel = colors.length;
+		rgbs = new RGB[colors.length + 1];
+		System.arraycopy(colors, 0, rgbs, 0, colors.length);
+		if (palette.isDirect) {
+			rgbs[newTransparentPixel] = palette.getRGB(transparentPixel);
+		} else {
+			int rgb = pixels[transparentPixel];
+			rgbs[newTransparentPixel] = new RGB((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+		}
+	}
+	ImageData dest = new ImageData(
+		width, height, depth, new PaletteData(rgbs),
+		scanlinePad, null, maskPad, maskData != null ? maskData.clone() : null,
+		alphaData != null ? alphaData.clone() : null, alpha, newTransparentPixel, type,
+		x, y, disposalMethod, delayTime);
+
+	/* Map the pixels, leaving the transparent pixel out of the palette */
+	byte[] reds = new byte[colors.length], greens = new byte[colors.length], blues = new byte[colors.length];
+	for (int i = 0; i < colors.length; i++) {
+		reds[i] = (byte)colors[i].red;
+		greens[i] = (byte)colors[i].green;
+		blues[i] = (byte)colors[i].blue;
+	}
+	PaletteData sourcePalette = source.palette;
+	blit(dither ? BLIT_SRC | BLIT_DITHER : BLIT_SRC,
+		source.data, source.depth, source.bytesPerLine, source.getByteOrder(), 0, 0, width, height,
+		sourcePalette.redMask, sourcePalette.greenMask, sourcePalette.blueMask,
+		ALPHA_OPAQUE, null, 0, 0, 0,
+		dest.data, dest.depth, dest.bytesPerLine, dest.getByteOrder(), 0, 0, width, height, reds, greens, blues,
+		false, false);
+	if (newTransparentPixel != -1) {
+		for (int y = 0; y < height; y++) {
+			getRGBRow(0, y, width, row, pixels, transparent);
+			for (int x = 0; x < width; x++) {
+				if ((row[x] >>> 24) == 0) dest.setPixel(x, y, newTransparentPixel);
+			}
+		}
+	}
+	return dest;
+}
+
 /**
  * Returns a copy of the receiver which has been stretched or
  * shrunk to the specified size. If either the width or height
@@ -1159,6 +1510,791 @@ public ImageData scaledTo(int width, int height) {
 	return dest;
 }
 
+/**
+ * Returns a copy of the receiver which has been stretched or
+ * shrunk to the specified size using the given interpolation.
+ * If either the width or height is negative, the resulting image
+ * will be inverted in the associated axis.
+ * <p>
+ * The interpolation is one of:
+ * <ul>
+ * <li><code>SWT.NONE</code>: nearest neighbor, the same as {@link #scaledTo(int, int)}</li>
+ * <li><code>SWT.LOW</code>: bilinear when enlarging, area averaging when shrinking</li>
+ * <li><code>SWT.DEFAULT</code>: bicubic (Catmull-Rom)</li>
+ * <li><code>SWT.HIGH</code>: Lanczos with a support of three pixels</li>
+ * </ul>
+ * Except for <code>SWT.NONE</code>, the colors of neighboring pixels
+ * are blended, so the result of an indirect palette image is a 24-bit
+ * direct palette image, and a transparent pixel or transparency mask
+ * becomes alpha data. Direct palette images keep their palette.
+ * </p>
+ *
+ * @param width the width of the new ImageData
+ * @param height the height of the new ImageData
+ * @param interpolation the interpolation to use
+ * @return a scaled copy of the image
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_INVALID_ARGUMENT - if the interpolation is not one of <code>SWT.DEFAULT</code>,
+ *                                 <code>SWT.NONE</code>, <code>SWT.LOW</code> or <code>SWT.HIGH</code></li>
+ * </ul>
+ *
+ * @see #scaledTo(int, int)
+ *
+ * @since 3.106
+ */
+public ImageData scaledTo(int width, int height, int interpolation) {
+	int filter;
+	switch (interpolation) {
+		case SWT.NONE: return scaledTo(width, height);
+		case SWT.LOW: filter = FILTER_LINEAR; break;
+		case SWT.DEFAULT: filter = FILTER_CUBIC; break;
+		case SWT.HIGH: filter = FILTER_LANCZOS; break;
+		default: SWT.error(SWT.ERROR_INVALID_ARGUMENT); return null;
+	}
+	final boolean flipX = (width < 0);
+	if (flipX) width = - width;
+	final boolean flipY = (height < 0);
+	if (flipY) height = - height;
+
+	/* Create a direct destination image */
+	PaletteData destPalette = palette;
+	if (!palette.isDirect || depth < 16 || getChannelWidth(palette.redMask, getChannelShift(palette.redMask)) > 8 ||
+		getChannelWidth(palette.greenMask, getChannelShift(palette.greenMask)) > 8 ||
+		getChannelWidth(palette.blueMask, getChannelShift(palette.blueMask)) > 8) {
+		destPalette = new PaletteData(0xFF0000, 0xFF00, 0xFF);
+	}
+	boolean hasAlpha = alpha == -1 && getTransparencyType() != SWT.TRANSPARENCY_NONE;
+	ImageData dest = new ImageData(
+		width, height, destPalette == palette ? depth : 24, destPalette,
+		scanlinePad, null, 0, null,
+		null, -1, -1, type,
+		x, y, disposalMethod, delayTime);
+	if (hasAlpha) {
+		dest.alphaData = new byte[width * height];
+	} else {
+		dest.alpha = alpha;
+	}
+	resample(this, dest, filter, hasAlpha, flipX, flipY);
+	return dest;
+}
+
+/**
+ * Filters used by scaledTo(int, int, int). The linear filter
+ * becomes a box filter (area averaging) when shrinking.
+ */
+static final int
+	FILTER_LINEAR = 0,
+	FILTER_CUBIC = 1,
+	FILTER_LANCZOS = 2;
+
+/**
+ * Resamples src into the direct palette image dest with two
+ * separable passes. Each source row is converted to premultiplied
+ * ARGB and filtered horizontally once, into a ring of rows just
+ * large enough for the vertical filter, so the temporary memory is
+ * proportional to the width of the destination only.
+ */
+static void resample(ImageData src, ImageData dest, int filter, boolean hasAlpha, boolean flipX, boolean flipY) {
+	final int srcWidth = src.width, srcHeight = src.height;
+	final int destWidth = dest.width, destHeight = dest.height;
+
+	/* Compute the filter weights of both axes once */
+	int[] xStart = new int[destWidth], xCount = new int[destWidth];
+	float[] xWeights = computeWeights(filter, srcWidth, destWidth, xStart, xCount);
+	int xTaps = xWeights.length / destWidth;
+	int[] yStart = new int[destHeight], yCount = new int[destHeight];
+	float[] yWeights = computeWeights(filter, srcHeight, destHeight, yStart, yCount);
+	int yTaps = yWeights.length / destHeight;
+
+	/* Row buffers, reused for every row */
+	int[] srcRow = new int[srcWidth];
+	int[] srcPixels = src.palette.isDirect ? null : src.getARGBPixels(hasAlpha);
+	float[] srcChannels = new float[srcWidth * 4];
+	float[][] ring = new float[yTaps][destWidth * 4];
+	float[] destChannels = new float[destWidth * 4];
+	int[] destRow = new int[destWidth];
+
+	/* Destination pixel layout */
+	PaletteData destPalette = dest.palette;
+	int redShift = getChannelShift(destPalette.redMask), redPreShift = 8 - getChannelWidth(destPalette.redMask, redShift);
+	int greenShift = getChannelShift(destPalette.greenMask), greenPreShift = 8 - getChannelWidth(destPalette.greenMask, greenShift);
+	int blueShift = getChannelShift(destPalette.blueMask), bluePreShift = 8 - getChannelWidth(destPalette.blueMask, blueShift);
+	int dtype;
+	switch (dest.depth) {
+		case 16: dtype = (dest.getByteOrder() == MSB_FIRST) ? TYPE_GENERIC_16_MSB : TYPE_GENERIC_16_LSB; break;
+		case 24: dtype = TYPE_GENERIC_24; break;
+		default: dtype = TYPE_GENERIC_32_MSB; break;
+	}
+
+	int nextRow = 0;
+	for (int dy = 0; dy < destHeight; dy++) {
+		int start = yStart[dy], count = yCount[dy];
+
+		/* Filter the source rows that enter the window horizontally */
+		for (; nextRow < start + count; nextRow++) {
+			src.getARGBRow(nextRow, srcRow, srcPixels, hasAlpha);
+			for (int sx = 0, i = 0; sx < srcWidth; sx++, i += 4) {
+				int argb = srcRow[sx];
+				float a = argb >>> 24;
+				float f = hasAlpha ? a / 255f : 1f;
+				srcChannels[i] = a;
+				srcChannels[i + 1] = ((argb >> 16) & 0xFF) * f;
+				srcChannels[i + 2] = ((argb >> 8) & 0xFF) * f;
+				srcChannels[i + 3] = (argb & 0xFF) * f;
+			}
+			float[] out = ring[nextRow % yTaps];
+			for (int dx = 0, o = 0; dx < destWidth; dx++, o += 4) {
+				float a = 0, r = 0, g = 0, b = 0;
+				int w = dx * xTaps, n = xCount[dx];
+				for (int k = 0, i = xStart[dx] * 4; k < n; k++, i += 4) {
+					float weight = xWeights[w + k];
+					a += weight * srcChannels[i];
+					r += weight * srcChannels[i + 1];
+					g += weight * srcChannels[i + 2];
+					b += weight * srcChannels[i + 3];
+				}
+				out[o] = a;
+				out[o + 1] = r;
+				out[o + 2] = g;
+				out[o + 3] = b;
+			}
+		}
+
+		/* Filter the window vertically */
+		java.util.Arrays.fill(destChannels, 0);
+		for (int k = 0; k < count; k++) {
+			float weight = yWeights[dy * yTaps + k];
+			float[] in = ring[(start + k) % yTaps];
+			for (int i = 0; i < destChannels.length; i++) {
+				destChannels[i] += weight * in[i];
+			}
+		}
+
+		/* Convert back to the destination format */
+		int row = flipY ? destHeight - 1 - dy : dy;
+		int alphaIndex = row * destWidth;
+		for (int dx = 0, i = 0; dx < destWidth; dx++, i += 4) {
+			int a = clamp(destChannels[i]);
+			int r, g, b;
+			if (hasAlpha) {
+				float f = a == 0 ? 0 : 255f / a;
+				r = clamp(destChannels[i + 1] * f);
+				g = clamp(destChannels[i + 2] * f);
+				b = clamp(destChannels[i + 3] * f);
+				dest.alphaData[alphaIndex + (flipX ? destWidth - 1 - dx : dx)] = (byte)a;
+			} else {
+				r = clamp(destChannels[i + 1]);
+				g = clamp(destChannels[i + 2]);
+				b = clamp(destChannels[i + 3]);
+			}
+			destRow[flipX ? destWidth - 1 - dx : dx] = (r >>> redPreShift << redShift) | (g >>> greenPreShift << greenShift) | (b >>> bluePreShift << blueShift);
+		}
+		writeDirectRow(dtype, destRow, destWidth, dest.data, row * dest.bytesPerLine);
+	}
+}
+
+static int clamp(float value) {
+	int result = (int)(value + 0.5f);
+	return result < 0 ? 0 : result > 255 ? 255 : result;
+}
+
+/**
+ * Computes the contributions of the source pixels to each destination
+ * pixel along one axis. For every destination pixel, the first source
+ * pixel and the number of source pixels are stored in start and count,
+ * and the normalized weights are returned with a fixed stride of
+ * (length / destSize). Taps outside the source are folded into the
+ * edge pixels.
+ */
+static float[] computeWeights(int filter, int srcSize, int destSize, int[] start, int[] count) {
+	float scale = (float)destSize / srcSize;
+	float support;
+	switch (filter) {
+		case FILTER_CUBIC: support = 2; break;
+		case FILTER_LANCZOS: support = 3; break;
+		default: support = scale < 1 ? 0.5f : 1; break;
+	}
+	/* Widen the filter when shrinking so that every source pixel contributes */
+	float stretch = scale < 1 ? 1 / scale : 1;
+	float radius = support * stretch;
+	int taps = Math.min(srcSize, (int)Math.ceil(radius * 2) + 2);
+	float[] weights = new float[taps * destSize];
+	for (int d = 0; d < destSize; d++) {
+		float center = (d + 0.5f) / scale;
+		int first = (int)Math.floor(center - radius), last = (int)Math.ceil(center + radius);
+		int low = Math.max(0, Math.min(srcSize - 1, first)), high = Math.max(0, Math.min(srcSize - 1, last));
+		if (high - low + 1 > taps) {
+			/* Cannot happen by construction, keep the nearest taps */
+			high = low + taps - 1;
+		}
+		int offset = d * taps;
+		float total = 0;
+		for (int i = first; i <= last; i++) {
+			float weight;
+			if (filter == FILTER_LINEAR && scale < 1) {
+				/* Area of source pixel i covered by destination pixel d */
+				float left = Math.max(i, center - radius), right = Math.min(i + 1, center + radius);
+				weight = right > left ? right - left : 0;
+			} else {
+				weight = filterWeight(filter, (i + 0.5f - center) / stretch);
+			}
+			if (weight == 0) continue;
+			int index = Math.max(low, Math.min(high, i));
+			weights[offset + index - low] += weight;
+			total += weight;
+		}
+		if (total != 0) {
+			for (int k = 0; k <= high - low; k++) {
+				weights[offset + k] /= total;
+			}
+		} else {
+			weights[offset] = 1;
+		}
+		start[d] = low;
+		count[d] = high - low + 1;
+	}
+	return weights;
+}
+
+/**
+ * Returns the value of the filter kernel at distance x.
+ */
+static float filterWeight(int filter, float x) {
+	if (x < 0) x = -x;
+	switch (filter) {
+		case FILTER_CUBIC:
+			if (x < 1) return (1.5f * x - 2.5f) * x * x + 1;
+			if (x < 2) return ((-0.5f * x + 2.5f) * x - 4) * x + 2;
+			return 0;
+		case FILTER_LANCZOS:
+			if (x == 0) return 1;
+			if (x >= 3) return 0;
+			double px = Math.PI * x;
+			return (float)(3 * Math.sin(px) * Math.sin(px / 3) / (px * px));
+		default:
+			return x < 1 ? 1 - x : 0;
+	}
+}
+
+/**
+ * Returns the ARGB value of every index of the receiver's indirect
+ * palette. The transparent pixel has an alpha of 0 when hasAlpha
+ * is true.
+ */
+int[] getARGBPixels(boolean hasAlpha) {
+	int transparent = hasAlpha ? transparentPixel : -1;
+	RGB[] rgbs = palette.getRGBs();
+	int[] pixels = new int[1 << depth];
+	for (int i = 0; i < pixels.length; i++) {
+		RGB rgb = i < rgbs.length ? rgbs[i] : null;
+		int alpha = i == transparent ? 0 : 0xFF000000;
+		pixels[i] = rgb == null ? alpha : alpha | (rgb.red << 16) | (rgb.green << 8) | rgb.blue;
+	}
+	return pixels;
+}
+
+/**
+ * Returns a matcher for the colors of the receiver's indirect palette
+ * that its pixels can index, as a larger palette would be matched to
+ * indices that do not fit in depth bits.
+ */
+PaletteMatcher getPaletteMatcher() {
+	return new PaletteMatcher(palette, Math.min(palette.colors.length, 1 << depth));
+}
+
+/**
+ * Reads count pixels of scanline y, starting at x, as ARGB values with an
+ * alpha of 255, except for the pixels of a direct palette image equal to
+ * transparent, which get 0. Indirect palette images take the alpha of
+ * their indices from pixels.
+ */
+void getRGBRow(int x, int y, int count, int[] row, int[] pixels, int transparent) {
+	if (palette.isDirect) {
+		if (transparent == -1 && (depth == 24 || depth == 32)) {
+			/* Channels of whole bytes, read them directly */
+			int bpp = depth >> 3;
+			int ro = getByteIndex(palette.redMask, bpp), go = getByteIndex(palette.greenMask, bpp), bo = getByteIndex(palette.blueMask, bpp);
+			if (ro != -1 && go != -1 && bo != -1) {
+				for (int i = 0, sp = y * bytesPerLine + x * bpp; i < count; i++, sp += bpp) {
+					row[i] = 0xFF000000 | ((data[sp + ro] & 0xFF) << 16) | ((data[sp + go] & 0xFF) << 8) | (data[sp + bo] & 0xFF);
+				}
+				return;
+			}
+		}
+		int stype;
+		switch (depth) {
+			case 8: stype = TYPE_GENERIC_8; break;
+			case 16: stype = (getByteOrder() == MSB_FIRST) ? TYPE_GENERIC_16_MSB : TYPE_GENERIC_16_LSB; break;
+			case 24: stype = TYPE_GENERIC_24; break;
+			default: stype = TYPE_GENERIC_32_MSB; break;
+		}
+		readDirectRow(stype, data, y * bytesPerLine + x * (depth >> 3), row, count);
+		int redMask = palette.redMask, greenMask = palette.greenMask, blueMask = palette.blueMask;
+		int redShift = getChannelShift(redMask), redWidth = getChannelWidth(redMask, redShift);
+		int greenShift = getChannelShift(greenMask), greenWidth = getChannelWidth(greenMask, greenShift);
+		int blueShift = getChannelShift(blueMask), blueWidth = getChannelWidth(blueMask, blueShift);
+		if (redWidth == 8 && greenWidth == 8 && blueWidth == 8) {
+			for (int i = 0; i < count; i++) {
+				int pixel = row[i];
+				int alpha = pixel == transparent ? 0 : 0xFF000000;
+				row[i] = alpha | (((pixel >>> redShift) & 0xFF) << 16) | (((pixel >>> greenShift) & 0xFF) << 8) | ((pixel >>> blueShift) & 0xFF);
+			}
+			return;
+		}
+		for (int i = 0; i < count; i++) {
+			int pixel = row[i];
+			int alpha = pixel == transparent ? 0 : 0xFF000000;
+			row[i] = alpha | (toEight(pixel, redMask, redShift, redWidth) << 16) |
+				(toEight(pixel, greenMask, greenShift, greenWidth) << 8) |
+				toEight(pixel, blueMask, blueShift, blueWidth);
+		}
+	} else {
+		int stype, sp = y * bytesPerLine;
+		switch (depth) {
+			case 8: stype = TYPE_INDEX_8; break;
+			case 4: stype = TYPE_INDEX_4; sp <<= 1; break;
+			case 2: stype = TYPE_INDEX_2; sp <<= 2; break;
+			default: stype = TYPE_INDEX_1_MSB; sp <<= 3; break;
+		}
+		readIndexRow(stype, data, sp + x, pixels, row, count);
+	}
+}
+
+/**
+ * Reads scanline y as ARGB values. Indirect palette images map their
+ * indices through pixels, see getARGBPixels(). The alpha is taken from
+ * the alpha data, the transparency mask or the transparent pixel when
+ * hasAlpha is true, and is 255 otherwise.
+ */
+void getARGBRow(int y, int[] row, int[] pixels, boolean hasAlpha) {
+	getRGBRow(0, y, width, row, pixels, hasAlpha ? transparentPixel : -1);
+	if (!hasAlpha) return;
+	if (alphaData != null) {
+		for (int x = 0, i = y * width; x < width; x++, i++) {
+			row[x] = (row[x] & 0xFFFFFF) | (alphaData[i] << 24);
+		}
+	} else if (maskData != null) {
+		int maskBpl = (width + 7) / 8;
+		maskBpl = (maskBpl + (maskPad - 1)) / maskPad * maskPad;
+		for (int x = 0, i = y * maskBpl; x < width; x++) {
+			if ((maskData[i + (x >> 3)] & (0x80 >> (x & 7))) == 0) row[x] &= 0xFFFFFF;
+		}
+	}
+}
+
+/**
+ * Reads count pixels of scanline y, starting at x, as ARGB values with the
+ * alpha the receiver is drawn with: from the transparency mask or the
+ * transparent pixel if there is one, else from the global alpha or the
+ * alpha data. Indirect palette images map their indices through pixels,
+ * which must be getARGBPixels(maskData == null).
+ */
+void getARGBSpan(int x, int y, int count, int[] row, int[] pixels) {
+	getRGBRow(x, y, count, row, pixels, maskData == null ? transparentPixel : -1);
+	if (maskData != null) {
+		int maskBpl = (width + 7) / 8;
+		maskBpl = (maskBpl + (maskPad - 1)) / maskPad * maskPad;
+		for (int i = 0, mx = x, mp = y * maskBpl; i < count; i++, mx++) {
+			if ((maskData[mp + (mx >> 3)] & (0x80 >> (mx & 7))) == 0) row[i] &= 0xFFFFFF;
+		}
+	} else if (transparentPixel == -1) {
+		if (alpha != -1) {
+			for (int i = 0; i < count; i++) {
+				row[i] = (row[i] & 0xFFFFFF) | (alpha << 24);
+			}
+		} else if (alphaData != null) {
+			for (int i = 0, ap = y * width + x; i < count; i++, ap++) {
+				row[i] = (row[i] & 0xFFFFFF) | (alphaData[ap] << 24);
+			}
+		}
+	}
+}
+
+/**
+ * Converts the receiver into dest in the layout of a 32-bit Cairo image
+ * surface, with rows stride bytes apart, in a single pass over its rows.
+ * The alpha is taken the way the GTK Image takes it, see getARGBSpan().
+ * The color components are premultiplied by the alpha. The ints are
+ * written with the most significant byte first when bigEndian is true,
+ * and the least significant byte first otherwise.
+ */
+void getPremultipliedARGB(byte[] dest, int stride, boolean bigEndian) {
+	int oa, or, og, ob;
+	if (bigEndian) {
+		oa = 0; or = 1; og = 2; ob = 3;
+	} else {
+		oa = 3; or = 2; og = 1; ob = 0;
+	}
+	int[] pixels = palette.isDirect ? null : getARGBPixels(maskData == null);
+	int[] row = new int[width];
+	for (int y = 0; y < height; y++) {
+		getARGBSpan(0, y, width, row, pixels);
+		for (int x = 0, offset = y * stride; x < width; x++, offset += 4) {
+			int pixel = row[x];
+			int a = pixel >>> 24;
+			int r = (pixel >> 16) & 0xFF, g = (pixel >> 8) & 0xFF, b = pixel & 0xFF;
+			if (a != 0xFF) {
+				/* pre-multiplied alpha */
+				r = r * a + 128;
+				r = (r + (r >> 8)) >> 8;
+				g = g * a + 128;
+				g = (g + (g >> 8)) >> 8;
+				b = b * a + 128;
+				b = (b + (b >> 8)) >> 8;
+			}
+			dest[offset + oa] = (byte)a;
+			dest[offset + or] = (byte)r;
+			dest[offset + og] = (byte)g;
+			dest[offset + ob] = (byte)b;
+		}
+	}
+}
+
+/**
+ * Writes count ARGB values into scanline y, starting at x. Indirect palette
+ * images store the closest color of their palette, found by the matcher.
+ * The alpha is stored in the alpha data; a receiver without any transparency
+ * gets alpha data, see convertToAlphaData(), when one of the values is not
+ * opaque. Receivers with other kinds of transparency must have been converted
+ * before. The values in row are overwritten.
+ */
+void setARGBSpan(int x, int y, int count, int[] row, PaletteMatcher matcher) {
+	if (alphaData == null) {
+		for (int i = 0; i < count; i++) {
+			if ((row[i] >>> 24) != 0xFF) {
+				convertToAlphaData();
+				break;
+			}
+		}
+	}
+	if (alphaData != null) {
+		for (int i = 0, ap = y * width + x; i < count; i++, ap++) {
+			alphaData[ap] = (byte)(row[i] >>> 24);
+		}
+	}
+	if (palette.isDirect) {
+		if (depth == 24 || depth == 32) {
+			/* Channels of whole bytes, write them directly */
+			int bpp = depth >> 3;
+			int ro = getByteIndex(palette.redMask, bpp), go = getByteIndex(palette.greenMask, bpp), bo = getByteIndex(palette.blueMask, bpp);
+			if (ro != -1 && go != -1 && bo != -1) {
+				int xo = bpp == 4 ? 6 - ro - go - bo : -1;
+				for (int i = 0, dp = y * bytesPerLine + x * bpp; i < count; i++, dp += bpp) {
+					int pixel = row[i];
+					data[dp + ro] = (byte)(pixel >> 16);
+					data[dp + go] = (byte)(pixel >> 8);
+					data[dp + bo] = (byte)pixel;
+					if (xo != -1) data[dp + xo] = 0;
+				}
+				return;
+			}
+		}
+		int redShift = getChannelShift(palette.redMask), redWidth = getChannelWidth(palette.redMask, redShift);
+		int greenShift = getChannelShift(palette.greenMask), greenWidth = getChannelWidth(palette.greenMask, greenShift);
+		int blueShift = getChannelShift(palette.blueMask), blueWidth = getChannelWidth(palette.blueMask, blueShift);
+		if (redWidth == 8 && greenWidth == 8 && blueWidth == 8) {
+			for (int i = 0; i < count; i++) {
+				int pixel = row[i];
+				row[i] = (((pixel >> 16) & 0xFF) << redShift) | (((pixel >> 8) & 0xFF) << greenShift) | ((pixel & 0xFF) << blueShift);
+			}
+		} else {
+			for (int i = 0; i < count; i++) {
+				int pixel = row[i];
+				row[i] = (fromEight((pixel >> 16) & 0xFF, redWidth) << redShift) |
+					(fromEight((pixel >> 8) & 0xFF, greenWidth) << greenShift) |
+					(fromEight(pixel & 0xFF, blueWidth) << blueShift);
+			}
+		}
+		int dtype;
+		switch (depth) {
+			case 8: dtype = TYPE_GENERIC_8; break;
+			case 16: dtype = (getByteOrder() == MSB_FIRST) ? TYPE_GENERIC_16_MSB : TYPE_GENERIC_16_LSB; break;
+			case 24: dtype = TYPE_GENERIC_24; break;
+			default: dtype = TYPE_GENERIC_32_MSB; break;
+		}
+		writeDirectRow(dtype, row, count, data, y * bytesPerLine + x * (depth >> 3));
+	} else {
+		for (int i = 0; i < count; i++) {
+			int pixel = row[i];
+			row[i] = matcher.match((pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF);
+		}
+		setPixels(x, y, count, row, 0);
+	}
+}
+
+/**
+ * Replaces the transparency mask, the transparent pixel or the global
+ * alpha of the receiver by alpha data that gives every pixel the alpha
+ * it had, so that the alpha of each pixel can be changed.
+ */
+void convertToAlphaData() {
+	byte[] alphas = new byte[width * height];
+	if (getTransparencyType() == SWT.TRANSPARENCY_NONE && alpha == -1) {
+		java.util.Arrays.fill(alphas, (byte)0xFF);
+	} else {
+		int[] pixels = palette.isDirect ? null : getARGBPixels(maskData == null);
+		int[] row = new int[width];
+		for (int y = 0, ap = 0; y < height; y++) {
+			getARGBSpan(0, y, width, row, pixels);
+			for (int x = 0; x < width; x++, ap++) {
+				alphas[ap] = (byte)(row[x] >>> 24);
+			}
+		}
+	}
+	alphaData = alphas;
+	alpha = -1;
+	transparentPixel = -1;
+	maskData = null;
+}
+
+/**
+ * The Porter-Duff factors of the source (Fa) and of the destination (Fb),
+ * indexed by the SWT.COMPOSITE_xxx rules: 0 for zero, 1 for one, 2 for the
+ * alpha of the other image and 3 for one minus the alpha of the other image.
+ */
+static final byte[] COMPOSITE_FA = {0, 1, 0, 1, 3, 2, 0, 3, 0, 2, 3, 3};
+static final byte[] COMPOSITE_FB = {0, 0, 1, 3, 1, 0, 2, 0, 3, 3, 2, 3};
+
+/**
+ * Composites count ARGB values of src, starting at srcOffset, with the
+ * ARGB values of dest using the given SWT.COMPOSITE_xxx rule, and leaves
+ * the result in dest. The colors are not premultiplied. The alpha of the
+ * source is scaled by srcAlpha, between 0 and 255, first.
+ */
+static void compositeSpan(int rule, int[] src, int srcOffset, int[] dest, int count, int srcAlpha) {
+	int fa = COMPOSITE_FA[rule], fb = COMPOSITE_FB[rule];
+	int fa0 = (fa & 1) != 0 ? 0xFF : 0, fa1 = fa == 2 ? 1 : fa == 3 ? -1 : 0;
+	int fb0 = (fb & 1) != 0 ? 0xFF : 0, fb1 = fb == 2 ? 1 : fb == 3 ? -1 : 0;
+	for (int i = 0, sp = srcOffset; i < count; i++, sp++) {
+		int s = src[sp], d = dest[i];
+		int sa = s >>> 24, da = d >>> 24;
+		if (srcAlpha != 0xFF) {
+			sa = sa * srcAlpha + 128;
+			sa = (sa + (sa >> 8)) >> 8;
+		}
+		/*
+		* The weights of the source and destination colors are their alpha
+		* times their Porter-Duff factor, so that the result is divided by
+		* its alpha, to take it back to straight alpha, in a single step.
+		*/
+		int sw = sa * (fa0 + fa1 * da), dw = da * (fb0 + fb1 * sa);
+		int aw = sw + dw;
+		if (aw == 0) {
+			dest[i] = 0;
+			continue;
+		}
+		int r = ((s >> 16) & 0xFF) * sw + ((d >> 16) & 0xFF) * dw;
+		int g = ((s >> 8) & 0xFF) * sw + ((d >> 8) & 0xFF) * dw;
+		int b = (s & 0xFF) * sw + (d & 0xFF) * dw;
+		if (aw == 0xFF * 0xFF) {
+			/* Opaque results, divide by 255 * 255 with an exact multiply and shift */
+			r = (int)(((r + 0x7F00) * 16909061L) >>> 40);
+			g = (int)(((g + 0x7F00) * 16909061L) >>> 40);
+			b = (int)(((b + 0x7F00) * 16909061L) >>> 40);
+			dest[i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+		} else {
+			int half = aw >> 1;
+			r = (r + half) / aw;
+			g = (g + half) / aw;
+			b = (b + half) / aw;
+			dest[i] = (((aw + 127) / 255) << 24) | (r << 16) | (g << 8) | b;
+		}
+	}
+}
+
+/**
+ * Composites the given area of source, or the color when source is null,
+ * into the receiver at destX, destY. The area is clipped to the receiver.
+ * When intensity is true, the alpha of the source is the intensity of its
+ * color.
+ */
+void composite(ImageData source, boolean intensity, int color, int srcX, int srcY, int width, int height, int destX, int destY, int rule, int srcAlpha) {
+	if (destX < 0) {
+		srcX -= destX;
+		width += destX;
+		destX = 0;
+	}
+	if (destY < 0) {
+		srcY -= destY;
+		height += destY;
+		destY = 0;
+	}
+	width = Math.min(width, this.width - destX);
+	height = Math.min(height, this.height - destY);
+	if (width <= 0 || height <= 0) return;
+	if (alpha != -1 || maskData != null || transparentPixel != -1) convertToAlphaData();
+	if (rule == SWT.COMPOSITE_SRC && srcAlpha == 0xFF && source != null && source != this && !intensity && copyPixels(source, srcX, srcY, width, height, destX, destY)) {
+		return;
+	}
+	int[] srcRow = new int[width], destRow = new int[width];
+	int[] srcPixels = null;
+	if (source == null) {
+		java.util.Arrays.fill(srcRow, color);
+	} else if (!source.palette.isDirect) {
+		srcPixels = source.getARGBPixels(source.maskData == null);
+	}
+	int[] destPixels = palette.isDirect ? null : getARGBPixels(maskData == null);
+	PaletteMatcher matcher = palette.isDirect ? null : getPaletteMatcher();
+	/*
+	* Composite the rows from the bottom up when the source is the
+	* receiver and the destination is below, so that the source rows
+	* are read before they are written.
+	*/
+	boolean bottomUp = source == this && destY > srcY;
+	for (int i = 0; i < height; i++) {
+		int dy = bottomUp ? height - 1 - i : i;
+		if (source != null) {
+			source.getARGBSpan(srcX, srcY + dy, width, srcRow, srcPixels);
+			if (intensity) {
+				for (int x = 0; x < width; x++) {
+					int pixel = srcRow[x];
+					int value = (((pixel >> 16) & 0xFF) * 77 + ((pixel >> 8) & 0xFF) * 151 + (pixel & 0xFF) * 28) >> 8;
+					srcRow[x] = (value << 24) | (pixel & 0xFFFFFF);
+				}
+			}
+		}
+		getARGBSpan(destX, destY + dy, width, destRow, destPixels);
+		compositeSpan(rule, srcRow, 0, destRow, width, srcAlpha);
+		setARGBSpan(destX, destY + dy, width, destRow, matcher);
+	}
+}
+
+/**
+ * Copies the pixel values of the given area of source into the receiver
+ * at destX, destY with blit(), when source is opaque and has the same
+ * format as the receiver. The area must already be clipped. Answers
+ * false when the pixels have to be converted.
+ */
+boolean copyPixels(ImageData source, int srcX, int srcY, int width, int height, int destX, int destY) {
+	if (source.getTransparencyType() != SWT.TRANSPARENCY_NONE || source.alpha != -1) return false;
+	if (source.depth != depth || source.palette.isDirect != palette.isDirect || source.getByteOrder() != getByteOrder()) return false;
+	PaletteData srcPalette = source.palette;
+	if (palette.isDirect) {
+		if (srcPalette.redMask != palette.redMask || srcPalette.greenMask != palette.greenMask || srcPalette.blueMask != palette.blueMask) return false;
+		blit(BLIT_SRC,
+			source.data, depth, source.bytesPerLine, getByteOrder(), srcX, srcY, width, height, palette.redMask, palette.greenMask, palette.blueMask,
+			ALPHA_OPAQUE, null, 0, 0, 0,
+			data, depth, bytesPerLine, getByteOrder(), destX, destY, width, height, palette.redMask, palette.greenMask, palette.blueMask,
+			false, false);
+	} else {
+		if (!java.util.Arrays.equals(srcPalette.colors, palette.colors)) return false;
+		blit(BLIT_SRC,
+			source.data, depth, source.bytesPerLine, getByteOrder(), srcX, srcY, width, height, null, null, null,
+			ALPHA_OPAQUE, null, 0, 0, 0,
+			data, depth, bytesPerLine, getByteOrder(), destX, destY, width, height, null, null, null,
+			false, false);
+	}
+	if (alphaData != null) {
+		for (int y = destY; y < destY + height; y++) {
+			java.util.Arrays.fill(alphaData, y * this.width + destX, y * this.width + destX + width, (byte)0xFF);
+		}
+	}
+	return true;
+}
+
+/**
+ * Answers the index of the byte that holds the channel of the given mask
+ * in pixels of bpp bytes stored most significant byte first, or -1 when
+ * the mask is not a whole byte.
+ */
+static int getByteIndex(int mask, int bpp) {
+	for (int i = 0; i < bpp; i++) {
+		if (mask == 0xFF << (i * 8)) return bpp - 1 - i;
+	}
+	return -1;
+}
+
+static int fromEight(int value, int width) {
+	return width <= 8 ? value >>> (8 - width) : value << (width - 8);
+}
+
+static int toEight(int pixel, int mask, int shift, int width) {
+	int value = (pixel & mask) >>> shift;
+	return width >= 8 ? value >>> (width - 8) : ANY_TO_EIGHT[width][value] & 0xFF;
+}
+
+/**
+ * Sets the pixels of the rectangle at <code>x</code>, <code>y</code> of
+ * the receiver from ARGB values, with the alpha in the most significant
+ * byte and the blue in the least significant byte. Row <code>i</code> of
+ * the rectangle starts at <code>offset + i * scanSize</code> in
+ * <code>argb</code>. Indirect palette images get the closest color of
+ * their palette.
+ * <p>
+ * The alpha is stored in the alpha data of the receiver. A transparency
+ * mask, transparent pixel or global alpha of the receiver is replaced by
+ * alpha data, and a receiver without transparency gets alpha data when
+ * one of the values is not opaque.
+ * </p>
+ *
+ * @param x the x coordinate of the rectangle
+ * @param y the y coordinate of the rectangle
+ * @param width the width of the rectangle
+ * @param height the height of the rectangle
+ * @param argb the ARGB values to set
+ * @param offset the index of the first value in the array
+ * @param scanSize the distance between the rows of the rectangle in the array
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if argb is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the rectangle is not inside the receiver</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the rectangle does not fit in the array</li>
+ * </ul>
+ *
+ * @see #getARGB(int, int, int, int, int[], int, int)
+ *
+ * @since 3.106
+ */
+public void setARGB(int x, int y, int width, int height, int[] argb, int offset, int scanSize) {
+	if (argb == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	checkARGBArea(x, y, width, height, argb.length, offset, scanSize);
+	if (width == 0 || height == 0) return;
+	if (alpha != -1 || maskData != null || transparentPixel != -1) convertToAlphaData();
+	int[] row = new int[width];
+	PaletteMatcher matcher = palette.isDirect ? null : getPaletteMatcher();
+	for (int i = 0; i < height; i++) {
+		System.arraycopy(argb, offset + i * scanSize, row, 0, width);
+		setARGBSpan(x, y + i, width, row, matcher);
+	}
+}
+
+/**
+ * Sets the pixels of the rectangle at <code>x</code>, <code>y</code> of
+ * the receiver from ARGB values, see
+ * <code>setARGB(int, int, int, int, int[], int, int)</code>. The values
+ * are taken row by row from the position of the buffer, which is advanced
+ * by <code>width * height</code>.
+ *
+ * @param x the x coordinate of the rectangle
+ * @param y the y coordinate of the rectangle
+ * @param width the width of the rectangle
+ * @param height the height of the rectangle
+ * @param buffer the ARGB values to set
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if buffer is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the rectangle is not inside the receiver</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the rectangle does not fit in the remaining buffer</li>
+ * </ul>
+ *
+ * @see #setARGB(int, int, int, int, int[], int, int)
+ *
+ * @since 3.106
+ */
+public void setARGB(int x, int y, int width, int height, IntBuffer buffer) {
+	if (buffer == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	checkARGBArea(x, y, width, height, buffer.remaining(), 0, width);
+	if (width == 0 || height == 0) return;
+	if (alpha != -1 || maskData != null || transparentPixel != -1) convertToAlphaData();
+	int[] row = new int[width];
+	PaletteMatcher matcher = palette.isDirect ? null : getPaletteMatcher();
+	for (int i = 0; i < height; i++) {
+		buffer.get(row, 0, width);
+		setARGBSpan(x, y + i, width, row, matcher);
+	}
+}
+
 /**
  * Sets the alpha value at offset <code>x</code> in
  * scanline <code>y</code> in the receiver's alpha data.
@@ -1587,6 +2723,56 @@ public void setPixels(int x, int y, int putWidth, int[] pixels, int startIndex)
 	SWT.error(SWT.ERROR_UNSUPPORTED_DEPTH);
 }
 
+/**
+ * Transforms the color and alpha of every pixel of the receiver with a
+ * 4x5 color matrix. The matrix holds the rows of the red, green, blue
+ * and alpha results, and each row holds the factors of the red, green,
+ * blue and alpha of the pixel followed by a constant. The components
+ * are between 0 and 255 and are not premultiplied, so for instance
+ * <pre>
+ * 0.3f, 0.59f, 0.11f, 0, 0,
+ * 0.3f, 0.59f, 0.11f, 0, 0,
+ * 0.3f, 0.59f, 0.11f, 0, 0,
+ * 0,    0,     0,     1, 0
+ * </pre>
+ * turns the receiver to gray and keeps its alpha. The results are
+ * rounded and clamped to 0 and 255.
+ * <p>
+ * A transparency mask, transparent pixel or global alpha of the
+ * receiver is replaced by alpha data, and a receiver without
+ * transparency gets alpha data when the resulting alpha is not opaque.
+ * </p>
+ *
+ * @param matrix the 20 elements of the color matrix, row by row
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the matrix is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the matrix does not have 20 elements</li>
+ * </ul>
+ *
+ * @since 3.106
+ */
+public void transformColors(float[] matrix) {
+	if (matrix == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	if (matrix.length != 20) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	if (alpha != -1 || maskData != null || transparentPixel != -1) convertToAlphaData();
+	int[] pixels = palette.isDirect ? null : getARGBPixels(maskData == null);
+	int[] row = new int[width];
+	PaletteMatcher matcher = palette.isDirect ? null : getPaletteMatcher();
+	for (int y = 0; y < height; y++) {
+		getARGBSpan(0, y, width, row, pixels);
+		for (int x = 0; x < width; x++) {
+			int pixel = row[x];
+			float a = pixel >>> 24, r = (pixel >> 16) & 0xFF, g = (pixel >> 8) & 0xFF, b = pixel & 0xFF;
+			row[x] = (clamp(matrix[15] * r + matrix[16] * g + matrix[17] * b + matrix[18] * a + matrix[19]) << 24) |
+				(clamp(matrix[0] * r + matrix[1] * g + matrix[2] * b + matrix[3] * a + matrix[4]) << 16) |
+				(clamp(matrix[5] * r + matrix[6] * g + matrix[7] * b + matrix[8] * a + matrix[9]) << 8) |
+				clamp(matrix[10] * r + matrix[11] * g + matrix[12] * b + matrix[13] * a + matrix[14]);
+		}
+		setARGBSpan(0, y, width, row, matcher);
+	}
+}
+
 /**
  * Returns a palette with 2 colors: black & white.
  */
@@ -1781,6 +2967,19 @@ static void blit(int op,
 	boolean flipX, boolean flipY) {
 	if ((destWidth <= 0) || (destHeight <= 0) || (alphaMode == ALPHA_TRANSPARENT)) return;
 
+	/*** Unscaled conversion kernels ***/
+	/*
+	* The fast 32 to 32 blit below copies the unused byte of the source
+	* pixels where the kernels would write 0, so its masks are left to it.
+	*/
+	if (blitKernels && (op & BLIT_ALPHA) == 0 && srcWidth == destWidth && srcHeight == destHeight && !flipX && !flipY &&
+		!(srcDepth == 32 && srcOrder == MSB_FIRST && destDepth == 32 && destOrder == MSB_FIRST &&
+		srcRedMask == 0xFF00 && srcGreenMask == 0xff0000 && srcBlueMask == 0xff000000 &&
+		destRedMask == 0xFF0000 && destGreenMask == 0xff00 && destBlueMask == 0xff)) {
+		if (blitRows(srcData, srcDepth, srcStride, srcOrder, srcX, srcY, srcRedMask, srcGreenMask, srcBlueMask, null,
+			destData, destDepth, destStride, destOrder, destX, destY, destWidth, destHeight, destRedMask, destGreenMask, destBlueMask)) return;
+	}
+
 	// these should be supplied as params later
 	int srcAlphaMask = 0, destAlphaMask = 0;
 
@@ -2330,6 +3529,7 @@ static void blit(int op,
 	int ap = apr;
 	int destPaletteSize = 1 << destDepth;
 	if ((destReds != null) && (destReds.length < destPaletteSize)) destPaletteSize = destReds.length;
+	PaletteMatcher matcher = null;
 	byte[] paletteMapping = null;
 	boolean isExactPaletteMapping = true;
 	switch (alphaMode) {
@@ -2653,18 +3853,8 @@ static void blit(int op,
 				berr[dx] = lberr;
 			}
 			if (r != lastr || g != lastg || b != lastb) {
-				// moving the variable declarations out seems to make the JDK JIT happier...
-				for (int j = 0, dr, dg, db, distance, minDistance = 0x7fffffff; j < destPaletteSize; ++j) {
-					dr = (destReds[j] & 0xff) - r;
-					dg = (destGreens[j] & 0xff) - g;
-					db = (destBlues[j] & 0xff) - b;
-					distance = dr * dr + dg * dg + db * db;
-					if (distance < minDistance) {
-						lastindex = j;
-						if (distance == 0) break;
-						minDistance = distance;
-					}
-				}
+				if (matcher == null) matcher = new PaletteMatcher(destReds, destGreens, destBlues, destPaletteSize);
+				lastindex = matcher.match(r, g, b);
 				lastr = r; lastg = g; lastb = b;
 			}
 			if (ditherEnabled) {
@@ -2790,6 +3980,27 @@ static void blit(int op,
 			return;
 		}
 	}
+	/*** Unscaled conversion kernels ***/
+	/*
+	* Runs after the fast blit, which leaves the unused byte of 32 bit
+	* pixels untouched where the kernels would write 0.
+	*/
+	if (blitKernels && (op & BLIT_ALPHA) == 0 && srcWidth == destWidth && srcHeight == destHeight && !flipX && !flipY) {
+		int destRedShift = getChannelShift(destRedMask), destRedWidth = getChannelWidth(destRedMask, destRedShift);
+		int destGreenShift = getChannelShift(destGreenMask), destGreenWidth = getChannelWidth(destGreenMask, destGreenShift);
+		int destBlueShift = getChannelShift(destBlueMask), destBlueWidth = getChannelWidth(destBlueMask, destBlueShift);
+		if (destRedWidth <= 8 && destGreenWidth <= 8 && destBlueWidth <= 8) {
+			int[] pixels = new int[srcReds.length];
+			for (int i = 0; i < pixels.length; i++) {
+				pixels[i] = ((srcReds[i] & 0xff) >>> (8 - destRedWidth) << destRedShift) |
+					((srcGreens[i] & 0xff) >>> (8 - destGreenWidth) << destGreenShift) |
+					((srcBlues[i] & 0xff) >>> (8 - destBlueWidth) << destBlueShift);
+			}
+			if (blitRows(srcData, srcDepth, srcStride, srcOrder, srcX, srcY, 0, 0, 0, pixels,
+				destData, destDepth, destStride, destOrder, destX, destY, destWidth, destHeight, destRedMask, destGreenMask, destBlueMask)) return;
+		}
+	}
+
 	// these should be supplied as params later
 	final int destAlphaMask = 0;
 
@@ -3240,6 +4451,7 @@ static void blit(int op,
 	final int[] rerr, gerr, berr;
 	int destPaletteSize = 1 << destDepth;
 	if ((destReds != null) && (destReds.length < destPaletteSize)) destPaletteSize = destReds.length;
+	PaletteMatcher matcher = null;
 	if (ditherEnabled) {
 		rerr = new int[destWidth + 2];
 		gerr = new int[destWidth + 2];
@@ -3386,18 +4598,8 @@ static void blit(int op,
 				berr[dx] = lberr;
 			}
 			if (r != lastr || g != lastg || b != lastb) {
-				// moving the variable declarations out seems to make the JDK JIT happier...
-				for (int j = 0, dr, dg, db, distance, minDistance = 0x7fffffff; j < destPaletteSize; ++j) {
-					dr = (destReds[j] & 0xff) - r;
-					dg = (destGreens[j] & 0xff) - g;
-					db = (destBlues[j] & 0xff) - b;
-					distance = dr * dr + dg * dg + db * db;
-					if (distance < minDistance) {
-						lastindex = j;
-						if (distance == 0) break;
-						minDistance = distance;
-					}
-				}
+				if (matcher == null) matcher = new PaletteMatcher(destReds, destGreens, destBlues, destPaletteSize);
+				lastindex = matcher.match(r, g, b);
 				lastr = r; lastg = g; lastb = b;
 			}
 			if (ditherEnabled) {
@@ -3441,6 +4643,245 @@ static void blit(int op,
 	}
 }
 
+/**
+ * Performs an unscaled, unflipped BLIT_SRC into a direct palette
+ * image a row at a time. Each source row is expanded into destination
+ * pixel values by a reader selected from the source type, then stored
+ * by a writer selected from the destination type, so the inner loops
+ * are free of the per pixel switches of the comprehensive blit.
+ * <p>
+ * When <code>srcPixels</code> is not null the source is an index
+ * palette image and <code>srcPixels</code> holds the destination pixel
+ * value of each index, otherwise the source is a direct palette image
+ * described by its masks.
+ * </p>
+ *
+ * @return false if the combination is not handled, in which case
+ *         nothing has been written
+ */
+static boolean blitRows(
+	byte[] srcData, int srcDepth, int srcStride, int srcOrder, int srcX, int srcY,
+	int srcRedMask, int srcGreenMask, int srcBlueMask, int[] srcPixels,
+	byte[] destData, int destDepth, int destStride, int destOrder,
+	int destX, int destY, int width, int height,
+	int destRedMask, int destGreenMask, int destBlueMask) {
+	final int dbpp, dtype;
+	switch (destDepth) {
+		case 8: dbpp = 1; dtype = TYPE_GENERIC_8; break;
+		case 16: dbpp = 2; dtype = (destOrder == MSB_FIRST) ? TYPE_GENERIC_16_MSB : TYPE_GENERIC_16_LSB; break;
+		case 24: dbpp = 3; dtype = TYPE_GENERIC_24; break;
+		case 32: dbpp = 4; dtype = (destOrder == MSB_FIRST) ? TYPE_GENERIC_32_MSB : TYPE_GENERIC_32_LSB; break;
+		default: return false;
+	}
+	final int sbpp, stype;
+	if (srcPixels != null) {
+		/* sp is counted in pixels for the index types */
+		sbpp = 0;
+		switch (srcDepth) {
+			case 8: stype = TYPE_INDEX_8; break;
+			case 4: stype = TYPE_INDEX_4; srcStride <<= 1; break;
+			case 2: stype = TYPE_INDEX_2; srcStride <<= 2; break;
+			case 1: stype = (srcOrder == MSB_FIRST) ? TYPE_INDEX_1_MSB : TYPE_INDEX_1_LSB; srcStride <<= 3; break;
+			default: return false;
+		}
+	} else {
+		switch (srcDepth) {
+			case 8: sbpp = 1; stype = TYPE_GENERIC_8; break;
+			case 16: sbpp = 2; stype = (srcOrder == MSB_FIRST) ? TYPE_GENERIC_16_MSB : TYPE_GENERIC_16_LSB; break;
+			case 24: sbpp = 3; stype = TYPE_GENERIC_24; break;
+			case 32: sbpp = 4; stype = (srcOrder == MSB_FIRST) ? TYPE_GENERIC_32_MSB : TYPE_GENERIC_32_LSB; break;
+			default: return false;
+		}
+	}
+	int sp = srcY * srcStride + srcX * (srcPixels != null ? 1 : sbpp);
+	int dp = destY * destStride + destX * dbpp;
+	if (srcPixels == null && stype == dtype && srcRedMask == destRedMask && srcGreenMask == destGreenMask && srcBlueMask == destBlueMask) {
+		/* Same format, copy whole rows */
+		for (int y = 0; y < height; y++, sp += srcStride, dp += destStride) {
+			System.arraycopy(srcData, sp, destData, dp, width * dbpp);
+		}
+		return true;
+	}
+	int srcRedShift = 0, srcGreenShift = 0, srcBlueShift = 0;
+	int destRedShift = getChannelShift(destRedMask), destGreenShift = getChannelShift(destGreenMask), destBlueShift = getChannelShift(destBlueMask);
+	byte[] srcReds = null, srcGreens = null, srcBlues = null;
+	boolean byteChannels = false;
+	int destRedPreShift = 0, destGreenPreShift = 0, destBluePreShift = 0;
+	if (srcPixels == null) {
+		srcRedShift = getChannelShift(srcRedMask);
+		srcGreenShift = getChannelShift(srcGreenMask);
+		srcBlueShift = getChannelShift(srcBlueMask);
+		int srcRedWidth = getChannelWidth(srcRedMask, srcRedShift);
+		int srcGreenWidth = getChannelWidth(srcGreenMask, srcGreenShift);
+		int srcBlueWidth = getChannelWidth(srcBlueMask, srcBlueShift);
+		int destRedWidth = getChannelWidth(destRedMask, destRedShift);
+		int destGreenWidth = getChannelWidth(destGreenMask, destGreenShift);
+		int destBlueWidth = getChannelWidth(destBlueMask, destBlueShift);
+		if (srcRedWidth > 8 || srcGreenWidth > 8 || srcBlueWidth > 8) return false;
+		if (destRedWidth > 8 || destGreenWidth > 8 || destBlueWidth > 8) return false;
+		byteChannels = srcRedWidth == 8 && srcGreenWidth == 8 && srcBlueWidth == 8 &&
+			destRedWidth == 8 && destGreenWidth == 8 && destBlueWidth == 8;
+		srcReds = ANY_TO_EIGHT[srcRedWidth];
+		srcGreens = ANY_TO_EIGHT[srcGreenWidth];
+		srcBlues = ANY_TO_EIGHT[srcBlueWidth];
+		destRedPreShift = 8 - destRedWidth;
+		destGreenPreShift = 8 - destGreenWidth;
+		destBluePreShift = 8 - destBlueWidth;
+	}
+	int[] row = new int[width];
+	for (int y = 0; y < height; y++, sp += srcStride, dp += destStride) {
+		/*** READ ROW ***/
+		if (srcPixels != null) {
+			readIndexRow(stype, srcData, sp, srcPixels, row, width);
+		} else {
+			readDirectRow(stype, srcData, sp, row, width);
+			if (byteChannels) {
+				for (int x = 0; x < width; x++) {
+					final int data = row[x];
+					row[x] = (((data >>> srcRedShift) & 0xff) << destRedShift) |
+						(((data >>> srcGreenShift) & 0xff) << destGreenShift) |
+						(((data >>> srcBlueShift) & 0xff) << destBlueShift);
+				}
+			} else {
+				for (int x = 0; x < width; x++) {
+					final int data = row[x];
+					row[x] = ((srcReds[(data & srcRedMask) >>> srcRedShift] & 0xff) >>> destRedPreShift << destRedShift) |
+						((srcGreens[(data & srcGreenMask) >>> srcGreenShift] & 0xff) >>> destGreenPreShift << destGreenShift) |
+						((srcBlues[(data & srcBlueMask) >>> srcBlueShift] & 0xff) >>> destBluePreShift << destBlueShift);
+				}
+			}
+		}
+		/*** WRITE ROW ***/
+		writeDirectRow(dtype, row, width, destData, dp);
+	}
+	return true;
+}
+
+/**
+ * Reads a row of direct source pixels as packed integers.
+ */
+static void readDirectRow(int stype, byte[] srcData, int sp, int[] row, int width) {
+	switch (stype) {
+		case TYPE_GENERIC_8:
+			for (int x = 0; x < width; x++, sp++) {
+				row[x] = srcData[sp] & 0xff;
+			}
+			break;
+		case TYPE_GENERIC_16_MSB:
+			for (int x = 0; x < width; x++, sp += 2) {
+				row[x] = ((srcData[sp] & 0xff) << 8) | (srcData[sp + 1] & 0xff);
+			}
+			break;
+		case TYPE_GENERIC_16_LSB:
+			for (int x = 0; x < width; x++, sp += 2) {
+				row[x] = ((srcData[sp + 1] & 0xff) << 8) | (srcData[sp] & 0xff);
+			}
+			break;
+		case TYPE_GENERIC_24:
+			for (int x = 0; x < width; x++, sp += 3) {
+				row[x] = ((srcData[sp] & 0xff) << 16) | ((srcData[sp + 1] & 0xff) << 8) | (srcData[sp + 2] & 0xff);
+			}
+			break;
+		case TYPE_GENERIC_32_MSB:
+			for (int x = 0; x < width; x++, sp += 4) {
+				row[x] = ((srcData[sp] & 0xff) << 24) | ((srcData[sp + 1] & 0xff) << 16) | ((srcData[sp + 2] & 0xff) << 8) | (srcData[sp + 3] & 0xff);
+			}
+			break;
+		case TYPE_GENERIC_32_LSB:
+			for (int x = 0; x < width; x++, sp += 4) {
+				row[x] = ((srcData[sp + 3] & 0xff) << 24) | ((srcData[sp + 2] & 0xff) << 16) | ((srcData[sp + 1] & 0xff) << 8) | (srcData[sp] & 0xff);
+			}
+			break;
+	}
+}
+
+/**
+ * Reads a row of index source pixels, mapping each index through
+ * <code>pixels</code>. The source position is counted in pixels.
+ */
+static void readIndexRow(int stype, byte[] srcData, int sp, int[] pixels, int[] row, int width) {
+	switch (stype) {
+		case TYPE_INDEX_8:
+			for (int x = 0; x < width; x++, sp++) {
+				row[x] = pixels[srcData[sp] & 0xff];
+			}
+			break;
+		case TYPE_INDEX_4:
+			for (int x = 0; x < width; x++, sp++) {
+				row[x] = pixels[(srcData[sp >> 1] >>> ((~sp & 1) << 2)) & 0x0f];
+			}
+			break;
+		case TYPE_INDEX_2:
+			for (int x = 0; x < width; x++, sp++) {
+				row[x] = pixels[(srcData[sp >> 2] >>> (6 - (sp & 3) * 2)) & 0x03];
+			}
+			break;
+		case TYPE_INDEX_1_MSB:
+			for (int x = 0; x < width; x++, sp++) {
+				row[x] = pixels[(srcData[sp >> 3] >>> (7 - (sp & 7))) & 0x01];
+			}
+			break;
+		case TYPE_INDEX_1_LSB:
+			for (int x = 0; x < width; x++, sp++) {
+				row[x] = pixels[(srcData[sp >> 3] >>> (sp & 7)) & 0x01];
+			}
+			break;
+	}
+}
+
+/**
+ * Writes a row of packed destination pixels.
+ */
+static void writeDirectRow(int dtype, int[] row, int width, byte[] destData, int dp) {
+	switch (dtype) {
+		case TYPE_GENERIC_8:
+			for (int x = 0; x < width; x++, dp++) {
+				destData[dp] = (byte) row[x];
+			}
+			break;
+		case TYPE_GENERIC_16_MSB:
+			for (int x = 0; x < width; x++, dp += 2) {
+				final int data = row[x];
+				destData[dp] = (byte) (data >>> 8);
+				destData[dp + 1] = (byte) data;
+			}
+			break;
+		case TYPE_GENERIC_16_LSB:
+			for (int x = 0; x < width; x++, dp += 2) {
+				final int data = row[x];
+				destData[dp] = (byte) data;
+				destData[dp + 1] = (byte) (data >>> 8);
+			}
+			break;
+		case TYPE_GENERIC_24:
+			for (int x = 0; x < width; x++, dp += 3) {
+				final int data = row[x];
+				destData[dp] = (byte) (data >>> 16);
+				destData[dp + 1] = (byte) (data >>> 8);
+				destData[dp + 2] = (byte) data;
+			}
+			break;
+		case TYPE_GENERIC_32_MSB:
+			for (int x = 0; x < width; x++, dp += 4) {
+				final int data = row[x];
+				destData[dp] = (byte) (data >>> 24);
+				destData[dp + 1] = (byte) (data >>> 16);
+				destData[dp + 2] = (byte) (data >>> 8);
+				destData[dp + 3] = (byte) data;
+			}
+			break;
+		case TYPE_GENERIC_32_LSB:
+			for (int x = 0; x < width; x++, dp += 4) {
+				final int data = row[x];
+				destData[dp] = (byte) data;
+				destData[dp + 1] = (byte) (data >>> 8);
+				destData[dp + 2] = (byte) (data >>> 16);
+				destData[dp + 3] = (byte) (data >>> 24);
+			}
+			break;
+	}
+}
+
 /**
  * Computes the required channel shift from a mask.
  */
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+import java.io.*;
+
+/**
+ * Interface to add image file formats to those that <code>ImageLoader</code>
+ * can read.
+ * <p>
+ * Providers are found with <code>java.util.ServiceLoader</code>, so an
+ * implementation is registered by naming it in a
+ * <code>META-INF/services/org.eclipse.swt.graphics.ImageFormatProvider</code>
+ * resource visible to the context class loader of the thread that first
+ * loads an image in a format that SWT does not support. The built in formats
+ * are always tried first, and providers are asked in the order they are found.
+ * </p>
+ *
+ * @see ImageLoader#load(InputStream)
+ * @since 3.106
+ */
+public interface ImageFormatProvider {
+
+	/**
+	 * Returns whether the stream starting with the given bytes is in
+	 * a format this provider can read.
+	 *
+	 * @param header the first 32 bytes of the stream, or all of them if the
+	 * stream is shorter
+	 * @return <code>true</code> if the stream should be read by this provider,
+	 * and <code>false</code> otherwise
+	 */
+	boolean isFormat(byte[] header);
+
+	/**
+	 * Reads the images in the given stream, which is positioned at its start.
+	 * Providers of animated formats should also set the animation fields of
+	 * the loader, such as <code>logicalScreenWidth</code> and
+	 * <code>repeatCount</code>, and may report progress to its listeners.
+	 *
+	 * @param stream the stream to read, which must not be closed
+	 * @param loader the loader reading the images
+	 * @return the images in the stream, at least one
+	 * @throws IOException if the stream cannot be read
+	 */
+	ImageData[] load(InputStream stream, ImageLoader loader) throws IOException;
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,6 +13,9 @@ package org.eclipse.swt.graphics;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
 
 import org.eclipse.swt.*;
 import org.eclipse.swt.internal.image.*;
@@ -38,7 +41,12 @@ import org.eclipse.swt.internal.image.*;
  * <li>load interlaced GIF/PNG images</li>
  * <li>load progressive JPEG images</li>
  * </ul>
+ * <p>
+ * Other formats can be loaded by registering an
+ * <code>ImageFormatProvider</code>.
+ * </p>
  *
+ * @see ImageFormatProvider
  * @see <a href="http://www.eclipse.org/swt/examples.php">SWT Example: ImageAnalyzer</a>
  * @see <a href="http://www.eclipse.org/swt/">Sample code and further information</a>
  */
@@ -97,6 +105,70 @@ public class ImageLoader {
 	 */
 	public int compression;
 
+	/**
+	 * The width hint used when loading images, in pixels.
+	 * <p>
+	 * Decoders that can reduce the resolution while decoding
+	 * (currently JPEG, by 1/2, 1/4 or 1/8) return the smallest
+	 * such image which is still at least <code>loadWidth</code>
+	 * pixels wide and <code>loadHeight</code> pixels high. This
+	 * is much faster than decoding at full size and scaling the
+	 * result when only a thumbnail is needed. Other formats
+	 * ignore the hint. The default is 0 which means 'full size'.
+	 * </p><p>
+	 * Unlike the other fields this one is not cleared by load.
+	 * </p>
+	 *
+	 * @since 3.106
+	 */
+	public int loadWidth;
+
+	/**
+	 * The height hint used when loading images, in pixels.
+	 * See <code>loadWidth</code> for details. The default is 0
+	 * which means 'full size'.
+	 *
+	 * @since 3.106
+	 */
+	public int loadHeight;
+
+	/**
+	 * The number of rows between incremental <code>ImageLoaderEvent</code>s
+	 * for images which are stored row by row: baseline JPEG,
+	 * non-interlaced PNG and uncompressed BMP.
+	 * <p>
+	 * When this is positive and listeners are registered, a copy of
+	 * the partially loaded image is sent every <code>incrementalRows</code>
+	 * rows as the data arrives, followed by an event with the
+	 * <code>endOfImage</code> flag set. This lets viewers paint large
+	 * images loaded from slow streams early. The default is 0 which
+	 * means these images are not reported incrementally.
+	 * </p><p>
+	 * Unlike the other fields this one is not cleared by load.
+	 * </p>
+	 *
+	 * @since 3.106
+	 */
+	public int incrementalRows;
+
+	/**
+	 * The index of the page to load from files holding several
+	 * images which are not an animation (currently multi-page TIFF).
+	 * <p>
+	 * When this is not negative, only that page is decoded and
+	 * <code>data</code> holds it alone; the pages before it are
+	 * skipped without being decoded and the pages after it are
+	 * not read. Loading fails with <code>ERROR_INVALID_IMAGE</code>
+	 * if the file has fewer pages. Other formats ignore the field.
+	 * The default is -1 which means 'all pages'.
+	 * </p><p>
+	 * Unlike the other fields this one is not cleared by load.
+	 * </p>
+	 *
+	 * @since 3.106
+	 */
+	public int loadPage = -1;
+
 	/*
 	 * the set of ImageLoader event listeners, created on demand
 	 */
@@ -167,20 +239,117 @@ public ImageData[] load(InputStream stream) {
  */
 public ImageData[] load(String filename) {
 	if (filename == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
-	InputStream stream = null;
-	try {
-		stream = new FileInputStream(filename);
-		return load(stream);
-	} catch (IOException e) {
-		SWT.error(SWT.ERROR_IO, e);
-	} finally {
+	reset();
+	data = FileFormat.load(filename, this);
+	return data;
+}
+
+/**
+ * Loads the images in each of the given input streams, at most
+ * <code>parallelism</code> of them at a time, with the given executor.
+ * Every stream is read by its own <code>ImageLoader</code>, so the loads
+ * share no state and need neither a display nor the UI thread. The streams
+ * are not closed.
+ * <p>
+ * The answer holds one future for each stream, in the same order. A future
+ * completes with the images in its stream as answered by
+ * <code>load(InputStream)</code>, or exceptionally with the exception
+ * that method throws. Cancelling a future before its stream is read skips
+ * that stream; a load that has started runs to completion.
+ * </p>
+ *
+ * @param streams the input streams to load the images from
+ * @param executor the executor to load the images with, or <code>null</code>
+ * for <code>ForkJoinPool.commonPool()</code>
+ * @param parallelism the maximum number of streams read at the same time
+ * @return a future for the images of each stream
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the array of streams or any of its elements is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the parallelism is less than 1</li>
+ * </ul>
+ *
+ * @see #load(InputStream)
+ * @since 3.106
+ */
+public static List<CompletableFuture<ImageData[]>> loadAll(InputStream[] streams, Executor executor, int parallelism) {
+	return loadAll(streams, stream -> new ImageLoader().load(stream), executor, parallelism);
+}
+
+/**
+ * Loads the images in each of the files with the given names, at most
+ * <code>parallelism</code> of them at a time, with the given executor.
+ * Every file is read by its own <code>ImageLoader</code>, so the loads
+ * share no state and need neither a display nor the UI thread.
+ * <p>
+ * The answer holds one future for each file, in the same order. A future
+ * completes with the images in its file as answered by
+ * <code>load(String)</code>, or exceptionally with the exception that
+ * method throws. Cancelling a future before its file is read skips that
+ * file; a load that has started runs to completion.
+ * </p>
+ *
+ * @param filenames the names of the files to load the images from
+ * @param executor the executor to load the images with, or <code>null</code>
+ * for <code>ForkJoinPool.commonPool()</code>
+ * @param parallelism the maximum number of files read at the same time
+ * @return a future for the images of each file
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the array of file names or any of its elements is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the parallelism is less than 1</li>
+ * </ul>
+ *
+ * @see #load(String)
+ * @since 3.106
+ */
+public static List<CompletableFuture<ImageData[]>> loadAll(String[] filenames, Executor executor, int parallelism) {
+	return loadAll(filenames, filename -> new ImageLoader().load(filename), executor, parallelism);
+}
+
+static <T> List<CompletableFuture<ImageData[]>> loadAll(T[] sources, Function<T, ImageData[]> load, Executor executor, int parallelism) {
+	if (sources == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	for (T source : sources) {
+		if (source == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	}
+	if (parallelism < 1) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	if (executor == null) executor = ForkJoinPool.commonPool();
+	List<CompletableFuture<ImageData[]>> results = new ArrayList<>(sources.length);
+	for (int i = 0; i < sources.length; i++) {
+		results.add(new CompletableFuture<>());
+	}
+	/*
+	* Rather than one task per source, submit as many tasks as loads may run
+	* at the same time and let each of them take the next source until none
+	* is left. This bounds the parallelism whatever the executor.
+	*/
+	AtomicInteger next = new AtomicInteger();
+	Runnable worker = () -> {
+		int index;
+		while ((index = next.getAndIncrement()) < sources.length) {
+			CompletableFuture<ImageData[]> result = results.get(index);
+			if (result.isDone()) continue;
+			try {
+				result.complete(load.apply(sources[index]));
+			} catch (Throwable e) {
+				result.completeExceptionally(e);
+			}
+		}
+	};
+	int workers = Math.min(parallelism, sources.length);
+	for (int i = 0; i < workers; i++) {
 		try {
-			if (stream != null) stream.close();
-		} catch (IOException e) {
-			// Ignore error
+			executor.execute(worker);
+		} catch (RejectedExecutionException e) {
+			/* the workers already running load all sources */
+			if (i > 0) break;
+			for (CompletableFuture<ImageData[]> result : results) {
+				result.completeExceptionally(e);
+			}
+			break;
 		}
 	}
-	return null;
+	return results;
 }
 
 /**
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+
+/**
+ * Internal class that finds the closest color of an indirect palette,
+ * giving the same answer as a linear scan of the palette: the lowest
+ * index among the colors at the smallest euclidean distance.
+ * <p>
+ * The color space is divided in cells of 16x16x16 colors. The first time
+ * a color of a cell is matched, the palette colors that can be the closest
+ * to some color of the cell are found: those that are not further from the
+ * cell than the furthest point of the cell is from the palette color which
+ * is closest to all of it. Only these candidates are searched afterwards.
+ * The answers are also remembered in a direct mapped cache, as images
+ * typically repeat a small number of colors.
+ * </p>
+ */
+final class PaletteMatcher {
+
+	static final int CELL_BITS = 4;
+	static final int CACHE_BITS = 12;
+
+	final int[] reds, greens, blues;
+	/* The candidates of each cell, as index, red, green and blue */
+	final int[][] cells = new int[1 << (3 * (8 - CELL_BITS))][];
+	final int[] keys = new int[1 << CACHE_BITS];
+	final byte[] values = new byte[1 << CACHE_BITS];
+
+/**
+ * Constructs a matcher for the first size colors of a palette.
+ */
+PaletteMatcher(PaletteData palette, int size) {
+	this(palette.getRGBs(), size);
+}
+
+PaletteMatcher(RGB[] rgbs, int size) {
+	this(getComponents(rgbs, 16), getComponents(rgbs, 8), getComponents(rgbs, 0), size);
+}
+
+/**
+ * Constructs a matcher for the first size colors of a palette, given by
+ * its red, green and blue component intensities.
+ */
+PaletteMatcher(byte[] reds, byte[] greens, byte[] blues, int size) {
+	this.reds = new int[size];
+	this.greens = new int[size];
+	this.blues = new int[size];
+	for (int i = 0; i < size; i++) {
+		this.reds[i] = reds[i] & 0xFF;
+		this.greens[i] = greens[i] & 0xFF;
+		this.blues[i] = blues[i] & 0xFF;
+	}
+	java.util.Arrays.fill(keys, -1);
+}
+
+static byte[] getComponents(RGB[] rgbs, int shift) {
+	byte[] components = new byte[rgbs.length];
+	for (int i = 0; i < rgbs.length; i++) {
+		RGB rgb = rgbs[i];
+		if (rgb == null) continue;
+		components[i] = (byte)(shift == 16 ? rgb.red : shift == 8 ? rgb.green : rgb.blue);
+	}
+	return components;
+}
+
+/**
+ * Answers the index of the palette color closest to the given color,
+ * or 0 when the palette is empty.
+ */
+int match(int red, int green, int blue) {
+	int rgb = (red << 16) | (green << 8) | blue;
+	int slot = (rgb * 0x9E3779B1) >>> (32 - CACHE_BITS);
+	if (keys[slot] == rgb) return values[slot] & 0xFF;
+	int index = search(red, green, blue);
+	keys[slot] = rgb;
+	values[slot] = (byte)index;
+	return index;
+}
+
+int search(int red, int green, int blue) {
+	int shift = 8 - CELL_BITS;
+	int cell = ((red >> shift) << (2 * CELL_BITS)) | ((green >> shift) << CELL_BITS) | (blue >> shift);
+	int[] candidates = cells[cell];
+	if (candidates == null) candidates = cells[cell] = getCandidates(red >> shift << shift, green >> shift << shift, blue >> shift << shift);
+	int nearest = 0, minDistance = 0x7fffffff;
+	for (int i = 0; i < candidates.length; i += 4) {
+		int dr = candidates[i + 1] - red, dg = candidates[i + 2] - green, db = candidates[i + 3] - blue;
+		int distance = dr * dr + dg * dg + db * db;
+		if (distance < minDistance) {
+			nearest = candidates[i];
+			if (distance == 0) break;
+			minDistance = distance;
+		}
+	}
+	return nearest;
+}
+
+/*
+* Answer the palette colors that can be the closest to a color of the cell
+* starting at the given color, in the order of the palette.
+*/
+int[] getCandidates(int red, int green, int blue) {
+	int size = reds.length, last = (1 << (8 - CELL_BITS)) - 1;
+	int[] minDistances = new int[size];
+	int threshold = 0x7fffffff;
+	for (int i = 0; i < size; i++) {
+		int r = reds[i], g = greens[i], b = blues[i];
+		int dr = r < red ? red - r : r > red + last ? r - red - last : 0;
+		int dg = g < green ? green - g : g > green + last ? g - green - last : 0;
+		int db = b < blue ? blue - b : b > blue + last ? b - blue - last : 0;
+		minDistances[i] = dr * dr + dg * dg + db * db;
+		dr = Math.max(Math.abs(r - red), Math.abs(r - red - last));
+		dg = Math.max(Math.abs(g - green), Math.abs(g - green - last));
+		db = Math.max(Math.abs(b - blue), Math.abs(b - blue - last));
+		threshold = Math.min(threshold, dr * dr + dg * dg + db * db);
+	}
+	int count = 0;
+	for (int i = 0; i < size; i++) {
+		if (minDistances[i] <= threshold) count++;
+	}
+	int[] candidates = new int[count * 4];
+	for (int i = 0, j = 0; i < size; i++) {
+		if (minDistances[i] <= threshold) {
+			candidates[j++] = i;
+			candidates[j++] = reds[i];
+			candidates[j++] = greens[i];
+			candidates[j++] = blues[i];
+		}
+	}
+	return candidates;
+}
+}
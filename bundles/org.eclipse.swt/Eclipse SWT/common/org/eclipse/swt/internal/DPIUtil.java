@@ -68,8 +68,9 @@ public class DPIUtil {
 	 * </ul>
 	 * The current default is to use "nearest", except on
 	 * GTK when the deviceZoom is not an integer multiple of 100%.
-	 * The smooth strategy currently doesn't work on Win32 and Cocoa, see
-	 * <a href="https://bugs.eclipse.org/493455">bug 493455</a>.
+	 * The smooth strategy resamples the ImageData directly, see
+	 * {@link ImageData#scaledTo(int, int, int)}, so it does not need
+	 * a native image or GC.
 	 */
 	private static final String SWT_AUTOSCALE_METHOD = "swt.autoScale.method";
 	static {
@@ -221,25 +222,7 @@ private static ImageData autoScaleImageData (Device device, final ImageData imag
 	int scaledHeight = Math.round ((float) height * scaleFactor);
 	switch (autoScaleMethod) {
 	case SMOOTH:
-		Image original = new Image (device, (ImageDataProvider) zoom -> imageData);
-
-		/* Create a 24 bit image data with alpha channel */
-		final ImageData resultData = new ImageData (scaledWidth, scaledHeight, 24, new PaletteData (0xFF, 0xFF00, 0xFF0000));
-		resultData.alphaData = new byte [scaledWidth * scaledHeight];
-
-		Image resultImage = new Image (device, (ImageDataProvider) zoom -> resultData);
-		GC gc = new GC (resultImage);
-		gc.setAntialias (SWT.ON);
-		gc.drawImage (original, 0, 0, DPIUtil.autoScaleDown (width), DPIUtil.autoScaleDown (height),
-				/* E.g. destWidth here is effectively DPIUtil.autoScaleDown (scaledWidth), but avoiding rounding errors.
-				 * Nevertheless, we still have some rounding errors due to the point-based API GC#drawImage(..).
-				 */
-				0, 0, Math.round (DPIUtil.autoScaleDown ((float) width * scaleFactor)), Math.round (DPIUtil.autoScaleDown ((float) height * scaleFactor)));
-		gc.dispose ();
-		original.dispose ();
-		ImageData result = resultImage.getImageDataAtCurrentZoom ();
-		resultImage.dispose ();
-		return result;
+		return imageData.scaledTo (scaledWidth, scaledHeight, SWT.DEFAULT);
 	case NEAREST:
 	default:
 		return imageData.scaledTo (scaledWidth, scaledHeight);
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.internal;
+
+
+import java.lang.ref.*;
+import java.util.*;
+import java.util.function.*;
+
+import org.eclipse.swt.graphics.*;
+
+/**
+ * A cache of decoded images, keyed by their source (a file name or an
+ * <code>ImageDataProvider</code>) and the zoom level they are scaled for,
+ * so that images created many times from the same source are decoded and
+ * scaled once.
+ * <p>
+ * The shared cache is disabled unless the system property
+ * <code>swt.imageCache</code> gives its size in kilobytes. Once the pixel
+ * data of the cached images exceeds that size, the least recently used
+ * images are evicted. Images are also held through soft references, so the
+ * garbage collector reclaims them before running out of memory.
+ * </p><p>
+ * The <code>ImageData</code> answered by the cache are shared between all
+ * the callers that ask for the same source and zoom, so they must not be
+ * modified. Files are not checked for changes once they are cached.
+ * </p>
+ */
+public final class ImageDataCache {
+
+	/**
+	 * System property that enables the shared cache and gives its size in
+	 * kilobytes of pixel data.
+	 */
+	static final String SWT_IMAGE_CACHE = "swt.imageCache"; //$NON-NLS-1$
+
+	/**
+	 * The memory an entry takes besides its pixel data, counted
+	 * towards the size of the cache.
+	 */
+	static final int ENTRY_OVERHEAD = 128;
+
+	static final ImageDataCache shared = new ImageDataCache(getSharedSize());
+
+	static final class Key {
+		final Object source;
+		final int zoom;
+
+		Key(Object source, int zoom) {
+			this.source = source;
+			this.zoom = zoom;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Key)) return false;
+			Key key = (Key) object;
+			return zoom == key.zoom && source.equals(key.source);
+		}
+
+		@Override
+		public int hashCode() {
+			return source.hashCode() * 31 + zoom;
+		}
+	}
+
+	static final class Entry extends SoftReference<ImageData> {
+		final Key key;
+		final long size;
+
+		Entry(Key key, ImageData data, long size, ReferenceQueue<ImageData> queue) {
+			super(data, queue);
+			this.key = key;
+			this.size = size;
+		}
+	}
+
+	final long maxSize;
+	final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	final ReferenceQueue<ImageData> queue = new ReferenceQueue<>();
+	long size;
+	int hitCount, missCount, evictionCount;
+
+static long getSharedSize() {
+	String value = System.getProperty(SWT_IMAGE_CACHE);
+	if (value == null) return 0;
+	try {
+		return Math.max(0, Long.parseLong(value)) * 1024;
+	} catch (NumberFormatException e) {
+		return 0;
+	}
+}
+
+/**
+ * Constructs a cache holding at most <code>maxSize</code> bytes of pixel
+ * data. A cache with a size of 0 is disabled and keeps nothing.
+ *
+ * @param maxSize the size of the cache in bytes
+ */
+public ImageDataCache(long maxSize) {
+	this.maxSize = maxSize;
+}
+
+/**
+ * Answers the cache shared by all images of the process, which is
+ * disabled unless the <code>swt.imageCache</code> property is set.
+ *
+ * @return the shared cache
+ */
+public static ImageDataCache getShared() {
+	return shared;
+}
+
+/**
+ * Answers the image cached for the given source and zoom. If there is
+ * none, the image is created with <code>loader</code>, cached and answered.
+ * The loader runs outside the lock of the cache, so two threads asking for
+ * the same image at the same time may both create it.
+ *
+ * @param source the file name or provider the image comes from
+ * @param zoom the zoom level the image is scaled for
+ * @param loader the function that creates the image
+ * @return the image, shared with other callers
+ */
+public ImageData get(Object source, int zoom, Supplier<ImageData> loader) {
+	if (maxSize <= 0) return loader.get();
+	Key key = new Key(source, zoom);
+	synchronized (this) {
+		expungeCleared();
+		Entry entry = entries.get(key);
+		ImageData data = entry != null ? entry.get() : null;
+		if (data != null) {
+			hitCount++;
+			return data;
+		}
+		missCount++;
+	}
+	ImageData data = loader.get();
+	if (data != null) put(key, data);
+	return data;
+}
+
+synchronized void put(Key key, ImageData data) {
+	long entrySize = ENTRY_OVERHEAD + data.data.length;
+	if (data.alphaData != null) entrySize += data.alphaData.length;
+	if (data.maskData != null) entrySize += data.maskData.length;
+	if (entrySize > maxSize) return;
+	Entry old = entries.put(key, new Entry(key, data, entrySize, queue));
+	if (old != null) size -= old.size;
+	size += entrySize;
+	Iterator<Entry> iterator = entries.values().iterator();
+	while (size > maxSize && iterator.hasNext()) {
+		Entry entry = iterator.next();
+		iterator.remove();
+		size -= entry.size;
+		evictionCount++;
+	}
+}
+
+/*
+* Drop the entries whose images the garbage collector has reclaimed,
+* so that they no longer count towards the size of the cache.
+*/
+void expungeCleared() {
+	Reference<? extends ImageData> reference;
+	while ((reference = queue.poll()) != null) {
+		Entry entry = (Entry) reference;
+		if (entries.remove(entry.key, entry)) size -= entry.size;
+	}
+}
+
+/**
+ * Removes all the images from the cache. The counters are not reset.
+ */
+public synchronized void clear() {
+	entries.clear();
+	size = 0;
+}
+
+/**
+ * Answers the number of images answered from the cache.
+ *
+ * @return the number of hits
+ */
+public synchronized int getHitCount() {
+	return hitCount;
+}
+
+/**
+ * Answers the number of images that were not in the cache, including
+ * those reclaimed by the garbage collector.
+ *
+ * @return the number of misses
+ */
+public synchronized int getMissCount() {
+	return missCount;
+}
+
+/**
+ * Answers the number of images removed to keep the cache within its size.
+ *
+ * @return the number of evictions
+ */
+public synchronized int getEvictionCount() {
+	return evictionCount;
+}
+
+/**
+ * Answers the number of bytes the cached images take, as counted
+ * against the size of the cache.
+ *
+ * @return the size of the cached images
+ */
+public synchronized long getSize() {
+	expungeCleared();
+	return size;
+}
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.internal.image;
+
+
+import java.io.*;
+import java.nio.*;
+
+import org.eclipse.swt.*;
+
+/**
+ * An input stream over the content of a whole file, either mapped with
+ * <code>FileChannel.map</code> or read into the heap. Reads copy straight
+ * from the buffer into the decoder's arrays, and formats that need random
+ * access (TIFF) can address the buffer by file offset instead of caching
+ * what they have read.
+ */
+final class ByteBufferInputStream extends InputStream {
+	final ByteBuffer buffer;
+
+ByteBufferInputStream(ByteBuffer buffer) {
+	this.buffer = buffer;
+}
+
+@Override
+public int available() {
+	return buffer.remaining();
+}
+
+@Override
+public int read() {
+	return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+}
+
+@Override
+public int read(byte[] b, int off, int len) {
+	if (len == 0) return 0;
+	int remaining = buffer.remaining();
+	if (remaining == 0) return -1;
+	if (len > remaining) len = remaining;
+	buffer.get(b, off, len);
+	return len;
+}
+
+@Override
+public long skip(long n) {
+	if (n <= 0) return 0;
+	int count = (int)Math.min(n, buffer.remaining());
+	buffer.position(buffer.position() + count);
+	return count;
+}
+
+/**
+ * Copy <code>len</code> bytes at the given file offset, leaving the
+ * position of the stream untouched. Throw an error if the file ends
+ * before <code>offset + len</code>.
+ */
+void read(int offset, byte[] b, int off, int len) {
+	if (offset < 0 || len > buffer.limit() - offset) SWT.error(SWT.ERROR_INVALID_IMAGE);
+	ByteBuffer slice = buffer.duplicate();
+	slice.position(offset);
+	slice.get(b, off, len);
+}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,11 @@ package org.eclipse.swt.internal.image;
 
 
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
 
@@ -21,19 +26,159 @@ import org.eclipse.swt.graphics.*;
  *
  */
 public abstract class FileFormat {
-	static final String FORMAT_PACKAGE = "org.eclipse.swt.internal.image"; //$NON-NLS-1$
-	static final String FORMAT_SUFFIX = "FileFormat"; //$NON-NLS-1$
-	static final String[] FORMATS = {"WinBMP", "WinBMP", "GIF", "WinICO", "JPEG", "PNG", "TIFF", "OS2BMP"}; //$NON-NLS-1$//$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$//$NON-NLS-5$ //$NON-NLS-6$//$NON-NLS-7$//$NON-NLS-8$
+	/**
+	 * The leading bytes that identify the built in formats, tried in this
+	 * order against the start of a stream. Only the formats whose signature
+	 * matches are instantiated and asked to confirm with isFileFormat().
+	 * Windows and OS/2 bitmaps share a signature and are told apart by the
+	 * size of their info header.
+	 */
+	static final byte[][] SIGNATURES = {
+		{0x42, 0x4D}, // BM
+		{0x47, 0x49, 0x46}, // GIF
+		{0x00, 0x00, 0x01, 0x00}, // icon resource
+		{(byte)0xFF, (byte)0xD8}, // JPEG start of image
+		{(byte)0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A}, // \211PNG\r\n^Z\n
+		{0x49, 0x49, 0x2A, 0x00}, // II*\0
+		{0x4D, 0x4D, 0x00, 0x2A}, // MM\0*
+		{0x42, 0x4D}, // BM
+	};
+	static final int[] SIGNATURE_FORMATS = {
+		SWT.IMAGE_BMP,
+		SWT.IMAGE_GIF,
+		SWT.IMAGE_ICO,
+		SWT.IMAGE_JPEG,
+		SWT.IMAGE_PNG,
+		SWT.IMAGE_TIFF,
+		SWT.IMAGE_TIFF,
+		SWT.IMAGE_OS2_BMP,
+	};
+
+	/**
+	 * The number of bytes peeked from the start of a stream to choose its
+	 * format. This covers every built in signature and the BMP info header
+	 * size, and is what ImageFormatProviders are shown.
+	 */
+	static final int HEADER_LENGTH = 32;
+
+	/**
+	 * The ImageFormatProviders found with ServiceLoader, looked up the first
+	 * time a stream is not in any of the built in formats.
+	 */
+	static ImageFormatProvider[] providers;
+
+	/**
+	 * Files of at least this many bytes are mapped into memory by
+	 * load(String, ImageLoader), smaller files are read in one go.
+	 * Mapping is disabled on Windows, where a mapped file cannot be
+	 * deleted or replaced until the mapping is garbage collected, and
+	 * when the system property org.eclipse.swt.internal.image.mapFiles
+	 * is false.
+	 */
+	static final int MAP_THRESHOLD = 64 * 1024;
+	static final boolean MAP_FILES = !"win32".equals(SWT.getPlatform()) && !"false".equals(System.getProperty("org.eclipse.swt.internal.image.mapFiles")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 
 	LEDataInputStream inputStream;
 	LEDataOutputStream outputStream;
 	ImageLoader loader;
 	int compression;
 
-static FileFormat getFileFormat (LEDataInputStream stream, String format) throws Exception {
-	Class<?> clazz = Class.forName(FORMAT_PACKAGE + '.' + format + FORMAT_SUFFIX);
-	FileFormat fileFormat = (FileFormat) clazz.newInstance();
-	if (fileFormat.isFileFormat(stream)) return fileFormat;
+/**
+ * Answer a new instance of the built in file format with the given
+ * SWT.IMAGE_* constant, or null if there is none.
+ */
+static FileFormat createFileFormat(int format) {
+	switch (format) {
+		case SWT.IMAGE_BMP:
+		case SWT.IMAGE_BMP_RLE: return new WinBMPFileFormat();
+		case SWT.IMAGE_GIF: return new GIFFileFormat();
+		case SWT.IMAGE_ICO: return new WinICOFileFormat();
+		case SWT.IMAGE_JPEG: return new JPEGFileFormat();
+		case SWT.IMAGE_PNG: return new PNGFileFormat();
+		case SWT.IMAGE_TIFF: return new TIFFFileFormat();
+		case SWT.IMAGE_OS2_BMP: return new OS2BMPFileFormat();
+	}
+	return null;
+}
+
+/**
+ * Answer the first bytes of the stream, pushing them back so that the
+ * stream is still at its start. The answer is shorter than HEADER_LENGTH
+ * only when the stream is.
+ */
+static byte[] readHeader(LEDataInputStream stream) throws IOException {
+	byte[] header = new byte[HEADER_LENGTH];
+	int length = Math.max(0, stream.read(header));
+	if (length < header.length) {
+		byte[] newHeader = new byte[length];
+		System.arraycopy(header, 0, newHeader, 0, length);
+		header = newHeader;
+	}
+	stream.unread(header);
+	return header;
+}
+
+static boolean startsWith(byte[] header, byte[] signature) {
+	if (header.length < signature.length) return false;
+	for (int i = 0; i < signature.length; i++) {
+		if (header[i] != signature[i]) return false;
+	}
+	return true;
+}
+
+/**
+ * Answer the built in file format that can read the stream starting
+ * with the given header, or null if there is none.
+ */
+static FileFormat getFileFormat(LEDataInputStream stream, byte[] header) {
+	for (int i = 0; i < SIGNATURES.length; i++) {
+		if (startsWith(header, SIGNATURES[i])) {
+			FileFormat fileFormat = createFileFormat(SIGNATURE_FORMATS[i]);
+			if (fileFormat.isFileFormat(stream)) return fileFormat;
+		}
+	}
+	return null;
+}
+
+static synchronized ImageFormatProvider[] getProviders() {
+	if (providers == null) {
+		List<ImageFormatProvider> list = new ArrayList<>();
+		try {
+			Iterator<ImageFormatProvider> iterator = ServiceLoader.load(ImageFormatProvider.class).iterator();
+			while (iterator.hasNext()) {
+				try {
+					list.add(iterator.next());
+				} catch (ServiceConfigurationError e) {
+					/* skip providers that cannot be instantiated */
+				}
+			}
+		} catch (ServiceConfigurationError e) {
+		}
+		providers = list.toArray(new ImageFormatProvider[list.size()]);
+	}
+	return providers;
+}
+
+/**
+ * Read the stream with the first ImageFormatProvider that accepts the
+ * given header, or answer null if none does.
+ */
+static ImageData[] loadFromProvider(LEDataInputStream stream, byte[] header, ImageLoader loader) {
+	for (ImageFormatProvider provider : getProviders()) {
+		if (!provider.isFormat(header.clone())) continue;
+		ImageData[] data = null;
+		try {
+			data = provider.load(stream, loader);
+		} catch (IOException e) {
+			SWT.error(SWT.ERROR_IO, e);
+		} catch (SWTException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			SWT.error(SWT.ERROR_INVALID_IMAGE, e);
+		}
+		if (data == null || data.length == 0) SWT.error(SWT.ERROR_INVALID_IMAGE);
+		return data;
+	}
 	return null;
 }
 
@@ -68,41 +213,64 @@ public ImageData[] loadFromStream(LEDataInputStream stream) {
  * return the device independent image array represented by the stream.
  */
 public static ImageData[] load(InputStream is, ImageLoader loader) {
-	FileFormat fileFormat = null;
 	LEDataInputStream stream = new LEDataInputStream(is);
-	for (int i = 1; i < FORMATS.length; i++) {
-		if (FORMATS[i] != null) {
-			try {
-				fileFormat = getFileFormat (stream, FORMATS[i]);
-				if (fileFormat != null) break;
-			} catch (ClassNotFoundException e) {
-				FORMATS[i] = null;
-			} catch (Exception e) {
-			}
-		}
+	byte[] header = null;
+	try {
+		header = readHeader(stream);
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_IO, e);
+	}
+	FileFormat fileFormat = getFileFormat(stream, header);
+	if (fileFormat == null) {
+		ImageData[] data = loadFromProvider(stream, header, loader);
+		if (data == null) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
+		return data;
 	}
-	if (fileFormat == null) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
 	fileFormat.loader = loader;
 	return fileFormat.loadFromStream(stream);
 }
 
+/**
+ * Read the specified file using the specified loader, and return the
+ * device independent image array represented by the file.
+ * <p>
+ * The whole file is made available to the decoders as a buffer, mapped
+ * into memory or read at once, so that reads do not go through the file
+ * system one call at a time and formats with internal offsets (TIFF)
+ * have random access to it.
+ * </p>
+ */
+public static ImageData[] load(String filename, ImageLoader loader) {
+	try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+		long size = channel.size();
+		if (size > Integer.MAX_VALUE) {
+			return load(Channels.newInputStream(channel), loader);
+		}
+		ByteBuffer buffer;
+		if (MAP_FILES && size >= MAP_THRESHOLD) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		} else {
+			buffer = ByteBuffer.allocate((int)size);
+			while (buffer.hasRemaining() && channel.read(buffer) != -1) {}
+			buffer.flip();
+		}
+		return load(new ByteBufferInputStream(buffer), loader);
+	} catch (IOException | InvalidPathException e) {
+		SWT.error(SWT.ERROR_IO, e);
+	}
+	return null;
+}
+
 /**
  * Write the device independent image array stored in the specified loader
  * to the specified output stream using the specified file format.
  */
 public static void save(OutputStream os, int format, ImageLoader loader) {
-	if (format < 0 || format >= FORMATS.length) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
-	if (FORMATS[format] == null) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
+	FileFormat fileFormat = createFileFormat(format);
+	if (fileFormat == null) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
 	if (loader.data == null || loader.data.length < 1) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
 
 	LEDataOutputStream stream = new LEDataOutputStream(os);
-	FileFormat fileFormat = null;
-	try {
-		Class<?> clazz = Class.forName(FORMAT_PACKAGE + '.' + FORMATS[format] + FORMAT_SUFFIX);
-		fileFormat = (FileFormat) clazz.newInstance();
-	} catch (Exception e) {
-		SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
-	}
 	if (format == SWT.IMAGE_BMP_RLE) {
 		switch (loader.data[0].depth) {
 			case 8: fileFormat.compression = 1; break;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -22,6 +22,8 @@ public final class GIFFileFormat extends FileFormat {
 	int delayTime = 0;
 	int transparentPixel = -1;
 	int repeatCount = 1;
+	/* Shared by all the frames of the image */
+	LZWCodec codec;
 
 	static final int GIF_APPLICATION_EXTENSION_BLOCK_ID = 0xFF;
 	static final int GIF_GRAPHICS_CONTROL_BLOCK_ID = 0xF9;
@@ -73,9 +75,8 @@ public final class GIFFileFormat extends FileFormat {
 			if (!(signature[0] == 'G' && signature[1] == 'I' && signature[2] == 'F'))
 				SWT.error(SWT.ERROR_INVALID_IMAGE);
 
-			inputStream.read(versionBytes);
-
-			inputStream.read(block);
+			if (inputStream.read(versionBytes) != versionBytes.length || inputStream.read(block) != block.length)
+				SWT.error(SWT.ERROR_INVALID_IMAGE);
 		} catch (IOException e) {
 			SWT.error(SWT.ERROR_IO, e);
 		}
@@ -383,7 +384,7 @@ public final class GIFFileFormat extends FileFormat {
 			top,
 			disposalMethod,
 			delayTime);
-		LZWCodec codec = new LZWCodec();
+		if (codec == null) codec = new LZWCodec();
 		codec.decode(inputStream, loader, image, interlaced, initialCodeSize);
 		return image;
 	}
@@ -410,8 +411,14 @@ public final class GIFFileFormat extends FileFormat {
 	void unloadIntoByteStream(ImageLoader loader) {
 
  		/* Step 1: Acquire GIF parameters. */
-		ImageData[] data = loader.data;
+		ImageData[] data = loader.data.clone();
 		int frameCount = data.length;
+		for (int i=0; i<frameCount; i++) {
+			/* Reduce direct palette images to 256 colors */
+			if (data[i].palette.isDirect) {
+				data[i] = data[i].quantize(8, true);
+			}
+		}
 		boolean multi = frameCount > 1;
 		ImageData firstImage = data[0];
 		int logicalScreenWidth = multi ? loader.logicalScreenWidth : firstImage.width;
@@ -427,9 +434,6 @@ public final class GIFFileFormat extends FileFormat {
 			SWT.error(SWT.ERROR_UNSUPPORTED_DEPTH);
 		}
 		for (int i=0; i<frameCount; i++) {
-			if (data[i].palette.isDirect) {
-				SWT.error(SWT.ERROR_INVALID_IMAGE);
-			}
 			if (multi) {
 				if (!(data[i].height <= logicalScreenHeight && data[i].width <= logicalScreenWidth && data[i].depth == depth)) {
 					SWT.error(SWT.ERROR_INVALID_IMAGE);
@@ -521,11 +525,12 @@ public final class GIFFileFormat extends FileFormat {
 
 			/* Step 9: Write the actual data for each frame. */
 			try {
-				outputStream.write(depth); // Minimum LZW Code size
+				outputStream.write(Math.max(2, depth)); // Minimum LZW Code size
 			} catch (IOException e) {
 				SWT.error(SWT.ERROR_IO, e);
 			}
-			new LZWCodec().encode(outputStream, data[frame]);
+			if (codec == null) codec = new LZWCodec();
+			codec.encode(outputStream, data[frame]);
 		}
 
 		/* Step 10: Write GIF terminator. */
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.internal.image;
+
+import org.eclipse.swt.graphics.*;
+
+/**
+ * Sends the incremental <code>ImageLoaderEvent</code>s for images that are
+ * decoded one row at a time. A copy of the partially decoded image is sent
+ * every <code>ImageLoader.incrementalRows</code> rows, followed by a final
+ * event once the image is complete.
+ */
+final class IncrementalRowNotifier {
+	final ImageLoader loader;
+	final ImageData image;
+	final int interval;
+	int incrementCount;
+	int notifiedRows;
+
+IncrementalRowNotifier(ImageLoader loader, ImageData image) {
+	this.loader = loader;
+	this.image = image;
+	this.interval = loader.incrementalRows;
+}
+
+/**
+ * Answer a notifier for the given image, or null if the loader
+ * has no listeners or did not ask for incremental rows.
+ */
+static IncrementalRowNotifier create(ImageLoader loader, ImageData image) {
+	if (loader.incrementalRows <= 0 || !loader.hasListeners()) return null;
+	return new IncrementalRowNotifier(loader, image);
+}
+
+/**
+ * Report that the first <code>rows</code> rows in decoding order
+ * are complete.
+ */
+void rowsDecoded(int rows) {
+	if (rows - notifiedRows < interval || rows >= image.height) return;
+	notifiedRows = rows;
+	loader.notifyListeners(new ImageLoaderEvent(loader, (ImageData) image.clone(), incrementCount++, false));
+}
+
+/**
+ * Report that the image is complete.
+ */
+void imageDecoded() {
+	loader.notifyListeners(new ImageLoaderEvent(loader, image, incrementCount, true));
+}
+}
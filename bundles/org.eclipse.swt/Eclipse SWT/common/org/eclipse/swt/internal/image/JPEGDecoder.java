@@ -15,6 +15,8 @@
 package org.eclipse.swt.internal.image;
 
 import java.io.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
 
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
@@ -54,6 +56,19 @@ public class JPEGDecoder {
 	static final int JPEG_MAX_DIMENSION = 65500;
 	static final int BITS_IN_JSAMPLE = 8;
 
+	/**
+	 * Baseline images of at least parallelThreshold pixels can have the
+	 * inverse DCT, upsampling and color conversion spread over the common
+	 * fork/join pool. Entropy decoding stays sequential. This is off by
+	 * default and is enabled with the system property
+	 * org.eclipse.swt.internal.image.JPEGDecoder.parallel=true, the pixel
+	 * count is set with org.eclipse.swt.internal.image.JPEGDecoder.parallelThreshold.
+	 * It stays off when the common pool has a single worker. Tests set both
+	 * fields to compare the two paths.
+	 */
+	static boolean parallel = Boolean.getBoolean("org.eclipse.swt.internal.image.JPEGDecoder.parallel") && ForkJoinPool.getCommonPoolParallelism() > 1; //$NON-NLS-1$
+	static int parallelThreshold = Integer.getInteger("org.eclipse.swt.internal.image.JPEGDecoder.parallelThreshold", 1024 * 1024).intValue(); //$NON-NLS-1$
+
 	static final int JDITHER_NONE = 0;		/* no dithering */
 	static final int JDITHER_ORDERED = 1;	/* simple ordered dither */
 	static final int JDITHER_FS = 2;
@@ -1800,20 +1815,12 @@ public class JPEGDecoder {
 				compptr = cinfo.comp_info[ci];
 				/* Select the proper IDCT routine for this component's scaling */
 				switch (compptr.DCT_scaled_size) {
-//					#ifdef IDCT_SCALING_SUPPORTED
-//					case 1:
-//						method_ptr = jpeg_idct_1x1;
-//						method = JDCT_ISLOW;	/* jidctred uses islow-style table */
-//						break;
-//					case 2:
-//						method_ptr = jpeg_idct_2x2;
-//						method = JDCT_ISLOW;	/* jidctred uses islow-style table */
-//						break;
-//					case 4:
-//						method_ptr = jpeg_idct_4x4;
-//						method = JDCT_ISLOW;	/* jidctred uses islow-style table */
-//						break;
-//					#endif
+					case 1:
+					case 2:
+					case 4:
+//						method_ptr = jpeg_idct_1x1, jpeg_idct_2x2 or jpeg_idct_4x4;
+						method = JDCT_ISLOW;	/* jidctred uses islow-style table */
+						break;
 					case DCTSIZE:
 						switch (cinfo.dct_method) {
 //							#ifdef DCT_ISLOW_SUPPORTED
@@ -2375,87 +2382,66 @@ static void jpeg_create_decompress(jpeg_decompress_struct cinfo) {
 static void jpeg_calc_output_dimensions (jpeg_decompress_struct cinfo)
 /* Do computations that are needed before master selection phase */
 {
-//#ifdef IDCT_SCALING_SUPPORTED
-//	int ci;
-//	jpeg_component_info compptr;
-//#endif
+	int ci;
+	jpeg_component_info compptr;
 
 	/* Prevent application from calling me at wrong times */
 	if (cinfo.global_state != DSTATE_READY)
 		error();
 //		ERREXIT1(cinfo, JERR_BAD_STATE, cinfo.global_state);
 
-//#ifdef IDCT_SCALING_SUPPORTED
-//
-//	/* Compute actual output image dimensions and DCT scaling choices. */
-//	if (cinfo.scale_num * 8 <= cinfo.scale_denom) {
-//		/* Provide 1/8 scaling */
-//		cinfo.output_width = (int)
-//			jdiv_round_up(cinfo.image_width, 8L);
-//		cinfo.output_height = (int)
-//			jdiv_round_up(cinfo.image_height, 8L);
-//		cinfo.min_DCT_scaled_size = 1;
-//	} else if (cinfo.scale_num * 4 <= cinfo.scale_denom) {
-//		/* Provide 1/4 scaling */
-//		cinfo.output_width = (int)
-//			jdiv_round_up(cinfo.image_width, 4L);
-//		cinfo.output_height = (int)
-//			jdiv_round_up(cinfo.image_height, 4L);
-//		cinfo.min_DCT_scaled_size = 2;
-//	} else if (cinfo.scale_num * 2 <= cinfo.scale_denom) {
-//		/* Provide 1/2 scaling */
-//		cinfo.output_width = (int)
-//			jdiv_round_up(cinfo.image_width, 2L);
-//		cinfo.output_height = (int)
-//			jdiv_round_up(cinfo.image_height, 2L);
-//		cinfo.min_DCT_scaled_size = 4;
-//	} else {
-//		/* Provide 1/1 scaling */
-//		cinfo.output_width = cinfo.image_width;
-//		cinfo.output_height = cinfo.image_height;
-//		cinfo.min_DCT_scaled_size = DCTSIZE;
-//	}
-//	/* In selecting the actual DCT scaling for each component, we try to
-//	 * scale up the chroma components via IDCT scaling rather than upsampling.
-//	 * This saves time if the upsampler gets to use 1:1 scaling.
-//	 * Note this code assumes that the supported DCT scalings are powers of 2.
-//	 */
-//	for (ci = 0; ci < cinfo.num_components; ci++) {
-//		compptr = cinfo.comp_info[ci];
-//		int ssize = cinfo.min_DCT_scaled_size;
-//		while (ssize < DCTSIZE &&
-//			(compptr.h_samp_factor * ssize * 2 <= cinfo.max_h_samp_factor * cinfo.min_DCT_scaled_size) &&
-//			(compptr.v_samp_factor * ssize * 2 <= cinfo.max_v_samp_factor * cinfo.min_DCT_scaled_size))
-//		{
-//			ssize = ssize * 2;
-//		}
-//		compptr.DCT_scaled_size = ssize;
-//	}
-//
-//	/* Recompute downsampled dimensions of components;
-//	 * application needs to know these if using raw downsampled data.
-//	 */
-//	for (ci = 0; ci < cinfo.num_components; ci++) {
-//		compptr = cinfo.comp_info[ci];
-//		/* Size in samples, after IDCT scaling */
-//		compptr.downsampled_width = (int)
-//			jdiv_round_up((long) cinfo.image_width * (long) (compptr.h_samp_factor * compptr.DCT_scaled_size),
-//				(cinfo.max_h_samp_factor * DCTSIZE));
-//		compptr.downsampled_height = (int)
-//			jdiv_round_up((long) cinfo.image_height * (long) (compptr.v_samp_factor * compptr.DCT_scaled_size),
-//				(cinfo.max_v_samp_factor * DCTSIZE));
-//	}
-//
-//#else /* !IDCT_SCALING_SUPPORTED */
-
-	/* Hardwire it to "no scaling" */
-	cinfo.output_width = cinfo.image_width;
-	cinfo.output_height = cinfo.image_height;
-	/* jdinput.c has already initialized DCT_scaled_size to DCTSIZE,
-	 * and has computed unscaled downsampled_width and downsampled_height.
+	/* Compute actual output image dimensions and DCT scaling choices. */
+	if (cinfo.scale_num * 8 <= cinfo.scale_denom) {
+		/* Provide 1/8 scaling */
+		cinfo.output_width = (int) jdiv_round_up(cinfo.image_width, 8L);
+		cinfo.output_height = (int) jdiv_round_up(cinfo.image_height, 8L);
+		cinfo.min_DCT_scaled_size = 1;
+	} else if (cinfo.scale_num * 4 <= cinfo.scale_denom) {
+		/* Provide 1/4 scaling */
+		cinfo.output_width = (int) jdiv_round_up(cinfo.image_width, 4L);
+		cinfo.output_height = (int) jdiv_round_up(cinfo.image_height, 4L);
+		cinfo.min_DCT_scaled_size = 2;
+	} else if (cinfo.scale_num * 2 <= cinfo.scale_denom) {
+		/* Provide 1/2 scaling */
+		cinfo.output_width = (int) jdiv_round_up(cinfo.image_width, 2L);
+		cinfo.output_height = (int) jdiv_round_up(cinfo.image_height, 2L);
+		cinfo.min_DCT_scaled_size = 4;
+	} else {
+		/* Provide 1/1 scaling */
+		cinfo.output_width = cinfo.image_width;
+		cinfo.output_height = cinfo.image_height;
+		cinfo.min_DCT_scaled_size = DCTSIZE;
+	}
+	/* In selecting the actual DCT scaling for each component, we try to
+	 * scale up the chroma components via IDCT scaling rather than upsampling.
+	 * This saves time if the upsampler gets to use 1:1 scaling.
+	 * Note this code assumes that the supported DCT scalings are powers of 2.
 	 */
+	for (ci = 0; ci < cinfo.num_components; ci++) {
+		compptr = cinfo.comp_info[ci];
+		int ssize = cinfo.min_DCT_scaled_size;
+		while (ssize < DCTSIZE &&
+			(compptr.h_samp_factor * ssize * 2 <= cinfo.max_h_samp_factor * cinfo.min_DCT_scaled_size) &&
+			(compptr.v_samp_factor * ssize * 2 <= cinfo.max_v_samp_factor * cinfo.min_DCT_scaled_size))
+		{
+			ssize = ssize * 2;
+		}
+		compptr.DCT_scaled_size = ssize;
+	}
 
-//#endif /* IDCT_SCALING_SUPPORTED */
+	/* Recompute downsampled dimensions of components;
+	 * application needs to know these if using raw downsampled data.
+	 */
+	for (ci = 0; ci < cinfo.num_components; ci++) {
+		compptr = cinfo.comp_info[ci];
+		/* Size in samples, after IDCT scaling */
+		compptr.downsampled_width = (int)
+			jdiv_round_up((long) cinfo.image_width * (long) (compptr.h_samp_factor * compptr.DCT_scaled_size),
+				(cinfo.max_h_samp_factor * DCTSIZE));
+		compptr.downsampled_height = (int)
+			jdiv_round_up((long) cinfo.image_height * (long) (compptr.v_samp_factor * compptr.DCT_scaled_size),
+				(cinfo.max_v_samp_factor * DCTSIZE));
+	}
 
 	/* Report number of components in selected colorspace. */
 	/* Probably this should be in the color conversion module... */
@@ -2928,9 +2914,263 @@ static void jinit_inverse_dct (jpeg_decompress_struct cinfo) {
 static final int CONST_BITS = 13;
 static final int PASS1_BITS = 2;
 static final int RANGE_MASK =(MAXJSAMPLE * 4 + 3);
-static void jpeg_idct_islow (jpeg_decompress_struct cinfo, jpeg_component_info compptr,
+static void inverse_DCT (jpeg_decompress_struct cinfo, jpeg_component_info compptr,
+	short[] coef_block,
+	byte[][] output_buf, int output_buf_offset, int output_col, int[] workspace)
+{
+	/* Select the proper IDCT routine for this component's scaling */
+	switch (compptr.DCT_scaled_size) {
+		case 1: jpeg_idct_1x1(cinfo, compptr, coef_block, output_buf, output_buf_offset, output_col); break;
+		case 2: jpeg_idct_2x2(cinfo, compptr, coef_block, output_buf, output_buf_offset, output_col, workspace); break;
+		case 4: jpeg_idct_4x4(cinfo, compptr, coef_block, output_buf, output_buf_offset, output_col, workspace); break;
+		default: jpeg_idct_islow(cinfo, compptr, coef_block, output_buf, output_buf_offset, output_col, workspace); break;
+	}
+}
+
+/*
+ * Reduced-size inverse DCTs, see jidctred.c. These produce 4x4, 2x2 or
+ * 1x1 output from an 8x8 coefficient block and use the islow multiplier
+ * table. Coefficients which cannot affect the reduced output are skipped.
+ */
+static void jpeg_idct_4x4 (jpeg_decompress_struct cinfo, jpeg_component_info compptr,
+	short[] coef_block,
+	byte[][] output_buf, int output_buf_offset, int output_col, int[] workspace)
+{
+	int tmp0, tmp2, tmp10, tmp12;
+	int z1, z2, z3, z4;
+	short[] inptr = coef_block;
+	int[] quantptr = compptr.dct_table;
+	int[] wsptr = workspace;
+	byte[] outptr;
+	byte[] range_limit = cinfo.sample_range_limit;
+	int range_limit_offset = cinfo.sample_range_limit_offset + CENTERJSAMPLE;
+	int ctr;
+
+	/* Pass 1: process columns from input, store into work array. */
+
+	int inptr_offset = 0, quantptr_offset = 0, wsptr_offset = 0;
+	for (ctr = DCTSIZE; ctr > 0; inptr_offset++, quantptr_offset++, wsptr_offset++, ctr--) {
+		/* Don't bother to process column 4, because second pass won't use it */
+		if (ctr == DCTSIZE-4)
+			continue;
+		if (inptr[DCTSIZE*1+inptr_offset] == 0 && inptr[DCTSIZE*2+inptr_offset] == 0 &&
+			inptr[DCTSIZE*3+inptr_offset] == 0 && inptr[DCTSIZE*5+inptr_offset] == 0 &&
+			inptr[DCTSIZE*6+inptr_offset] == 0 && inptr[DCTSIZE*7+inptr_offset] == 0)
+		{
+			/* AC terms all zero; we need not examine term 4 for 4x4 output */
+			int dcval = ((inptr[DCTSIZE*0+inptr_offset]) * quantptr[DCTSIZE*0+quantptr_offset]) << PASS1_BITS;
+
+			wsptr[DCTSIZE*0+wsptr_offset] = dcval;
+			wsptr[DCTSIZE*1+wsptr_offset] = dcval;
+			wsptr[DCTSIZE*2+wsptr_offset] = dcval;
+			wsptr[DCTSIZE*3+wsptr_offset] = dcval;
+			continue;
+		}
+
+		/* Even part */
+
+		tmp0 = ((inptr[DCTSIZE*0+inptr_offset]) * quantptr[DCTSIZE*0+quantptr_offset]) << (CONST_BITS+1);
+
+		z2 = ((inptr[DCTSIZE*2+inptr_offset]) * quantptr[DCTSIZE*2+quantptr_offset]);
+		z3 = ((inptr[DCTSIZE*6+inptr_offset]) * quantptr[DCTSIZE*6+quantptr_offset]);
+
+		tmp2 = (z2 * 15137/*FIX_1_847759065*/) + (z3 * - 6270/*FIX_0_765366865*/);
+
+		tmp10 = tmp0 + tmp2;
+		tmp12 = tmp0 - tmp2;
+
+		/* Odd part */
+
+		z1 = ((inptr[DCTSIZE*7+inptr_offset]) * quantptr[DCTSIZE*7+quantptr_offset]);
+		z2 = ((inptr[DCTSIZE*5+inptr_offset]) * quantptr[DCTSIZE*5+quantptr_offset]);
+		z3 = ((inptr[DCTSIZE*3+inptr_offset]) * quantptr[DCTSIZE*3+quantptr_offset]);
+		z4 = ((inptr[DCTSIZE*1+inptr_offset]) * quantptr[DCTSIZE*1+quantptr_offset]);
+
+		tmp0 = (z1 * - 1730/*FIX_0_211164243*/) /* sqrt(2) * (c3-c1) */
+			+ (z2 * 11893/*FIX_1_451774981*/) /* sqrt(2) * (c3+c7) */
+			+ (z3 * - 17799/*FIX_2_172734803*/) /* sqrt(2) * (-c1-c5) */
+			+ (z4 * 8697/*FIX_1_061594337*/); /* sqrt(2) * (c5+c7) */
+
+		tmp2 = (z1 * - 4176/*FIX_0_509795579*/) /* sqrt(2) * (c7-c5) */
+			+ (z2 * - 4926/*FIX_0_601344887*/) /* sqrt(2) * (c5-c1) */
+			+ (z3 * 7373/*FIX_0_899976223*/) /* sqrt(2) * (c3-c7) */
+			+ (z4 * 20995/*FIX_2_562915447*/); /* sqrt(2) * (c1+c3) */
+
+		/* Final output stage */
+
+		wsptr[DCTSIZE*0+wsptr_offset] = (((tmp10 + tmp2) + (1 << ((CONST_BITS-PASS1_BITS+1)-1))) >> (CONST_BITS-PASS1_BITS+1));
+		wsptr[DCTSIZE*3+wsptr_offset] = (((tmp10 - tmp2) + (1 << ((CONST_BITS-PASS1_BITS+1)-1))) >> (CONST_BITS-PASS1_BITS+1));
+		wsptr[DCTSIZE*1+wsptr_offset] = (((tmp12 + tmp0) + (1 << ((CONST_BITS-PASS1_BITS+1)-1))) >> (CONST_BITS-PASS1_BITS+1));
+		wsptr[DCTSIZE*2+wsptr_offset] = (((tmp12 - tmp0) + (1 << ((CONST_BITS-PASS1_BITS+1)-1))) >> (CONST_BITS-PASS1_BITS+1));
+	}
+
+	/* Pass 2: process 4 rows from work array, store into output array. */
+
+	wsptr_offset = 0;
+	for (ctr = 0; ctr < 4; ctr++) {
+		outptr = output_buf[ctr+output_buf_offset];
+		int outptr_offset = output_col;
+
+		if (wsptr[1+wsptr_offset] == 0 && wsptr[2+wsptr_offset] == 0 && wsptr[3+wsptr_offset] == 0 &&
+			wsptr[5+wsptr_offset] == 0 && wsptr[6+wsptr_offset] == 0 && wsptr[7+wsptr_offset] == 0)
+		{
+			/* AC terms all zero */
+			byte dcval = range_limit[range_limit_offset + ((((wsptr[0+wsptr_offset]) + (1 << ((PASS1_BITS+3)-1))) >> PASS1_BITS+3)
+					& RANGE_MASK)];
+
+			outptr[0+outptr_offset] = dcval;
+			outptr[1+outptr_offset] = dcval;
+			outptr[2+outptr_offset] = dcval;
+			outptr[3+outptr_offset] = dcval;
+
+			wsptr_offset += DCTSIZE;		/* advance pointer to next row */
+			continue;
+		}
+
+		/* Even part */
+
+		tmp0 = wsptr[0+wsptr_offset] << (CONST_BITS+1);
+
+		tmp2 = (wsptr[2+wsptr_offset] * 15137/*FIX_1_847759065*/) + (wsptr[6+wsptr_offset] * - 6270/*FIX_0_765366865*/);
+
+		tmp10 = tmp0 + tmp2;
+		tmp12 = tmp0 - tmp2;
+
+		/* Odd part */
+
+		z1 = wsptr[7+wsptr_offset];
+		z2 = wsptr[5+wsptr_offset];
+		z3 = wsptr[3+wsptr_offset];
+		z4 = wsptr[1+wsptr_offset];
+
+		tmp0 = (z1 * - 1730/*FIX_0_211164243*/) /* sqrt(2) * (c3-c1) */
+			+ (z2 * 11893/*FIX_1_451774981*/) /* sqrt(2) * (c3+c7) */
+			+ (z3 * - 17799/*FIX_2_172734803*/) /* sqrt(2) * (-c1-c5) */
+			+ (z4 * 8697/*FIX_1_061594337*/); /* sqrt(2) * (c5+c7) */
+
+		tmp2 = (z1 * - 4176/*FIX_0_509795579*/) /* sqrt(2) * (c7-c5) */
+			+ (z2 * - 4926/*FIX_0_601344887*/) /* sqrt(2) * (c5-c1) */
+			+ (z3 * 7373/*FIX_0_899976223*/) /* sqrt(2) * (c3-c7) */
+			+ (z4 * 20995/*FIX_2_562915447*/); /* sqrt(2) * (c1+c3) */
+
+		/* Final output stage */
+
+		outptr[0+outptr_offset] = range_limit[range_limit_offset + ((((tmp10 + tmp2) + (1 << ((CONST_BITS+PASS1_BITS+3+1)-1))) >> (CONST_BITS+PASS1_BITS+3+1)) & RANGE_MASK)];
+		outptr[3+outptr_offset] = range_limit[range_limit_offset + ((((tmp10 - tmp2) + (1 << ((CONST_BITS+PASS1_BITS+3+1)-1))) >> (CONST_BITS+PASS1_BITS+3+1)) & RANGE_MASK)];
+		outptr[1+outptr_offset] = range_limit[range_limit_offset + ((((tmp12 + tmp0) + (1 << ((CONST_BITS+PASS1_BITS+3+1)-1))) >> (CONST_BITS+PASS1_BITS+3+1)) & RANGE_MASK)];
+		outptr[2+outptr_offset] = range_limit[range_limit_offset + ((((tmp12 - tmp0) + (1 << ((CONST_BITS+PASS1_BITS+3+1)-1))) >> (CONST_BITS+PASS1_BITS+3+1)) & RANGE_MASK)];
+
+		wsptr_offset += DCTSIZE;		/* advance pointer to next row */
+	}
+}
+
+static void jpeg_idct_2x2 (jpeg_decompress_struct cinfo, jpeg_component_info compptr,
+	short[] coef_block,
+	byte[][] output_buf, int output_buf_offset, int output_col, int[] workspace)
+{
+	int tmp0, tmp10, z1;
+	short[] inptr = coef_block;
+	int[] quantptr = compptr.dct_table;
+	int[] wsptr = workspace;
+	byte[] outptr;
+	byte[] range_limit = cinfo.sample_range_limit;
+	int range_limit_offset = cinfo.sample_range_limit_offset + CENTERJSAMPLE;
+	int ctr;
+
+	/* Pass 1: process columns from input, store into work array. */
+
+	int inptr_offset = 0, quantptr_offset = 0, wsptr_offset = 0;
+	for (ctr = DCTSIZE; ctr > 0; inptr_offset++, quantptr_offset++, wsptr_offset++, ctr--) {
+		/* Don't bother to process columns 2,4,6 */
+		if (ctr == DCTSIZE-2 || ctr == DCTSIZE-4 || ctr == DCTSIZE-6)
+			continue;
+		if (inptr[DCTSIZE*1+inptr_offset] == 0 && inptr[DCTSIZE*3+inptr_offset] == 0 &&
+			inptr[DCTSIZE*5+inptr_offset] == 0 && inptr[DCTSIZE*7+inptr_offset] == 0)
+		{
+			/* AC terms all zero; we need not examine terms 2,4,6 for 2x2 output */
+			int dcval = ((inptr[DCTSIZE*0+inptr_offset]) * quantptr[DCTSIZE*0+quantptr_offset]) << PASS1_BITS;
+
+			wsptr[DCTSIZE*0+wsptr_offset] = dcval;
+			wsptr[DCTSIZE*1+wsptr_offset] = dcval;
+			continue;
+		}
+
+		/* Even part */
+
+		z1 = ((inptr[DCTSIZE*0+inptr_offset]) * quantptr[DCTSIZE*0+quantptr_offset]);
+		tmp10 = z1 << (CONST_BITS+2);
+
+		/* Odd part */
+
+		z1 = ((inptr[DCTSIZE*7+inptr_offset]) * quantptr[DCTSIZE*7+quantptr_offset]);
+		tmp0 = (z1 * - 5906/*FIX_0_720959822*/); /* sqrt(2) * (c7-c5+c3-c1) */
+		z1 = ((inptr[DCTSIZE*5+inptr_offset]) * quantptr[DCTSIZE*5+quantptr_offset]);
+		tmp0 += (z1 * 6967/*FIX_0_850430095*/); /* sqrt(2) * (-c1+c3+c5+c7) */
+		z1 = ((inptr[DCTSIZE*3+inptr_offset]) * quantptr[DCTSIZE*3+quantptr_offset]);
+		tmp0 += (z1 * - 10426/*FIX_1_272758580*/); /* sqrt(2) * (-c1+c3-c5-c7) */
+		z1 = ((inptr[DCTSIZE*1+inptr_offset]) * quantptr[DCTSIZE*1+quantptr_offset]);
+		tmp0 += (z1 * 29692/*FIX_3_624509785*/); /* sqrt(2) * (c1+c3+c5+c7) */
+
+		/* Final output stage */
+
+		wsptr[DCTSIZE*0+wsptr_offset] = (((tmp10 + tmp0) + (1 << ((CONST_BITS-PASS1_BITS+2)-1))) >> (CONST_BITS-PASS1_BITS+2));
+		wsptr[DCTSIZE*1+wsptr_offset] = (((tmp10 - tmp0) + (1 << ((CONST_BITS-PASS1_BITS+2)-1))) >> (CONST_BITS-PASS1_BITS+2));
+	}
+
+	/* Pass 2: process 2 rows from work array, store into output array. */
+
+	wsptr_offset = 0;
+	for (ctr = 0; ctr < 2; ctr++) {
+		outptr = output_buf[ctr+output_buf_offset];
+		int outptr_offset = output_col;
+
+		if (wsptr[1+wsptr_offset] == 0 && wsptr[3+wsptr_offset] == 0 && wsptr[5+wsptr_offset] == 0 && wsptr[7+wsptr_offset] == 0) {
+			/* AC terms all zero */
+			byte dcval = range_limit[range_limit_offset + ((((wsptr[0+wsptr_offset]) + (1 << ((PASS1_BITS+3)-1))) >> PASS1_BITS+3)
+					& RANGE_MASK)];
+
+			outptr[0+outptr_offset] = dcval;
+			outptr[1+outptr_offset] = dcval;
+
+			wsptr_offset += DCTSIZE;		/* advance pointer to next row */
+			continue;
+		}
+
+		/* Even part */
+
+		tmp10 = wsptr[0+wsptr_offset] << (CONST_BITS+2);
+
+		/* Odd part */
+
+		tmp0 = (wsptr[7+wsptr_offset] * - 5906/*FIX_0_720959822*/) /* sqrt(2) * (c7-c5+c3-c1) */
+			+ (wsptr[5+wsptr_offset] * 6967/*FIX_0_850430095*/) /* sqrt(2) * (-c1+c3+c5+c7) */
+			+ (wsptr[3+wsptr_offset] * - 10426/*FIX_1_272758580*/) /* sqrt(2) * (-c1+c3-c5-c7) */
+			+ (wsptr[1+wsptr_offset] * 29692/*FIX_3_624509785*/); /* sqrt(2) * (c1+c3+c5+c7) */
+
+		/* Final output stage */
+
+		outptr[0+outptr_offset] = range_limit[range_limit_offset + ((((tmp10 + tmp0) + (1 << ((CONST_BITS+PASS1_BITS+3+2)-1))) >> (CONST_BITS+PASS1_BITS+3+2)) & RANGE_MASK)];
+		outptr[1+outptr_offset] = range_limit[range_limit_offset + ((((tmp10 - tmp0) + (1 << ((CONST_BITS+PASS1_BITS+3+2)-1))) >> (CONST_BITS+PASS1_BITS+3+2)) & RANGE_MASK)];
+
+		wsptr_offset += DCTSIZE;		/* advance pointer to next row */
+	}
+}
+
+static void jpeg_idct_1x1 (jpeg_decompress_struct cinfo, jpeg_component_info compptr,
 	short[] coef_block,
 	byte[][] output_buf, int output_buf_offset, int output_col)
+{
+	/* We hardly need an inverse DCT routine for this: just take the
+	 * average pixel value, which is one-eighth of the DC coefficient.
+	 */
+	int dcval = coef_block[0] * compptr.dct_table[0];
+	dcval = (dcval + (1 << (3-1))) >> 3;
+	output_buf[output_buf_offset][output_col] = cinfo.sample_range_limit[cinfo.sample_range_limit_offset + CENTERJSAMPLE + (dcval & RANGE_MASK)];
+}
+
+static void jpeg_idct_islow (jpeg_decompress_struct cinfo, jpeg_component_info compptr,
+	short[] coef_block,
+	byte[][] output_buf, int output_buf_offset, int output_col, int[] workspace)
 {
 	int tmp0, tmp1, tmp2, tmp3;
 	int tmp10, tmp11, tmp12, tmp13;
@@ -2942,7 +3182,6 @@ static void jpeg_idct_islow (jpeg_decompress_struct cinfo, jpeg_component_info c
 	byte[] range_limit = cinfo.sample_range_limit;
 	int range_limit_offset = cinfo.sample_range_limit_offset + CENTERJSAMPLE;
 	int ctr;
-	int[] workspace = cinfo.workspace;	/* buffers data between passes */
 //	SHIFT_TEMPS
 
 	/* Pass 1: process columns from input, store into work array. */
@@ -3802,7 +4041,7 @@ static int decompress_onepass (jpeg_decompress_struct cinfo, byte[][][] output_b
 					if (cinfo.input_iMCU_row < last_iMCU_row ||	yoffset+yindex < compptr.last_row_height) {
 						output_col = start_col;
 						for (xindex = 0; xindex < useful_width; xindex++) {
-							jpeg_idct_islow(cinfo, compptr, coef.MCU_buffer[blkn+xindex], output_ptr, output_ptr_offset, output_col);
+							inverse_DCT(cinfo, compptr, coef.MCU_buffer[blkn+xindex], output_ptr, output_ptr_offset, output_col, cinfo.workspace);
 							output_col += compptr.DCT_scaled_size;
 						}
 					}
@@ -4021,7 +4260,7 @@ static int decompress_smooth_data (jpeg_decompress_struct cinfo, byte[][][] outp
 					workspace[2] = (short) pred;
 				}
 				/* OK, do the IDCT */
-				jpeg_idct_islow(cinfo, compptr, workspace, output_ptr, output_ptr_offset, output_col);
+				inverse_DCT(cinfo, compptr, workspace, output_ptr, output_ptr_offset, output_col, cinfo.workspace);
 				/* Advance for next column */
 				DC1 = DC2; DC2 = DC3;
 				DC4 = DC5; DC5 = DC6;
@@ -4085,7 +4324,7 @@ static int decompress_data (jpeg_decompress_struct cinfo, byte[][][] output_buf,
 			int buffer_ptr_offset = 0;
 			output_col = 0;
 			for (block_num = 0; block_num < compptr.width_in_blocks; block_num++) {
-				jpeg_idct_islow(cinfo, compptr, buffer_ptr[buffer_ptr_offset], output_ptr, output_ptr_offset, output_col);
+				inverse_DCT(cinfo, compptr, buffer_ptr[buffer_ptr_offset], output_ptr, output_ptr_offset, output_col, cinfo.workspace);
 
 				buffer_ptr_offset++;
 				output_col += compptr.DCT_scaled_size;
@@ -4746,15 +4985,7 @@ static void sep_upsample (jpeg_decompress_struct cinfo, byte[][][] input_buf, in
 			 * to color_buf[ci], so that fullsize_upsample can change it.
 			 */
 			int offset = input_buf_offset[ci] + (in_row_group_ctr[0] * upsample.rowgroup_height[ci]);
-			switch (upsample.methods[ci]) {
-				case NOOP_UPSAMPLE: noop_upsample(cinfo, compptr, input_buf[ci], offset, upsample.color_buf, upsample.color_buf_offset, ci); break;
-				case FULLSIZE_UPSAMPLE: fullsize_upsample(cinfo, compptr, input_buf[ci], offset, upsample.color_buf, upsample.color_buf_offset, ci); break;
-				case H2V1_FANCY_UPSAMPLE: h2v1_fancy_upsample(cinfo, compptr, input_buf[ci], offset, upsample.color_buf, upsample.color_buf_offset, ci); break;
-				case H2V1_UPSAMPLE: h2v1_upsample(cinfo, compptr, input_buf[ci], offset, upsample.color_buf, upsample.color_buf_offset, ci); break;
-				case H2V2_FANCY_UPSAMPLE: h2v2_fancy_upsample(cinfo, compptr, input_buf[ci], offset, upsample.color_buf, upsample.color_buf_offset, ci); break;
-				case H2V2_UPSAMPLE: h2v2_upsample(cinfo, compptr, input_buf[ci], offset, upsample.color_buf, upsample.color_buf_offset, ci); break;
-				case INT_UPSAMPLE: int_upsample(cinfo, compptr, input_buf[ci], offset, upsample.color_buf, upsample.color_buf_offset, ci); break;
-			}
+			upsample_component(cinfo, compptr, input_buf[ci], offset, upsample.color_buf, upsample.color_buf_offset, ci);
 		}
 		upsample.next_row_out = 0;
 	}
@@ -4773,13 +5004,7 @@ static void sep_upsample (jpeg_decompress_struct cinfo, byte[][][] input_buf, in
 	if (num_rows > out_rows_avail)
 		num_rows = out_rows_avail;
 
-	switch (cinfo.cconvert.color_convert) {
-		case NULL_CONVERT: null_convert (cinfo, upsample.color_buf, upsample.color_buf_offset, upsample.next_row_out, output_buf, out_row_ctr[0], num_rows); break;
-		case GRAYSCALE_CONVERT: grayscale_convert (cinfo, upsample.color_buf, upsample.color_buf_offset, upsample.next_row_out, output_buf, out_row_ctr[0], num_rows); break;
-		case YCC_RGB_CONVERT: ycc_rgb_convert (cinfo, upsample.color_buf, upsample.color_buf_offset, upsample.next_row_out, output_buf, out_row_ctr[0], num_rows); break;
-		case GRAY_RGB_CONVERT: gray_rgb_convert (cinfo, upsample.color_buf, upsample.color_buf_offset, upsample.next_row_out, output_buf, out_row_ctr[0], num_rows); break;
-		case YCCK_CMYK_CONVERT: error(); break;
-	}
+	color_convert(cinfo, upsample.color_buf, upsample.color_buf_offset, upsample.next_row_out, output_buf, out_row_ctr[0], num_rows);
 
 	/* Adjust counts */
 	out_row_ctr[0] += num_rows;
@@ -4791,6 +5016,33 @@ static void sep_upsample (jpeg_decompress_struct cinfo, byte[][][] input_buf, in
 	}
 }
 
+static void upsample_component (jpeg_decompress_struct cinfo, jpeg_component_info compptr,
+	 byte[][] input_data, int input_data_offset, byte[][][] output_data_ptr, int[] output_data_offset, int output_data_index)
+{
+	switch (cinfo.upsample.methods[output_data_index]) {
+		case NOOP_UPSAMPLE: noop_upsample(cinfo, compptr, input_data, input_data_offset, output_data_ptr, output_data_offset, output_data_index); break;
+		case FULLSIZE_UPSAMPLE: fullsize_upsample(cinfo, compptr, input_data, input_data_offset, output_data_ptr, output_data_offset, output_data_index); break;
+		case H2V1_FANCY_UPSAMPLE: h2v1_fancy_upsample(cinfo, compptr, input_data, input_data_offset, output_data_ptr, output_data_offset, output_data_index); break;
+		case H2V1_UPSAMPLE: h2v1_upsample(cinfo, compptr, input_data, input_data_offset, output_data_ptr, output_data_offset, output_data_index); break;
+		case H2V2_FANCY_UPSAMPLE: h2v2_fancy_upsample(cinfo, compptr, input_data, input_data_offset, output_data_ptr, output_data_offset, output_data_index); break;
+		case H2V2_UPSAMPLE: h2v2_upsample(cinfo, compptr, input_data, input_data_offset, output_data_ptr, output_data_offset, output_data_index); break;
+		case INT_UPSAMPLE: int_upsample(cinfo, compptr, input_data, input_data_offset, output_data_ptr, output_data_offset, output_data_index); break;
+	}
+}
+
+static void color_convert (jpeg_decompress_struct cinfo,
+	byte[][][] input_buf, int[] input_buf_offset, int input_row,
+	byte[][] output_buf, int output_buf_offset, int num_rows)
+{
+	switch (cinfo.cconvert.color_convert) {
+		case NULL_CONVERT: null_convert (cinfo, input_buf, input_buf_offset, input_row, output_buf, output_buf_offset, num_rows); break;
+		case GRAYSCALE_CONVERT: grayscale_convert (cinfo, input_buf, input_buf_offset, input_row, output_buf, output_buf_offset, num_rows); break;
+		case YCC_RGB_CONVERT: ycc_rgb_convert (cinfo, input_buf, input_buf_offset, input_row, output_buf, output_buf_offset, num_rows); break;
+		case GRAY_RGB_CONVERT: gray_rgb_convert (cinfo, input_buf, input_buf_offset, input_row, output_buf, output_buf_offset, num_rows); break;
+		case YCCK_CMYK_CONVERT: error(); break;
+	}
+}
+
 static void noop_upsample (jpeg_decompress_struct cinfo, jpeg_component_info compptr,
 	 byte[][] input_data, int input_data_offset, byte[][][] output_data_ptr, int[] output_data_offset, int output_data_index)
 {
@@ -6306,12 +6558,120 @@ static boolean isFileFormat(LEDataInputStream stream) {
 	}
 }
 
+/**
+ * Produces all output scanlines of a single scan image whose coefficients
+ * have been fully buffered. The components are first transformed into
+ * sample planes one block row per task, then upsampling and color
+ * conversion run over bands of row groups. Each task works with its own
+ * IDCT workspace and conversion buffers, and the edge rows are replicated
+ * the way the main buffer controller does it, so the output is identical
+ * to the sequential path.
+ */
+static void decompress_parallel (jpeg_decompress_struct cinfo, byte[] data, int row_stride) {
+	jpeg_d_coef_controller coef = cinfo.coef;
+	jpeg_upsampler upsample = cinfo.upsample;
+	int num_components = cinfo.num_components;
+	int max_v_samp_factor = cinfo.max_v_samp_factor;
+	int row_groups = (cinfo.output_height + max_v_samp_factor - 1) / max_v_samp_factor;
+
+	/* Inverse DCT into one sample plane per component */
+	byte[][][] planes = new byte[num_components][][];
+	int[] first_block_row = new int[num_components + 1];
+	for (int ci = 0; ci < num_components; ci++) {
+		jpeg_component_info compptr = cinfo.comp_info[ci];
+		int block_rows = 0;
+		if (compptr.component_needed) {
+			planes[ci] = new byte[compptr.height_in_blocks * compptr.DCT_scaled_size][compptr.width_in_blocks * compptr.DCT_scaled_size];
+			block_rows = compptr.height_in_blocks;
+		}
+		first_block_row[ci + 1] = first_block_row[ci] + block_rows;
+	}
+	IntStream.range(0, first_block_row[num_components]).parallel().forEach(row -> {
+		int ci = 0;
+		while (row >= first_block_row[ci + 1]) ci++;
+		jpeg_component_info compptr = cinfo.comp_info[ci];
+		int block_row = row - first_block_row[ci];
+		short[][] buffer_ptr = coef.whole_image[ci][block_row];
+		int[] workspace = new int[DCTSIZE2];
+		int output_col = 0;
+		for (int block_num = 0; block_num < compptr.width_in_blocks; block_num++) {
+			inverse_DCT(cinfo, compptr, buffer_ptr[block_num], planes[ci], block_row * compptr.DCT_scaled_size, output_col, workspace);
+			output_col += compptr.DCT_scaled_size;
+		}
+	});
+
+	/*
+	 * Row pointers with one row group of context above the first row and
+	 * the last real row replicated below the bottom, as in set_bottom_pointers.
+	 */
+	byte[][][] input_buf = new byte[num_components][][];
+	for (int ci = 0; ci < num_components; ci++) {
+		if (planes[ci] == null) continue;
+		int rgroup = upsample.rowgroup_height[ci];
+		int last_row = cinfo.comp_info[ci].downsampled_height - 1;
+		byte[][] rows = input_buf[ci] = new byte[rgroup * (row_groups + 2)][];
+		for (int i = 0; i < rows.length; i++) {
+			rows[i] = planes[ci][Math.max(0, Math.min(i - rgroup, last_row))];
+		}
+	}
+
+	/* Upsample and color convert bands of row groups */
+	int band_groups = Math.max(1, row_groups / (ForkJoinPool.getCommonPoolParallelism() * 4));
+	int bands = (row_groups + band_groups - 1) / band_groups;
+	IntStream.range(0, bands).parallel().forEach(band -> {
+		byte[][][] color_buf = new byte[num_components][][];
+		int[] color_buf_offset = new int[num_components];
+		for (int ci = 0; ci < num_components; ci++) {
+			int method = upsample.methods[ci];
+			if (method != NOOP_UPSAMPLE && method != FULLSIZE_UPSAMPLE) {
+				color_buf[ci] = new byte[max_v_samp_factor][(int) jround_up(cinfo.output_width, cinfo.max_h_samp_factor)];
+			}
+		}
+		byte[][] output_buf = new byte[max_v_samp_factor][row_stride];
+		int end = Math.min(row_groups, (band + 1) * band_groups);
+		for (int group = band * band_groups; group < end; group++) {
+			for (int ci = 0; ci < num_components; ci++) {
+				int rgroup = upsample.rowgroup_height[ci];
+				upsample_component(cinfo, cinfo.comp_info[ci], input_buf[ci], rgroup * (group + 1), color_buf, color_buf_offset, ci);
+			}
+			int output_row = group * max_v_samp_factor;
+			int num_rows = Math.min(max_v_samp_factor, cinfo.output_height - output_row);
+			color_convert(cinfo, color_buf, color_buf_offset, 0, output_buf, 0, num_rows);
+			for (int i = 0; i < num_rows; i++) {
+				System.arraycopy(output_buf[i], 0, data, (output_row + i) * row_stride, row_stride);
+			}
+		}
+	});
+}
+
+/**
+ * Returns the largest of the supported reduction factors 1, 2, 4 and 8
+ * that keeps the decoded image at least as large as the requested size.
+ * A size of zero or less leaves that dimension unconstrained.
+ */
+static int scale_denominator (jpeg_decompress_struct cinfo, int width, int height) {
+	int denom = 1;
+	if (width <= 0 && height <= 0) return denom;
+	while (denom < DCTSIZE &&
+		jdiv_round_up(cinfo.image_width, denom * 2) >= width &&
+		jdiv_round_up(cinfo.image_height, denom * 2) >= height)
+	{
+		denom *= 2;
+	}
+	return denom;
+}
+
 static ImageData[] loadFromByteStream(InputStream inputStream, ImageLoader loader) {
 	jpeg_decompress_struct cinfo = new jpeg_decompress_struct();
 	cinfo.inputStream = inputStream;
 	jpeg_create_decompress(cinfo);
 	jpeg_read_header(cinfo, true);
-	cinfo.buffered_image = cinfo.progressive_mode && loader.hasListeners();
+	cinfo.scale_denom = scale_denominator(cinfo, loader.loadWidth, loader.loadHeight);
+	jpeg_calc_output_dimensions(cinfo);
+	boolean incremental = !cinfo.progressive_mode && loader.incrementalRows > 0 && loader.hasListeners();
+	boolean split = parallel && !cinfo.progressive_mode && !incremental
+		&& (long) cinfo.output_width * cinfo.output_height >= parallelThreshold;
+	cinfo.buffered_image = split || (cinfo.progressive_mode && loader.hasListeners());
 	jpeg_start_decompress(cinfo);
 	PaletteData palette = null;
 	switch (cinfo.out_color_space) {
@@ -6335,7 +6695,16 @@ static ImageData[] loadFromByteStream(InputStream inputStream, ImageLoader loade
 	ImageData imageData = ImageData.internal_new(
 			cinfo.output_width, cinfo.output_height, palette.isDirect ? 24 : 8, palette, scanlinePad, data,
 			0, null, null, -1, -1, SWT.IMAGE_JPEG, 0, 0, 0, 0);
-	if (cinfo.buffered_image) {
+	if (split) {
+		/* Absorb the whole scan into the coefficient buffer first */
+		while (!cinfo.inputctl.eoi_reached) {
+			if (jpeg_consume_input(cinfo) == JPEG_SUSPENDED) break;
+		}
+		jpeg_start_output(cinfo, cinfo.input_scan_number);
+		decompress_parallel(cinfo, data, row_stride);
+		cinfo.output_scanline = cinfo.output_height;
+		jpeg_finish_output(cinfo);
+	} else if (cinfo.buffered_image) {
 		boolean done;
 		do {
 			int incrementCount = cinfo.input_scan_number - 1;
@@ -6349,11 +6718,14 @@ static ImageData[] loadFromByteStream(InputStream inputStream, ImageLoader loade
 			loader.notifyListeners(new ImageLoaderEvent(loader, (ImageData)imageData.clone(), incrementCount, done = jpeg_input_complete(cinfo)));
 		} while (!done);
 	} else {
+		IncrementalRowNotifier notifier = incremental ? IncrementalRowNotifier.create(loader, imageData) : null;
 		while (cinfo.output_scanline < cinfo.output_height) {
 			int offset = row_stride * cinfo.output_scanline;
 			jpeg_read_scanlines(cinfo, buffer, 1);
 			System.arraycopy(buffer[0], 0, data, offset, row_stride);
+			if (notifier != null) notifier.rowsDecoded(cinfo.output_scanline);
 		}
+		if (notifier != null) notifier.imageDecoded();
 	}
 	jpeg_finish_decompress(cinfo);
 	jpeg_destroy_decompress(cinfo);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,16 +11,26 @@
 package org.eclipse.swt.internal.image;
 
 
+import java.util.*;
+
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
 
+/**
+ * The GIF variant of LZW. The string table is kept in flat arrays
+ * (prefix and suffix for decoding, an open addressing hash table for
+ * encoding) which are allocated once, so a codec can be reused for
+ * every frame of an animation without allocating per code or per frame.
+ */
 final class LZWCodec {
 	int bitsPerPixel, blockSize, blockIndex, currentByte, bitsLeft,
 		codeSize, clearCode, endCode, newCodes, topSlot, currentSlot,
-		imageWidth, imageHeight, imageX, imageY, pass, line, codeMask;
+		imageWidth, imageHeight, pass, line, codeMask;
 	byte[] block, lineArray;
-	int[] stack, suffix, prefix;
-	LZWNode[] nodeStack;
+	byte[] stack, suffix;
+	short[] prefix;
+	int[] hashKeys;
+	short[] hashCodes;
 	LEDataInputStream inputStream;
 	LEDataOutputStream outputStream;
 	ImageData image;
@@ -30,6 +40,8 @@ final class LZWCodec {
 		0x1, 0x3, 0x7, 0xF, 0x1F, 0x3F, 0x7F,
 		0xFF, 0x1FF, 0x3FF, 0x7FF, 0xFFF
 	};
+	/* Must be a power of 2, at least twice the number of codes */
+	static final int HASH_SIZE = 8192;
 
 /**
  * Decode the input.
@@ -38,7 +50,9 @@ void decode() {
 	int code;
 	int oc = 0;
 	int fc = 0;
-	byte[] buf = new byte[imageWidth];
+	byte[] buf = lineArray;
+	byte[] stack = this.stack, suffix = this.suffix;
+	short[] prefix = this.prefix;
 	int stackIndex = 0;
 	int bufIndex = 0;
 	int c;
@@ -62,7 +76,7 @@ void decode() {
 			code = c;
 			if (code >= currentSlot) {
 				code = oc;
-				stack[stackIndex] = fc;
+				stack[stackIndex] = (byte)fc;
 				stackIndex++;
 			}
 			while (code >= newCodes) {
@@ -70,12 +84,12 @@ void decode() {
 				stackIndex++;
 				code = prefix[code];
 			}
-			stack[stackIndex] = code;
+			stack[stackIndex] = (byte)code;
 			stackIndex++;
 			if (currentSlot < topSlot) {
 				fc = code;
-				suffix[currentSlot] = fc;
-				prefix[currentSlot] = oc;
+				suffix[currentSlot] = (byte)fc;
+				prefix[currentSlot] = (short)oc;
 				currentSlot++;
 				oc = c;
 			}
@@ -88,7 +102,7 @@ void decode() {
 			}
 			while (stackIndex > 0) {
 				stackIndex--;
-				buf[bufIndex] = (byte)stack[stackIndex];
+				buf[bufIndex] = stack[stackIndex];
 				bufIndex++;
 				if (bufIndex == imageWidth) {
 					nextPutPixels(buf);
@@ -148,72 +162,56 @@ public void encode(LEDataOutputStream byteStream, ImageData image) {
 	encode();
 }
 /**
- * Encoding loop broken out to allow early return.
+ * Encoding loop. Answer the prefix that is still pending
+ * at the end of the image.
  */
 int encodeLoop() {
-	int pixel = nextPixel();
-	boolean found;
-	LZWNode node;
-	while (true) {
-		int currentPrefix = pixel;
-		node = nodeStack[currentPrefix];
-		found = true;
-		pixel = nextPixel();
-		if (pixel < 0)
-			return currentPrefix;
-		while (found && (node.children != null)) {
-			node = node.children;
-			while (found && (node.suffix != pixel)) {
-				if (pixel < node.suffix) {
-					if (node.left == null) {
-						node.left = new LZWNode();
-						found = false;
-					}
-					node = node.left;
-				} else {
-					if (node.right == null) {
-						node.right = new LZWNode();
-						found = false;
-					}
-					node = node.right;
-				}
+	byte[] buf = lineArray;
+	int[] hashKeys = this.hashKeys;
+	short[] hashCodes = this.hashCodes;
+	int currentPrefix = -1;
+	for (int y = 0; y < imageHeight; y++) {
+		nextPixels(buf, y);
+		for (int x = 0; x < imageWidth; x++) {
+			int pixel = buf[x] & 0xFF;
+			if (currentPrefix < 0) {
+				currentPrefix = pixel;
+				continue;
 			}
-			if (found) {
-				currentPrefix = node.code;
-				pixel = nextPixel();
-				if (pixel < 0)
-					return currentPrefix;
+			/* Look up the string currentPrefix + pixel */
+			int key = (currentPrefix << 8) | pixel;
+			int index = (key ^ (key >>> 12)) * 0x9E3779B1 >>> 19;
+			int entry;
+			while ((entry = hashKeys[index]) != -1 && entry != key) {
+				index = (index + 1) & (HASH_SIZE - 1);
 			}
-		}
-		if (found) {
-			node.children = new LZWNode();
-			node = node.children;
-		}
-		node.children = null;
-		node.left = null;
-		node.right = null;
-		node.code = currentSlot;
-		node.prefix = currentPrefix;
-		node.suffix = pixel;
-		nextPutCode(currentPrefix);
-		currentSlot++;
-		// Off by one?
-		if (currentSlot < 4096) {
-			if (currentSlot > topSlot) {
-				codeSize++;
+			if (entry == key) {
+				currentPrefix = hashCodes[index];
+				continue;
+			}
+			hashKeys[index] = key;
+			hashCodes[index] = (short)currentSlot;
+			nextPutCode(currentPrefix);
+			currentSlot++;
+			// Off by one?
+			if (currentSlot < 4096) {
+				if (currentSlot > topSlot) {
+					codeSize++;
+					codeMask = MASK_TABLE[codeSize - 1];
+					topSlot *= 2;
+				}
+			} else {
+				nextPutCode(clearCode);
+				Arrays.fill(hashKeys, -1);
+				codeSize = bitsPerPixel + 1;
 				codeMask = MASK_TABLE[codeSize - 1];
-				topSlot *= 2;
+				currentSlot = newCodes;
+				topSlot = 1 << codeSize;
 			}
-		} else {
-			nextPutCode(clearCode);
-			for (int i = 0; i < nodeStack.length; i++)
-				nodeStack[i].children = null;
-			codeSize = bitsPerPixel + 1;
-			codeMask = MASK_TABLE[codeSize - 1];
-			currentSlot = newCodes;
-			topSlot = 1 << codeSize;
+			currentPrefix = pixel;
 		}
 	}
+	return currentPrefix;
 }
 /**
  * Initialize the receiver for decoding the given
@@ -231,12 +229,19 @@ void initializeForDecoding() {
 	blockSize = bitsLeft = 0;
 	blockIndex = 0;
 	codeMask = MASK_TABLE[codeSize - 1];
-	stack = new int[4096];
-	suffix = new int[4096];
-	prefix = new int[4096];
-	block = new byte[256];
+	if (stack == null) {
+		stack = new byte[4096];
+		suffix = new byte[4096];
+		prefix = new short[4096];
+	}
+	if (block == null || block.length < 256) block = new byte[256];
 	imageWidth = image.width;
 	imageHeight = image.height;
+	if (lineArray == null || lineArray.length < imageWidth) {
+		lineArray = new byte[imageWidth];
+	} else {
+		Arrays.fill(lineArray, 0, imageWidth, (byte)0);
+	}
 }
 /**
  * Initialize the receiver for encoding the given
@@ -244,7 +249,8 @@ void initializeForDecoding() {
  */
 void initializeForEncoding() {
 	interlaced = false;
-	bitsPerPixel = image.depth;
+	/* GIF does not allow a minimum code size below 2 */
+	bitsPerPixel = Math.max(2, image.depth);
 	codeSize = bitsPerPixel + 1;
 	topSlot = 1 << codeSize;
 	clearCode = 1 << bitsPerPixel;
@@ -254,21 +260,16 @@ void initializeForEncoding() {
 	currentByte = 0;
 	blockIndex = 1;
 	blockSize = 255;
-	block = new byte[blockSize];
+	if (block == null) block = new byte[256];
 	block[0] = (byte)(blockSize - 1);
-	nodeStack = new LZWNode[1 << bitsPerPixel];
-	for (int i = 0; i < nodeStack.length; i++) {
-		LZWNode node = new LZWNode();
-		node.code = i + 1;
-		node.prefix = -1;
-		node.suffix = i + 1;
-		nodeStack[i] = node;
+	if (hashKeys == null) {
+		hashKeys = new int[HASH_SIZE];
+		hashCodes = new short[HASH_SIZE];
 	}
+	Arrays.fill(hashKeys, -1);
 	imageWidth = image.width;
 	imageHeight = image.height;
-	imageY = -1;
-	lineArray = new byte[imageWidth];
-	imageX = imageWidth + 1; // Force a read
+	if (lineArray == null || lineArray.length < imageWidth) lineArray = new byte[imageWidth];
 }
 /**
  * Answer the next code from the input byte array.
@@ -307,29 +308,13 @@ int nextCode() {
 	return code & codeMask;
 }
 /**
- * Answer the next pixel to encode in the image
+ * Copy row y of pixel values from the image.
  */
-int nextPixel() {
-	imageX++;
-	if (imageX > imageWidth) {
-		imageY++;
-		if (imageY >= imageHeight) {
-			return -1;
-		} else {
-			nextPixels(lineArray, imageWidth);
-		}
-		imageX = 1;
-	}
-	return this.lineArray[imageX - 1] & 0xFF;
-}
-/**
- * Copy a row of pixel values from the image.
- */
-void nextPixels(byte[] buf, int lineWidth) {
+void nextPixels(byte[] buf, int y) {
 	if (image.depth == 8) {
-		System.arraycopy(image.data, imageY * image.bytesPerLine, buf, 0, lineWidth);
+		System.arraycopy(image.data, y * image.bytesPerLine, buf, 0, imageWidth);
 	} else {
-		image.getPixels(0, imageY, lineWidth, buf, 0);
+		image.getPixels(0, y, imageWidth, buf, 0);
 	}
 }
 /**
@@ -388,13 +373,39 @@ void nextPutCode(int aCode) {
  * Copy a row of pixel values to the image.
  */
 void nextPutPixels(byte[] buf) {
-	if (image.depth == 8) {
-		// Slight optimization for depth = 8.
-		int start = line * image.bytesPerLine;
-		for (int i = 0; i < imageWidth; i++)
-			image.data[start + i] = buf[i];
-	} else {
-		image.setPixels(0, line, imageWidth, buf, 0);
+	byte[] data = image.data;
+	int start = line * image.bytesPerLine;
+	switch (image.depth) {
+		case 8:
+			System.arraycopy(buf, 0, data, start, imageWidth);
+			break;
+		case 4: {
+			int i = 0, end = imageWidth - 1;
+			for (; i < end; i += 2) {
+				data[start++] = (byte)(((buf[i] & 0x0F) << 4) | (buf[i + 1] & 0x0F));
+			}
+			if (i < imageWidth) {
+				data[start] = (byte)((data[start] & 0x0F) | ((buf[i] & 0x0F) << 4));
+			}
+			break;
+		}
+		case 1: {
+			int i = 0, end = imageWidth - 7;
+			for (; i < end; i += 8) {
+				data[start++] = (byte)(((buf[i] & 1) << 7) | ((buf[i + 1] & 1) << 6) | ((buf[i + 2] & 1) << 5) | ((buf[i + 3] & 1) << 4) |
+					((buf[i + 4] & 1) << 3) | ((buf[i + 5] & 1) << 2) | ((buf[i + 6] & 1) << 1) | (buf[i + 7] & 1));
+			}
+			if (i < imageWidth) {
+				int value = data[start] & (0xFF >>> (imageWidth - i));
+				for (int shift = 7; i < imageWidth; i++, shift--) {
+					value |= (buf[i] & 1) << shift;
+				}
+				data[start] = (byte)value;
+			}
+			break;
+		}
+		default:
+			image.setPixels(0, line, imageWidth, buf, 0);
 	}
 	if (interlaced) {
 		if (pass == 1) {
@@ -435,9 +446,11 @@ void nextPutPixels(byte[] buf) {
  * This is to fill in rows if the image is interlaced.
  */
 void copyRow(byte[] buf, int copies) {
+	int bytesPerLine = image.bytesPerLine;
+	int start = line * bytesPerLine;
 	for (int i = 1; i <= copies; i++) {
 		if (line + i < imageHeight) {
-			image.setPixels(0, line + i, imageWidth, buf, 0);
+			System.arraycopy(image.data, start, image.data, start + i * bytesPerLine, bytesPerLine);
 		}
 	}
 }
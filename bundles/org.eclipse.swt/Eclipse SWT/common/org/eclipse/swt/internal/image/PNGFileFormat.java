@@ -12,7 +12,6 @@ package org.eclipse.swt.internal.image;
 
 
 import java.io.*;
-import java.util.zip.*;
 
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
@@ -20,6 +19,24 @@ import org.eclipse.swt.graphics.*;
 public final class PNGFileFormat extends FileFormat {
 	static final int SIGNATURE_LENGTH = 8;
 	static final int PRIME = 65521;
+
+	/* Inflate backends for the IDAT data */
+	static final int INFLATER_ZLIB = 0;
+	static final int INFLATER_JAVA = 1;
+
+	/**
+	 * The backend used to inflate the IDAT data. The default is
+	 * java.util.zip.Inflater, the pure Java decoder is kept as a
+	 * fallback and can be selected with the system property
+	 * org.eclipse.swt.internal.image.PNGFileFormat.inflater=java
+	 * (or the older org.eclipse.swt.internal.image.PNGFileFormat_3.2).
+	 */
+	static final int INFLATER;
+	static {
+		String inflater = System.getProperty("org.eclipse.swt.internal.image.PNGFileFormat.inflater"); //$NON-NLS-1$
+		boolean use3_2 = System.getProperty("org.eclipse.swt.internal.image.PNGFileFormat_3.2") != null; //$NON-NLS-1$
+		INFLATER = use3_2 || "java".equals(inflater) ? INFLATER_JAVA : INFLATER_ZLIB; //$NON-NLS-1$
+	}
 	PngIhdrChunk headerChunk;
 	PngPlteChunk paletteChunk;
 	ImageData imageData;
@@ -48,12 +65,13 @@ ImageData[] loadFromByteStream() {
 		headerChunk = chunkReader.getIhdrChunk();
 		int width = headerChunk.getWidth(), height = headerChunk.getHeight();
 		if (width <= 0 || height <= 0) SWT.error(SWT.ERROR_INVALID_IMAGE);
-		int imageSize = getAlignedBytesPerRow() * height;
-		data = new byte[imageSize];
+		int depth = headerChunk.getSwtBitsPerPixel();
+		int bytesPerLine = (((width * depth + 7) / 8) + 3) / 4 * 4;
+		data = new byte[bytesPerLine * height];
 		imageData = ImageData.internal_new(
 			width,
 			height,
-			headerChunk.getSwtBitsPerPixel(),
+			depth,
 			new PaletteData(0, 0, 0),
 			4,
 			data,
@@ -168,152 +186,149 @@ boolean isFileFormat(LEDataInputStream stream) {
 	}
 }
 /**
- * SWT does not support 16-bit depths. If this image uses
- * 16-bit depths, convert the data to an 8-bit depth.
+ * Convert one unfiltered row of PNG pixels to the layout of
+ * the image data and store it straight into the destination
+ * buffers. SWT does not support 16-bit depths or grayscale
+ * with alpha, so 16-bit samples are reduced to 8 bits and
+ * grayscale with alpha is expanded to RGB with alpha data.
+ * Interlaced passes only fill every columnInterval pixel
+ * starting at startColumn.
  */
-byte[] validateBitDepth(byte[] data) {
-	if (headerChunk.getBitDepth() > 8) {
-		byte[] result = new byte[data.length / 2];
-		compress16BitDepthTo8BitDepth(data, 0, result, 0, result.length);
-		return result;
-	} else {
-		return data;
+void setRowData(byte[] row, int pixelCount, int y, int startColumn, int columnInterval) {
+	int width = imageData.width;
+	int bytesPerLine = imageData.bytesPerLine;
+	byte[] alphaData = imageData.alphaData;
+	int bitDepth = headerChunk.getBitDepth();
+	if (bitDepth < 8) {
+		/* Only grayscale and palette images, the depth is the same in SWT */
+		int rowBase = y * bytesPerLine;
+		if (columnInterval == 1) {
+			System.arraycopy(row, 0, data, rowBase, getBytesPerRow(pixelCount));
+		} else {
+			int pixelsPerByte = 8 / bitDepth;
+			int valueMask = (1 << bitDepth) - 1;
+			int maxShift = 8 - bitDepth;
+			int column = startColumn;
+			for (int i = 0; i < pixelCount; i++) {
+				int value = (row[i / pixelsPerByte] >> (maxShift - bitDepth * (i % pixelsPerByte))) & valueMask;
+				int dataShift = maxShift - (bitDepth * (column % pixelsPerByte));
+				data[rowBase + (column / pixelsPerByte)] |= value << dataShift;
+				column += columnInterval;
+			}
+		}
+		if (alphaData != null) {
+			int pixelsPerByte = 8 / bitDepth;
+			int valueMask = (1 << bitDepth) - 1;
+			int maxShift = 8 - bitDepth;
+			int alphaIndex = y * width + startColumn;
+			for (int i = 0; i < pixelCount; i++) {
+				int index = (row[i / pixelsPerByte] >> (maxShift - bitDepth * (i % pixelsPerByte))) & valueMask;
+				alphaData[alphaIndex] = alphaPalette[index];
+				alphaIndex += columnInterval;
+			}
+		}
+		return;
 	}
-}
-/**
- * SWT does not support greyscale as a color type. For
- * plain grayscale, we create a palette. For Grayscale
- * with Alpha, however, we need to convert the pixels
- * to use RGB values.
- * Note: This method assumes that the bit depth of the
- * data has already been restricted to 8 or less.
- */
-void setPixelData(byte[] data, ImageData imageData) {
+	/* 16-bit samples are reduced by dropping the low byte */
+	int sampleSize = bitDepth / 8;
+	int destIndex = y * bytesPerLine + startColumn * (imageData.depth / 8);
+	int alphaIndex = y * width + startColumn;
+	int srcIndex = 0;
 	switch (headerChunk.getColorType()) {
-		case PngIhdrChunk.COLOR_TYPE_GRAYSCALE_WITH_ALPHA:
-		{
-			int width = imageData.width;
-			int height = imageData.height;
-			int destBytesPerLine = imageData.bytesPerLine;
-			/*
-			* If the image uses 16-bit depth, it is converted
-			* to an 8-bit depth image.
-			*/
-			int srcBytesPerLine = getAlignedBytesPerRow();
-			if (headerChunk.getBitDepth() > 8) srcBytesPerLine /= 2;
-
-			byte[] rgbData = new byte[destBytesPerLine * height];
-			byte[] alphaData = new byte[width * height];
-			for (int y = 0; y < height; y++) {
-				int srcIndex = srcBytesPerLine * y;
-				int destIndex = destBytesPerLine * y;
-				int destAlphaIndex = width * y;
-				for (int x = 0; x < width; x++) {
-					byte grey = data[srcIndex];
-					byte alpha = data[srcIndex + 1];
-					rgbData[destIndex + 0] = grey;
-					rgbData[destIndex + 1] = grey;
-					rgbData[destIndex + 2] = grey;
-					alphaData[destAlphaIndex] = alpha;
-					srcIndex += 2;
-					destIndex += 3;
-					destAlphaIndex++;
-				}
+		case PngIhdrChunk.COLOR_TYPE_GRAYSCALE_WITH_ALPHA: {
+			int destStep = 3 * columnInterval;
+			for (int i = 0; i < pixelCount; i++) {
+				byte grey = row[srcIndex];
+				data[destIndex] = grey;
+				data[destIndex + 1] = grey;
+				data[destIndex + 2] = grey;
+				alphaData[alphaIndex] = row[srcIndex + sampleSize];
+				srcIndex += 2 * sampleSize;
+				destIndex += destStep;
+				alphaIndex += columnInterval;
 			}
-			imageData.data = rgbData;
-			imageData.alphaData = alphaData;
 			break;
 		}
-		case PngIhdrChunk.COLOR_TYPE_RGB_WITH_ALPHA:
-		{
-			int width = imageData.width;
-			int height = imageData.height;
-			int destBytesPerLine = imageData.bytesPerLine;
-			int srcBytesPerLine = getAlignedBytesPerRow();
-			/*
-			* If the image uses 16-bit depth, it is converted
-			* to an 8-bit depth image.
-			*/
-			if (headerChunk.getBitDepth() > 8) srcBytesPerLine /= 2;
-
-			byte[] rgbData = new byte[destBytesPerLine * height];
-			byte[] alphaData = new byte[width * height];
-			for (int y = 0; y < height; y++) {
-				int srcIndex = srcBytesPerLine * y;
-				int destIndex = destBytesPerLine * y;
-				int destAlphaIndex = width * y;
-				for (int x = 0; x < width; x++) {
-					rgbData[destIndex + 0] = data[srcIndex + 0];
-					rgbData[destIndex + 1] = data[srcIndex + 1];
-					rgbData[destIndex + 2] = data[srcIndex + 2];
-					alphaData[destAlphaIndex] = data[srcIndex + 3];
-					srcIndex += 4;
-					destIndex += 3;
-					destAlphaIndex++;
-				}
+		case PngIhdrChunk.COLOR_TYPE_RGB_WITH_ALPHA: {
+			int destStep = 3 * columnInterval;
+			for (int i = 0; i < pixelCount; i++) {
+				data[destIndex] = row[srcIndex];
+				data[destIndex + 1] = row[srcIndex + sampleSize];
+				data[destIndex + 2] = row[srcIndex + 2 * sampleSize];
+				alphaData[alphaIndex] = row[srcIndex + 3 * sampleSize];
+				srcIndex += 4 * sampleSize;
+				destIndex += destStep;
+				alphaIndex += columnInterval;
+			}
+			break;
+		}
+		case PngIhdrChunk.COLOR_TYPE_RGB: {
+			if (sampleSize == 1 && columnInterval == 1) {
+				System.arraycopy(row, 0, data, destIndex, pixelCount * 3);
+				break;
+			}
+			int destStep = 3 * columnInterval;
+			for (int i = 0; i < pixelCount; i++) {
+				data[destIndex] = row[srcIndex];
+				data[destIndex + 1] = row[srcIndex + sampleSize];
+				data[destIndex + 2] = row[srcIndex + 2 * sampleSize];
+				srcIndex += 3 * sampleSize;
+				destIndex += destStep;
 			}
-			imageData.data = rgbData;
-			imageData.alphaData = alphaData;
 			break;
 		}
 		case PngIhdrChunk.COLOR_TYPE_PALETTE:
-			imageData.data = data;
-			if (alphaPalette != null) {
-				int size = imageData.width * imageData.height;
-				byte[] alphaData = new byte[size];
-				byte[] pixelData = new byte[size];
-				imageData.getPixels(0, 0, size, pixelData, 0);
-				for (int i = 0; i < pixelData.length; i++) {
-					alphaData[i] = alphaPalette[pixelData[i] & 0xFF];
+		case PngIhdrChunk.COLOR_TYPE_GRAYSCALE:
+		default: {
+			if (sampleSize == 1 && columnInterval == 1) {
+				System.arraycopy(row, 0, data, destIndex, pixelCount);
+			} else {
+				for (int i = 0; i < pixelCount; i++) {
+					data[destIndex] = row[srcIndex];
+					srcIndex += sampleSize;
+					destIndex += columnInterval;
 				}
-				imageData.alphaData = alphaData;
 			}
-			break;
-		case PngIhdrChunk.COLOR_TYPE_RGB:
-		default:
-			int height = imageData.height;
-			int destBytesPerLine = imageData.bytesPerLine;
-			int srcBytesPerLine = getAlignedBytesPerRow();
-			/*
-			* If the image uses 16-bit depth, it is converted
-			* to an 8-bit depth image.
-			*/
-			if (headerChunk.getBitDepth() > 8) srcBytesPerLine /= 2;
-			if (destBytesPerLine != srcBytesPerLine) {
-				for (int y = 0; y < height; y++) {
-					System.arraycopy(data, y * srcBytesPerLine, imageData.data, y * destBytesPerLine, srcBytesPerLine);
+			if (alphaData != null) {
+				for (int i = 0; i < pixelCount; i++) {
+					alphaData[alphaIndex] = alphaPalette[row[i] & 0xFF];
+					alphaIndex += columnInterval;
 				}
-			} else {
-				imageData.data = data;
 			}
 			break;
+		}
 	}
 }
-/**
- * PNG supports some color types and bit depths that are
- * unsupported by SWT. If the image uses an unsupported
- * color type (either of the gray scale types) or bit
- * depth (16), convert the data to an SWT-supported
- * format. Then assign the data into the ImageData given.
- */
-void setImageDataValues(byte[] data, ImageData imageData) {
-	byte[] result = validateBitDepth(data);
-	setPixelData(result, imageData);
-}
 /**
  * Read the image data from the data stream. This must handle
  * decoding the data, filtering, and interlacing.
  */
 @SuppressWarnings("resource")
 void readPixelData(PngIdatChunk chunk, PngChunkReader chunkReader) throws IOException {
-	InputStream stream = new PngInputStream(chunk, chunkReader);
-	//TEMPORARY CODE
-	boolean use3_2 = System.getProperty("org.eclipse.swt.internal.image.PNGFileFormat_3.2") != null;
-	InputStream inflaterStream = use3_2 ? null : new BufferedInputStream(new InflaterInputStream(stream));
-	if (inflaterStream != null) {
-		stream = inflaterStream;
-	} else {
-		stream = new PngDecodingDataStream(stream);
+	InputStream stream;
+	switch (INFLATER) {
+		case INFLATER_JAVA:
+			stream = new PngDecodingDataStream(new PngInputStream(chunk, chunkReader));
+			break;
+		case INFLATER_ZLIB:
+		default:
+			stream = new PngInflaterInputStream(chunk, chunkReader);
+			break;
+	}
+	/*
+	* The alpha data is allocated only now because the PLTE and
+	* tRNS chunks, which determine whether it is needed, must
+	* precede the first IDAT chunk.
+	*/
+	int width = imageData.width, height = imageData.height;
+	switch (headerChunk.getColorType()) {
+		case PngIhdrChunk.COLOR_TYPE_GRAYSCALE_WITH_ALPHA:
+		case PngIhdrChunk.COLOR_TYPE_RGB_WITH_ALPHA:
+			imageData.alphaData = new byte[width * height];
+			break;
+		case PngIhdrChunk.COLOR_TYPE_PALETTE:
+			if (alphaPalette != null) imageData.alphaData = new byte[width * height];
+			break;
 	}
 	int interlaceMethod = headerChunk.getInterlaceMethod();
 	if (interlaceMethod == PngIhdrChunk.INTERLACE_METHOD_NONE) {
@@ -322,19 +337,13 @@ void readPixelData(PngIdatChunk chunk, PngChunkReader chunkReader) throws IOExce
 		readInterlacedImage(stream);
 	}
 	/*
-	* InflaterInputStream does not consume all bytes in the stream
-	* when it is closed. This may leave unread IDAT chunks. The fix
-	* is to read all available bytes before closing it.
+	* The rows may end before the compressed stream does. Read
+	* the remaining bytes so that the end of the compressed data
+	* (and the checksum) is consumed before closing the stream.
 	*/
 	while (stream.available() > 0) stream.read();
 	stream.close();
 }
-/**
- * Answer the number of bytes in a word-aligned row of pixel data.
- */
-int getAlignedBytesPerRow() {
-	return ((getBytesPerRow(headerChunk.getWidth()) + 3) / 4) * 4;
-}
 /**
  * Answer the number of bytes in each row of the image
  * data. Each PNG row is byte-aligned, so images with bit
@@ -367,6 +376,20 @@ int getBytesPerRow(int rowWidthInPixels) {
 	int bitsPerByte = 8;
 	return (bitsPerRow + (bitsPerByte - 1)) / bitsPerByte;
 }
+/**
+ * Read the filter type and the filtered bytes of the next
+ * row into the given buffer and return the filter type.
+ */
+int readRow(InputStream inputStream, byte[] row) throws IOException {
+	int filterType = inputStream.read();
+	int read = 0;
+	while (read != row.length) {
+		int count = inputStream.read(row, read, row.length - read);
+		if (count < 0) throw new IOException();
+		read += count;
+	}
+	return filterType;
+}
 /**
  * 1. Read one of the seven frames of interlaced data.
  * 2. Update the imageData.
@@ -381,7 +404,6 @@ void readInterlaceFrame(
 	int frameCount) throws IOException
 {
 	int width = headerChunk.getWidth();
-	int alignedBytesPerRow = getAlignedBytesPerRow();
 	int height = headerChunk.getHeight();
 	if (startRow >= height || startColumn >= width) return;
 
@@ -392,48 +414,12 @@ void readInterlaceFrame(
 	byte[] currentRow = row1;
 	byte[] lastRow = row2;
 	for (int row = startRow; row < height; row += rowInterval) {
-		byte filterType = (byte)inputStream.read();
-		int read = 0;
-		while (read != bytesPerRow) {
-			read += inputStream.read(currentRow, read, bytesPerRow - read);
-		}
+		int filterType = readRow(inputStream, currentRow);
 		filterRow(currentRow, lastRow, filterType);
-		if (headerChunk.getBitDepth() >= 8) {
-			int bytesPerPixel = getBytesPerPixel();
-			int dataOffset = (row * alignedBytesPerRow) + (startColumn * bytesPerPixel);
-			for (int rowOffset = 0; rowOffset < currentRow.length; rowOffset += bytesPerPixel) {
-				for (int byteOffset = 0; byteOffset < bytesPerPixel; byteOffset++) {
-					data[dataOffset + byteOffset] = currentRow[rowOffset + byteOffset];
-				}
-				dataOffset += (columnInterval * bytesPerPixel);
-			}
-		} else {
-			int bitsPerPixel = headerChunk.getBitDepth();
-			int pixelsPerByte = 8 / bitsPerPixel;
-			int column = startColumn;
-			int rowBase = row * alignedBytesPerRow;
-			int valueMask = 0;
-			for (int i = 0; i < bitsPerPixel; i++) {
-				valueMask <<= 1;
-				valueMask |= 1;
-			}
-			int maxShift = 8 - bitsPerPixel;
-			for (int byteOffset = 0; byteOffset < currentRow.length; byteOffset++) {
-				for (int bitOffset = maxShift; bitOffset >= 0; bitOffset -= bitsPerPixel) {
-					if (column < width) {
-						int dataOffset = rowBase + (column * bitsPerPixel / 8);
-						int value = (currentRow[byteOffset] >> bitOffset) & valueMask;
-						int dataShift = maxShift - (bitsPerPixel * (column % pixelsPerByte));
-						data[dataOffset] |= value << dataShift;
-					}
-					column += columnInterval;
-				}
-			}
-		}
+		setRowData(currentRow, pixelsPerRow, row, startColumn, columnInterval);
 		currentRow = (currentRow == row1) ? row2 : row1;
 		lastRow = (lastRow == row1) ? row2 : row1;
 	}
-	setImageDataValues(data, imageData);
 	fireInterlacedFrameEvent(frameCount);
 }
 /**
@@ -464,57 +450,27 @@ void fireInterlacedFrameEvent(int frameCount) {
 }
 /**
  * Read the pixel data for a non-interlaced image from the
- * data stream.
- * Update the imageData to reflect the new data.
+ * data stream. Each row is unfiltered and converted as soon
+ * as it is read, so only the previous row is kept around.
  */
 void readNonInterlacedImage(InputStream inputStream) throws IOException {
-	int dataOffset = 0;
-	int alignedBytesPerRow = getAlignedBytesPerRow();
+	int width = headerChunk.getWidth();
 	int bytesPerRow = getBytesPerRow();
 	byte[] row1 = new byte[bytesPerRow];
 	byte[] row2 = new byte[bytesPerRow];
 	byte[] currentRow = row1;
 	byte[] lastRow = row2;
 	int height = headerChunk.getHeight();
+	IncrementalRowNotifier notifier = IncrementalRowNotifier.create(loader, imageData);
 	for (int row = 0; row < height; row++) {
-		byte filterType = (byte)inputStream.read();
-		int read = 0;
-		while (read != bytesPerRow) {
-			read += inputStream.read(currentRow, read, bytesPerRow - read);
-		}
+		int filterType = readRow(inputStream, currentRow);
 		filterRow(currentRow, lastRow, filterType);
-		System.arraycopy(currentRow, 0, data, dataOffset, bytesPerRow);
-		dataOffset += alignedBytesPerRow;
+		setRowData(currentRow, width, row, 0, 1);
+		if (notifier != null) notifier.rowsDecoded(row + 1);
 		currentRow = (currentRow == row1) ? row2 : row1;
 		lastRow = (lastRow == row1) ? row2 : row1;
 	}
-	setImageDataValues(data, imageData);
-}
-/**
- * SWT does not support 16-bit depth color formats.
- * Convert the 16-bit data to 8-bit data.
- * The correct way to do this is to multiply each
- * 16 bit value by the value:
- * (2^8 - 1) / (2^16 - 1).
- * The fast way to do this is just to drop the low
- * byte of the 16-bit value.
- */
-static void compress16BitDepthTo8BitDepth(
-	byte[] source,
-	int sourceOffset,
-	byte[] destination,
-	int destinationOffset,
-	int numberOfValues)
-{
-	//double multiplier = (Compatibility.pow2(8) - 1) / (Compatibility.pow2(16) - 1);
-	for (int i = 0; i < numberOfValues; i++) {
-		int sourceIndex = sourceOffset + (2 * i);
-		int destinationIndex = destinationOffset + i;
-		//int value = (source[sourceIndex] << 8) | source[sourceIndex + 1];
-		//byte compressedValue = (byte)(value * multiplier);
-		byte compressedValue = source[sourceIndex];
-		destination[destinationIndex] = compressedValue;
-	}
+	if (notifier != null) notifier.imageDecoded();
 }
 /**
  * SWT does not support 16-bit depth color formats.
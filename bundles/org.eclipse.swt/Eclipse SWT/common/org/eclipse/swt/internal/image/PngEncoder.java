@@ -30,6 +30,9 @@ final class PngEncoder extends Object {
 	static final int BEST_COMPRESSION = 9;
 	static final int DEFAULT_COMPRESSION = -1;
 
+	static final int FILTER_COUNT = 5;
+	static final int BUFFER_SIZE = 8192;
+
 	ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
 	PngChunk chunk;
 
@@ -234,20 +237,28 @@ void writeImageData() throws IOException {
 
 	ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
 	OutputStream os = null;
+	int level;
 	switch (loader.compression) {
 	case 0:
-		os = new DeflaterOutputStream(baos, new Deflater(NO_COMPRESSION));
+		level = NO_COMPRESSION;
 		break;
 	case 1:
-		os = new DeflaterOutputStream(baos, new Deflater(BEST_SPEED));
+		level = BEST_SPEED;
 		break;
 	case 3:
-		os = new DeflaterOutputStream(baos, new Deflater(BEST_COMPRESSION));
+		level = BEST_COMPRESSION;
 		break;
 	default:
-		os = new DeflaterOutputStream(baos, new Deflater(DEFAULT_COMPRESSION));
+		level = DEFAULT_COMPRESSION;
 		break;
 	}
+	/*
+	* Filtering does not pay off for palette images, and it is
+	* useless when the data is stored uncompressed.
+	*/
+	boolean adaptiveFilter = colorType != 3 && level != NO_COMPRESSION;
+	Deflater deflater = new Deflater(level);
+	os = new DeflaterOutputStream(baos, deflater, BUFFER_SIZE);
 
 	if (colorType == 3) {
 
@@ -281,41 +292,62 @@ void writeImageData() throws IOException {
 		int blueShift = data.palette.blueShift;
 		int blueMask = data.palette.blueMask;
 
-		byte[] lineBytes = new byte[width * (colorType == 6 ? 4 : 3)];
+		int bytesPerPixel = colorType == 6 ? 4 : 3;
+		byte[] lineBytes = new byte[width * bytesPerPixel];
+		byte[] previousLineBytes = new byte[lineBytes.length];
+		byte[][] filtered = adaptiveFilter ? new byte[FILTER_COUNT][lineBytes.length] : null;
+
+		/* 24-bit RGB data is already laid out the way PNG wants it */
+		boolean rgbBytes = colorType == 2 && data.depth == 24 &&
+			redMask == 0xFF0000 && greenMask == 0xFF00 && blueMask == 0xFF;
 
 		for (int y = 0; y < height; y++) {
 
-			int filter = 0;
-			os.write(filter);
+			if (rgbBytes) {
+				System.arraycopy(data.data, y * data.bytesPerLine, lineBytes, 0, lineBytes.length);
+			} else {
 
-			data.getPixels(0, y, width, lineData, 0);
+				data.getPixels(0, y, width, lineData, 0);
 
-			if (colorType == 6) {
-				data.getAlphas(0, y, width, alphaData, 0);
-			}
+				if (colorType == 6) {
+					data.getAlphas(0, y, width, alphaData, 0);
+				}
 
-			int offset = 0;
-			for (int x = 0; x < lineData.length; x++) {
+				int offset = 0;
+				for (int x = 0; x < lineData.length; x++) {
 
-				int pixel = lineData[x];
+					int pixel = lineData[x];
 
-				int r = pixel & redMask;
-				lineBytes[offset++] = (byte) ((redShift < 0) ? r >>> -redShift
-						: r << redShift);
-				int g = pixel & greenMask;
-				lineBytes[offset++] = (byte) ((greenShift < 0) ? g >>> -greenShift
-						: g << greenShift);
-				int b = pixel & blueMask;
-				lineBytes[offset++] = (byte) ((blueShift < 0) ? b >>> -blueShift
-						: b << blueShift);
+					int r = pixel & redMask;
+					lineBytes[offset++] = (byte) ((redShift < 0) ? r >>> -redShift
+							: r << redShift);
+					int g = pixel & greenMask;
+					lineBytes[offset++] = (byte) ((greenShift < 0) ? g >>> -greenShift
+							: g << greenShift);
+					int b = pixel & blueMask;
+					lineBytes[offset++] = (byte) ((blueShift < 0) ? b >>> -blueShift
+							: b << blueShift);
+
+					if (colorType == 6) {
+						lineBytes[offset++] = alphaData[x];
+					}
 
-				if (colorType == 6) {
-					lineBytes[offset++] = alphaData[x];
 				}
 
 			}
 
-			os.write(lineBytes);
+			if (adaptiveFilter) {
+				int filter = chooseFilter(lineBytes, previousLineBytes, bytesPerPixel, filtered);
+				os.write(filter);
+				os.write(filtered[filter]);
+			} else {
+				os.write(0);
+				os.write(lineBytes);
+			}
+
+			byte[] temp = previousLineBytes;
+			previousLineBytes = lineBytes;
+			lineBytes = temp;
 
 		}
 
@@ -323,18 +355,91 @@ void writeImageData() throws IOException {
 
 	os.flush();
 	os.close();
+	deflater.end();
 
 	byte[] compressed = baos.toByteArray();
 	if (os == baos) {
 		/* Use PngDeflater for J2ME. */
-		PngDeflater deflater = new PngDeflater();
-		compressed = deflater.deflate(compressed);
+		PngDeflater pngDeflater = new PngDeflater();
+		compressed = pngDeflater.deflate(compressed);
 	}
 
 	writeChunk(TAG_IDAT, compressed);
 
 }
 
+/**
+ * Filter the row with every PNG filter type and answer the type
+ * with the minimum sum of absolute differences, treating the
+ * filtered bytes as signed. This is the heuristic recommended
+ * by the PNG specification for true color images. The filtered
+ * rows are left in filtered, indexed by filter type.
+ */
+static int chooseFilter(byte[] row, byte[] previousRow, int bytesPerPixel, byte[][] filtered) {
+	int length = row.length;
+	int bestFilter = 0, bestSum = 0;
+	byte[] out = filtered[0];
+	for (int i = 0; i < length; i++) {
+		out[i] = row[i];
+		bestSum += Math.abs(row[i]);
+	}
+	for (int filter = 1; filter < FILTER_COUNT; filter++) {
+		out = filtered[filter];
+		int sum = 0, i = 0;
+		switch (filter) {
+			case 1:
+				for (; i < bytesPerPixel; i++) {
+					out[i] = row[i];
+					sum += Math.abs(out[i]);
+				}
+				for (; i < length && sum < bestSum; i++) {
+					out[i] = (byte) (row[i] - row[i - bytesPerPixel]);
+					sum += Math.abs(out[i]);
+				}
+				break;
+			case 2:
+				for (; i < length && sum < bestSum; i++) {
+					out[i] = (byte) (row[i] - previousRow[i]);
+					sum += Math.abs(out[i]);
+				}
+				break;
+			case 3:
+				for (; i < bytesPerPixel; i++) {
+					out[i] = (byte) (row[i] - ((previousRow[i] & 0xFF) >> 1));
+					sum += Math.abs(out[i]);
+				}
+				for (; i < length && sum < bestSum; i++) {
+					out[i] = (byte) (row[i] - (((row[i - bytesPerPixel] & 0xFF) + (previousRow[i] & 0xFF)) >> 1));
+					sum += Math.abs(out[i]);
+				}
+				break;
+			case 4:
+				/* the Paeth predictor is the byte above for the first pixel */
+				for (; i < bytesPerPixel; i++) {
+					out[i] = (byte) (row[i] - previousRow[i]);
+					sum += Math.abs(out[i]);
+				}
+				for (; i < length && sum < bestSum; i++) {
+					int left = row[i - bytesPerPixel] & 0xFF;
+					int above = previousRow[i] & 0xFF;
+					int aboveLeft = previousRow[i - bytesPerPixel] & 0xFF;
+					int pa = Math.abs(above - aboveLeft);
+					int pb = Math.abs(left - aboveLeft);
+					int pc = Math.abs(left + above - 2 * aboveLeft);
+					int predictor = (pa <= pb && pa <= pc) ? left : (pb <= pc) ? above : aboveLeft;
+					out[i] = (byte) (row[i] - predictor);
+					sum += Math.abs(out[i]);
+				}
+				break;
+		}
+		if (i == length && sum < bestSum) {
+			bestSum = sum;
+			bestFilter = filter;
+		}
+	}
+	return bestFilter;
+}
+
 void writeEnd() {
 
 	writeChunk(TAG_IEND, null);
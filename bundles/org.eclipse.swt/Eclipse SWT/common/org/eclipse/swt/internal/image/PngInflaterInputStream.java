@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.internal.image;
+
+
+import java.io.*;
+import java.util.zip.*;
+
+/**
+ * Inflates the concatenated payload of the IDAT chunks with
+ * java.util.zip.Inflater. The inflater reads directly from the
+ * chunk buffers and inflates directly into the buffer of the
+ * caller, so the data is not copied through intermediate streams.
+ */
+public class PngInflaterInputStream extends InputStream {
+	PngChunkReader reader;
+	PngChunk chunk;
+	Inflater inflater;
+	byte[] single;
+
+	final static int DATA_OFFSET = 8;
+
+public PngInflaterInputStream(PngIdatChunk chunk, PngChunkReader reader) {
+	this.chunk = chunk;
+	this.reader = reader;
+	inflater = new Inflater();
+	inflater.setInput(chunk.reference, DATA_OFFSET, chunk.getLength());
+}
+
+/**
+ * Feed the inflater with the payload of the next IDAT chunk.
+ * Answer false if the IDAT chunks are exhausted.
+ */
+private boolean nextChunk() throws IOException {
+	do {
+		chunk = reader.readNextChunk();
+		if (chunk == null) throw new IOException();
+		if (chunk.getChunkType() == PngChunk.CHUNK_IEND) return false;
+		if (chunk.getChunkType() != PngChunk.CHUNK_IDAT) throw new IOException();
+	} while (chunk.getLength() == 0);
+	inflater.setInput(chunk.reference, DATA_OFFSET, chunk.getLength());
+	return true;
+}
+
+@Override
+public int available() throws IOException {
+	if (chunk == null) throw new IOException();
+	return inflater.finished() ? 0 : 1;
+}
+
+@Override
+public void close() throws IOException {
+	if (inflater != null) inflater.end();
+	inflater = null;
+	chunk = null;
+}
+
+@Override
+public int read() throws IOException {
+	if (single == null) single = new byte[1];
+	return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+}
+
+@Override
+public int read(byte[] b, int off, int len) throws IOException {
+	if (chunk == null) throw new IOException();
+	if (len == 0) return 0;
+	try {
+		int count;
+		while ((count = inflater.inflate(b, off, len)) == 0) {
+			if (inflater.finished()) return -1;
+			if (inflater.needsDictionary()) throw new IOException();
+			if (inflater.needsInput() && !nextChunk()) throw new EOFException();
+		}
+		return count;
+	} catch (DataFormatException e) {
+		throw new IOException(e.getMessage());
+	}
+}
+}
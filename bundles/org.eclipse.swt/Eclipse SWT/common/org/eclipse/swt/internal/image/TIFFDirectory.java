@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,6 +14,8 @@ package org.eclipse.swt.internal.image;
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
 import java.io.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
 
 final class TIFFDirectory {
 
@@ -39,9 +41,25 @@ final class TIFFDirectory {
 	/* Encoder fields */
 	ImageData image;
 	LEDataOutputStream out;
+	/* The number of bytes of each row in the file */
+	int rowByteSize;
+	/* The bytes of the red, green and blue of each pixel, when they must be reordered */
+	int redIndex = -1, greenIndex = -1, blueIndex = -1;
 
 	static final int NO_VALUE = -1;
 
+	/**
+	 * Images of at least parallelThreshold pixels that are stored in several
+	 * compressed strips can have their strips decompressed in parallel on the
+	 * common fork/join pool. This is off by default and is enabled with the
+	 * system property org.eclipse.swt.internal.image.TIFFDirectory.parallel=true,
+	 * the pixel count is set with org.eclipse.swt.internal.image.TIFFDirectory.parallelThreshold.
+	 * It stays off when the common pool has a single worker. Tests set both
+	 * fields to compare the two paths.
+	 */
+	static boolean parallel = Boolean.getBoolean("org.eclipse.swt.internal.image.TIFFDirectory.parallel") && ForkJoinPool.getCommonPoolParallelism() > 1; //$NON-NLS-1$
+	static int parallelThreshold = Integer.getInteger("org.eclipse.swt.internal.image.TIFFDirectory.parallelThreshold", 1024 * 1024).intValue(); //$NON-NLS-1$
+
 	static final short TAG_NewSubfileType = 254;
 	static final short TAG_SubfileType = 255;
 	static final short TAG_ImageWidth = 256;
@@ -155,24 +173,32 @@ void decodePixels(ImageData image) throws IOException {
 	image.data = imageData;
 	int destIndex = 0;
 	int length = stripOffsets.length;
+	if (parallel && length > 1 && !loader.hasListeners() && (long)imageWidth * imageLength >= parallelThreshold &&
+		(compression == COMPRESSION_PACKBITS || compression == COMPRESSION_CCITT_3_1 || compression == 3)) {
+		if (decodeStrips(imageData)) return;
+	}
 	for (int i = 0; i < length; i++) {
 		/* Read a strip */
-		byte[] data = new byte[stripByteCounts[i]];
 		file.seek(stripOffsets[i]);
-		file.read(data);
 		if (compression == COMPRESSION_NONE) {
-			System.arraycopy(data, 0, imageData, destIndex, data.length);
-			destIndex += data.length;
-		} else if (compression == COMPRESSION_PACKBITS) {
-			destIndex += decodePackBits(data, imageData, destIndex);
-		} else if (compression == COMPRESSION_CCITT_3_1 || compression == 3) {
-			TIFFModifiedHuffmanCodec codec = new TIFFModifiedHuffmanCodec();
-			int nRows = rowsPerStrip;
-			if (i == length -1) {
-				int n = imageLength % rowsPerStrip;
-				if (n != 0) nRows = n;
+			/* Uncompressed strips are read in place */
+			if (stripByteCounts[i] > imageData.length - destIndex) SWT.error(SWT.ERROR_INVALID_IMAGE);
+			file.read(imageData, destIndex, stripByteCounts[i]);
+			destIndex += stripByteCounts[i];
+		} else {
+			byte[] data = new byte[stripByteCounts[i]];
+			file.read(data);
+			if (compression == COMPRESSION_PACKBITS) {
+				destIndex += decodePackBits(data, imageData, destIndex);
+			} else if (compression == COMPRESSION_CCITT_3_1 || compression == 3) {
+				TIFFModifiedHuffmanCodec codec = new TIFFModifiedHuffmanCodec();
+				int nRows = rowsPerStrip;
+				if (i == length -1) {
+					int n = imageLength % rowsPerStrip;
+					if (n != 0) nRows = n;
+				}
+				destIndex += codec.decode(data, imageData, destIndex, imageWidth, nRows);
 			}
-			destIndex += codec.decode(data, imageData, destIndex, imageWidth, nRows);
 		}
 		if (loader.hasListeners()) {
 			loader.notifyListeners(new ImageLoaderEvent(loader, image, i, i == length - 1));
@@ -180,6 +206,47 @@ void decodePixels(ImageData image) throws IOException {
 	}
 }
 
+/*
+* Decompress the strips in parallel, each into a buffer of its own, and copy
+* them into the image in order. Answer false, leaving the image to the
+* sequential decoder, when a strip does not decode to exactly its rows, so
+* that invalid files give the same image or error either way.
+*/
+boolean decodeStrips(byte[] imageData) throws IOException {
+	int length = stripOffsets.length;
+	if (rowsPerStrip <= 0 || ((long)imageLength + rowsPerStrip - 1) / rowsPerStrip != length) return false;
+	int rowSize = (imageWidth * depth + 7) / 8;
+	byte[][] strips = new byte[length][];
+	for (int i = 0; i < length; i++) {
+		file.seek(stripOffsets[i]);
+		strips[i] = new byte[stripByteCounts[i]];
+		file.read(strips[i]);
+	}
+	byte[][] decoded = new byte[length][];
+	IntStream.range(0, length).parallel().forEach(i -> {
+		int nRows = Math.min(rowsPerStrip, imageLength - i * rowsPerStrip);
+		byte[] dest = new byte[nRows * rowSize];
+		try {
+			int count;
+			if (compression == COMPRESSION_PACKBITS) {
+				count = decodePackBits(strips[i], dest, 0);
+			} else {
+				count = new TIFFModifiedHuffmanCodec().decode(strips[i], dest, 0, imageWidth, nRows);
+			}
+			if (count == dest.length) decoded[i] = dest;
+		} catch (RuntimeException e) {
+			/* Left to the sequential decoder */
+		}
+	});
+	for (int i = 0; i < length; i++) {
+		if (decoded[i] == null) return false;
+	}
+	for (int i = 0; i < length; i++) {
+		System.arraycopy(decoded[i], 0, imageData, i * rowsPerStrip * rowSize, decoded[i].length);
+	}
+	return true;
+}
+
 PaletteData getColorMap() throws IOException {
 	int numColors = 1 << bitsPerSample[0];
 	/* R, G, B entries are 16 bit wide (2 bytes) */
@@ -237,7 +304,7 @@ PaletteData getRGBPalette(int bitsR, int bitsG, int bitsB) {
 	return new PaletteData(redMask, greenMask, blueMask);
 }
 
-int formatStrips(int rowByteSize, int nbrRows, byte[] data, int maxStripByteSize, int offsetPostIFD, int extraBytes, int[][] strips) {
+int formatStrips(int rowByteSize, int nbrRows, int dataSize, int maxStripByteSize, int offsetPostIFD, int extraBytes, int[][] strips) {
 	/*
 	* Calculate the nbr of required strips given the following requirements:
 	* - each strip should, if possible, not be greater than maxStripByteSize
@@ -250,10 +317,10 @@ int formatStrips(int rowByteSize, int nbrRows, byte[] data, int maxStripByteSize
 	int n, nbrRowsPerStrip;
 	if (rowByteSize > maxStripByteSize) {
 		/* Each strip contains 1 row */
-		n = data.length / rowByteSize;
+		n = dataSize / rowByteSize;
 		nbrRowsPerStrip = 1;
 	} else {
-		int nbr = (data.length + maxStripByteSize - 1) / maxStripByteSize;
+		int nbr = (dataSize + maxStripByteSize - 1) / maxStripByteSize;
 		nbrRowsPerStrip = nbrRows / nbr;
 		n = (nbrRows + nbrRowsPerStrip - 1) / nbrRowsPerStrip;
 	}
@@ -284,7 +351,7 @@ int formatStrips(int rowByteSize, int nbrRows, byte[] data, int maxStripByteSize
 		offset += stripByteSize;
 	}
 	/* The last strip may contain fewer rows */
-	int mod = data.length % stripByteSize;
+	int mod = dataSize % stripByteSize;
 	if (mod != 0) counts[counts.length - 1] = mod;
 
 	strips[0] = offsets;
@@ -497,6 +564,19 @@ public ImageData read(int [] nextIFDOffset) throws IOException {
 	return image;
 }
 
+/**
+ * Skips the directory without decoding its image, and answers the
+ * offset of the next directory in nextIFDOffset.
+ */
+public void skip(int [] nextIFDOffset) throws IOException {
+	byte[] buffer = new byte[4];
+	file.read(buffer, 0, 2);
+	int numberEntries = toInt(buffer, 0, TYPE_SHORT);
+	file.seek(file.current + IFD_ENTRY_SIZE * numberEntries);
+	file.read(buffer);
+	nextIFDOffset[0] = toInt(buffer, 0, TYPE_LONG);
+}
+
 int toInt(byte[] buffer, int i, int type) {
 	if (type == TYPE_LONG) {
 		return isLittleEndian ?
@@ -513,19 +593,23 @@ int toInt(byte[] buffer, int i, int type) {
 	return -1;
 }
 
-void write(int photometricInterpretation) throws IOException {
+/*
+* Write the directory at the given offset of the file followed by its
+* values and its image, and answer the offset following them. The
+* directory of the next image, if any, follows at the next even offset.
+*/
+int write(int photometricInterpretation, int offset, boolean isLast) throws IOException {
 	boolean isRGB = photometricInterpretation == 2;
 	boolean isColorMap = photometricInterpretation == 3;
 	boolean isBiLevel = photometricInterpretation == 0 || photometricInterpretation == 1;
 
 	int imageWidth = image.width;
 	int imageLength = image.height;
-	int rowByteSize = image.bytesPerLine;
 
 	int numberEntries = isBiLevel ? 9 : 11;
 	int lengthDirectory = 2 + 12 * numberEntries + 4;
-	/* Offset following the header and the directory */
-	int nextOffset = 8 + lengthDirectory;
+	/* Offset following the directory */
+	int nextOffset = offset + lengthDirectory;
 
 	/* Extra space used by XResolution and YResolution values */
 	int extraBytes = 16;
@@ -535,8 +619,6 @@ void write(int photometricInterpretation) throws IOException {
 		PaletteData palette = image.palette;
 		RGB[] rgbs = palette.getRGBs();
 		colorMap = formatColorMap(rgbs);
-		/* The number of entries of the Color Map must match the bitsPerSample field */
-		if (colorMap.length != 3 * 1 << image.depth) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
 		/* Extra space used by ColorMap values */
 		extraBytes += colorMap.length * 2;
 	}
@@ -545,9 +627,9 @@ void write(int photometricInterpretation) throws IOException {
 		extraBytes += 6;
 	}
 	/* TIFF recommends storing the data in strips of no more than 8 Ko */
-	byte[] data = image.data;
+	int dataSize = rowByteSize * imageLength;
 	int[][] strips = new int[2][];
-	int nbrRowsPerStrip = formatStrips(rowByteSize, imageLength, data, 8192, nextOffset, extraBytes, strips);
+	int nbrRowsPerStrip = formatStrips(rowByteSize, imageLength, dataSize, 8192, nextOffset, extraBytes, strips);
 	int[] stripOffsets = strips[0];
 	int[] stripByteCounts = strips[1];
 
@@ -573,8 +655,16 @@ void write(int photometricInterpretation) throws IOException {
 		colorMapOffset = nextOffset;
 		nextOffset += colorMap.length * 2;
 	}
-	/* TIFF header */
-	writeHeader();
+	int endOffset = stripOffsets[0] + dataSize;
+	int nextIFDOffset = isLast ? 0 : (endOffset + 1) & ~1;
+
+	/*
+	* The directory and its values are gathered in memory and written at once,
+	* the image is then written strip by strip.
+	*/
+	LEDataOutputStream stream = out;
+	ByteArrayOutputStream directory = new ByteArrayOutputStream(stripOffsets[0] - offset);
+	out = new LEDataOutputStream(directory);
 
 	/* Image File Directory */
 	out.writeShort(numberEntries);
@@ -592,7 +682,7 @@ void write(int photometricInterpretation) throws IOException {
 	writeEntry(TAG_YResolution, TYPE_RATIONAL, 1, yResolutionOffset);
 	if (isColorMap) writeEntry(TAG_ColorMap, TYPE_SHORT, colorMap.length, colorMapOffset);
 	/* Offset of next IFD (0 for last IFD) */
-	out.writeInt(0);
+	out.writeInt(nextIFDOffset);
 
 	/* Values longer than 4 bytes Section */
 
@@ -610,8 +700,13 @@ void write(int photometricInterpretation) throws IOException {
 	/* ColorMap */
 	if (isColorMap) for (int i = 0; i < colorMap.length; i++) out.writeShort(colorMap[i]);
 
+	out = stream;
+	directory.writeTo(out);
+
 	/* Image Data */
-	out.write(data);
+	writeStrips(nbrRowsPerStrip);
+	if (nextIFDOffset > endOffset) out.write(0);
+	return nextIFDOffset;
 }
 
 void writeEntry(short tag, int type, int count, int value) throws IOException {
@@ -621,7 +716,7 @@ void writeEntry(short tag, int type, int count, int value) throws IOException {
 	out.writeInt(value);
 }
 
-void writeHeader() throws IOException {
+static void writeHeader(LEDataOutputStream out) throws IOException {
 	/* little endian */
 	out.write(0x49);
 	out.write(0x49);
@@ -635,12 +730,45 @@ void writeHeader() throws IOException {
 	out.writeInt(8);
 }
 
-void writeToStream(LEDataOutputStream byteStream) throws IOException {
-	out = byteStream;
-	int photometricInterpretation = -1;
+/*
+* Write the rows of the image, without their padding and with the bytes
+* of each pixel in red, green and blue order. Rows stored the same way in
+* the image are written in place.
+*/
+void writeStrips(int rowsPerStrip) throws IOException {
+	byte[] data = image.data;
+	int bytesPerLine = image.bytesPerLine;
+	int height = image.height;
+	if (redIndex == -1 && bytesPerLine == rowByteSize) {
+		out.write(data, 0, rowByteSize * height);
+		return;
+	}
+	int width = image.width, bpp = image.depth / 8;
+	byte[] strip = new byte[rowByteSize * rowsPerStrip];
+	for (int y = 0; y < height;) {
+		int rows = Math.min(rowsPerStrip, height - y);
+		for (int i = 0; i < rows; i++, y++) {
+			int sp = y * bytesPerLine, dp = i * rowByteSize;
+			if (redIndex == -1) {
+				System.arraycopy(data, sp, strip, dp, rowByteSize);
+			} else {
+				for (int x = 0; x < width; x++, sp += bpp, dp += 3) {
+					strip[dp] = data[sp + redIndex];
+					strip[dp + 1] = data[sp + greenIndex];
+					strip[dp + 2] = data[sp + blueIndex];
+				}
+			}
+		}
+		out.write(strip, 0, rows * rowByteSize);
+	}
+}
 
-	/* Scanline pad must be 1 */
-	if (image.scanlinePad != 1) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
+/**
+ * Answers the photometric interpretation the image is written with,
+ * or fails if the image cannot be written.
+ */
+int checkImage() {
+	int photometricInterpretation = -1;
 	switch (image.depth) {
 		case 1: {
 			/* Palette must be black and white or white and black */
@@ -660,10 +788,26 @@ void writeToStream(LEDataOutputStream byteStream) throws IOException {
 		}
 		case 4:
 		case 8: {
+			/* The number of entries of the Color Map must match the bitsPerSample field */
+			PaletteData palette = image.palette;
+			if (palette.isDirect || palette.colors == null || palette.colors.length != 1 << image.depth) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
 			photometricInterpretation = 3;
 			break;
 		}
-		case 24: {
+		case 24:
+		case 32: {
+			/* Direct pixels are written as red, green and blue bytes */
+			PaletteData palette = image.palette;
+			int bpp = image.depth / 8;
+			int red = getByteIndex(palette.redMask, bpp), green = getByteIndex(palette.greenMask, bpp), blue = getByteIndex(palette.blueMask, bpp);
+			if (red == -1 || green == -1 || blue == -1) {
+				/* Other 24-bit layouts are written as they are */
+				if (image.depth == 32) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
+			} else if (!(bpp == 3 && red == 0 && green == 1 && blue == 2)) {
+				redIndex = red;
+				greenIndex = green;
+				blueIndex = blue;
+			}
 			photometricInterpretation = 2;
 			break;
 		}
@@ -671,7 +815,28 @@ void writeToStream(LEDataOutputStream byteStream) throws IOException {
 			SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
 		}
 	}
-	write(photometricInterpretation);
+	rowByteSize = photometricInterpretation == 2 ? image.width * 3 : (image.width * image.depth + 7) / 8;
+	return photometricInterpretation;
+}
+
+/*
+* Answer the offset of the byte of a pixel that holds the channel of the
+* given mask, or -1 if the channel is not a whole byte.
+*/
+static int getByteIndex(int mask, int bpp) {
+	for (int i = 0; i < bpp; i++) {
+		if (mask == 0xFF << ((bpp - 1 - i) * 8)) return i;
+	}
+	return -1;
+}
+
+/**
+ * Writes the directory and the image at the given offset of the file,
+ * and answers the offset of the next directory, 0 for the last one.
+ */
+int writeToStream(LEDataOutputStream byteStream, int offset, boolean isLast) throws IOException {
+	out = byteStream;
+	return write(checkImage(), offset, isLast);
 }
 
 }
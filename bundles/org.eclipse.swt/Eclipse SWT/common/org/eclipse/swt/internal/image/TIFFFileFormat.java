@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,6 +14,7 @@ package org.eclipse.swt.internal.image;
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
 import java.io.*;
+import java.util.*;
 
 /**
  * Baseline TIFF decoder revision 6.0
@@ -42,8 +43,9 @@ boolean isFileFormat(LEDataInputStream stream) {
 ImageData[] loadFromByteStream() {
 	byte[] header = new byte[8];
 	boolean isLittleEndian;
-	ImageData[] images = new ImageData[0];
+	List<ImageData> images = new ArrayList<>();
 	TIFFRandomFileAccess file = new TIFFRandomFileAccess(inputStream);
+	int page = loader.loadPage;
 	try {
 		file.read(header);
 		if (header[0] != header[1]) SWT.error(SWT.ERROR_INVALID_IMAGE);
@@ -55,31 +57,51 @@ ImageData[] loadFromByteStream() {
 		int offset = isLittleEndian ?
 			(header[4] & 0xFF) | ((header[5] & 0xFF) << 8) | ((header[6] & 0xFF) << 16) | ((header[7] & 0xFF) << 24) :
 			(header[7] & 0xFF) | ((header[6] & 0xFF) << 8) | ((header[5] & 0xFF) << 16) | ((header[4] & 0xFF) << 24);
+		/*
+		* Pages are decoded one at a time as their directories are reached.
+		* When a single page is requested, the directories before it are
+		* skipped without decoding their images and reading stops after it.
+		*/
+		int index = 0;
 		while (offset != 0) {
 			file.seek(offset);
 			TIFFDirectory directory = new TIFFDirectory(file, isLittleEndian, loader);
 			int [] nextIFDOffset = new int[1];
-			ImageData image = directory.read(nextIFDOffset);
+			if (page >= 0 && index < page) {
+				directory.skip(nextIFDOffset);
+			} else {
+				images.add(directory.read(nextIFDOffset));
+				if (page >= 0) break;
+			}
 			offset = nextIFDOffset[0];
-			ImageData[] oldImages = images;
-			images = new ImageData[oldImages.length + 1];
-			System.arraycopy(oldImages, 0, images, 0, oldImages.length);
-			images[images.length - 1] = image;
+			index++;
 		}
 	} catch (IOException e) {
 		SWT.error(SWT.ERROR_IO, e);
 	}
-	return images;
+	if (page >= 0 && images.isEmpty()) SWT.error(SWT.ERROR_INVALID_IMAGE);
+	return images.toArray(new ImageData[images.size()]);
 }
 
 @Override
 void unloadIntoByteStream(ImageLoader loader) {
-	/* We do not currently support writing multi-page tiff,
-	 * so we use the first image data in the loader's array. */
-	ImageData image = loader.data[0];
-	TIFFDirectory directory = new TIFFDirectory(image);
+	/*
+	* Every image of the loader is written as a page. The images are all
+	* checked before anything is written, then each page is written right
+	* after the previous one, its rows streamed directly to the output.
+	*/
+	ImageData[] data = loader.data;
+	TIFFDirectory[] directories = new TIFFDirectory[data.length];
+	for (int i = 0; i < data.length; i++) {
+		directories[i] = new TIFFDirectory(data[i]);
+		directories[i].checkImage();
+	}
 	try {
-		directory.writeToStream(outputStream);
+		TIFFDirectory.writeHeader(outputStream);
+		int offset = 8;
+		for (int i = 0; i < directories.length; i++) {
+			offset = directories[i].writeToStream(outputStream, offset, i == directories.length - 1);
+		}
 	} catch (IOException e) {
 		SWT.error(SWT.ERROR_IO, e);
 	}
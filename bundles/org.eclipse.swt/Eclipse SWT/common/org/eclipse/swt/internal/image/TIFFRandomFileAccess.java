@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2005 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -17,6 +17,8 @@ final class TIFFRandomFileAccess {
 	LEDataInputStream inputStream;
 	int start, current, next;
 	byte[][] buffers;
+	/* The whole file, when it is read from a file rather than a stream */
+	ByteBufferInputStream source;
 
 	static final int CHUNK_SIZE = 8192;
 	static final int LIST_SIZE = 128;
@@ -24,13 +26,19 @@ final class TIFFRandomFileAccess {
 public TIFFRandomFileAccess(LEDataInputStream stream) {
 	inputStream = stream;
 	start = current = next = inputStream.getPosition();
-	buffers = new byte[LIST_SIZE][];
+	if (stream.in instanceof ByteBufferInputStream) {
+		/* Read directly from the file, nothing needs to be cached */
+		source = (ByteBufferInputStream) stream.in;
+	} else {
+		buffers = new byte[LIST_SIZE][];
+	}
 }
 
 void seek(int pos) throws IOException {
 	if (pos == current) return;
 	if (pos < start) throw new IOException();
 	current = pos;
+	if (source != null) return;
 	if (current > next) {
 		int n = current - next;
 		/* store required bytes */
@@ -53,10 +61,18 @@ void seek(int pos) throws IOException {
 }
 
 void read(byte b[]) throws IOException {
-	int size = b.length;
+	read(b, 0, b.length);
+}
+
+void read(byte b[], int off, int size) throws IOException {
+	if (source != null) {
+		source.read(current, b, off, size);
+		current += size;
+		return;
+	}
 	int nCached = Math.min(size, next - current);
 	int nMissing = size - next + current;
-	int destNext = 0;
+	int destNext = off;
 	if (nCached > 0) {
 		/* Get cached bytes */
 		int index = current / CHUNK_SIZE;
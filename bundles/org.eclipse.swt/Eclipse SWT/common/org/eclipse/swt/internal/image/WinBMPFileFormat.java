@@ -495,6 +495,7 @@ ImageData[] loadFromByteStream() {
 	}
 	int width = (infoHeader[4] & 0xFF) | ((infoHeader[5] & 0xFF) << 8) | ((infoHeader[6] & 0xFF) << 16) | ((infoHeader[7] & 0xFF) << 24);
 	int height = (infoHeader[8] & 0xFF) | ((infoHeader[9] & 0xFF) << 8) | ((infoHeader[10] & 0xFF) << 16) | ((infoHeader[11] & 0xFF) << 24);
+	boolean topDown = height < 0;
 	if (height < 0) height = -height;
 	int bitCount = (infoHeader[14] & 0xFF) | ((infoHeader[15] & 0xFF) << 8);
 	this.compression = (infoHeader[16] & 0xFF) | ((infoHeader[17] & 0xFF) << 8) | ((infoHeader[18] & 0xFF) << 16) | ((infoHeader[19] & 0xFF) << 24);
@@ -507,31 +508,57 @@ ImageData[] loadFromByteStream() {
 			SWT.error(SWT.ERROR_IO, e);
 		}
 	}
-	byte[] data = loadData(infoHeader);
+	/*
+	* Uncompressed rows are read straight into place when the
+	* listeners want to see them arrive.
+	*/
+	boolean incremental = (this.compression == 0 || this.compression == 3) && loader.incrementalRows > 0 && loader.hasListeners();
+	int stride = ((width * bitCount + 7) / 8 + 3) / 4 * 4;
+	byte[] data = incremental ? new byte[stride * height] : loadData(infoHeader);
 	this.importantColors = (infoHeader[36] & 0xFF) | ((infoHeader[37] & 0xFF) << 8) | ((infoHeader[38] & 0xFF) << 16) | ((infoHeader[39] & 0xFF) << 24);
 	int xPelsPerMeter = (infoHeader[24] & 0xFF) | ((infoHeader[25] & 0xFF) << 8) | ((infoHeader[26] & 0xFF) << 16) | ((infoHeader[27] & 0xFF) << 24);
 	int yPelsPerMeter = (infoHeader[28] & 0xFF) | ((infoHeader[29] & 0xFF) << 8) | ((infoHeader[30] & 0xFF) << 16) | ((infoHeader[31] & 0xFF) << 24);
 	this.pelsPerMeter = new Point(xPelsPerMeter, yPelsPerMeter);
 	int type = (this.compression == 1 /*BMP_RLE8_COMPRESSION*/) || (this.compression == 2 /*BMP_RLE4_COMPRESSION*/) ? SWT.IMAGE_BMP_RLE : SWT.IMAGE_BMP;
-	return new ImageData[] {
-		ImageData.internal_new(
-			width,
-			height,
-			bitCount,
-			palette,
-			4,
-			data,
-			0,
-			null,
-			null,
-			-1,
-			-1,
-			type,
-			0,
-			0,
-			0,
-			0)
-	};
+	ImageData image = ImageData.internal_new(
+		width,
+		height,
+		bitCount,
+		palette,
+		4,
+		data,
+		0,
+		null,
+		null,
+		-1,
+		-1,
+		type,
+		0,
+		0,
+		0,
+		0);
+	if (incremental) {
+		loadRows(data, stride, height, topDown, IncrementalRowNotifier.create(loader, image));
+	}
+	return new ImageData[] {image};
+}
+/**
+ * Read uncompressed rows into their final position, bottom up
+ * unless the image is stored top down, and report each row to
+ * the notifier as it arrives.
+ */
+void loadRows(byte[] data, int stride, int height, boolean topDown, IncrementalRowNotifier notifier) {
+	try {
+		for (int row = 0; row < height; row++) {
+			int offset = (topDown ? row : height - 1 - row) * stride;
+			if (inputStream.read(data, offset, stride) != stride)
+				SWT.error(SWT.ERROR_INVALID_IMAGE);
+			notifier.rowsDecoded(row + 1);
+		}
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_IO, e);
+	}
+	notifier.imageDecoded();
 }
 PaletteData loadPalette(byte[] infoHeader) {
 	int depth = (infoHeader[14] & 0xFF) | ((infoHeader[15] & 0xFF) << 8);
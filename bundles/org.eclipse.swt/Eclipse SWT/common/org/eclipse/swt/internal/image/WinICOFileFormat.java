@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -127,8 +127,8 @@ ImageData[] loadFromByteStream() {
  */
 ImageData loadIcon(int[] iconHeader) {
 	try {
-		FileFormat png = getFileFormat(inputStream, "PNG");
-		if (png != null) {
+		FileFormat png = new PNGFileFormat();
+		if (png.isFileFormat(inputStream)) {
 			png.loader = this.loader;
 			return png.loadFromStream(inputStream)[0];
 		}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,7 @@ package org.eclipse.swt.graphics;
 
 
 import java.io.*;
+import java.util.function.*;
 
 import org.eclipse.swt.*;
 import org.eclipse.swt.internal.*;
@@ -161,6 +162,12 @@ public final class Image extends Resource implements Drawable {
 	 */
 	static final int DEFAULT_SCANLINE_PAD = 4;
 
+	/**
+	 * The size in bytes of the blocks of rows in which the pixels
+	 * of an ImageAtlas are moved to a surface.
+	 */
+	static final int ATLAS_BLOCK_SIZE = 16 * 1024;
+
 	/**
 	 * ImageFileNameProvider to provide file names at various Zoom levels
 	 */
@@ -726,10 +733,8 @@ public Image(Device device, String filename) {
 	super(device);
 	if (filename == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
 
-	ImageData data = new ImageData(filename);
 	currentDeviceZoom = DPIUtil.getDeviceZoom();
-	data = DPIUtil.autoScaleUp (device, data);
-	init(data);
+	init(loadImageData(filename, currentDeviceZoom));
 	init();
 }
 
@@ -771,13 +776,10 @@ public Image(Device device, ImageFileNameProvider imageFileNameProvider) {
 	if (found[0]) {
 		initNative (filename);
 		if (this.pixmap == 0 && this.surface == 0) {
-			ImageData data = new ImageData(filename);
-			init(data);
+			init(loadImageData(filename, 100));
 		}
 	} else {
-		ImageData imageData = new ImageData (filename);
-		ImageData resizedData = DPIUtil.autoScaleUp (device, imageData);
-		init(resizedData);
+		init(loadImageData(filename, currentDeviceZoom));
 	}
 	init ();
 }
@@ -815,13 +817,11 @@ public Image(Device device, ImageDataProvider imageDataProvider) {
 	super(device);
 	this.imageDataProvider = imageDataProvider;
 	currentDeviceZoom = DPIUtil.getDeviceZoom();
-	boolean[] found = new boolean[1];
-	ImageData data =  DPIUtil.validateAndGetImageDataAtZoom(imageDataProvider, currentDeviceZoom, found);
-	if (found[0]) {
-		init (data);
+	int atlasIndex = getAtlasIndex(imageDataProvider, currentDeviceZoom);
+	if (atlasIndex != -1) {
+		init(((ImageAtlas.Provider) imageDataProvider).atlas, atlasIndex);
 	} else {
-		ImageData resizedData = DPIUtil.autoScaleUp (device, data);
-		init (resizedData);
+		init (loadImageData(imageDataProvider, currentDeviceZoom));
 	}
 	init ();
 }
@@ -839,50 +839,34 @@ boolean refreshImageForZoom () {
 		if (deviceZoomLevel != currentDeviceZoom) {
 			boolean[] found = new boolean[1];
 			String filename = DPIUtil.validateAndGetImagePathAtZoom (imageFileNameProvider, deviceZoomLevel, found);
-			/* Avoid re-creating the fall-back image, when current zoom is already 100% */
-			if (found[0] || currentDeviceZoom != 100) {
-				/* Release current native resources */
-				destroy ();
+			/* Release current native resources */
+			destroy ();
+			if (found[0]) {
 				initNative(filename);
 				if (this.pixmap == 0 && this.surface == 0) {
-					ImageData data = new ImageData(filename);
-					init(data);
+					init(loadImageData(filename, 100));
 				}
-				init ();
-				refreshed = true;
-			}
-			if (!found[0]) {
-				/* Release current native resources */
-				destroy ();
-				ImageData imageData = new ImageData (filename);
-				ImageData resizedData = DPIUtil.autoScaleUp (device, imageData);
-				init(resizedData);
-				init ();
-				refreshed = true;
+			} else {
+				init(loadImageData(filename, deviceZoomLevel));
 			}
+			init ();
+			refreshed = true;
 			currentDeviceZoom = deviceZoomLevel;
 		}
 	} else if (imageDataProvider != null) {
 		int deviceZoomLevel = deviceZoom;
 		if (deviceZoomLevel != currentDeviceZoom) {
-			boolean[] found = new boolean[1];
-			ImageData data = DPIUtil.validateAndGetImageDataAtZoom (imageDataProvider, deviceZoomLevel, found);
-			/* Avoid re-creating the fall-back image, when current zoom is already 100% */
-			if (found[0] || currentDeviceZoom != 100) {
-				/* Release current native resources */
-				destroy ();
+			int atlasIndex = getAtlasIndex(imageDataProvider, deviceZoomLevel);
+			ImageData data = atlasIndex == -1 ? loadImageData(imageDataProvider, deviceZoomLevel) : null;
+			/* Release current native resources */
+			destroy ();
+			if (data != null) {
 				init(data);
-				init();
-				refreshed = true;
-			}
-			if (!found[0]) {
-				/* Release current native resources */
-				destroy ();
-				ImageData resizedData = DPIUtil.autoScaleImageData(device, data, deviceZoomLevel, 100);
-				init(resizedData);
-				init();
-				refreshed = true;
+			} else {
+				init(((ImageAtlas.Provider) imageDataProvider).atlas, atlasIndex);
 			}
+			init();
+			refreshed = true;
 			currentDeviceZoom = deviceZoomLevel;
 		}
 	} else {
@@ -900,6 +884,76 @@ boolean refreshImageForZoom () {
 	return refreshed;
 }
 
+/**
+ * Answer the image in the given file, which is at 100%, scaled for the
+ * given zoom. The image comes from the shared ImageDataCache when it is
+ * enabled, and must not be modified.
+ */
+ImageData loadImageData(String filename, int zoom) {
+	if (!device.isAutoScalable()) return DPIUtil.autoScaleUp(device, new ImageData(filename));
+	return ImageDataCache.getShared().get(filename, zoom, () -> DPIUtil.autoScaleImageData(device, new ImageData(filename), zoom, 100));
+}
+
+/**
+ * Answer the image of the provider for the given zoom, or its image at
+ * 100% scaled for the zoom when it has none. The image comes from the
+ * shared ImageDataCache when it is enabled, and must not be modified.
+ */
+ImageData loadImageData(ImageDataProvider provider, int zoom) {
+	Supplier<ImageData> loader = () -> {
+		boolean[] found = new boolean[1];
+		ImageData data = DPIUtil.validateAndGetImageDataAtZoom(provider, zoom, found);
+		return found[0] ? data : DPIUtil.autoScaleImageData(device, data, zoom, 100);
+	};
+	if (!device.isAutoScalable()) return loader.get();
+	return ImageDataCache.getShared().get(provider, zoom, loader);
+}
+
+/**
+ * Answer the index in its atlas of the image of an ImageAtlas provider at
+ * the given zoom, or -1 if the provider is not an atlas, the atlas does not
+ * have the zoom or images are not Cairo surfaces.
+ */
+int getAtlasIndex(ImageDataProvider provider, int zoom) {
+	if (!OS.USE_CAIRO || !(provider instanceof ImageAtlas.Provider)) return -1;
+	ImageAtlas.Provider atlasProvider = (ImageAtlas.Provider) provider;
+	return atlasProvider.atlas.indexOf(atlasProvider.name, zoom);
+}
+
+/**
+ * Initialize the receiver from an image of an atlas, which is
+ * already in the layout of a Cairo ARGB32 surface.
+ */
+void init(ImageAtlas atlas, int index) {
+	int width = this.width = atlas.widths[index];
+	int height = this.height = atlas.heights[index];
+	surface = Cairo.cairo_image_surface_create(Cairo.CAIRO_FORMAT_ARGB32, width, height);
+	if (surface == 0) SWT.error(SWT.ERROR_NO_HANDLES);
+	int stride = Cairo.cairo_image_surface_get_stride(surface);
+	long /*int*/ data = Cairo.cairo_image_surface_get_data(surface);
+	/*
+	* The pixels cannot be moved from the mapped atlas to the surface
+	* directly, so they go through a buffer of a few rows, reused for the
+	* whole image. The alpha data is taken from each block on the way.
+	*/
+	int oa = OS.BIG_ENDIAN ? 0 : 3;
+	int rows = Math.max(1, Math.min(height, ATLAS_BLOCK_SIZE / stride));
+	byte[] buffer = new byte[rows * stride];
+	alphaData = new byte[width * height];
+	for (int y = 0, alphaOffset = 0; y < height; y += rows) {
+		int count = Math.min(rows, height - y);
+		atlas.getPixels(index, y, count, buffer, stride, OS.BIG_ENDIAN);
+		for (int row = 0; row < count; row++) {
+			for (int x = 0, offset = row * stride + oa; x < width; x++, offset += 4) {
+				alphaData[alphaOffset++] = buffer[offset];
+			}
+		}
+		OS.memmove(data + y * stride, buffer, count * stride);
+	}
+	Cairo.cairo_surface_mark_dirty(surface);
+	type = SWT.BITMAP;
+}
+
 void initNative(String filename) {
 	try {
 		int length = filename.length ();
@@ -1611,124 +1665,39 @@ void init(ImageData image) {
 		if (surface == 0) SWT.error(SWT.ERROR_NO_HANDLES);
 		int stride = Cairo.cairo_image_surface_get_stride(surface);
 		long /*int*/ data = Cairo.cairo_image_surface_get_data(surface);
-		int oa = 0, or = 0, og = 0, ob = 0;
-		int redMask, greenMask, blueMask, destDepth = 32, destOrder;
-		if (OS.BIG_ENDIAN) {
-			oa = 0; or = 1; og = 2; ob = 3;
-			redMask = 0xFF00;
-			greenMask = 0xFF0000;
-			blueMask = 0xFF000000;
-			destOrder = ImageData.MSB_FIRST;
-		} else {
-			oa = 3; or = 2; og = 1; ob = 0;
-			redMask = 0xFF0000;
-			greenMask = 0xFF00;
-			blueMask = 0xFF;
-			destOrder = ImageData.LSB_FIRST;
-		}
-		byte[] buffer = image.data;
-		if (!palette.isDirect || image.depth != destDepth || stride != image.bytesPerLine || palette.redMask != redMask || palette.greenMask != greenMask || palette.blueMask != blueMask || destOrder != image.getByteOrder()) {
-			buffer = new byte[stride * height];
-			if (palette.isDirect) {
-				ImageData.blit(ImageData.BLIT_SRC,
-					image.data, image.depth, image.bytesPerLine, image.getByteOrder(), 0, 0, width, height, palette.redMask, palette.greenMask, palette.blueMask,
-					ImageData.ALPHA_OPAQUE, null, 0, 0, 0,
-					buffer, destDepth, stride, destOrder, 0, 0, width, height, redMask, greenMask, blueMask,
-					false, false);
-			} else {
-				RGB[] rgbs = palette.getRGBs();
-				int length = rgbs.length;
-				byte[] srcReds = new byte[length];
-				byte[] srcGreens = new byte[length];
-				byte[] srcBlues = new byte[length];
-				for (int i = 0; i < rgbs.length; i++) {
-					RGB rgb = rgbs[i];
-					if (rgb == null) continue;
-					srcReds[i] = (byte)rgb.red;
-					srcGreens[i] = (byte)rgb.green;
-					srcBlues[i] = (byte)rgb.blue;
-				}
-				ImageData.blit(ImageData.BLIT_SRC,
-					image.data, image.depth, image.bytesPerLine, image.getByteOrder(), 0, 0, width, height, srcReds, srcGreens, srcBlues,
-					ImageData.ALPHA_OPAQUE, null, 0, 0, 0,
-					buffer, destDepth, stride, destOrder, 0, 0, width, height, redMask, greenMask, blueMask,
-					false, false);
-			}
-		}
+		int redMask = 0xFF0000, greenMask = 0xFF00, blueMask = 0xFF, destDepth = 32;
+		int destOrder = OS.BIG_ENDIAN ? ImageData.MSB_FIRST : ImageData.LSB_FIRST;
 		boolean isIcon = image.getTransparencyType() == SWT.TRANSPARENCY_MASK;
 		this.type = isIcon ? SWT.ICON : SWT.BITMAP;
-		if (isIcon || image.transparentPixel != -1) {
-			if (image.transparentPixel != -1) {
-				RGB rgb = null;
-				if (palette.isDirect) {
+		if (image.transparentPixel != -1) {
+			RGB rgb = null;
+			if (palette.isDirect) {
+				rgb = palette.getRGB(image.transparentPixel);
+			} else {
+				if (image.transparentPixel < palette.colors.length) {
 					rgb = palette.getRGB(image.transparentPixel);
-				} else {
-					if (image.transparentPixel < palette.colors.length) {
-						rgb = palette.getRGB(image.transparentPixel);
-					}
-				}
-				if (rgb != null) {
-					transparentPixel = rgb.red << 16 | rgb.green << 8 | rgb.blue;
 				}
 			}
-			ImageData mask = image.getTransparencyMask();
-			for (int y = 0, offset = 0; y < height; y++) {
-				for (int x=0; x<width; x++, offset += 4) {
-					int alpha = mask.getPixel(x, y) == 0 ? 0 : 0xff;
-					/* pre-multiplied alpha */
-					int r = ((buffer[offset + or] & 0xFF) * alpha) + 128;
-					r = (r + (r >> 8)) >> 8;
-					int g = ((buffer[offset + og] & 0xFF) * alpha) + 128;
-					g = (g + (g >> 8)) >> 8;
-					int b = ((buffer[offset + ob] & 0xFF) * alpha) + 128;
-					b = (b + (b >> 8)) >> 8;
-					buffer[offset + oa] = (byte)alpha;
-					buffer[offset + or] = (byte)r;
-					buffer[offset + og] = (byte)g;
-					buffer[offset + ob] = (byte)b;
-				}
+			if (rgb != null) {
+				transparentPixel = rgb.red << 16 | rgb.green << 8 | rgb.blue;
 			}
-		} else {
+		} else if (!isIcon) {
 			this.alpha = image.alpha;
 			if (image.alpha == -1 && image.alphaData != null) {
 				this.alphaData = new byte[image.alphaData.length];
 				System.arraycopy(image.alphaData, 0, this.alphaData, 0, alphaData.length);
 			}
-			if (this.alpha != -1) {
-				for (int y = 0, offset = 0; y < height; y++) {
-					for (int x=0; x<width; x++, offset += 4) {
-						int alpha = this.alpha;
-						/* pre-multiplied alpha */
-						int r = ((buffer[offset + or] & 0xFF) * alpha) + 128;
-						r = (r + (r >> 8)) >> 8;
-						int g = ((buffer[offset + og] & 0xFF) * alpha) + 128;
-						g = (g + (g >> 8)) >> 8;
-						int b = ((buffer[offset + ob] & 0xFF) * alpha) + 128;
-						b = (b + (b >> 8)) >> 8;
-						buffer[offset + oa] = (byte)alpha;
-						buffer[offset + or] = (byte)r;
-						buffer[offset + og] = (byte)g;
-						buffer[offset + ob] = (byte)b;
-					}
-				}
-			} else if (this.alphaData != null) {
-				for (int y = 0, offset = 0; y < height; y++) {
-					for (int x=0; x<width; x++, offset += 4) {
-						int alpha = alphaData [y*width+x] & 0xFF;
-						/* pre-multiplied alpha */
-						int r = ((buffer[offset + or] & 0xFF) * alpha) + 128;
-						r = (r + (r >> 8)) >> 8;
-						int g = ((buffer[offset + og] & 0xFF) * alpha) + 128;
-						g = (g + (g >> 8)) >> 8;
-						int b = ((buffer[offset + ob] & 0xFF) * alpha) + 128;
-						b = (b + (b >> 8)) >> 8;
-						buffer[offset + oa] = (byte)alpha;
-						buffer[offset + or] = (byte)r;
-						buffer[offset + og] = (byte)g;
-						buffer[offset + ob] = (byte)b;
-					}
-				}
-			}
+		}
+		/*
+		* Images without alpha already in the layout of the surface are copied
+		* as they are. All others are converted, with their alpha applied and
+		* premultiplied, in a single pass into a new buffer, which leaves the
+		* ImageData untouched.
+		*/
+		byte[] buffer = image.data;
+		if (hasAlpha || !palette.isDirect || image.depth != destDepth || stride != image.bytesPerLine || palette.redMask != redMask || palette.greenMask != greenMask || palette.blueMask != blueMask || destOrder != image.getByteOrder()) {
+			buffer = new byte[stride * height];
+			image.getPremultipliedARGB(buffer, stride, OS.BIG_ENDIAN);
 		}
 		OS.memmove(data, buffer, stride * height);
 		Cairo.cairo_surface_mark_dirty(surface);
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.custom;
+
+
+import java.util.concurrent.*;
+
+import org.eclipse.swt.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures typing in a heavily styled buffer: the style updates that
+ * <code>StyledText</code> makes in its renderer when a character is typed
+ * in the middle of a document and the line is highlighted again, without
+ * laying out or drawing anything. The benchmark lives in the package of
+ * <code>StyledTextRenderer</code> so that it needs no display.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class StyledTextRendererBenchmark {
+
+	/* Every line holds TOKENS tokens of TOKEN_LENGTH characters and a line delimiter */
+	static final int TOKENS = 8, TOKEN_LENGTH = 8;
+	static final int LINE_LENGTH = TOKENS * TOKEN_LENGTH + 1;
+
+	@Param({"1000", "100000"})
+	public int lineCount;
+
+	StyledTextRenderer renderer;
+	StyleRange[] tokenStyles;
+	int lineStart;
+
+@Setup(Level.Trial)
+public void setUp() {
+	int[] fontStyles = {SWT.NORMAL, SWT.BOLD, SWT.ITALIC, SWT.BOLD | SWT.ITALIC};
+	tokenStyles = new StyleRange[fontStyles.length];
+	for (int i = 0; i < fontStyles.length; i++) {
+		tokenStyles[i] = new StyleRange();
+		tokenStyles[i].fontStyle = fontStyles[i];
+	}
+	int[] ranges = new int[lineCount * TOKENS * 2];
+	StyleRange[] styles = new StyleRange[lineCount * TOKENS];
+	for (int line = 0, i = 0; line < lineCount; line++) {
+		for (int token = 0; token < TOKENS; token++, i++) {
+			ranges[i * 2] = line * LINE_LENGTH + token * TOKEN_LENGTH;
+			ranges[i * 2 + 1] = TOKEN_LENGTH;
+			styles[i] = tokenStyles[token % tokenStyles.length];
+		}
+	}
+	renderer = new StyledTextRenderer(null, null);
+	renderer.setStyleRanges(ranges, styles);
+	lineStart = lineCount / 2 * LINE_LENGTH;
+}
+
+void highlight(int lastLength) {
+	int length = TOKENS * TOKEN_LENGTH - TOKEN_LENGTH + lastLength;
+	int[] ranges = new int[TOKENS * 2];
+	StyleRange[] styles = new StyleRange[TOKENS];
+	for (int token = 0; token < TOKENS; token++) {
+		ranges[token * 2] = lineStart + token * TOKEN_LENGTH;
+		ranges[token * 2 + 1] = token == TOKENS - 1 ? lastLength : TOKEN_LENGTH;
+		styles[token] = tokenStyles[token % tokenStyles.length];
+	}
+	renderer.updateRanges(lineStart, length, length);
+	renderer.setStyleRanges(ranges, styles);
+}
+
+/**
+ * Types a character in the last token of the middle line and deletes
+ * it again, highlighting the line after each change.
+ */
+@Benchmark
+public int typeAndDelete() {
+	int caret = lineStart + TOKENS * TOKEN_LENGTH - TOKEN_LENGTH / 2;
+	renderer.updateRanges(caret, 0, 1);
+	highlight(TOKEN_LENGTH + 1);
+	renderer.updateRanges(caret, 1, 0);
+	highlight(TOKEN_LENGTH);
+	return renderer.getStyleCount();
+}
+}
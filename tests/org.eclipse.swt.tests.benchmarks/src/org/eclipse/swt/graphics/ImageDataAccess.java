@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+
+/**
+ * Exposes the package private parts of <code>ImageData</code> and
+ * <code>ImageAtlas</code> that the benchmarks measure. It lives in the
+ * benchmark project only and is compiled together with the SWT sources.
+ */
+public class ImageDataAccess {
+
+/**
+ * Converts the image into <code>dest</code> the way the GTK
+ * <code>Image</code> prepares a Cairo <code>ARGB32</code> surface:
+ * 32 bits per pixel, opaque, unscaled. Cairo uses the native byte
+ * order, which is <code>msbFirst == false</code> on little endian machines.
+ */
+public static void blitToCairo(ImageData image, byte[] dest, boolean msbFirst) {
+	int destOrder = msbFirst ? ImageData.MSB_FIRST : ImageData.LSB_FIRST;
+	int width = image.width, height = image.height;
+	int stride = width * 4;
+	PaletteData palette = image.palette;
+	if (palette.isDirect) {
+		ImageData.blit(ImageData.BLIT_SRC,
+			image.data, image.depth, image.bytesPerLine, image.getByteOrder(), 0, 0, width, height, palette.redMask, palette.greenMask, palette.blueMask,
+			ImageData.ALPHA_OPAQUE, null, 0, 0, 0,
+			dest, 32, stride, destOrder, 0, 0, width, height, 0xFF0000, 0xFF00, 0xFF,
+			false, false);
+	} else {
+		RGB[] rgbs = palette.getRGBs();
+		int length = rgbs.length;
+		byte[] srcReds = new byte[length];
+		byte[] srcGreens = new byte[length];
+		byte[] srcBlues = new byte[length];
+		for (int i = 0; i < rgbs.length; i++) {
+			RGB rgb = rgbs[i];
+			if (rgb == null) continue;
+			srcReds[i] = (byte)rgb.red;
+			srcGreens[i] = (byte)rgb.green;
+			srcBlues[i] = (byte)rgb.blue;
+		}
+		ImageData.blit(ImageData.BLIT_SRC,
+			image.data, image.depth, image.bytesPerLine, image.getByteOrder(), 0, 0, width, height, srcReds, srcGreens, srcBlues,
+			ImageData.ALPHA_OPAQUE, null, 0, 0, 0,
+			dest, 32, stride, destOrder, 0, 0, width, height, 0xFF0000, 0xFF00, 0xFF,
+			false, false);
+	}
+}
+
+/**
+ * Copies an image of the atlas into <code>dest</code> the way the GTK
+ * <code>Image</code> fills a Cairo <code>ARGB32</code> surface from an atlas,
+ * in blocks of rows that also give the alpha data, which is answered.
+ */
+public static byte[] atlasToCairo(ImageAtlas atlas, String name, int zoom, byte[] dest, boolean msbFirst) {
+	int index = atlas.indexOf(name, zoom);
+	int width = atlas.widths[index], height = atlas.heights[index], stride = width * 4;
+	int oa = msbFirst ? 0 : 3;
+	int rows = Math.max(1, Math.min(height, 16 * 1024 / stride));
+	byte[] buffer = new byte[rows * stride];
+	byte[] alphaData = new byte[width * height];
+	for (int y = 0, alphaOffset = 0; y < height; y += rows) {
+		int count = Math.min(rows, height - y);
+		atlas.getPixels(index, y, count, buffer, stride, msbFirst);
+		for (int row = 0; row < count; row++) {
+			for (int x = 0, offset = row * stride + oa; x < width; x++, offset += 4) {
+				alphaData[alphaOffset++] = buffer[offset];
+			}
+		}
+		System.arraycopy(buffer, 0, dest, y * stride, count * stride);
+	}
+	return alphaData;
+}
+
+/**
+ * Converts the image into <code>dest</code> the way the GTK
+ * <code>Image</code> prepares a Cairo <code>ARGB32</code> surface,
+ * with its transparency applied and premultiplied.
+ */
+public static void premultiplyToCairo(ImageData image, byte[] dest, boolean msbFirst) {
+	image.getPremultipliedARGB(dest, image.width * 4, msbFirst);
+}
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.benchmarks;
+
+
+import java.util.concurrent.*;
+
+import org.eclipse.swt.graphics.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the conversion of a whole image to and from packed ARGB ints,
+ * with the bulk <code>ImageData.getARGB</code> and <code>setARGB</code>,
+ * and for comparison pixel by pixel with <code>getPixel</code>,
+ * <code>PaletteData.getRGB</code> and <code>getAlpha</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ARGBAccessBenchmark {
+
+	@Param({"RGB24", "INDEX8"})
+	public String source;
+
+	@Param({"256x256", "1920x1080"})
+	public String size;
+
+	ImageData image;
+	int[] argb;
+
+@Setup(Level.Trial)
+public void setUp() {
+	int[] dimensions = ImageCorpus.parseSize(size);
+	switch (source) {
+		case "RGB24": image = ImageCorpus.createDirect(dimensions[0], dimensions[1]); break;
+		case "INDEX8": image = ImageCorpus.createIndexed(dimensions[0], dimensions[1]); break;
+		default: throw new IllegalArgumentException(source);
+	}
+	argb = new int[image.width * image.height];
+	image.getARGB(0, 0, image.width, image.height, argb, 0, image.width);
+}
+
+@Benchmark
+public int[] getARGB() {
+	image.getARGB(0, 0, image.width, image.height, argb, 0, image.width);
+	return argb;
+}
+
+@Benchmark
+public int[] getPixelByPixel() {
+	PaletteData palette = image.palette;
+	for (int y = 0, i = 0; y < image.height; y++) {
+		for (int x = 0; x < image.width; x++, i++) {
+			RGB rgb = palette.getRGB(image.getPixel(x, y));
+			argb[i] = (image.getAlpha(x, y) << 24) | (rgb.red << 16) | (rgb.green << 8) | rgb.blue;
+		}
+	}
+	return argb;
+}
+
+@Benchmark
+public ImageData setARGB() {
+	image.setARGB(0, 0, image.width, image.height, argb, 0, image.width);
+	return image;
+}
+}
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.benchmarks;
+
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.graphics.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures loading and saving of animated GIFs, where the per frame
+ * cost of the LZW codec dominates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class AnimatedGifBenchmark {
+
+	@Param({"10", "200"})
+	public int frames;
+
+	@Param({"32x32", "320x240"})
+	public String size;
+
+	ImageData[] animation;
+	byte[] encoded;
+
+@Setup(Level.Trial)
+public void setUp() {
+	int[] dimensions = ImageCorpus.parseSize(size);
+	animation = ImageCorpus.createAnimation(dimensions[0], dimensions[1], frames);
+	ByteArrayOutputStream stream = new ByteArrayOutputStream();
+	createLoader().save(stream, SWT.IMAGE_GIF);
+	encoded = stream.toByteArray();
+}
+
+ImageLoader createLoader() {
+	ImageLoader loader = new ImageLoader();
+	loader.data = animation;
+	loader.logicalScreenWidth = animation[0].width;
+	loader.logicalScreenHeight = animation[0].height;
+	loader.repeatCount = 0;
+	return loader;
+}
+
+@Benchmark
+public ImageData[] load() {
+	return new ImageLoader().load(new ByteArrayInputStream(encoded));
+}
+
+@Benchmark
+public long save() {
+	ImageCorpus.NullOutputStream stream = new ImageCorpus.NullOutputStream();
+	createLoader().save(stream, SWT.IMAGE_GIF);
+	return stream.count;
+}
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.benchmarks;
+
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.eclipse.swt.graphics.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures <code>ImageLoader.loadAll</code> on a batch of thumbnails with
+ * different bounds on the number of images decoded at the same time. The
+ * throughput of a run with a parallelism of n should approach n times that
+ * of the sequential run, up to the number of cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchLoadBenchmark {
+
+	@Param({"PNG", "JPEG"})
+	public String format;
+
+	@Param({"1", "2", "4"})
+	public int parallelism;
+
+	static final int COUNT = 64;
+
+	byte[][] encoded;
+	ExecutorService executor;
+
+@Setup(Level.Trial)
+public void setUp() {
+	int imageFormat = ImageCorpus.parseFormat(format);
+	encoded = new byte[COUNT][];
+	for (int i = 0; i < COUNT; i++) {
+		encoded[i] = ImageCorpus.encode(ImageCorpus.create(imageFormat, 160 + i, 120), imageFormat);
+	}
+	executor = Executors.newFixedThreadPool(parallelism);
+}
+
+@TearDown(Level.Trial)
+public void tearDown() {
+	executor.shutdown();
+}
+
+@Benchmark
+public int loadAll() throws Exception {
+	InputStream[] streams = new InputStream[COUNT];
+	for (int i = 0; i < COUNT; i++) {
+		streams[i] = new ByteArrayInputStream(encoded[i]);
+	}
+	List<CompletableFuture<ImageData[]>> results = ImageLoader.loadAll(streams, executor, parallelism);
+	int width = 0;
+	for (CompletableFuture<ImageData[]> result : results) {
+		width += result.get()[0].width;
+	}
+	return width;
+}
+}
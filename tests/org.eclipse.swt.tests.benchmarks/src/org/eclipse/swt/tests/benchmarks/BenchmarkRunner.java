@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.benchmarks;
+
+
+import org.openjdk.jmh.profile.*;
+import org.openjdk.jmh.runner.*;
+import org.openjdk.jmh.runner.options.*;
+
+/**
+ * Entry point of <code>benchmarks.jar</code>. Accepts the regular JMH
+ * command line and enables the GC profiler unless other profilers are
+ * requested, so that every run reports the allocation rate together
+ * with the throughput.
+ */
+public class BenchmarkRunner {
+
+public static void main(String[] args) throws Exception {
+	CommandLineOptions commandLine = new CommandLineOptions(args);
+	ChainedOptionsBuilder builder = new OptionsBuilder().parent(commandLine);
+	if (commandLine.getIncludes().isEmpty()) {
+		builder.include("org\\.eclipse\\.swt\\.");
+	}
+	if (commandLine.getProfilers().isEmpty()) {
+		builder.addProfiler(GCProfiler.class);
+	}
+	Runner runner = new Runner(builder.build());
+	if (commandLine.shouldHelp()) {
+		commandLine.showHelp();
+	} else if (commandLine.shouldList()) {
+		runner.list();
+	} else {
+		runner.run();
+	}
+}
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.benchmarks;
+
+
+import java.util.concurrent.*;
+
+import org.eclipse.swt.graphics.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the unscaled pixel format conversion done by
+ * <code>ImageData.blit</code> when the GTK <code>Image</code> copies
+ * an <code>ImageData</code> into a Cairo surface.
+ * <p>
+ * The comprehensive per pixel blit can be measured for comparison by
+ * adding <code>-jvmArgsAppend -Dorg.eclipse.swt.graphics.ImageData.blitKernels=false</code>.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class BlitBenchmark {
+
+	@Param({"RGB24", "INDEX8"})
+	public String source;
+
+	@Param({"256x256", "1920x1080"})
+	public String size;
+
+	@Param({"LSB", "MSB"})
+	public String order;
+
+	ImageData image;
+	byte[] dest;
+	boolean msbFirst;
+
+@Setup(Level.Trial)
+public void setUp() {
+	int[] dimensions = ImageCorpus.parseSize(size);
+	switch (source) {
+		case "RGB24": image = ImageCorpus.createDirect(dimensions[0], dimensions[1]); break;
+		case "INDEX8": image = ImageCorpus.createIndexed(dimensions[0], dimensions[1]); break;
+		default: throw new IllegalArgumentException(source);
+	}
+	dest = new byte[image.width * image.height * 4];
+	msbFirst = "MSB".equals(order);
+}
+
+@Benchmark
+public byte[] blitToCairo() {
+	ImageDataAccess.blitToCairo(image, dest, msbFirst);
+	return dest;
+}
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.benchmarks;
+
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.eclipse.swt.graphics.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the preparation of the pixels of a Cairo <code>ARGB32</code>
+ * surface from an <code>ImageData</code> with transparency, as done by the
+ * GTK <code>Image</code>: in a single pass, and for comparison as a blit
+ * followed by a second pass that applies and premultiplies the alpha.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class CairoSurfaceBenchmark {
+
+	@Param({"RGB24", "INDEX8"})
+	public String source;
+
+	@Param({"ALPHA", "PIXEL"})
+	public String transparency;
+
+	@Param({"256x256", "1920x1080"})
+	public String size;
+
+	ImageData image;
+	byte[] dest;
+
+@Setup(Level.Trial)
+public void setUp() {
+	int[] dimensions = ImageCorpus.parseSize(size);
+	switch (source) {
+		case "RGB24": image = ImageCorpus.createDirect(dimensions[0], dimensions[1]); break;
+		case "INDEX8": image = ImageCorpus.createIndexed(dimensions[0], dimensions[1]); break;
+		default: throw new IllegalArgumentException(source);
+	}
+	switch (transparency) {
+		case "ALPHA":
+			image.alphaData = new byte[image.width * image.height];
+			new Random(0).nextBytes(image.alphaData);
+			break;
+		case "PIXEL":
+			image.transparentPixel = image.getPixel(0, 0);
+			break;
+		default: throw new IllegalArgumentException(transparency);
+	}
+	dest = new byte[image.width * image.height * 4];
+}
+
+@Benchmark
+public byte[] singlePass() {
+	ImageDataAccess.premultiplyToCairo(image, dest, false);
+	return dest;
+}
+
+@Benchmark
+public byte[] twoPass() {
+	ImageDataAccess.blitToCairo(image, dest, false);
+	int width = image.width, height = image.height;
+	ImageData mask = image.transparentPixel != -1 ? image.getTransparencyMask() : null;
+	for (int y = 0, offset = 0; y < height; y++) {
+		for (int x = 0; x < width; x++, offset += 4) {
+			int alpha = mask != null ? (mask.getPixel(x, y) == 0 ? 0 : 0xFF) : image.alphaData[y * width + x] & 0xFF;
+			int r = ((dest[offset + 2] & 0xFF) * alpha) + 128;
+			r = (r + (r >> 8)) >> 8;
+			int g = ((dest[offset + 1] & 0xFF) * alpha) + 128;
+			g = (g + (g >> 8)) >> 8;
+			int b = ((dest[offset] & 0xFF) * alpha) + 128;
+			b = (b + (b >> 8)) >> 8;
+			dest[offset + 3] = (byte)alpha;
+			dest[offset + 2] = (byte)r;
+			dest[offset + 1] = (byte)g;
+			dest[offset] = (byte)b;
+		}
+	}
+	return dest;
+}
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.benchmarks;
+
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.graphics.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the headless raster operations of <code>ImageData</code>:
+ * compositing an image with alpha data over an opaque 24-bit image,
+ * copying an area and filling a rectangle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class CompositeBenchmark {
+
+	@Param({"256x256", "1920x1080"})
+	public String size;
+
+	ImageData source, dest;
+	RGB rgb = new RGB(0x33, 0x66, 0x99);
+
+@Setup(Level.Trial)
+public void setUp() {
+	int[] dimensions = ImageCorpus.parseSize(size);
+	source = ImageCorpus.createDirect(dimensions[0], dimensions[1]);
+	source.alphaData = new byte[source.width * source.height];
+	new Random(0).nextBytes(source.alphaData);
+	dest = ImageCorpus.createDirect(dimensions[0], dimensions[1]);
+}
+
+@Benchmark
+public ImageData compositeSrcOver() {
+	dest.composite(source, 0, 0, source.width, source.height, 0, 0, SWT.COMPOSITE_SRC_OVER, 0xFF);
+	return dest;
+}
+
+@Benchmark
+public ImageData copyArea() {
+	dest.copyArea(source, 0, 0, source.width, source.height, 0, 0);
+	return dest;
+}
+
+@Benchmark
+public ImageData fillRectangleSrcOver() {
+	dest.fillRectangle(0, 0, dest.width, dest.height, rgb, 0x80, SWT.COMPOSITE_SRC_OVER);
+	return dest;
+}
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.benchmarks;
+
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import org.eclipse.swt.graphics.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures loading and saving of Windows icons. ICO stores the size of
+ * an icon in a single byte, so it is kept apart from the larger corpus
+ * of {@link ImageLoaderBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IconLoaderBenchmark {
+
+	@Param({"16x16", "32x32", "48x48", "256x256"})
+	public String size;
+
+	ImageData image;
+	byte[] encoded;
+
+@Setup(Level.Trial)
+public void setUp() {
+	int[] dimensions = ImageCorpus.parseSize(size);
+	image = ImageCorpus.createDirect(dimensions[0], dimensions[1]);
+	encoded = ImageCorpus.encode(image, ImageCorpus.parseFormat("ICO"));
+}
+
+@Benchmark
+public ImageData[] load() {
+	return new ImageLoader().load(new ByteArrayInputStream(encoded));
+}
+
+@Benchmark
+public long save() {
+	ImageLoader loader = new ImageLoader();
+	loader.data = new ImageData[] {image};
+	ImageCorpus.NullOutputStream stream = new ImageCorpus.NullOutputStream();
+	loader.save(stream, ImageCorpus.parseFormat("ICO"));
+	return stream.count;
+}
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.benchmarks;
+
+
+import java.io.*;
+import java.nio.*;
+import java.util.concurrent.*;
+
+import org.eclipse.swt.graphics.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the work done on the Java side to fill the Cairo surfaces of a
+ * set of icons, either decoding PNG files and converting them as
+ * <code>Image.init(ImageData)</code> does, or copying them out of an
+ * <code>ImageAtlas</code>. Creating the surfaces is the same for both.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageAtlasBenchmark {
+
+	@Param({"16x16", "32x32"})
+	public String size;
+
+	static final int COUNT = 100;
+	static final boolean MSB_FIRST = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+
+	String[] names;
+	byte[][] encoded;
+	ImageAtlas atlas;
+	File file;
+	byte[] surface;
+
+@Setup(Level.Trial)
+public void setUp() throws IOException {
+	int[] dimensions = ImageCorpus.parseSize(size);
+	int format = ImageCorpus.parseFormat("PNG");
+	names = new String[COUNT];
+	encoded = new byte[COUNT][];
+	ImageData[] images = new ImageData[COUNT];
+	int[] zooms = new int[COUNT];
+	for (int i = 0; i < COUNT; i++) {
+		names[i] = "icons/icon" + i + ".png";
+		images[i] = ImageCorpus.createDirect(dimensions[0], dimensions[1]);
+		encoded[i] = ImageCorpus.encode(images[i], format);
+		zooms[i] = 100;
+	}
+	file = File.createTempFile("benchmark", ".atlas");
+	try (OutputStream stream = new FileOutputStream(file)) {
+		ImageAtlas.save(stream, names, zooms, images);
+	}
+	atlas = new ImageAtlas(file.getPath());
+	surface = new byte[dimensions[0] * dimensions[1] * 4];
+}
+
+@TearDown(Level.Trial)
+public void tearDown() {
+	file.delete();
+}
+
+@Benchmark
+public byte[] decode() {
+	for (int i = 0; i < COUNT; i++) {
+		ImageData image = new ImageLoader().load(new ByteArrayInputStream(encoded[i]))[0];
+		ImageDataAccess.blitToCairo(image, surface, MSB_FIRST);
+	}
+	return surface;
+}
+
+@Benchmark
+public byte[] atlas() {
+	for (int i = 0; i < COUNT; i++) {
+		ImageDataAccess.atlasToCairo(atlas, names[i], 100, surface, MSB_FIRST);
+	}
+	return surface;
+}
+}
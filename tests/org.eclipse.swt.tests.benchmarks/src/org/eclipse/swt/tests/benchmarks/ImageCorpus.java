@@ -0,0 +1,250 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.benchmarks;
+
+
+import java.io.*;
+import java.util.*;
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.graphics.*;
+
+/**
+ * Deterministic, synthetic source images for the codec benchmarks.
+ * <p>
+ * The pixels are a mix of smooth gradients and seeded noise so that
+ * the compressed sizes are in the range of real icons and photos
+ * rather than the degenerate best case of a flat image.
+ * </p>
+ */
+public class ImageCorpus {
+
+	static final long SEED = 0x5357544C;
+
+/**
+ * Parses a size of the form <code>WIDTHxHEIGHT</code>.
+ */
+public static int[] parseSize(String size) {
+	int index = size.indexOf('x');
+	if (index == -1) throw new IllegalArgumentException(size);
+	return new int[] {Integer.parseInt(size.substring(0, index)), Integer.parseInt(size.substring(index + 1))};
+}
+
+/**
+ * Returns the <code>SWT.IMAGE_*</code> constant for the given format name.
+ */
+public static int parseFormat(String format) {
+	switch (format) {
+		case "BMP": return SWT.IMAGE_BMP;
+		case "BMP_RLE": return SWT.IMAGE_BMP_RLE;
+		case "GIF": return SWT.IMAGE_GIF;
+		case "ICO": return SWT.IMAGE_ICO;
+		case "JPEG": return SWT.IMAGE_JPEG;
+		case "PNG": return SWT.IMAGE_PNG;
+		case "TIFF": return SWT.IMAGE_TIFF;
+	}
+	throw new IllegalArgumentException(format);
+}
+
+/**
+ * Returns a 24-bit direct color image with a scanline pad of 1,
+ * which every encoder (including TIFF) accepts.
+ */
+public static ImageData createDirect(int width, int height) {
+	PaletteData palette = new PaletteData(0xFF0000, 0xFF00, 0xFF);
+	ImageData image = new ImageData(width, height, 24, palette, 1, new byte[width * height * 3]);
+	byte[] data = image.data;
+	Random random = new Random(SEED);
+	int index = 0;
+	for (int y = 0; y < height; y++) {
+		for (int x = 0; x < width; x++) {
+			int noise = random.nextInt(16);
+			data[index++] = (byte)((x * 255 / width + noise) & 0xFF);
+			data[index++] = (byte)((y * 255 / height + noise) & 0xFF);
+			data[index++] = (byte)(((x + y) * 127 / (width + height) + 64 + noise) & 0xFF);
+		}
+	}
+	return image;
+}
+
+/**
+ * Returns an 8-bit indexed image with a 3-3-2 palette.
+ */
+public static ImageData createIndexed(int width, int height) {
+	RGB[] rgbs = new RGB[256];
+	for (int i = 0; i < rgbs.length; i++) {
+		rgbs[i] = new RGB((i >> 5) * 255 / 7, ((i >> 2) & 0x7) * 255 / 7, (i & 0x3) * 255 / 3);
+	}
+	ImageData image = new ImageData(width, height, 8, new PaletteData(rgbs), 1, new byte[width * height]);
+	byte[] data = image.data;
+	Random random = new Random(SEED);
+	int index = 0;
+	for (int y = 0; y < height; y++) {
+		for (int x = 0; x < width; x++) {
+			int r = (x * 8 / width + (random.nextInt(4) == 0 ? 1 : 0)) & 0x7;
+			int g = (y * 8 / height) & 0x7;
+			int b = (x + y) * 4 / (width + height) & 0x3;
+			data[index++] = (byte)(r << 5 | g << 2 | b);
+		}
+	}
+	return image;
+}
+
+/**
+ * Returns the frames of an animation: 8-bit indexed images sharing
+ * one palette, each shifted by a few pixels from the previous one.
+ */
+public static ImageData[] createAnimation(int width, int height, int frames) {
+	ImageData first = createIndexed(width + frames, height);
+	ImageData[] animation = new ImageData[frames];
+	byte[] row = new byte[width];
+	for (int i = 0; i < frames; i++) {
+		ImageData frame = new ImageData(width, height, 8, first.palette, 1, new byte[width * height]);
+		for (int y = 0; y < height; y++) {
+			first.getPixels(i, y, width, row, 0);
+			frame.setPixels(0, y, width, row, 0);
+		}
+		frame.delayTime = 4;
+		animation[i] = frame;
+	}
+	return animation;
+}
+
+/**
+ * Returns an image suitable for the given <code>SWT.IMAGE_*</code> format.
+ * GIF and RLE compressed BMP only apply to indexed images.
+ */
+public static ImageData create(int format, int width, int height) {
+	switch (format) {
+		case SWT.IMAGE_GIF:
+		case SWT.IMAGE_BMP_RLE:
+			return createIndexed(width, height);
+	}
+	return createDirect(width, height);
+}
+
+/**
+ * Encodes the image in the given <code>SWT.IMAGE_*</code> format.
+ */
+public static byte[] encode(ImageData image, int format) {
+	ImageLoader loader = new ImageLoader();
+	loader.data = new ImageData[] {image};
+	ByteArrayOutputStream stream = new ByteArrayOutputStream();
+	loader.save(stream, format);
+	return stream.toByteArray();
+}
+
+/**
+ * Encodes a 24-bit direct color image with a scanline pad of 1 as an RGB
+ * TIFF whose strips of <code>rowsPerStrip</code> rows are compressed with
+ * PackBits, which <code>ImageLoader.save</code> does not write.
+ */
+public static byte[] encodePackBitsTIFF(ImageData image, int rowsPerStrip) {
+	int rowSize = image.width * 3;
+	int stripCount = (image.height + rowsPerStrip - 1) / rowsPerStrip;
+	ByteArrayOutputStream strips = new ByteArrayOutputStream();
+	int[] offsets = new int[stripCount], counts = new int[stripCount];
+	for (int i = 0; i < stripCount; i++) {
+		offsets[i] = strips.size();
+		int end = Math.min(image.height, (i + 1) * rowsPerStrip);
+		for (int y = i * rowsPerStrip; y < end; y++) {
+			packBits(image.data, y * image.bytesPerLine, rowSize, strips);
+		}
+		counts[i] = strips.size() - offsets[i];
+	}
+	/* Header, directory, then the strip offsets and byte counts, the bits per sample and the strips */
+	int entries = 9;
+	int valuesOffset = 8 + 2 + entries * 12 + 4;
+	int bitsOffset = valuesOffset + stripCount * 8;
+	int dataOffset = bitsOffset + 6;
+	ByteArrayOutputStream out = new ByteArrayOutputStream(dataOffset + strips.size());
+	writeShort(out, 0x4949);
+	writeShort(out, 42);
+	writeInt(out, 8);
+	writeShort(out, entries);
+	writeEntry(out, 256, 4, 1, image.width);
+	writeEntry(out, 257, 4, 1, image.height);
+	writeEntry(out, 258, 3, 3, bitsOffset);
+	writeEntry(out, 259, 3, 1, 32773);
+	writeEntry(out, 262, 3, 1, 2);
+	/* A single strip offset and byte count are stored in their entries */
+	writeEntry(out, 273, 4, stripCount, stripCount == 1 ? dataOffset : valuesOffset);
+	writeEntry(out, 277, 3, 1, 3);
+	writeEntry(out, 278, 4, 1, rowsPerStrip);
+	writeEntry(out, 279, 4, stripCount, stripCount == 1 ? counts[0] : valuesOffset + stripCount * 4);
+	writeInt(out, 0);
+	for (int i = 0; i < stripCount; i++) writeInt(out, dataOffset + offsets[i]);
+	for (int i = 0; i < stripCount; i++) writeInt(out, counts[i]);
+	for (int i = 0; i < 3; i++) writeShort(out, 8);
+	byte[] data = strips.toByteArray();
+	out.write(data, 0, data.length);
+	return out.toByteArray();
+}
+
+static void packBits(byte[] data, int start, int length, ByteArrayOutputStream out) {
+	int end = start + length, i = start;
+	while (i < end) {
+		int run = 1;
+		while (i + run < end && run < 128 && data[i + run] == data[i]) run++;
+		if (run > 1) {
+			out.write(1 - run);
+			out.write(data[i]);
+			i += run;
+			continue;
+		}
+		int literal = 1;
+		while (i + literal < end && literal < 128 && !(i + literal + 1 < end && data[i + literal] == data[i + literal + 1])) literal++;
+		out.write(literal - 1);
+		out.write(data, i, literal);
+		i += literal;
+	}
+}
+
+static void writeEntry(ByteArrayOutputStream out, int tag, int type, int count, int value) {
+	writeShort(out, tag);
+	writeShort(out, type);
+	writeInt(out, count);
+	if (type == 3 && count == 1) {
+		writeShort(out, value);
+		writeShort(out, 0);
+	} else {
+		writeInt(out, value);
+	}
+}
+
+static void writeShort(ByteArrayOutputStream out, int value) {
+	out.write(value);
+	out.write(value >> 8);
+}
+
+static void writeInt(ByteArrayOutputStream out, int value) {
+	writeShort(out, value);
+	writeShort(out, value >> 16);
+}
+
+/**
+ * An output stream that discards everything, so that save benchmarks
+ * measure the encoder rather than the growth of a byte array.
+ */
+public static class NullOutputStream extends OutputStream {
+	long count;
+
+	@Override
+	public void write(int b) {
+		count++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		count += len;
+	}
+}
+}
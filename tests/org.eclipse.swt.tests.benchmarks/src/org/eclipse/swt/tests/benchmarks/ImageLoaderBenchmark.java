@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.benchmarks;
+
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import org.eclipse.swt.graphics.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures <code>ImageLoader.load</code> and <code>ImageLoader.save</code>
+ * for every format that can both be read and written, over a corpus of
+ * sizes ranging from small icons to an 8k photo.
+ * <p>
+ * Run with <code>-prof gc</code> (the default in {@link BenchmarkRunner})
+ * to get the allocation rate next to the throughput.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ImageLoaderBenchmark {
+
+	@Param({"BMP", "BMP_RLE", "GIF", "JPEG", "PNG", "TIFF"})
+	public String format;
+
+	@Param({"16x16", "256x256", "1920x1080", "8192x5464"})
+	public String size;
+
+	ImageData image;
+	byte[] encoded;
+
+@Setup(Level.Trial)
+public void setUp() {
+	int[] dimensions = ImageCorpus.parseSize(size);
+	int imageFormat = ImageCorpus.parseFormat(format);
+	image = ImageCorpus.create(imageFormat, dimensions[0], dimensions[1]);
+	encoded = ImageCorpus.encode(image, imageFormat);
+}
+
+@Benchmark
+public ImageData[] load() {
+	return new ImageLoader().load(new ByteArrayInputStream(encoded));
+}
+
+@Benchmark
+public long save() {
+	ImageLoader loader = new ImageLoader();
+	loader.data = new ImageData[] {image};
+	ImageCorpus.NullOutputStream stream = new ImageCorpus.NullOutputStream();
+	loader.save(stream, ImageCorpus.parseFormat(format));
+	return stream.count;
+}
+}
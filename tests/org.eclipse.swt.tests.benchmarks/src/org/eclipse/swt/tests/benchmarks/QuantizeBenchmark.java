@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.benchmarks;
+
+
+import java.util.concurrent.*;
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.graphics.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the reduction of a direct palette image to 256 colors with
+ * <code>ImageData.quantize</code>, with and without dithering, and saving
+ * it as a GIF, which quantizes it first.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class QuantizeBenchmark {
+
+	@Param({"256x256", "1920x1080"})
+	public String size;
+
+	ImageData image;
+
+@Setup(Level.Trial)
+public void setUp() {
+	int[] dimensions = ImageCorpus.parseSize(size);
+	image = ImageCorpus.createDirect(dimensions[0], dimensions[1]);
+}
+
+@Benchmark
+public ImageData quantize() {
+	return image.quantize(8, false);
+}
+
+@Benchmark
+public ImageData quantizeDither() {
+	return image.quantize(8, true);
+}
+
+@Benchmark
+public byte[] saveGIF() {
+	return ImageCorpus.encode(image, SWT.IMAGE_GIF);
+}
+}
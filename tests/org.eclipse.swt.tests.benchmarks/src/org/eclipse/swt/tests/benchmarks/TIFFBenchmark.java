@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.benchmarks;
+
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.graphics.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the TIFF codec beyond the single page images of
+ * <code>ImageLoaderBenchmark</code>: loading an image compressed in
+ * PackBits strips, loading all the pages of a multi-page file or only
+ * its last one with <code>ImageLoader.loadPage</code>, and saving the
+ * pages of a multi-page file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class TIFFBenchmark {
+
+	static final int PAGES = 8;
+
+	@Param({"256x256", "1920x1080"})
+	public String size;
+
+	byte[] packBits;
+	byte[] multiPage;
+	ImageData[] pages;
+
+@Setup(Level.Trial)
+public void setUp() {
+	int[] dimensions = ImageCorpus.parseSize(size);
+	ImageData image = ImageCorpus.createDirect(dimensions[0], dimensions[1]);
+	packBits = ImageCorpus.encodePackBitsTIFF(image, 16);
+	pages = new ImageData[PAGES];
+	for (int i = 0; i < PAGES; i++) pages[i] = image;
+	ImageLoader loader = new ImageLoader();
+	loader.data = pages;
+	ByteArrayOutputStream stream = new ByteArrayOutputStream();
+	loader.save(stream, SWT.IMAGE_TIFF);
+	multiPage = stream.toByteArray();
+}
+
+@Benchmark
+public ImageData[] loadPackBits() {
+	return new ImageLoader().load(new ByteArrayInputStream(packBits));
+}
+
+@Benchmark
+public ImageData[] loadAllPages() {
+	return new ImageLoader().load(new ByteArrayInputStream(multiPage));
+}
+
+@Benchmark
+public ImageData[] loadLastPage() {
+	ImageLoader loader = new ImageLoader();
+	loader.loadPage = PAGES - 1;
+	return loader.load(new ByteArrayInputStream(multiPage));
+}
+
+@Benchmark
+public long saveAllPages() {
+	ImageLoader loader = new ImageLoader();
+	loader.data = pages;
+	ImageCorpus.NullOutputStream stream = new ImageCorpus.NullOutputStream();
+	loader.save(stream, SWT.IMAGE_TIFF);
+	return stream.count;
+}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2015 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -26,7 +26,9 @@ import org.junit.runners.Suite;
 		Test_org_eclipse_swt_graphics_FontMetrics.class,
 		Test_org_eclipse_swt_graphics_GC.class,
 		Test_org_eclipse_swt_graphics_Image.class,
+		Test_org_eclipse_swt_graphics_ImageAtlas.class,
 		Test_org_eclipse_swt_graphics_ImageData.class,
+		Test_org_eclipse_swt_internal_ImageDataCache.class,
 		Test_org_eclipse_swt_graphics_PaletteData.class,
 		Test_org_eclipse_swt_graphics_Point.class,
 		Test_org_eclipse_swt_graphics_Rectangle.class,
@@ -41,7 +41,10 @@ import org.junit.runners.Suite;
 		Test_org_eclipse_swt_custom_StyleRange.class, Test_org_eclipse_swt_custom_CCombo.class,
 		Test_org_eclipse_swt_custom_TableTreeItem.class, Test_org_eclipse_swt_custom_CLabel.class,
 		Test_org_eclipse_swt_custom_CTabItem.class, Test_org_eclipse_swt_custom_StyledText.class,
-		Test_org_eclipse_swt_custom_CTabFolder.class, Test_org_eclipse_swt_widgets_Spinner.class,
+		Test_org_eclipse_swt_custom_CTabFolder.class, Test_org_eclipse_swt_custom_PieceTableContent.class,
+		Test_org_eclipse_swt_custom_DefaultContent.class, Test_org_eclipse_swt_custom_StyledText_StyleRanges.class,
+		Test_org_eclipse_swt_custom_TextLayoutCache.class,
+		Test_org_eclipse_swt_widgets_Spinner.class,
 		Test_org_eclipse_swt_widgets_ScrolledComposite.class})
 public class AllWidgetTests {
 	public static void main(String[] args) {
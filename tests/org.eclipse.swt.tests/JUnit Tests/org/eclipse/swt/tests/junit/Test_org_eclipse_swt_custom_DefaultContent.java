@@ -0,0 +1,363 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.junit;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.StyledText;
+import org.eclipse.swt.custom.StyledTextContent;
+import org.eclipse.swt.custom.TextChangeListener;
+import org.eclipse.swt.custom.TextChangedEvent;
+import org.eclipse.swt.custom.TextChangingEvent;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Synchronizer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Automated Test Suite for class org.eclipse.swt.custom.DefaultContent, the
+ * content of a <code>StyledText</code> that has not been given another one,
+ * and for the line index it keeps.
+ *
+ * @see org.eclipse.swt.custom.StyledText#getContent()
+ */
+public class Test_org_eclipse_swt_custom_DefaultContent {
+	/* More characters than DefaultContent indexes at once, so that large texts are indexed lazily */
+	static final int LARGE = 3 << 20;
+	/* More lines than fit into one block of the line index */
+	static final int MANY_LINES = 6000;
+	static final String[] DELIMITERS = {"\r", "\n", "\r\n"};
+
+	Shell shell;
+	StyledTextContent content;
+
+@Before
+public void setUp() {
+	shell = new Shell();
+	content = new StyledText(shell, SWT.NULL).getContent();
+}
+
+@After
+public void tearDown() {
+	shell.dispose();
+}
+
+/* Answers the start offsets of the lines of text, the way StyledText splits it */
+static List<Integer> lineStarts(CharSequence text) {
+	List<Integer> starts = new ArrayList<>();
+	starts.add(0);
+	for (int i = 0; i < text.length();) {
+		char ch = text.charAt(i++);
+		if (ch == '\r') {
+			if (i < text.length() && text.charAt(i) == '\n') i++;
+			starts.add(i);
+		} else if (ch == '\n') {
+			starts.add(i);
+		}
+	}
+	return starts;
+}
+
+static String createText(Random random, int length) {
+	StringBuilder text = new StringBuilder(length + 100);
+	for (int i = 0; text.length() < length; i++) {
+		text.append("line ").append(i).append(DELIMITERS[random.nextInt(DELIMITERS.length)]);
+	}
+	return text.toString();
+}
+
+/* Answers a short text of letters and line delimiters, likely to complete or split a \r\n */
+static String createEdit(Random random, int length) {
+	StringBuilder text = new StringBuilder(length);
+	for (int i = 0; i < length; i++) {
+		int kind = random.nextInt(4);
+		text.append(kind < 3 ? DELIMITERS[kind] : "x");
+	}
+	return text.toString();
+}
+
+/* Answers whether replacing the range would split a \r\n, which the content does not allow */
+static boolean splitsDelimiter(CharSequence text, int start, int length) {
+	int end = start + length;
+	boolean startSplit = start > 0 && start < text.length() && text.charAt(start - 1) == '\r' && text.charAt(start) == '\n';
+	boolean endSplit = end > 0 && end < text.length() && text.charAt(end - 1) == '\r' && text.charAt(end) == '\n';
+	return startSplit || (length > 0 && endSplit);
+}
+
+int getIndexedOffset() throws ReflectiveOperationException {
+	Field field = content.getClass().getDeclaredField("indexedOffset");
+	field.setAccessible(true);
+	return field.getInt(content);
+}
+
+static int lineAt(List<Integer> starts, int offset) {
+	int index = Collections.binarySearch(starts, offset);
+	return index < 0 ? -index - 2 : index;
+}
+
+void assertLine(String message, CharSequence text, List<Integer> starts, int line) {
+	int start = starts.get(line);
+	int end = line + 1 < starts.size() ? starts.get(line + 1) : text.length();
+	while (end > start && (text.charAt(end - 1) == '\r' || text.charAt(end - 1) == '\n')) end--;
+	assertEquals(message + line, text.subSequence(start, end).toString(), content.getLine(line));
+	assertEquals(message + line, start, content.getOffsetAtLine(line));
+	assertEquals(message + line, line, content.getLineAtOffset(start));
+	assertEquals(message + line, line, content.getLineAtOffset(end));
+}
+
+/* Checks the lines around the given offset and the line count against the text */
+void assertLinesAround(String message, CharSequence text, int offset) {
+	List<Integer> starts = lineStarts(text);
+	assertEquals(message, text.length(), content.getCharCount());
+	assertEquals(message, starts.size(), content.getLineCount());
+	int line = content.getLineAtOffset(offset);
+	for (int i = Math.max(0, line - 2); i < Math.min(starts.size(), line + 3); i++) {
+		assertLine(message, text, starts, i);
+	}
+}
+
+void assertLines(String message, CharSequence text) {
+	List<Integer> starts = lineStarts(text);
+	assertEquals(message, text.length(), content.getCharCount());
+	assertEquals(message, starts.size(), content.getLineCount());
+	for (int i = 0; i < starts.size(); i++) {
+		assertLine(message, text, starts, i);
+	}
+	assertEquals(message, text.toString(), content.getTextRange(0, text.length()));
+}
+
+@Test
+public void test_setTextLjava_lang_String() {
+	String[] texts = {"", "a", "\r", "\n", "\r\n", "\n\r", "a\rb\nc\r\nd", "\r\r\n\n\r", "a\r\n\r\nb\n"};
+	for (String text : texts) {
+		content.setText(text);
+		assertLines(":a:", text);
+	}
+	String text = createText(new Random(1), 200000);
+	content.setText(text);
+	assertLines(":b:", text);
+}
+
+@Test
+public void test_setTextLjava_lang_String_large() throws ReflectiveOperationException {
+	String text = createText(new Random(2), LARGE);
+	content.setText(text);
+	List<Integer> starts = lineStarts(text);
+
+	// the lines are counted right away but only indexed as they are needed
+	assertEquals(":a:", starts.size(), content.getLineCount());
+	assertTrue(":b:", getIndexedOffset() < starts.get(1000));
+	int line = starts.size() / 2;
+	assertEquals(":c:", starts.get(line).intValue(), content.getOffsetAtLine(line));
+	int indexed = getIndexedOffset();
+	assertTrue(":d:", indexed < text.length());
+	assertLine(":e:", text, starts, line - 1);
+	assertEquals(":f:", indexed, getIndexedOffset());
+
+	// asking for a line past the indexed text indexes up to it
+	int offset = text.length() - 20;
+	assertEquals(":g:", lineAt(starts, offset), content.getLineAtOffset(offset));
+	assertTrue(":h:", getIndexedOffset() >= offset);
+	assertLines(":i:", text);
+	assertEquals(":j:", text.length(), getIndexedOffset());
+
+	content.setText(text);
+	assertEquals(":k:", "line 12", content.getLine(12));
+	assertTrue(":l:", getIndexedOffset() < text.length());
+	assertLine(":m:", text, starts, starts.size() - 1);
+}
+
+@Test
+public void test_setTextLjava_lang_String_discardsBackgroundIndexing() throws ReflectiveOperationException {
+	Display display = shell.getDisplay();
+	Synchronizer synchronizer = display.getSynchronizer();
+	List<Runnable> pending = new ArrayList<>();
+	display.setSynchronizer(new Synchronizer(display) {
+		@Override
+		protected void asyncExec(Runnable runnable) {
+			pending.add(runnable);
+		}
+	});
+	try {
+		content.setText(createText(new Random(3), LARGE));
+		assertEquals(":a:", 1, pending.size());
+		String text = createText(new Random(4), LARGE);
+		content.setText(text);
+		assertEquals(":b:", 2, pending.size());
+
+		// the pass started for the first text does nothing and is not run again
+		int indexed = getIndexedOffset();
+		pending.remove(0).run();
+		assertEquals(":c:", indexed, getIndexedOffset());
+		assertEquals(":d:", 1, pending.size());
+
+		// the pass of the current text indexes it chunk by chunk
+		int runs = 0;
+		while (!pending.isEmpty()) {
+			indexed = getIndexedOffset();
+			pending.remove(0).run();
+			assertTrue(":e:", getIndexedOffset() > indexed);
+			runs++;
+		}
+		assertTrue(":f:", runs > 1);
+		assertEquals(":g:", text.length(), getIndexedOffset());
+		assertLines(":h:", text);
+
+		// a small text is indexed right away
+		content.setText(createText(new Random(5), LARGE));
+		content.setText("a\nb");
+		pending.remove(0).run();
+		assertTrue(":i:", pending.isEmpty());
+		assertLines(":j:", "a\nb");
+	} finally {
+		display.setSynchronizer(synchronizer);
+	}
+}
+
+@Test
+public void test_replaceTextRangeIILjava_lang_String_lineDelimiters() {
+	// a \r\n delimiter may be completed or removed by an edit
+	String[][] edits = {
+		{"a\rb", "2", "0", "\n"}, {"a\nb", "1", "0", "\r"}, {"a\r\nb", "1", "2", "\n\r"},
+		{"a\r\nb", "1", "2", ""}, {"a\r\nb", "3", "0", "\n"}, {"a\r\nb", "1", "0", "\r"},
+		{"\r", "1", "0", "\n"}, {"\n", "0", "0", "\r"}, {"a\rb\nc", "2", "1", ""},
+		{"a\r\r\nb", "2", "0", "\n\r"}, {"a\n\nb", "1", "1", "\r\n\r"}, {"", "0", "0", "\r\n"},
+		{"a\rb\r\n", "1", "2", "\n\r"}, {"\r\n\r\n", "2", "2", "\n"},
+	};
+	for (String[] edit : edits) {
+		content.setText(edit[0]);
+		int start = Integer.parseInt(edit[1]);
+		int length = Integer.parseInt(edit[2]);
+		content.replaceTextRange(start, length, edit[3]);
+		StringBuilder text = new StringBuilder(edit[0]).replace(start, start + length, edit[3]);
+		assertLines(":a:" + edit[0].replace("\r", "\\r").replace("\n", "\\n") + ":", text);
+	}
+
+	// but not split
+	int[][] splits = {{2, 0}, {1, 1}, {2, 1}, {2, 2}};
+	for (int[] split : splits) {
+		content.setText("a\r\nb");
+		try {
+			content.replaceTextRange(split[0], split[1], "x");
+			fail("No exception thrown for splitting a line delimiter");
+		} catch (IllegalArgumentException e) {
+		}
+		assertLines(":b:", "a\r\nb");
+	}
+}
+
+@Test
+public void test_replaceTextRangeIILjava_lang_String_manyLines() {
+	Random random = new Random(6);
+	StringBuilder text = new StringBuilder();
+	for (int i = 0; i < MANY_LINES; i++) {
+		text.append(i).append(DELIMITERS[random.nextInt(DELIMITERS.length)]);
+	}
+	content.setText(text.toString());
+	for (int i = 0; i < 300; i++) {
+		int start = random.nextInt(text.length() + 1);
+		int length = random.nextInt(Math.min(20, text.length() - start + 1));
+		String newText = createEdit(random, random.nextInt(8));
+		if (i % 50 == 25) {
+			// large edits split and merge the blocks of the line index
+			length = Math.min(text.length() - start, 30000);
+		} else if (i % 50 == 0) {
+			newText = createEdit(random, 6000);
+		}
+		if (splitsDelimiter(text, start, length)) continue;
+		content.replaceTextRange(start, length, newText);
+		text.replace(start, start + length, newText);
+		assertLinesAround(":a:" + i, text, start);
+		if (i % 10 == 0) assertLines(":b:" + i, text);
+	}
+	assertLines(":c:", text);
+}
+
+@Test
+public void test_replaceTextRangeIILjava_lang_String_large() throws ReflectiveOperationException {
+	Random random = new Random(7);
+	StringBuilder text = new StringBuilder(createText(random, LARGE));
+	content.setText(text.toString());
+	content.getLine(content.getLineCount() / 3);
+
+	// edits around the end of the indexed text keep the rest of it to be indexed lazily
+	for (int i = 0; i < 200; i++) {
+		int boundary = getIndexedOffset();
+		int start = Math.max(0, Math.min(text.length(), boundary + random.nextInt(9) - 4));
+		int length = random.nextInt(Math.min(4, text.length() - start + 1));
+		String newText = createEdit(random, random.nextInt(4));
+		if (splitsDelimiter(text, start, length)) continue;
+		content.replaceTextRange(start, length, newText);
+		text.replace(start, start + length, newText);
+		assertTrue(":a:" + i, getIndexedOffset() < text.length());
+		assertLinesAround(":b:" + i, text, start);
+	}
+
+	// and so do edits anywhere in the indexed or the not yet indexed text
+	for (int i = 0; i < 100; i++) {
+		int start = random.nextInt(text.length() + 1);
+		int length = random.nextInt(Math.min(10, text.length() - start + 1));
+		String newText = createEdit(random, random.nextInt(6));
+		if (splitsDelimiter(text, start, length)) continue;
+		content.replaceTextRange(start, length, newText);
+		text.replace(start, start + length, newText);
+		assertLinesAround(":c:" + i, text, start);
+	}
+	assertLines(":d:", text);
+}
+
+@Test
+public void test_replaceTextRangeIILjava_lang_String_textChanging() {
+	int[] counts = new int[2];
+	content.addTextChangeListener(new TextChangeListener() {
+		@Override
+		public void textChanging(TextChangingEvent event) {
+			counts[0] = event.replaceLineCount;
+			counts[1] = event.newLineCount;
+		}
+		@Override
+		public void textChanged(TextChangedEvent event) {
+		}
+		@Override
+		public void textSet(TextChangedEvent event) {
+		}
+	});
+	Random random = new Random(8);
+	for (int large = 0; large < 2; large++) {
+		StringBuilder text = new StringBuilder(createText(random, large == 0 ? 5000 : LARGE));
+		content.setText(text.toString());
+		for (int i = 0; i < 200; i++) {
+			int start = random.nextInt(text.length() + 1);
+			int length = random.nextInt(Math.min(12, text.length() - start + 1));
+			String newText = createEdit(random, random.nextInt(6));
+			if (splitsDelimiter(text, start, length)) continue;
+			content.replaceTextRange(start, length, newText);
+			// the delimiters in the replaced and in the new text, a \r\n split by the edit counts twice
+			assertEquals(":a:" + i, lineStarts(text.substring(start, start + length)).size() - 1, counts[0]);
+			assertEquals(":b:" + i, lineStarts(newText).size() - 1, counts[1]);
+			text.replace(start, start + length, newText);
+			assertLinesAround(":c:" + i, text, start);
+		}
+	}
+}
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.junit;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.eclipse.swt.custom.PieceTableContent;
+import org.eclipse.swt.custom.TextChangeListener;
+import org.eclipse.swt.custom.TextChangedEvent;
+import org.eclipse.swt.custom.TextChangingEvent;
+import org.junit.Test;
+
+/**
+ * Automated Test Suite for class org.eclipse.swt.custom.PieceTableContent
+ *
+ * @see org.eclipse.swt.custom.PieceTableContent
+ */
+public class Test_org_eclipse_swt_custom_PieceTableContent {
+
+void assertLines(String message, PieceTableContent content, String... lines) {
+	assertEquals(message, lines.length, content.getLineCount());
+	for (int i = 0; i < lines.length; i++) {
+		assertEquals(message + i, lines[i], content.getLine(i));
+		assertEquals(message + i, i, content.getLineAtOffset(content.getOffsetAtLine(i)));
+	}
+}
+
+@Test
+public void test_Constructor() {
+	PieceTableContent content = new PieceTableContent();
+	assertEquals(":a:", 0, content.getCharCount());
+	assertEquals(":b:", 0, content.getOffsetAtLine(0));
+	assertEquals(":c:", 0, content.getLineAtOffset(0));
+	assertLines(":d:", content, "");
+}
+
+@Test
+public void test_ConstructorLjava_io_FileLjava_nio_charset_Charset() throws IOException {
+	File file = File.createTempFile("swt", ".txt");
+	try {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			text.append("line ").append(i).append(i % 3 == 0 ? " \u00e9\u20ac\r\n" : "\n");
+		}
+		Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+		PieceTableContent content = new PieceTableContent(file, StandardCharsets.UTF_8);
+		assertEquals(":a:", text.length(), content.getCharCount());
+		assertEquals(":b:", 20001, content.getLineCount());
+		assertEquals(":c:", "line 19998 \u00e9\u20ac", content.getLine(19998));
+		assertEquals(":d:", "line 19999", content.getLine(19999));
+		assertEquals(":e:", text.toString(), content.getTextRange(0, content.getCharCount()));
+
+		content.replaceTextRange(content.getOffsetAtLine(1), 0, "inserted\n");
+		assertEquals(":f:", "inserted", content.getLine(1));
+		assertEquals(":g:", "line 1", content.getLine(2));
+	} finally {
+		file.delete();
+	}
+
+	try {
+		new PieceTableContent(null, StandardCharsets.UTF_8);
+		fail("No exception thrown for file == null");
+	} catch (IllegalArgumentException e) {
+	}
+}
+
+@Test
+public void test_getLineAtOffsetI() {
+	PieceTableContent content = new PieceTableContent();
+	content.setText("\r\n\r\n");
+	int[] lines = {0, 0, 1, 1, 2};
+	for (int i = 0; i < lines.length; i++) {
+		assertEquals(":a:" + i, lines[i], content.getLineAtOffset(i));
+	}
+	try {
+		content.getLineAtOffset(5);
+		fail("No exception thrown for offset out of range");
+	} catch (IllegalArgumentException e) {
+	}
+}
+
+@Test
+public void test_replaceTextRangeIILjava_lang_String() {
+	PieceTableContent content = new PieceTableContent();
+	final int[] counts = new int[2];
+	content.addTextChangeListener(new TextChangeListener() {
+		@Override
+		public void textChanging(TextChangingEvent event) {
+			counts[0] = event.replaceLineCount;
+			counts[1] = event.newLineCount;
+		}
+		@Override
+		public void textChanged(TextChangedEvent event) {
+		}
+		@Override
+		public void textSet(TextChangedEvent event) {
+		}
+	});
+	content.setText("one\rtwo");
+	assertLines(":a:", content, "one", "two");
+
+	// a LF inserted after a CR joins it in a single delimiter
+	content.replaceTextRange(4, 0, "\n");
+	assertLines(":b:", content, "one", "two");
+	assertEquals(":c:", 1, counts[1]);
+	assertEquals(":d:", 5, content.getOffsetAtLine(1));
+
+	// typing, each character extends the text inserted before it
+	String typed = "zero\r";
+	for (int i = 0; i < typed.length(); i++) {
+		content.replaceTextRange(i, 0, typed.substring(i, i + 1));
+	}
+	assertLines(":e:", content, "zero", "one", "two");
+
+	content.replaceTextRange(0, 5, "");
+	assertEquals(":f:", 1, counts[0]);
+	assertLines(":g:", content, "one", "two");
+
+	try {
+		content.replaceTextRange(4, 0, "x");
+		fail("No exception thrown for splitting a CR LF delimiter");
+	} catch (IllegalArgumentException e) {
+	}
+	try {
+		content.replaceTextRange(3, 1, "");
+		fail("No exception thrown for deleting part of a CR LF delimiter");
+	} catch (IllegalArgumentException e) {
+	}
+	assertEquals(":h:", "one\r\ntwo", content.getTextRange(0, content.getCharCount()));
+}
+
+@Test
+public void test_setTextLjava_lang_String() {
+	PieceTableContent content = new PieceTableContent();
+	content.setText("a\n\nb\r\rc\r\n");
+	assertLines(":a:", content, "a", "", "b", "", "c", "");
+	content.setText("");
+	assertLines(":b:", content, "");
+}
+}
@@ -0,0 +1,562 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.junit;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Device;
+import org.eclipse.swt.custom.StyleRange;
+import org.eclipse.swt.custom.StyledText;
+import org.eclipse.swt.widgets.Shell;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Automated Test Suite for the style ranges of class org.eclipse.swt.custom.StyledText,
+ * comparing them with the style of each character as a list kept by the test
+ * through random changes of the styles and of the text.
+ *
+ * @see org.eclipse.swt.custom.StyledText
+ */
+public class Test_org_eclipse_swt_custom_StyledText_StyleRanges {
+	/* More style ranges than fit into one block of the renderer, which holds up to 512 */
+	static final int MANY_RANGES = 2000;
+	/* The number of ranges in the blocks the renderer splits its ranges into */
+	static final int BLOCK_SIZE = 256;
+
+	Shell shell;
+	StyledText text;
+	Random random;
+	StyleRange[] palette;
+	/* The style of each character of the text, or null */
+	List<StyleRange> model = new ArrayList<>();
+
+@Before
+public void setUp() {
+	shell = new Shell();
+	text = new StyledText(shell, SWT.NULL);
+	random = new Random(23);
+	palette = new StyleRange[6];
+	for (int i = 0; i < palette.length; i++) {
+		palette[i] = new StyleRange();
+	}
+	palette[0].fontStyle = SWT.BOLD;
+	palette[1].fontStyle = SWT.ITALIC;
+	palette[2].fontStyle = SWT.BOLD | SWT.ITALIC;
+	palette[3].underline = true;
+	palette[4].strikeout = true;
+	palette[5].rise = 2;
+}
+
+@After
+public void tearDown() {
+	shell.dispose();
+}
+
+StyleRange createStyle(int start, int length) {
+	StyleRange style = (StyleRange)palette[random.nextInt(palette.length)].clone();
+	style.start = start;
+	style.length = length;
+	return style;
+}
+
+String createText(int length) {
+	StringBuilder buffer = new StringBuilder(length);
+	for (int i = 0; i < length; i++) {
+		buffer.append(random.nextInt(40) == 0 ? '\n' : (char)('a' + random.nextInt(26)));
+	}
+	return buffer.toString();
+}
+
+void setText(String string) {
+	text.setText(string);
+	model = new ArrayList<>(Collections.<StyleRange>nCopies(string.length(), null));
+}
+
+void replaceTextRange(int start, int length, String string) {
+	text.replaceTextRange(start, length, string);
+	model.subList(start, start + length).clear();
+	model.addAll(start, Collections.<StyleRange>nCopies(string.length(), null));
+}
+
+/* Answers ordered ranges between start and end, some of them empty, with a style each */
+StyleRange[] createRanges(int start, int end, int maxLength) {
+	List<StyleRange> styles = new ArrayList<>();
+	for (int offset = start + random.nextInt(4); offset < end; offset += random.nextInt(4)) {
+		int length = Math.min(end - offset, random.nextInt(maxLength + 1));
+		styles.add(createStyle(offset, length));
+		offset += length;
+	}
+	return styles.toArray(new StyleRange[styles.size()]);
+}
+
+/* Clears the styles of the model between start and start + length, then sets the given ones */
+void setModelStyles(int start, int length, StyleRange[] styles) {
+	for (int i = start; i < start + length; i++) model.set(i, null);
+	for (StyleRange style : styles) {
+		for (int i = style.start; i < style.start + style.length; i++) model.set(i, style);
+	}
+}
+
+void replaceStyleRanges(int start, int length, StyleRange[] styles) {
+	if (random.nextBoolean()) {
+		text.replaceStyleRanges(start, length, styles);
+	} else {
+		// the same styles given as ranges, sharing one instance per style
+		int[] ranges = new int[styles.length * 2];
+		StyleRange[] shared = new StyleRange[styles.length];
+		for (int i = 0; i < styles.length; i++) {
+			ranges[i * 2] = styles[i].start;
+			ranges[i * 2 + 1] = styles[i].length;
+			for (int j = 0; j < palette.length && shared[i] == null; j++) {
+				if (palette[j].similarTo(styles[i])) shared[i] = palette[j];
+			}
+		}
+		text.setStyleRanges(start, length, ranges, shared);
+	}
+	setModelStyles(start, length, styles);
+}
+
+void setStyleRange(StyleRange style) {
+	text.setStyleRange(style);
+	if (style.isUnstyled()) {
+		setModelStyles(style.start, style.length, new StyleRange[0]);
+	} else {
+		setModelStyles(style.start, 0, new StyleRange[] {style});
+	}
+}
+
+void setStyleRanges(StyleRange[] styles) {
+	text.setStyleRanges(styles);
+	setModelStyles(0, model.size(), styles);
+}
+
+/* Answers the start of the style range at index */
+int getRangeStart(int index) {
+	return text.getRanges()[index * 2];
+}
+
+static void assertSameStyle(String message, StyleRange expected, StyleRange actual) {
+	if (expected == null) {
+		assertTrue(message, actual == null || actual.isUnstyled());
+	} else {
+		assertTrue(message, actual != null && expected.similarTo(actual));
+	}
+}
+
+/* Checks all the style ranges of the text against the model */
+void assertStyles(String message) {
+	int charCount = model.size();
+	assertEquals(message, charCount, text.getCharCount());
+	int[] ranges = text.getRanges();
+	StyleRange[] styles = text.getStyleRanges(false);
+	StyleRange[] styleRanges = text.getStyleRanges();
+	assertEquals(message, styles.length * 2, ranges.length);
+	assertEquals(message, styles.length, styleRanges.length);
+	StyleRange[] actual = new StyleRange[charCount];
+	int end = 0;
+	for (int i = 0; i < styles.length; i++) {
+		int start = ranges[i * 2], length = ranges[i * 2 + 1];
+		assertTrue(message + " ranges out of order at " + i, end <= start && 0 <= length);
+		assertEquals(message, start, styleRanges[i].start);
+		assertEquals(message, length, styleRanges[i].length);
+		assertTrue(message, styles[i].similarTo(styleRanges[i]));
+		end = start + length;
+		for (int j = start; j < end; j++) actual[j] = styles[i];
+	}
+	assertTrue(message, end <= charCount);
+	for (int i = 0; i < charCount; i++) {
+		assertSameStyle(message + " at " + i, model.get(i), actual[i]);
+	}
+}
+
+/* Checks the style ranges answered for part of the text against the model */
+void assertStyles(String message, int start, int length) {
+	StyleRange[] actual = new StyleRange[length];
+	for (StyleRange style : text.getStyleRanges(start, length)) {
+		assertTrue(message, style.start < start + length && style.start + style.length > start);
+		for (int i = Math.max(start, style.start); i < Math.min(start + length, style.start + style.length); i++) {
+			actual[i - start] = style;
+		}
+	}
+	for (int i = 0; i < length; i++) {
+		assertSameStyle(message + " at " + (start + i), model.get(start + i), actual[i]);
+	}
+	if (start < model.size()) {
+		assertSameStyle(message, model.get(start), text.getStyleRangeAtOffset(start));
+	}
+}
+
+static Object getField(Object object, String name) throws ReflectiveOperationException {
+	Field field = object.getClass().getDeclaredField(name);
+	field.setAccessible(true);
+	return field.get(object);
+}
+
+/* Answers the store of the style ranges of the renderer of the text */
+Object getStyleStore() throws ReflectiveOperationException {
+	return getField(getField(text, "renderer"), "styles");
+}
+
+/* Answers the number of styles in the table shared by the style ranges */
+int getStyleCount() throws ReflectiveOperationException {
+	return (Integer)getField(getStyleStore(), "styleCount");
+}
+
+/* Answers the number of slots of the table that are used or free */
+int getTableSize() throws ReflectiveOperationException {
+	return (Integer)getField(getStyleStore(), "tableSize");
+}
+
+/* Answers the slot of the table holding a style similar to the given one, or -1 */
+int getSlot(StyleRange style) throws ReflectiveOperationException {
+	StyleRange[] table = (StyleRange[])getField(getStyleStore(), "table");
+	for (int id = 0; id < getTableSize(); id++) {
+		if (table[id] != null && table[id].similarTo(style)) return id;
+	}
+	return -1;
+}
+
+/* Answers identical styles that are all different instances */
+StyleRange[] createSimilarStyles(int count, int distinct) {
+	StyleRange[] styles = new StyleRange[count];
+	for (int i = 0; i < count; i++) {
+		styles[i] = (StyleRange)palette[i % distinct].clone();
+	}
+	return styles;
+}
+
+/* Answers ranges of one character, one character apart */
+static int[] createRanges(int count) {
+	int[] ranges = new int[count * 2];
+	for (int i = 0; i < count; i++) {
+		ranges[i * 2] = i * 2;
+		ranges[i * 2 + 1] = 1;
+	}
+	return ranges;
+}
+
+/* Changes the styles or the text at random and checks the result against the model */
+void edit(String message, int maxLength) {
+	int charCount = model.size();
+	int kind = random.nextInt(10);
+	if (kind < 4) {
+		int start = random.nextInt(charCount + 1);
+		int length = random.nextInt(Math.min(charCount - start, random.nextInt(4) == 0 ? maxLength : 30) + 1);
+		replaceStyleRanges(start, length, createRanges(start, start + length, random.nextInt(3) == 0 ? 1 : 8));
+	} else if (kind < 5) {
+		int start = random.nextInt(charCount + 1);
+		int length = random.nextInt(Math.min(charCount - start, 40) + 1);
+		StyleRange style = random.nextInt(4) == 0 ? new StyleRange(start, length, null, null) : createStyle(start, length);
+		setStyleRange(style);
+	} else if (kind < 9) {
+		int start = random.nextInt(charCount + 1);
+		int length = random.nextInt(Math.min(charCount - start, random.nextInt(20) == 0 ? maxLength : 10) + 1);
+		replaceTextRange(start, length, createText(random.nextInt(random.nextInt(5) == 0 ? 20 : 3)));
+	} else if (random.nextInt(5) == 0) {
+		setStyleRanges(createRanges(0, charCount, 8));
+	} else {
+		int start = random.nextInt(charCount + 1);
+		int length = random.nextInt(Math.min(charCount - start, 20) + 1);
+		text.setStyleRanges(start, length, null, null);
+		setModelStyles(start, length, new StyleRange[0]);
+	}
+	assertStyles(message);
+	int start = random.nextInt(model.size() + 1);
+	assertStyles(message, start, random.nextInt(Math.min(model.size() - start, 50) + 1));
+}
+
+@Test
+public void test_setStyleRangesII$I$Lorg_eclipse_swt_custom_StyleRange_random() {
+	for (int round = 0; round < 100; round++) {
+		setText(createText(50 + random.nextInt(200)));
+		for (int step = 0; step < 60; step++) {
+			edit(":a:" + round + ":" + step + ":", 200);
+		}
+	}
+}
+
+@Test
+public void test_setStyleRangesII$I$Lorg_eclipse_swt_custom_StyleRange_manyRanges() {
+	int maxRanges = 0;
+	for (int round = 0; round < 3; round++) {
+		setText(createText(MANY_RANGES * 10));
+		setStyleRanges(createRanges(0, model.size(), 8));
+		assertStyles(":a:" + round);
+		for (int step = 0; step < 1500; step++) {
+			edit(":b:" + round + ":" + step + ":", MANY_RANGES * 5);
+			maxRanges = Math.max(maxRanges, text.getRanges().length / 2);
+		}
+	}
+	assertTrue(":c:", maxRanges > 2 * BLOCK_SIZE);
+}
+
+/* Sets ranges of four characters, two characters apart, the renderer splits them into blocks of BLOCK_SIZE ranges */
+void setManyRanges() {
+	setText(createText(MANY_RANGES * 6));
+	StyleRange[] styles = new StyleRange[MANY_RANGES];
+	for (int i = 0; i < MANY_RANGES; i++) {
+		styles[i] = (StyleRange)palette[i % palette.length].clone();
+		styles[i].start = i * 6;
+		styles[i].length = 4;
+	}
+	setStyleRanges(styles);
+	assertEquals(":a:", MANY_RANGES * 2, text.getRanges().length);
+}
+
+@Test
+public void test_replaceTextRangeIILjava_lang_String_blockBoundaries() {
+	// change the first range of each block and the ranges around it
+	for (int first = BLOCK_SIZE; first < MANY_RANGES; first += BLOCK_SIZE) {
+		for (int index = first - 1; index <= first + 1; index++) {
+			String message = ":b:" + index + ":";
+			setManyRanges();
+			// insert before the range, shifting it
+			int start = getRangeStart(index);
+			replaceTextRange(start, 0, "x");
+			assertStyles(message + "shift");
+			// delete from inside the range before it to inside the range, moving its start
+			start = getRangeStart(index);
+			replaceTextRange(start - 4, 5, "");
+			assertStyles(message + "start");
+			// insert inside the range, splitting it
+			replaceTextRange(getRangeStart(index) + 1, 0, "yy");
+			assertStyles(message + "split");
+			// style the end of the range before it and its start
+			setStyleRange(createStyle(getRangeStart(index) - 1, 2));
+			assertStyles(message + "style");
+			// delete it with the ranges around it
+			start = getRangeStart(index - 1);
+			replaceTextRange(start, getRangeStart(index + 2) - start, "z");
+			assertStyles(message + "delete");
+		}
+	}
+
+	// merge the blocks of many ranges into one range, then split them again
+	setManyRanges();
+	int start = getRangeStart(BLOCK_SIZE / 2);
+	int end = getRangeStart(BLOCK_SIZE * 5);
+	replaceStyleRanges(start, end - start, new StyleRange[] {createStyle(start, end - start)});
+	assertStyles(":c:");
+	replaceStyleRanges(start, end - start, createRanges(start, end, 2));
+	assertStyles(":d:");
+	replaceTextRange(start, end - start, "");
+	assertStyles(":e:");
+	setText("");
+	assertEquals(":f:", 0, text.getRanges().length);
+}
+
+/* Checks that the blocks of the store hold BLOCK_SIZE / 2 up to 2 * BLOCK_SIZE ranges, unless there is only one */
+void assertBlocks(String message) throws ReflectiveOperationException {
+	Object store = getStyleStore();
+	if (store == null) return;
+	Object[] blocks = (Object[])getField(store, "blocks");
+	int blockCount = (Integer)getField(store, "blockCount");
+	int size = 0;
+	for (int i = 0; i < blockCount; i++) {
+		int blockSize = (Integer)getField(blocks[i], "size");
+		assertTrue(message + i, blockSize <= 2 * BLOCK_SIZE);
+		assertTrue(message + i, blockSize >= (blockCount == 1 ? 1 : BLOCK_SIZE / 2));
+		size += blockSize;
+	}
+	assertEquals(message, text.getRanges().length / 2, size);
+}
+
+@Test
+public void test_replaceTextRangeIILjava_lang_String_mergesBlocks() throws ReflectiveOperationException {
+	// delete the ranges one at a time, the blocks left with too few ranges are merged with a neighbour
+	setManyRanges();
+	for (int count = MANY_RANGES; count > 0; count--) {
+		int start = getRangeStart(random.nextInt(count));
+		replaceTextRange(start, 4, "");
+		assertBlocks(":b:" + count + ":");
+		if (count % 100 == 0) assertStyles(":c:" + count);
+	}
+	assertEquals(":d:", 0, text.getRanges().length);
+
+	// delete whole blocks of ranges but a few
+	setManyRanges();
+	for (int i = 0; i < 20; i++) {
+		int count = text.getRanges().length / 2;
+		int index = random.nextInt(count);
+		int end = Math.min(count - 1, index + random.nextInt(2 * BLOCK_SIZE));
+		int start = getRangeStart(index);
+		replaceTextRange(start, getRangeStart(end) - start, "");
+		assertBlocks(":e:" + i + ":");
+		assertStyles(":f:" + i);
+	}
+}
+
+@Test
+public void test_setStyleRanges$I$Lorg_eclipse_swt_custom_StyleRange_sharesStyles() throws ReflectiveOperationException {
+	setText(createText(MANY_RANGES * 2));
+	text.setStyleRanges(createRanges(MANY_RANGES), createSimilarStyles(MANY_RANGES, 3));
+
+	// similar styles take one slot of the table and are answered as one instance
+	assertEquals(":a:", 3, getStyleCount());
+	assertEquals(":b:", 3, getTableSize());
+	StyleRange[] styles = text.getStyleRanges(false);
+	assertEquals(":c:", MANY_RANGES, styles.length);
+	for (int i = 0; i < MANY_RANGES; i++) {
+		assertSame(":d:" + i, styles[i % 3], styles[i]);
+	}
+
+	// the styles answered with their ranges are copies
+	StyleRange[] styleRanges = text.getStyleRanges();
+	assertNotSame(":e:", styles[0], styleRanges[0]);
+	assertNotSame(":f:", styleRanges[0], styleRanges[3]);
+	assertTrue(":g:", styles[0].similarTo(styleRanges[3]));
+	assertEquals(":h:", 6, styleRanges[3].start);
+}
+
+@Test
+public void test_setStyleRangeLorg_eclipse_swt_custom_StyleRange_releasesStyles() throws ReflectiveOperationException {
+	setText(createText(100));
+	StyleRange[] styles = createSimilarStyles(3, 3);
+	for (int i = 0; i < styles.length; i++) {
+		styles[i].start = i * 20;
+		styles[i].length = 10;
+	}
+	text.setStyleRanges(styles);
+	assertEquals(":a:", 3, getStyleCount());
+	int slot = getSlot(palette[1]);
+
+	// splitting a range keeps its style in one slot
+	text.replaceTextRange(25, 0, "x");
+	assertEquals(":b:", 4, text.getStyleRanges(false).length);
+	assertEquals(":c:", 3, getStyleCount());
+
+	// the slot of a style is freed when its last range goes
+	text.setStyleRange(new StyleRange(20, 6, null, null));
+	assertEquals(":d:", 3, getStyleCount());
+	text.replaceTextRange(26, 5, "");
+	assertEquals(":e:", 2, getStyleCount());
+	assertEquals(":f:", -1, getSlot(palette[1]));
+	assertEquals(":g:", 3, getTableSize());
+
+	// and taken by the next new style
+	StyleRange style = (StyleRange)palette[3].clone();
+	style.start = 60;
+	style.length = 5;
+	text.setStyleRange(style);
+	assertEquals(":h:", 3, getStyleCount());
+	assertEquals(":i:", 3, getTableSize());
+	assertEquals(":j:", slot, getSlot(palette[3]));
+
+	// setting a style over the same style adds no slot
+	style = (StyleRange)palette[3].clone();
+	style.start = 62;
+	style.length = 10;
+	text.setStyleRange(style);
+	assertEquals(":k:", 3, getStyleCount());
+
+	text.replaceStyleRanges(0, text.getCharCount(), new StyleRange[0]);
+	assertEquals(":l:", 0, getStyleCount());
+	assertEquals(":m:", -1, getSlot(palette[0]));
+}
+
+@Test
+public void test_setStyleRanges$Lorg_eclipse_swt_custom_StyleRange_manyStyles() throws ReflectiveOperationException {
+	int count = 500;
+	setText(createText(count * 4));
+	StyleRange[] styles = new StyleRange[count];
+	for (int i = 0; i < count; i++) {
+		styles[i] = new StyleRange(i * 2, 1, null, null);
+		styles[i].rise = i + 1;
+	}
+	text.setStyleRanges(styles);
+
+	// the table grows and is rehashed, and still finds every style
+	assertEquals(":a:", count, getStyleCount());
+	assertEquals(":b:", count, getTableSize());
+	for (int i = 0; i < count; i++) {
+		StyleRange style = (StyleRange)styles[i].clone();
+		style.start = count * 2 + i * 2;
+		text.setStyleRange(style);
+	}
+	assertEquals(":c:", count, getStyleCount());
+	assertEquals(":d:", count, getTableSize());
+	assertStyleRanges(":e:", styles, count);
+
+	// the slots freed by half the styles are reused for new ones
+	text.replaceStyleRanges(0, count * 4, new StyleRange[0]);
+	text.setStyleRanges(styles);
+	assertEquals(":f:", count, getStyleCount());
+	text.replaceStyleRanges(0, count, new StyleRange[0]);
+	assertEquals(":g:", count / 2, getStyleCount());
+	for (int i = 0; i < count / 2; i++) {
+		StyleRange style = new StyleRange(count * 2 + i * 2, 1, null, null);
+		style.rise = -1 - i;
+		text.setStyleRange(style);
+	}
+	assertEquals(":h:", count, getStyleCount());
+	assertEquals(":i:", count, getTableSize());
+}
+
+void assertStyleRanges(String message, StyleRange[] styles, int count) {
+	StyleRange[] styleRanges = text.getStyleRanges();
+	assertEquals(message, count * 2, styleRanges.length);
+	for (int i = 0; i < styleRanges.length; i++) {
+		assertEquals(message + i, i * 2, styleRanges[i].start);
+		assertTrue(message + i, styles[i % count].similarTo(styleRanges[i]));
+	}
+}
+
+@Test
+public void test_print_copiesStyles() throws ReflectiveOperationException {
+	setText(createText(MANY_RANGES * 2));
+	text.setStyleRanges(createRanges(MANY_RANGES), createSimilarStyles(MANY_RANGES, 3));
+
+	// copy the renderer as the printing of the text does
+	Object renderer = getField(text, "renderer");
+	Constructor<?> constructor = renderer.getClass().getDeclaredConstructor(Device.class, StyledText.class);
+	constructor.setAccessible(true);
+	Object copy = constructor.newInstance(null, null);
+	Method copyInto = renderer.getClass().getDeclaredMethod("copyInto", renderer.getClass());
+	copyInto.setAccessible(true);
+	copyInto.invoke(renderer, copy);
+	Method getStyleRanges = renderer.getClass().getDeclaredMethod("getStyleRanges", int.class, int.class, boolean.class);
+	getStyleRanges.setAccessible(true);
+	StyleRange[] copies = (StyleRange[])getStyleRanges.invoke(copy, 0, text.getCharCount(), false);
+
+	// each style is cloned once, the copy shares none with the text
+	StyleRange[] styles = text.getStyleRanges(false);
+	assertEquals(":a:", styles.length, copies.length);
+	Set<StyleRange> original = Collections.newSetFromMap(new IdentityHashMap<>());
+	Collections.addAll(original, styles);
+	Set<StyleRange> copied = Collections.newSetFromMap(new IdentityHashMap<>());
+	Collections.addAll(copied, copies);
+	assertEquals(":b:", 3, copied.size());
+	for (int i = 0; i < copies.length; i++) {
+		assertFalse(":c:" + i, original.contains(copies[i]));
+		assertTrue(":d:" + i, styles[i].similarTo(copies[i]));
+	}
+	assertTrue(":e:", Collections.disjoint(original, copied));
+	assertEquals(":f:", MANY_RANGES * 2, text.getRanges().length);
+}
+}
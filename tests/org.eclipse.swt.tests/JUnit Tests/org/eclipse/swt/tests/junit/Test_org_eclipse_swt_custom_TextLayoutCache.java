@@ -0,0 +1,457 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.junit;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.Bullet;
+import org.eclipse.swt.custom.StyleRange;
+import org.eclipse.swt.custom.StyledText;
+import org.eclipse.swt.graphics.GlyphMetrics;
+import org.eclipse.swt.graphics.TextLayout;
+import org.eclipse.swt.widgets.Shell;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Automated Test Suite for class org.eclipse.swt.custom.TextLayoutCache,
+ * the cache of the text layouts of the lines of a StyledText. The internal
+ * class is reached by reflection, and is compared with a list of the cached
+ * lines kept by the test through random changes.
+ *
+ * @see org.eclipse.swt.custom.StyledText
+ */
+public class Test_org_eclipse_swt_custom_TextLayoutCache {
+
+	/* A cached line of the model */
+	static class Entry {
+		int line, bulletIndex = -1;
+		long memory, stamp;
+		TextLayout layout;
+		Bullet bullet;
+	}
+
+	Shell shell;
+	Object cache;
+	int layoutMemory, charMemory;
+
+@Before
+public void setUp() throws ReflectiveOperationException {
+	cache = createCache();
+	layoutMemory = (Integer)getField(cache, "LAYOUT_MEMORY");
+	charMemory = (Integer)getField(cache, "CHAR_MEMORY");
+	shell = new Shell();
+}
+
+@After
+public void tearDown() throws ReflectiveOperationException {
+	invoke("clear");
+	shell.dispose();
+}
+
+static Object createCache() throws ReflectiveOperationException {
+	Class<?> clazz = StyledText.class.getClassLoader().loadClass("org.eclipse.swt.custom.TextLayoutCache");
+	Constructor<?> constructor = clazz.getDeclaredConstructor();
+	constructor.setAccessible(true);
+	return constructor.newInstance();
+}
+
+static Field findField(Object object, String name) throws ReflectiveOperationException {
+	Field field = object.getClass().getDeclaredField(name);
+	field.setAccessible(true);
+	return field;
+}
+
+static Object getField(Object object, String name) throws ReflectiveOperationException {
+	return findField(object, name).get(object);
+}
+
+static void setField(Object object, String name, int value) throws ReflectiveOperationException {
+	findField(object, name).setInt(object, value);
+}
+
+Object invoke(String name, Object... args) throws ReflectiveOperationException {
+	for (Method method : cache.getClass().getDeclaredMethods()) {
+		if (method.getName().equals(name) && method.getParameterCount() == args.length) {
+			method.setAccessible(true);
+			return method.invoke(cache, args);
+		}
+	}
+	throw new NoSuchMethodException(name);
+}
+
+TextLayout createLayout() {
+	return new TextLayout(shell.getDisplay());
+}
+
+TextLayout get(int line) throws ReflectiveOperationException {
+	return (TextLayout)invoke("get", line);
+}
+
+TextLayout put(int line, int length) throws ReflectiveOperationException {
+	TextLayout layout = createLayout();
+	invoke("put", line, layout, length);
+	return layout;
+}
+
+void setViewport(int start, int end) throws ReflectiveOperationException {
+	setField(cache, "viewportStart", start);
+	setField(cache, "viewportEnd", end);
+}
+
+boolean contains(int line, TextLayout layout) throws ReflectiveOperationException {
+	return (Boolean)invoke("contains", line, layout);
+}
+
+int getCount() throws ReflectiveOperationException {
+	return (Integer)invoke("getCount");
+}
+
+long getMemory() throws ReflectiveOperationException {
+	return (Long)invoke("getMemory");
+}
+
+int getEvictionCount() throws ReflectiveOperationException {
+	return (Integer)invoke("getEvictionCount");
+}
+
+@Test
+public void test_putILorg_eclipse_swt_graphics_TextLayoutI_maxCount() throws ReflectiveOperationException {
+	setField(cache, "maxCount", 3);
+	setViewport(0, 0);
+	TextLayout a = put(10, 0);
+	TextLayout b = put(20, 0);
+	TextLayout c = put(30, 0);
+	assertEquals(":a:", 3, getCount());
+	assertEquals(":b:", 0, getEvictionCount());
+
+	// using a makes b the least recently used layout
+	assertSame(":c:", a, get(10));
+	TextLayout d = put(40, 0);
+	assertEquals(":d:", 3, getCount());
+	assertEquals(":e:", 1, getEvictionCount());
+	assertTrue(":f:", b.isDisposed());
+	assertNull(":g:", get(20));
+	assertTrue(":h:", contains(10, a));
+	assertTrue(":i:", contains(30, c));
+	assertTrue(":j:", contains(40, d));
+
+	// a layout that replaces the cached one of its line disposes it
+	TextLayout e = createLayout();
+	invoke("put", 30, e, 0);
+	assertTrue(":k:", c.isDisposed());
+	assertTrue(":l:", contains(30, e));
+	assertFalse(":m:", contains(30, c));
+	assertFalse(":n:", contains(20, e));
+	assertEquals(":o:", 3, getCount());
+	assertEquals(":p:", 1, getEvictionCount());
+}
+
+@Test
+public void test_putILorg_eclipse_swt_graphics_TextLayoutI_maxMemory() throws ReflectiveOperationException {
+	setField(cache, "maxMemory", 3 * layoutMemory + 10 * charMemory);
+	setViewport(0, 0);
+	TextLayout a = put(1, 0);
+	TextLayout b = put(2, 0);
+	assertEquals(":a:", 2 * layoutMemory, getMemory());
+
+	// a longer line evicts the least recently used layout
+	TextLayout c = put(3, 20);
+	assertTrue(":b:", a.isDisposed());
+	assertEquals(":c:", 1, getEvictionCount());
+	assertEquals(":d:", 2 * layoutMemory + 20 * charMemory, getMemory());
+
+	// the memory of a cached line follows the length of its text
+	invoke("put", 3, c, 5);
+	assertEquals(":e:", 2 * layoutMemory + 5 * charMemory, getMemory());
+	assertFalse(":f:", c.isDisposed());
+
+	// a line larger than the cache is kept as long as it is used
+	TextLayout d = put(4, 100);
+	assertTrue(":g:", b.isDisposed());
+	assertTrue(":h:", c.isDisposed());
+	assertTrue(":i:", contains(4, d));
+	assertEquals(":j:", 1, getCount());
+	assertEquals(":k:", layoutMemory + 100 * charMemory, getMemory());
+	assertEquals(":l:", 3, getEvictionCount());
+}
+
+@Test
+public void test_putILorg_eclipse_swt_graphics_TextLayoutI_maxMemoryLongLine() throws ReflectiveOperationException {
+	setViewport(0, 0);
+	TextLayout a = put(1, 0);
+	TextLayout b = put(2, 0);
+
+	// the memory of a line too long to be counted in an int still evicts the others
+	int length = Integer.MAX_VALUE / 2;
+	TextLayout c = put(3, length);
+	assertTrue(":a:", a.isDisposed());
+	assertTrue(":b:", b.isDisposed());
+	assertTrue(":c:", contains(3, c));
+	assertEquals(":d:", layoutMemory + (long)length * charMemory, getMemory());
+
+	// and the following lines evict it
+	TextLayout d = put(4, 0);
+	assertTrue(":e:", c.isDisposed());
+	assertTrue(":f:", contains(4, d));
+	assertEquals(":g:", layoutMemory, getMemory());
+}
+
+@Test
+public void test_putILorg_eclipse_swt_graphics_TextLayoutI_viewport() throws ReflectiveOperationException {
+	setField(cache, "maxCount", 2);
+	setViewport(0, 5);
+	TextLayout[] visible = new TextLayout[4];
+	for (int i = 0; i < visible.length; i++) {
+		visible[i] = put(i, 0);
+	}
+
+	// the layouts of the lines near the viewport are kept over the cap
+	assertEquals(":a:", 4, getCount());
+	assertEquals(":b:", 0, getEvictionCount());
+	TextLayout far = put(10, 0);
+	assertEquals(":c:", 5, getCount());
+	assertTrue(":d:", contains(10, far));
+
+	// they are evicted once the viewport moves away
+	setViewport(10, 20);
+	TextLayout near = put(11, 0);
+	assertEquals(":e:", 2, getCount());
+	assertEquals(":f:", 4, getEvictionCount());
+	for (int i = 0; i < visible.length; i++) {
+		assertTrue(":g:" + i, visible[i].isDisposed());
+	}
+	assertTrue(":h:", contains(10, far));
+	assertTrue(":i:", contains(11, near));
+}
+
+@Test
+public void test_putILorg_eclipse_swt_graphics_TextLayoutI_offViewport() throws ReflectiveOperationException {
+	setField(cache, "maxCount", 3);
+	setViewport(0, 10);
+	TextLayout a = put(0, 0);
+	// a line away from the viewport, such as one only measured
+	TextLayout measured = put(50, 0);
+	TextLayout b = put(1, 0);
+
+	// it is evicted first even though it was added after the line 0
+	setViewport(100, 110);
+	TextLayout c = put(100, 0);
+	assertTrue(":a:", measured.isDisposed());
+	assertFalse(":b:", a.isDisposed());
+	assertTrue(":c:", contains(0, a));
+	assertTrue(":d:", contains(1, b));
+	assertTrue(":e:", contains(100, c));
+
+	// unless it is used again
+	TextLayout d = put(60, 0);
+	assertTrue(":f:", a.isDisposed());
+	assertSame(":g:", d, get(60));
+	put(70, 0);
+	assertTrue(":h:", b.isDisposed());
+	assertTrue(":i:", contains(60, d));
+	assertEquals(":j:", 3, getEvictionCount());
+}
+
+@Test
+public void test_replaceIII() throws ReflectiveOperationException {
+	Bullet bullet = createBullet();
+	setViewport(0, 100);
+	TextLayout[] layouts = new TextLayout[6];
+	for (int i = 1; i < layouts.length; i++) {
+		layouts[i] = put(i, i);
+	}
+	invoke("setBullet", 4, bullet, 7);
+
+	// the lines 2 and 3 are replaced by 5 lines
+	invoke("replace", 2, 4, 3);
+	assertEquals(":a:", 3, getCount());
+	assertTrue(":b:", layouts[2].isDisposed());
+	assertTrue(":c:", layouts[3].isDisposed());
+	assertEquals(":d:", 3 * layoutMemory + 10 * charMemory, getMemory());
+	assertTrue(":e:", contains(1, layouts[1]));
+	assertTrue(":f:", contains(7, layouts[4]));
+	assertTrue(":g:", contains(8, layouts[5]));
+	assertFalse(":h:", contains(4, layouts[4]));
+
+	// the bullet moves with its line
+	int index = (Integer)invoke("indexOf", 7);
+	assertSame(":i:", bullet, ((Bullet[])getField(cache, "bullets"))[index]);
+	assertEquals(":j:", 7, ((int[])getField(cache, "bulletIndices"))[index]);
+
+	// the lines are removed
+	invoke("replace", 1, 8, -7);
+	assertEquals(":k:", 1, getCount());
+	assertTrue(":l:", layouts[1].isDisposed());
+	assertTrue(":m:", layouts[4].isDisposed());
+	assertTrue(":n:", contains(1, layouts[5]));
+	assertEquals(":o:", 0, getEvictionCount());
+}
+
+@Test
+public void test_getTextLayout_counts() throws ReflectiveOperationException {
+	StyledText text = new StyledText(shell, SWT.NULL);
+	text.setText("a\nb\nc");
+	Object renderer = getField(text, "renderer");
+	Method calculate = renderer.getClass().getDeclaredMethod("calculate", int.class, int.class);
+	calculate.setAccessible(true);
+	calculate.invoke(renderer, 0, text.getLineCount());
+	cache = getField(renderer, "layouts");
+	int hits = (Integer)invoke("getHitCount");
+	int misses = (Integer)invoke("getMissCount");
+	assertEquals(":a:", 3, getCount());
+
+	// measured lines are answered from the cache
+	text.getTextBounds(0, 0);
+	text.getTextBounds(2, 4);
+	assertEquals(":b:", hits + 3, invoke("getHitCount"));
+	assertEquals(":c:", misses, invoke("getMissCount"));
+	assertEquals(":d:", 3, getCount());
+
+	// changed lines are created again
+	text.replaceTextRange(2, 1, "d");
+	text.getTextBounds(2, 2);
+	assertTrue(":e:", (Integer)invoke("getMissCount") > misses);
+	assertEquals(":f:", 3, getCount());
+}
+
+@Test
+public void test_putILorg_eclipse_swt_graphics_TextLayoutI_random() throws ReflectiveOperationException {
+	Random random = new Random(25);
+	Bullet[] bullets = {null, createBullet(), createBullet()};
+	for (int round = 0; round < 20; round++) {
+		invoke("clear");
+		cache = createCache();
+		setField(cache, "maxCount", 2 + random.nextInt(40));
+		setField(cache, "maxMemory", 2000 + random.nextInt(40000));
+		int maxCount = (Integer)getField(cache, "maxCount");
+		int maxMemory = (Integer)getField(cache, "maxMemory");
+		List<Entry> model = new ArrayList<>();
+		List<TextLayout> dropped = new ArrayList<>();
+		long clock = 0;
+		int evictions = 0;
+		for (int step = 0; step < 200; step++) {
+			int start = random.nextInt(200) - 10, end = start + random.nextInt(30);
+			setViewport(start, end);
+			int kind = random.nextInt(10), line = random.nextInt(220);
+			Entry entry = null;
+			for (Entry e : model) {
+				if (e.line == line) entry = e;
+			}
+			if (kind < 4) {
+				if (entry != null) entry.stamp = ++clock;
+				assertSame(":a:", entry == null ? null : entry.layout, get(line));
+			} else if (kind < 8) {
+				TextLayout layout = entry != null && random.nextInt(5) == 0 ? entry.layout : createLayout();
+				int length = random.nextInt(100);
+				invoke("put", line, layout, length);
+				if (entry == null) {
+					entry = new Entry();
+					entry.line = line;
+					entry.stamp = start <= line && line < end ? ++clock : 0;
+					model.add(entry);
+				} else if (entry.layout != layout) {
+					dropped.add(entry.layout);
+				}
+				entry.layout = layout;
+				entry.memory = layoutMemory + (long)length * charMemory;
+				while (true) {
+					long memory = 0;
+					for (Entry e : model) memory += e.memory;
+					if (model.size() <= maxCount && memory <= maxMemory) break;
+					Entry oldest = null;
+					for (Entry e : model) {
+						if (e.line == line || (start <= e.line && e.line < end)) continue;
+						if (oldest == null || e.stamp < oldest.stamp || (e.stamp == oldest.stamp && e.line < oldest.line)) oldest = e;
+					}
+					if (oldest == null) break;
+					model.remove(oldest);
+					dropped.add(oldest.layout);
+					evictions++;
+				}
+				int bulletIndex = random.nextInt(bullets.length);
+				invoke("setBullet", line, bullets[bulletIndex], bulletIndex);
+				for (Entry e : model) {
+					if (e.line == line) {
+						e.bullet = bullets[bulletIndex];
+						e.bulletIndex = bulletIndex;
+					}
+				}
+			} else {
+				int count = random.nextInt(3), delta = random.nextInt(4) - count;
+				invoke("replace", line, line + count + 1, delta);
+				for (Iterator<Entry> it = model.iterator(); it.hasNext();) {
+					Entry e = it.next();
+					if (e.line >= line && e.line < line + count + 1) {
+						it.remove();
+						dropped.add(e.layout);
+					} else if (e.line >= line + count + 1) {
+						e.line += delta;
+					}
+				}
+			}
+			model.sort((e1, e2) -> e1.line - e2.line);
+			assertCache(model, evictions);
+			for (TextLayout layout : dropped) {
+				assertTrue(":b:", layout.isDisposed());
+			}
+			dropped.clear();
+		}
+	}
+}
+
+Bullet createBullet() {
+	StyleRange style = new StyleRange();
+	style.metrics = new GlyphMetrics(0, 0, 10);
+	return new Bullet(style);
+}
+
+void assertCache(List<Entry> model, int evictions) throws ReflectiveOperationException {
+	int[] lines = (int[])getField(cache, "lines");
+	TextLayout[] layouts = (TextLayout[])getField(cache, "layouts");
+	long[] memory = (long[])getField(cache, "memory");
+	Bullet[] bullets = (Bullet[])getField(cache, "bullets");
+	int[] bulletIndices = (int[])getField(cache, "bulletIndices");
+	assertEquals(":c:", model.size(), getCount());
+	long totalMemory = 0;
+	for (int i = 0; i < model.size(); i++) {
+		Entry entry = model.get(i);
+		assertEquals(":d:", entry.line, lines[i]);
+		assertSame(":e:", entry.layout, layouts[i]);
+		assertEquals(":f:", entry.memory, memory[i]);
+		assertSame(":g:", entry.bullet, bullets[i]);
+		assertEquals(":h:", entry.bulletIndex, bulletIndices[i]);
+		assertFalse(":i:", entry.layout.isDisposed());
+		totalMemory += entry.memory;
+	}
+	for (int i = model.size(); i < layouts.length; i++) {
+		assertNull(":j:", layouts[i]);
+		assertNull(":k:", bullets[i]);
+	}
+	assertEquals(":l:", totalMemory, getMemory());
+	assertEquals(":m:", evictions, getEvictionCount());
+}
+}
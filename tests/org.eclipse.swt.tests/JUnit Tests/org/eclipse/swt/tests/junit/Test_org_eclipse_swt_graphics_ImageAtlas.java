@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.junit;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.SWTException;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageAtlas;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.ImageDataProvider;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.widgets.Display;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Automated Test Suite for class org.eclipse.swt.graphics.ImageAtlas
+ *
+ * @see org.eclipse.swt.graphics.ImageAtlas
+ */
+public class Test_org_eclipse_swt_graphics_ImageAtlas {
+
+File file;
+
+@Before
+public void setUp() throws IOException {
+	file = File.createTempFile("swt", ".atlas");
+}
+
+@After
+public void tearDown() {
+	file.delete();
+}
+
+@Test
+public void test_ConstructorLjava_lang_String() throws IOException {
+	try {
+		new ImageAtlas(null);
+		fail("No exception thrown for filename == null");
+	} catch (IllegalArgumentException e) {
+	}
+
+	try (OutputStream stream = new FileOutputStream(file)) {
+		stream.write("not an atlas".getBytes());
+	}
+	try {
+		new ImageAtlas(file.getPath());
+		fail("No exception thrown for a file that is not an atlas");
+	} catch (SWTException e) {
+		assertEquals(":a:", SWT.ERROR_UNSUPPORTED_FORMAT, e.code);
+	}
+
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	ImageAtlas.save(out, new String[] {"a"}, new int[] {100}, new ImageData[] {createImage(4, 3, false)});
+	byte[] bytes = out.toByteArray();
+	try (OutputStream stream = new FileOutputStream(file)) {
+		stream.write(bytes, 0, bytes.length - 1);
+	}
+	try {
+		new ImageAtlas(file.getPath());
+		fail("No exception thrown for a truncated atlas");
+	} catch (SWTException e) {
+		assertEquals(":b:", SWT.ERROR_INVALID_IMAGE, e.code);
+	}
+}
+
+@Test
+public void test_getImageDataLjava_lang_StringI() throws IOException {
+	ImageData opaque = createImage(5, 4, false);
+	ImageData opaque2x = createImage(10, 8, false);
+	ImageData alpha = createImage(7, 3, true);
+	ImageData indexed = new ImageData(3, 2, 4, new PaletteData(new RGB[] {new RGB(10, 20, 30), new RGB(200, 100, 0)}));
+	indexed.setPixel(1, 0, 1);
+	indexed.setPixel(2, 1, 1);
+	indexed.transparentPixel = 0;
+	save(new String[] {"opaque", "opaque", "alpha", "indexed"}, new int[] {100, 200, 100, 100}, new ImageData[] {opaque, opaque2x, alpha, indexed});
+
+	ImageAtlas atlas = new ImageAtlas(file.getPath());
+	assertArrayEquals(":a:", new String[] {"opaque", "alpha", "indexed"}, atlas.getNames());
+	assertArrayEquals(":b:", new int[] {100, 200}, atlas.getZooms("opaque"));
+	assertArrayEquals(":c:", new int[0], atlas.getZooms("missing"));
+	assertNull(":d:", atlas.getImageData("opaque", 150));
+	assertNull(":e:", atlas.getImageData("missing", 100));
+
+	assertSamePixels(":f:", opaque, atlas.getImageData("opaque", 100));
+	assertSamePixels(":g:", opaque2x, atlas.getImageData("opaque", 200));
+	assertSamePixels(":h:", alpha, atlas.getImageData("alpha", 100));
+	ImageData loaded = atlas.getImageData("indexed", 100);
+	assertEquals(":i:", 0, loaded.getAlpha(0, 0));
+	assertEquals(":j:", 255, loaded.getAlpha(1, 0));
+	assertEquals(":k:", new RGB(200, 100, 0), loaded.palette.getRGB(loaded.getPixel(1, 0)));
+}
+
+@Test
+public void test_getImageDataProviderLjava_lang_String() throws IOException {
+	save(new String[] {"icon", "icon"}, new int[] {100, 200}, new ImageData[] {createImage(2, 2, false), createImage(4, 4, false)});
+	ImageAtlas atlas = new ImageAtlas(file.getPath());
+	ImageDataProvider provider = atlas.getImageDataProvider("icon");
+	assertEquals(":a:", 2, provider.getImageData(100).width);
+	assertEquals(":b:", 4, provider.getImageData(200).width);
+	assertNull(":c:", provider.getImageData(150));
+	try {
+		atlas.getImageDataProvider("missing");
+		fail("No exception thrown for a missing name");
+	} catch (IllegalArgumentException e) {
+	}
+}
+
+@Test
+public void test_ImageLorg_eclipse_swt_graphics_DeviceLorg_eclipse_swt_graphics_ImageDataProvider() throws IOException {
+	// partial alpha, and enough rows for the pixels to be moved to the surface in several blocks
+	ImageData data = new ImageData(70, 130, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+	for (int y = 0; y < data.height; y++) {
+		for (int x = 0; x < data.width; x++) {
+			data.setPixel(x, y, (x * 3) << 16 | (y * 2) << 8 | ((x + y) & 0xFF));
+			data.setAlpha(x, y, (x * 7 + y) & 0xFF);
+		}
+	}
+	save(new String[] {"icon"}, new int[] {100}, new ImageData[] {data});
+	ImageAtlas atlas = new ImageAtlas(file.getPath());
+	ImageData expected = atlas.getImageData("icon", 100);
+	Display display = Display.getDefault();
+	Image image = new Image(display, atlas.getImageDataProvider("icon"));
+	try {
+		assertSamePixels(":a:", expected, image.getImageData());
+		Image copy = new Image(display, image, SWT.IMAGE_COPY);
+		try {
+			assertSamePixels(":b:", expected, copy.getImageData());
+		} finally {
+			copy.dispose();
+		}
+	} finally {
+		image.dispose();
+	}
+}
+
+@Test
+public void test_saveLjava_io_OutputStream$Ljava_lang_String$I$Lorg_eclipse_swt_graphics_ImageData() {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	ImageData image = createImage(2, 2, false);
+	try {
+		ImageAtlas.save(out, new String[] {"a"}, null, new ImageData[] {image});
+		fail("No exception thrown for zooms == null");
+	} catch (IllegalArgumentException e) {
+	}
+	try {
+		ImageAtlas.save(out, new String[] {"a", "a"}, new int[] {100, 100}, new ImageData[] {image, image});
+		fail("No exception thrown for a duplicate image");
+	} catch (IllegalArgumentException e) {
+	}
+	try {
+		ImageAtlas.save(out, new String[] {"a"}, new int[] {200}, new ImageData[] {image});
+		fail("No exception thrown for a name without an image at 100%");
+	} catch (IllegalArgumentException e) {
+	}
+}
+
+void save(String[] names, int[] zooms, ImageData[] images) throws IOException {
+	try (OutputStream stream = new FileOutputStream(file)) {
+		ImageAtlas.save(stream, names, zooms, images);
+	}
+}
+
+ImageData createImage(int width, int height, boolean hasAlpha) {
+	ImageData image = new ImageData(width, height, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+	for (int y = 0; y < height; y++) {
+		for (int x = 0; x < width; x++) {
+			image.setPixel(x, y, (x * 40) << 16 | (y * 60) << 8 | (x + y) * 10);
+			if (hasAlpha) image.setAlpha(x, y, x == 0 ? 0 : 255);
+		}
+	}
+	return image;
+}
+
+void assertSamePixels(String message, ImageData expected, ImageData actual) {
+	assertEquals(message, expected.width, actual.width);
+	assertEquals(message, expected.height, actual.height);
+	for (int y = 0; y < expected.height; y++) {
+		for (int x = 0; x < expected.width; x++) {
+			int alpha = expected.getAlpha(x, y);
+			assertEquals(message, alpha, actual.getAlpha(x, y));
+			if (alpha == 0) continue;
+			assertEquals(message, expected.palette.getRGB(expected.getPixel(x, y)), actual.palette.getRGB(actual.getPixel(x, y)));
+		}
+	}
+}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -22,6 +22,12 @@ import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Random;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.SWTException;
@@ -185,6 +191,130 @@ public void test_ConstructorLjava_lang_String() {
 	}
 }
 
+@Test
+public void test_applyMaskLorg_eclipse_swt_graphics_ImageDataII() {
+	PaletteData palette = new PaletteData(0xFF0000, 0xFF00, 0xFF);
+	ImageData image = new ImageData(4, 1, 24, palette);
+	image.fillRectangle(0, 0, 4, 1, new RGB(0x33, 0x66, 0x99), 255, SWT.COMPOSITE_SRC);
+
+	// black and white masks give the alpha of the pixels they cover
+	ImageData mask = new ImageData(2, 1, 1, new PaletteData(new RGB[] {new RGB(0, 0, 0), new RGB(255, 255, 255)}));
+	mask.setPixel(1, 0, 1);
+	image.applyMask(mask, 1, 0);
+	assertNotNull(":a:", image.alphaData);
+	assertEquals(":b:", 255, image.getAlpha(0, 0));
+	assertEquals(":c:", 0, image.getAlpha(1, 0));
+	assertEquals(":d:", 255, image.getAlpha(2, 0));
+	assertEquals(":e:", 255, image.getAlpha(3, 0));
+	assertEquals(":f:", 0x336699, image.getPixel(2, 0));
+
+	// masks with transparency multiply the alpha by theirs
+	ImageData alphaMask = new ImageData(1, 1, 24, palette);
+	alphaMask.alpha = 128;
+	image.applyMask(alphaMask, 3, 0);
+	assertEquals(":g:", 128, image.getAlpha(3, 0));
+
+	try {
+		image.applyMask(null, 0, 0);
+		fail("No exception thrown for mask == null");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for mask == null", SWT.ERROR_NULL_ARGUMENT, e);
+	}
+}
+
+@Test
+public void test_blit_kernels() throws ReflectiveOperationException {
+	// the byte orders and blit operation of ImageData
+	final int LSB_FIRST = 0, MSB_FIRST = 1, BLIT_SRC = 1, ALPHA_OPAQUE = 255;
+	Method directBlit = ImageData.class.getDeclaredMethod("blit", blitParameterTypes(int.class));
+	Method indexBlit = ImageData.class.getDeclaredMethod("blit", blitParameterTypes(byte[].class));
+	directBlit.setAccessible(true);
+	indexBlit.setAccessible(true);
+	Field kernels = ImageData.class.getDeclaredField("blitKernels");
+	kernels.setAccessible(true);
+	boolean enabled = kernels.getBoolean(null);
+
+	// depth, byte order and red, green and blue masks of the direct sources
+	int[][] directSources = {
+		{24, MSB_FIRST, 0xFF0000, 0xFF00, 0xFF},
+		{24, MSB_FIRST, 0xFF, 0xFF00, 0xFF0000},
+		{32, MSB_FIRST, 0xFF00, 0xFF0000, 0xFF000000},
+		{32, MSB_FIRST, 0xFF0000, 0xFF00, 0xFF},
+		{32, LSB_FIRST, 0xFF0000, 0xFF00, 0xFF},
+		{32, LSB_FIRST, 0xFF000000, 0xFF0000, 0xFF00},
+		{16, LSB_FIRST, 0xF800, 0x7E0, 0x1F},
+		{16, MSB_FIRST, 0x7C00, 0x3E0, 0x1F},
+	};
+	int[] indexDepths = {8, 4, 1};
+	// the Cairo ARGB32 layout in both byte orders, and the 24-bit RGB of a pixbuf
+	int[][] destinations = {{32, MSB_FIRST}, {32, LSB_FIRST}, {24, MSB_FIRST}};
+	Random random = new Random(8);
+	try {
+		for (int round = 0; round < 40; round++) {
+			int width = 1 + 2 * random.nextInt(20), height = 1 + random.nextInt(9);
+			// the straight copies of the fast blit need the origin
+			boolean origin = round % 2 == 0;
+			int srcX = origin ? 0 : random.nextInt(5), srcY = origin ? 0 : random.nextInt(3);
+			int destX = origin ? 0 : random.nextInt(5), destY = origin ? 0 : random.nextInt(3);
+			for (int[] dest : destinations) {
+				int destStride = (destX + width) * dest[0] / 8 + (origin ? 0 : random.nextInt(4));
+				byte[] background = new byte[destStride * (destY + height)];
+				random.nextBytes(background);
+				for (int[] src : directSources) {
+					int srcStride = (srcX + width) * src[0] / 8 + random.nextInt(4);
+					byte[] srcData = new byte[srcStride * (srcY + height)];
+					random.nextBytes(srcData);
+					byte[][] results = new byte[2][];
+					for (int i = 0; i < results.length; i++) {
+						kernels.setBoolean(null, i == 0);
+						results[i] = background.clone();
+						directBlit.invoke(null, BLIT_SRC, srcData, src[0], srcStride, src[1], srcX, srcY, width, height, src[2], src[3], src[4],
+							ALPHA_OPAQUE, null, 0, 0, 0,
+							results[i], dest[0], destStride, dest[1], destX, destY, width, height, 0xFF0000, 0xFF00, 0xFF,
+							false, false);
+					}
+					assertArrayEquals(":a:" + round + " " + Arrays.toString(src) + " to " + Arrays.toString(dest), results[1], results[0]);
+				}
+				for (int depth : indexDepths) {
+					int srcOrder = random.nextBoolean() ? MSB_FIRST : LSB_FIRST;
+					int srcStride = ((srcX + width) * depth + 7) / 8 + random.nextInt(4);
+					byte[] srcData = new byte[srcStride * (srcY + height)];
+					random.nextBytes(srcData);
+					byte[] reds = new byte[1 << depth], greens = new byte[1 << depth], blues = new byte[1 << depth];
+					random.nextBytes(reds);
+					random.nextBytes(greens);
+					random.nextBytes(blues);
+					byte[][] results = new byte[2][];
+					for (int i = 0; i < results.length; i++) {
+						kernels.setBoolean(null, i == 0);
+						results[i] = background.clone();
+						indexBlit.invoke(null, BLIT_SRC, srcData, depth, srcStride, srcOrder, srcX, srcY, width, height, reds, greens, blues,
+							ALPHA_OPAQUE, null, 0, 0, 0,
+							results[i], dest[0], destStride, dest[1], destX, destY, width, height, 0xFF0000, 0xFF00, 0xFF,
+							false, false);
+					}
+					assertArrayEquals(":b:" + round + " depth " + depth + " to " + Arrays.toString(dest), results[1], results[0]);
+				}
+			}
+		}
+	} finally {
+		kernels.setBoolean(null, enabled);
+	}
+}
+
+/* The parameters of the blits into a direct palette, from sources whose colors are given by the channel type */
+static Class<?>[] blitParameterTypes(Class<?> channel) {
+	return new Class<?>[] {int.class,
+		byte[].class, int.class, int.class, int.class,
+		int.class, int.class, int.class, int.class,
+		channel, channel, channel,
+		int.class, byte[].class, int.class, int.class, int.class,
+		byte[].class, int.class, int.class, int.class,
+		int.class, int.class, int.class, int.class,
+		int.class, int.class, int.class,
+		boolean.class, boolean.class};
+}
+
 @Test
 public void test_clone() {
 	try (InputStream stream = SwtTestUtil.class.getResourceAsStream(SwtTestUtil.imageFilenames[0] + "." + SwtTestUtil.imageFormats[0])) {
@@ -212,6 +342,209 @@ public void test_clone() {
 	}
 }
 
+@Test
+public void test_compositeLorg_eclipse_swt_graphics_ImageDataIIIIIIII() {
+	PaletteData palette = new PaletteData(0xFF0000, 0xFF00, 0xFF);
+	ImageData source = new ImageData(2, 1, 24, palette);
+	source.setPixels(0, 0, 2, new int[] {0xFF0000, 0xFF0000}, 0);
+	source.alphaData = new byte[] {(byte)255, (byte)128};
+
+	// drawing over an opaque image keeps it opaque
+	ImageData dest = new ImageData(2, 1, 24, palette);
+	dest.setPixels(0, 0, 2, new int[] {0x0000FF, 0x0000FF}, 0);
+	dest.composite(source, 0, 0, 2, 1, 0, 0, SWT.COMPOSITE_SRC_OVER, 255);
+	assertNull(":a:", dest.alphaData);
+	assertEquals(":b:", 0xFF0000, dest.getPixel(0, 0));
+	assertEquals(":c:", 0x80007F, dest.getPixel(1, 0));
+
+	// the alpha of the source is multiplied by the given alpha
+	dest.setPixels(0, 0, 2, new int[] {0x0000FF, 0x0000FF}, 0);
+	dest.composite(source, 0, 0, 2, 1, 0, 0, SWT.COMPOSITE_SRC_OVER, 0);
+	assertEquals(":d:", 0x0000FF, dest.getPixel(0, 0));
+	assertEquals(":e:", 0x0000FF, dest.getPixel(1, 0));
+
+	// results that are not opaque give the destination alpha data
+	dest.composite(source, 0, 0, 2, 1, 0, 0, SWT.COMPOSITE_SRC, 255);
+	assertEquals(":f:", SWT.TRANSPARENCY_ALPHA, dest.getTransparencyType());
+	assertEquals(":g:", 255, dest.getAlpha(0, 0));
+	assertEquals(":h:", 128, dest.getAlpha(1, 0));
+	assertEquals(":i:", 0xFF0000, dest.getPixel(1, 0));
+	dest.composite(source, 1, 0, 1, 1, 0, 0, SWT.COMPOSITE_CLEAR, 255);
+	assertEquals(":j:", 0, dest.getAlpha(0, 0));
+	assertEquals(":k:", 128, dest.getAlpha(1, 0));
+
+	// the area is clipped to the destination
+	dest = new ImageData(2, 1, 24, palette);
+	dest.composite(source, 0, 0, 2, 1, -1, 0, SWT.COMPOSITE_SRC_OVER, 255);
+	assertEquals(":l:", 0x800000, dest.getPixel(0, 0));
+	assertEquals(":m:", 0, dest.getPixel(1, 0));
+
+	// the transparent pixel of the destination becomes alpha data
+	dest = new ImageData(2, 1, 24, palette);
+	dest.transparentPixel = 0;
+	dest.composite(source, 0, 0, 1, 1, 1, 0, SWT.COMPOSITE_DST_OVER, 255);
+	assertEquals(":n:", -1, dest.transparentPixel);
+	assertEquals(":o:", 0, dest.getAlpha(0, 0));
+	assertEquals(":p:", 255, dest.getAlpha(1, 0));
+	assertEquals(":q:", 0xFF0000, dest.getPixel(1, 0));
+
+	try {
+		dest.composite(null, 0, 0, 1, 1, 0, 0, SWT.COMPOSITE_SRC_OVER, 255);
+		fail("No exception thrown for source == null");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for source == null", SWT.ERROR_NULL_ARGUMENT, e);
+	}
+	try {
+		dest.composite(source, 1, 0, 2, 1, 0, 0, SWT.COMPOSITE_SRC_OVER, 255);
+		fail("No exception thrown for area outside of the source");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for area outside of the source", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+	try {
+		dest.composite(source, 0, 0, 1, 1, 0, 0, SWT.COMPOSITE_XOR + 1, 255);
+		fail("No exception thrown for invalid rule");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for invalid rule", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+	try {
+		dest.composite(source, 0, 0, 1, 1, 0, 0, SWT.COMPOSITE_SRC_OVER, 256);
+		fail("No exception thrown for alpha > 255");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for alpha > 255", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+}
+
+@Test
+public void test_copyAreaLorg_eclipse_swt_graphics_ImageDataIIIIII() {
+	// images with the same palette keep their indices
+	RGB red = new RGB(255, 0, 0);
+	PaletteData indexed = new PaletteData(new RGB[] {red, red, new RGB(0, 0, 255)});
+	ImageData source = new ImageData(3, 1, 8, indexed);
+	source.setPixels(0, 0, 3, new byte[] {1, 2, 1}, 0);
+	ImageData dest = new ImageData(3, 1, 8, indexed);
+	dest.copyArea(source, 0, 0, 3, 1, 0, 0);
+	byte[] indices = new byte[3];
+	dest.getPixels(0, 0, 3, indices, 0);
+	assertArrayEquals(":a:", new byte[] {1, 2, 1}, indices);
+
+	// other images are converted
+	ImageData direct = new ImageData(3, 1, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+	direct.copyArea(source, 1, 0, 2, 1, 0, 0);
+	assertEquals(":b:", 0x0000FF, direct.getPixel(0, 0));
+	assertEquals(":c:", 0xFF0000, direct.getPixel(1, 0));
+	assertEquals(":d:", 0, direct.getPixel(2, 0));
+
+	// overlapping areas of the same image
+	int[] pixels = {0x010101, 0x020202, 0x030303};
+	direct.setPixels(0, 0, 3, pixels, 0);
+	direct.copyArea(direct, 0, 0, 2, 1, 1, 0);
+	direct.getPixels(0, 0, 3, pixels, 0);
+	assertArrayEquals(":e:", new int[] {0x010101, 0x010101, 0x020202}, pixels);
+}
+
+@Test
+public void test_fillRectangleIIIILorg_eclipse_swt_graphics_RGBII() {
+	PaletteData palette = new PaletteData(0xFF0000, 0xFF00, 0xFF);
+	ImageData image = new ImageData(3, 2, 24, palette);
+	image.fillRectangle(-1, 1, 3, 5, new RGB(0, 0, 255), 255, SWT.COMPOSITE_SRC);
+	assertEquals(":a:", 0, image.getPixel(0, 0));
+	assertEquals(":b:", 0x0000FF, image.getPixel(0, 1));
+	assertEquals(":c:", 0x0000FF, image.getPixel(1, 1));
+	assertEquals(":d:", 0, image.getPixel(2, 1));
+	assertNull(":e:", image.alphaData);
+
+	image.fillRectangle(0, 1, 1, 1, new RGB(255, 0, 0), 128, SWT.COMPOSITE_SRC_OVER);
+	assertEquals(":f:", 0x80007F, image.getPixel(0, 1));
+	assertNull(":g:", image.alphaData);
+
+	// indirect palette images take the closest color
+	ImageData indexed = new ImageData(2, 1, 1, new PaletteData(new RGB[] {new RGB(0, 0, 0), new RGB(255, 255, 255)}));
+	indexed.fillRectangle(1, 0, 1, 1, new RGB(200, 210, 220), 255, SWT.COMPOSITE_SRC);
+	assertEquals(":h:", 0, indexed.getPixel(0, 0));
+	assertEquals(":i:", 1, indexed.getPixel(1, 0));
+
+	try {
+		image.fillRectangle(0, 0, 1, 1, null, 255, SWT.COMPOSITE_SRC);
+		fail("No exception thrown for rgb == null");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for rgb == null", SWT.ERROR_NULL_ARGUMENT, e);
+	}
+	try {
+		image.fillRectangle(0, 0, 1, 1, new RGB(0, 0, 0), -1, SWT.COMPOSITE_SRC);
+		fail("No exception thrown for alpha < 0");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for alpha < 0", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+}
+
+@Test
+public void test_getARGBIIII$III() {
+	ImageData image = new ImageData(3, 2, 24, new PaletteData(0xFF, 0xFF00, 0xFF0000));
+	image.setPixels(0, 0, 3, new int[] {0x0000FF, 0x00FF00, 0xFF0000}, 0);
+	image.setPixels(0, 1, 3, new int[] {0x332211, 0x665544, 0x998877}, 0);
+	int[] argb = new int[7];
+	image.getARGB(1, 0, 2, 2, argb, 1, 3);
+	assertArrayEquals(":a:", new int[] {0, 0xFF00FF00, 0xFF0000FF, 0, 0xFF445566, 0xFF778899, 0}, argb);
+
+	// the alpha comes from the transparency of the image
+	image.alphaData = new byte[] {0, 1, 2, 3, 4, 5};
+	image.getARGB(0, 1, 3, 1, argb, 0, 3);
+	assertEquals(":b:", 0x03112233, argb[0]);
+	assertEquals(":c:", 0x05778899, argb[2]);
+	image.alpha = 0x80;
+	image.getARGB(0, 1, 1, 1, argb, 0, 1);
+	assertEquals(":d:", 0x80112233, argb[0]);
+
+	// indirect palette images
+	ImageData indexed = new ImageData(2, 1, 4, new PaletteData(new RGB[] {new RGB(1, 2, 3), new RGB(4, 5, 6)}));
+	indexed.setPixel(1, 0, 1);
+	indexed.transparentPixel = 0;
+	indexed.getARGB(0, 0, 2, 1, argb, 0, 2);
+	assertEquals(":e:", 0x00010203, argb[0]);
+	assertEquals(":f:", 0xFF040506, argb[1]);
+
+	try {
+		image.getARGB(0, 0, 1, 1, null, 0, 1);
+		fail("No exception thrown for argb == null");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for argb == null", SWT.ERROR_NULL_ARGUMENT, e);
+	}
+	try {
+		image.getARGB(2, 0, 2, 1, argb, 0, 2);
+		fail("No exception thrown for rectangle out of bounds");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for rectangle out of bounds", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+	try {
+		image.getARGB(0, 0, 3, 2, argb, 2, 3);
+		fail("No exception thrown for array too small");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for array too small", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+}
+
+@Test
+public void test_getARGBIIIILjava_nio_IntBuffer() {
+	ImageData image = new ImageData(2, 2, 32, new PaletteData(0xFF00, 0xFF0000, 0xFF000000));
+	image.setPixels(0, 0, 2, new int[] {0x332211FF, 0x665544FF}, 0);
+	image.setPixels(0, 1, 2, new int[] {0x998877FF, 0xCCBBAAFF}, 0);
+	IntBuffer[] buffers = {IntBuffer.allocate(5), ByteBuffer.allocateDirect(20).asIntBuffer()};
+	for (IntBuffer buffer : buffers) {
+		buffer.position(1);
+		image.getARGB(0, 0, 2, 2, buffer);
+		assertEquals(":a:", 5, buffer.position());
+		assertEquals(":b:", 0xFF112233, buffer.get(1));
+		assertEquals(":c:", 0xFFAABBCC, buffer.get(4));
+		buffer.position(2);
+		try {
+			image.getARGB(0, 0, 2, 2, buffer);
+			fail("No exception thrown for buffer too small");
+		} catch (IllegalArgumentException e) {
+			assertSWTProblem("Incorrect exception thrown for buffer too small", SWT.ERROR_INVALID_ARGUMENT, e);
+		}
+	}
+}
+
 @Test
 public void test_getAlphaII() {
 	int value;
@@ -323,6 +656,100 @@ public void test_getAlphasIII$BI() {
 	}
 }
 
+@Test
+public void test_getPremultipliedARGB$BIZ() throws ReflectiveOperationException {
+	Method method = ImageData.class.getDeclaredMethod("getPremultipliedARGB", byte[].class, int.class, boolean.class);
+	method.setAccessible(true);
+	Random random = new Random(16);
+	RGB[] rgbs = new RGB[16];
+	for (int i = 0; i < rgbs.length; i++) {
+		rgbs[i] = new RGB(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+	}
+	int width = 13, height = 7;
+	ImageData opaque = new ImageData(width, height, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+	ImageData alphaData = new ImageData(width, height, 32, new PaletteData(0xFF00, 0xFF0000, 0xFF000000));
+	alphaData.alphaData = new byte[width * height];
+	random.nextBytes(alphaData.alphaData);
+	ImageData alpha = new ImageData(width, height, 16, new PaletteData(0x7C00, 0x3E0, 0x1F));
+	alpha.alpha = 77;
+	ImageData transparentIndex = new ImageData(width, height, 8, new PaletteData(rgbs));
+	transparentIndex.transparentPixel = 5;
+	// the transparent pixel takes precedence over the alpha
+	transparentIndex.alpha = 40;
+	ImageData transparentRGB = new ImageData(width, height, 24, new PaletteData(0xFF, 0xFF00, 0xFF0000));
+	transparentRGB.transparentPixel = 0x123456;
+	transparentRGB.alphaData = new byte[width * height];
+	random.nextBytes(transparentRGB.alphaData);
+	// an icon with a 1-bit mask whose rows are padded to 4 bytes
+	ImageData mask = new ImageData(width, height, 4, new PaletteData(rgbs));
+	mask.maskPad = 4;
+	mask.maskData = new byte[4 * height];
+	random.nextBytes(mask.maskData);
+	for (ImageData image : new ImageData[] {opaque, alphaData, alpha, transparentIndex, transparentRGB, mask}) {
+		for (int y = 0; y < image.height; y++) {
+			for (int x = 0; x < image.width; x++) {
+				int pixel = image.palette.isDirect ? random.nextInt() & (image.palette.redMask | image.palette.greenMask | image.palette.blueMask) : random.nextInt(16);
+				if (random.nextInt(4) == 0 && image.transparentPixel != -1) pixel = image.transparentPixel;
+				image.setPixel(x, y, pixel);
+			}
+		}
+	}
+	// every component with every alpha
+	ImageData gradient = new ImageData(256, 256, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+	gradient.alphaData = new byte[256 * 256];
+	for (int y = 0; y < 256; y++) {
+		for (int x = 0; x < 256; x++) {
+			gradient.setPixel(x, y, x << 16 | (255 - x) << 8 | y);
+			gradient.alphaData[y * 256 + x] = (byte)y;
+		}
+	}
+	ImageData[] images = {opaque, alphaData, alpha, transparentIndex, transparentRGB, mask, gradient};
+	for (ImageData image : images) {
+		for (boolean bigEndian : new boolean[] {true, false}) {
+			int stride = image.width * 4 + 8;
+			byte[] dest = new byte[stride * image.height];
+			method.invoke(image, dest, stride, bigEndian);
+			// the ARGB pixels first, then premultiplied, as the two passes over the surface did
+			ImageData transparencyMask = image.maskData != null || image.transparentPixel != -1 ? image.getTransparencyMask() : null;
+			for (int y = 0; y < image.height; y++) {
+				for (int x = 0; x < image.width; x++) {
+					int pixel = image.getPixel(x, y);
+					RGB rgb = image.palette.isDirect ? expand(image.palette, pixel) : image.palette.getRGB(pixel);
+					int a = 0xFF;
+					if (transparencyMask != null) {
+						a = transparencyMask.getPixel(x, y) == 0 ? 0 : 0xFF;
+					} else if (image.alpha != -1) {
+						a = image.alpha;
+					} else if (image.alphaData != null) {
+						a = image.alphaData[y * image.width + x] & 0xFF;
+					}
+					int[] expected = {a, premultiply(rgb.red, a), premultiply(rgb.green, a), premultiply(rgb.blue, a)};
+					int offset = y * stride + x * 4;
+					for (int i = 0; i < 4; i++) {
+						assertEquals(":a:" + image.depth + " " + bigEndian + " " + x + "," + y, expected[i], dest[offset + (bigEndian ? i : 3 - i)] & 0xFF);
+					}
+				}
+			}
+		}
+	}
+}
+
+/* The RGB of a direct pixel with the high bits of narrow channels repeated in the low bits, as the blit does */
+static RGB expand(PaletteData palette, int pixel) {
+	return new RGB(expand(pixel, palette.redMask), expand(pixel, palette.greenMask), expand(pixel, palette.blueMask));
+}
+
+static int expand(int pixel, int mask) {
+	int bits = Integer.bitCount(mask);
+	int value = (pixel & mask) >>> Integer.numberOfTrailingZeros(mask) << (8 - bits);
+	return value | value >> bits;
+}
+
+static int premultiply(int component, int alpha) {
+	int value = component * alpha + 128;
+	return (value + (value >> 8)) >> 8;
+}
+
 @Test
 public void test_getPixelII() {
 	int value;
@@ -748,6 +1175,55 @@ public void test_getTransparencyType() {
 	} catch (IOException e) {}
 }
 
+@Test
+public void test_quantizeIZ() {
+	ImageData image = new ImageData(4, 2, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+	image.setPixels(0, 0, 4, new int[] {0xFF0000, 0xFF0000, 0x00FF00, 0x0000FF}, 0);
+	image.setPixels(0, 1, 4, new int[] {0xFFFFFF, 0x00FF00, 0x0000FF, 0xFF0000}, 0);
+	image.x = 3;
+	image.delayTime = 10;
+
+	// as many colors as the palette holds are kept exactly
+	ImageData indexed = image.quantize(2, false);
+	assertEquals(":a:", 2, indexed.depth);
+	assertFalse(":b:", indexed.palette.isDirect);
+	assertEquals(":c:", 4, indexed.palette.getRGBs().length);
+	for (int y = 0; y < 2; y++) {
+		for (int x = 0; x < 4; x++) {
+			assertEquals(":d:", image.palette.getRGB(image.getPixel(x, y)), indexed.palette.getRGB(indexed.getPixel(x, y)));
+		}
+	}
+	assertEquals(":e:", 3, indexed.x);
+	assertEquals(":f:", 10, indexed.delayTime);
+
+	// fewer colors than the image has
+	indexed = image.quantize(1, true);
+	assertEquals(":g:", 2, indexed.palette.getRGBs().length);
+
+	// the transparent pixel keeps an entry of its own
+	image.transparentPixel = 0x0000FF;
+	indexed = image.quantize(2, false);
+	assertEquals(":h:", 3, indexed.transparentPixel);
+	assertEquals(":i:", new RGB(0, 0, 255), indexed.palette.getRGBs()[3]);
+	assertEquals(":j:", 3, indexed.getPixel(3, 0));
+	assertEquals(":k:", 3, indexed.getPixel(2, 1));
+	assertEquals(":l:", new RGB(0, 255, 0), indexed.palette.getRGB(indexed.getPixel(2, 0)));
+
+	// indirect palette images
+	image = new ImageData(2, 1, 8, new PaletteData(new RGB[] {new RGB(10, 20, 30), new RGB(40, 50, 60), new RGB(70, 80, 90)}));
+	image.setPixels(0, 0, 2, new int[] {2, 1}, 0);
+	indexed = image.quantize(4, false);
+	assertEquals(":m:", new RGB(70, 80, 90), indexed.palette.getRGB(indexed.getPixel(0, 0)));
+	assertEquals(":n:", new RGB(40, 50, 60), indexed.palette.getRGB(indexed.getPixel(1, 0)));
+
+	try {
+		image.quantize(16, false);
+		fail("No exception thrown for depth == 16");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for depth == 16", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+}
+
 @Test
 public void test_scaledToII() {
 	final int imageDimension = 8;
@@ -776,6 +1252,155 @@ public void test_scaledToII() {
 	assertArrayEquals(":d:", expectedPixelData, scaledPixelData);
 }
 
+@Test
+public void test_scaledToIII() {
+	PaletteData palette = new PaletteData(0xFF0000, 0xFF00, 0xFF);
+	ImageData source = new ImageData(4, 2, 24, palette);
+	int[] pixels = {0x000000, 0x646464, 0x323232, 0xFAFAFA, 0x646464, 0x000000, 0x969696, 0x323232};
+	source.setPixels(0, 0, 4, pixels, 0);
+	source.setPixels(0, 1, 4, pixels, 4);
+
+	int[] interpolations = {SWT.NONE, SWT.LOW, SWT.DEFAULT, SWT.HIGH};
+	for (int interpolation : interpolations) {
+		ImageData scaled = source.scaledTo(4, 2, interpolation);
+		int[] scaledPixels = new int[8];
+		scaled.getPixels(0, 0, 4, scaledPixels, 0);
+		scaled.getPixels(0, 1, 4, scaledPixels, 4);
+		assertArrayEquals(":a:" + interpolation, pixels, scaledPixels);
+	}
+
+	// shrinking with SWT.LOW averages the covered pixels
+	ImageData scaled = source.scaledTo(2, 1, SWT.LOW);
+	assertEquals(":b:", 0x323232, scaled.getPixel(0, 0));
+	assertEquals(":c:", 0x7D7D7D, scaled.getPixel(1, 0));
+
+	// a flat image stays flat
+	ImageData flat = new ImageData(10, 10, 24, palette);
+	for (int y = 0; y < 10; y++) {
+		for (int x = 0; x < 10; x++) flat.setPixel(x, y, 0x336699);
+	}
+	for (int interpolation : interpolations) {
+		scaled = flat.scaledTo(23, 7, interpolation);
+		for (int y = 0; y < scaled.height; y++) {
+			for (int x = 0; x < scaled.width; x++) {
+				assertEquals(":d:" + interpolation, 0x336699, scaled.getPixel(x, y));
+			}
+		}
+	}
+
+	// indexed images become direct, the transparent pixel becomes alpha
+	RGB[] rgbs = new RGB[]{new RGB(255, 0, 0), new RGB(0, 0, 255)};
+	ImageData indexed = new ImageData(8, 8, 1, new PaletteData(rgbs));
+	for (int y = 0; y < 8; y++) {
+		for (int x = 4; x < 8; x++) indexed.setPixel(x, y, 1);
+	}
+	indexed.transparentPixel = 0;
+	scaled = indexed.scaledTo(-16, 16, SWT.DEFAULT);
+	assertEquals(":e:", 24, scaled.depth);
+	assertEquals(":f:", SWT.TRANSPARENCY_ALPHA, scaled.getTransparencyType());
+	assertEquals(":g:", 0x0000FF, scaled.getPixel(0, 0));
+	assertEquals(":h:", 255, scaled.getAlpha(0, 0));
+	assertEquals(":i:", 0, scaled.getAlpha(15, 0));
+
+	try {
+		source.scaledTo(2, 1, SWT.HIGH + 1);
+		fail("No exception thrown for invalid interpolation");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for invalid interpolation", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+}
+
+@Test
+public void test_setARGBIIII$III() {
+	ImageData image = new ImageData(3, 2, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+	int[] argb = {0, 0xFF112233, 0xFF445566, 0, 0xFF778899, 0xFFAABBCC, 0};
+	image.setARGB(1, 0, 2, 2, argb, 1, 3);
+	int[] pixels = new int[3];
+	image.getPixels(0, 0, 3, pixels, 0);
+	assertArrayEquals(":a:", new int[] {0, 0x112233, 0x445566}, pixels);
+	image.getPixels(0, 1, 3, pixels, 0);
+	assertArrayEquals(":b:", new int[] {0, 0x778899, 0xAABBCC}, pixels);
+	assertNull(":c:", image.alphaData);
+
+	// values that are not opaque give the image alpha data
+	image.setARGB(0, 0, 1, 1, new int[] {0x80102030}, 0, 1);
+	assertEquals(":d:", 0x102030, image.getPixel(0, 0));
+	assertEquals(":e:", 0x80, image.getAlpha(0, 0));
+	assertEquals(":f:", 0xFF, image.getAlpha(1, 0));
+
+	// indirect palette images get the closest color
+	ImageData indexed = new ImageData(2, 1, 1, new PaletteData(new RGB[] {new RGB(0, 0, 0), new RGB(255, 255, 255)}));
+	indexed.setARGB(0, 0, 2, 1, new int[] {0xFFF0F0F0, 0xFF101010}, 0, 2);
+	assertEquals(":g:", 1, indexed.getPixel(0, 0));
+	assertEquals(":h:", 0, indexed.getPixel(1, 0));
+
+	try {
+		image.setARGB(0, 0, 1, 1, null, 0, 1);
+		fail("No exception thrown for argb == null");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for argb == null", SWT.ERROR_NULL_ARGUMENT, e);
+	}
+	try {
+		image.setARGB(0, 0, 2, 2, argb, 0, 1);
+		fail("No exception thrown for scanSize < width");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for scanSize < width", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+}
+
+@Test
+public void test_setARGBIIIILjava_nio_IntBuffer() {
+	ImageData image = new ImageData(2, 1, 16, new PaletteData(0xF800, 0x7E0, 0x1F));
+	IntBuffer buffer = IntBuffer.wrap(new int[] {0, 0xFFFF0000, 0xFF0000FF});
+	buffer.position(1);
+	image.setARGB(0, 0, 2, 1, buffer);
+	assertEquals(":a:", 3, buffer.position());
+	assertEquals(":b:", 0xF800, image.getPixel(0, 0));
+	assertEquals(":c:", 0x1F, image.getPixel(1, 0));
+	try {
+		image.setARGB(0, 0, 2, 1, buffer);
+		fail("No exception thrown for buffer too small");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for buffer too small", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+}
+
+@Test
+public void test_setARGB_paletteLargerThanDepth() {
+	// only the first 16 colors can be indexed by a 4 bit image, the exact match is at 16
+	RGB[] rgbs = new RGB[17];
+	rgbs[0] = new RGB(0, 0, 0);
+	rgbs[1] = new RGB(128, 0, 0);
+	for (int i = 2; i < 16; i++) rgbs[i] = new RGB(i * 16, i * 16, i * 16);
+	rgbs[16] = new RGB(255, 0, 0);
+	PaletteData palette = new PaletteData(rgbs);
+
+	ImageData image = new ImageData(1, 1, 4, palette);
+	image.setARGB(0, 0, 1, 1, new int[] {0xFFFF0000}, 0, 1);
+	assertEquals(":a:", 1, image.getPixel(0, 0));
+
+	image = new ImageData(1, 1, 4, palette);
+	image.setARGB(0, 0, 1, 1, IntBuffer.wrap(new int[] {0xFFFF0000}));
+	assertEquals(":b:", 1, image.getPixel(0, 0));
+
+	ImageData source = new ImageData(1, 1, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+	source.setPixel(0, 0, 0xFF0000);
+	image = new ImageData(1, 1, 4, palette);
+	image.composite(source, 0, 0, 1, 1, 0, 0, SWT.COMPOSITE_SRC_OVER, 255);
+	assertEquals(":c:", 1, image.getPixel(0, 0));
+
+	// doubling the red of color 1 gives the color at 16
+	image = new ImageData(1, 1, 4, palette);
+	image.setPixel(0, 0, 1);
+	image.transformColors(new float[] {
+		2, 0, 0, 0, 0,
+		0, 1, 0, 0, 0,
+		0, 0, 1, 0, 0,
+		0, 0, 0, 1, 0,
+	});
+	assertEquals(":d:", 1, image.getPixel(0, 0));
+}
+
 @Test
 public void test_setAlphaIII() {
 	int value;
@@ -1158,6 +1783,47 @@ public void test_setPixelsIII$II() {
 		assertSWTProblem("Incorrect exception thrown for putWidth < 0", SWT.ERROR_INVALID_ARGUMENT, e);
 	}
 }
+@Test
+public void test_transformColors$F() {
+	ImageData image = new ImageData(2, 1, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+	image.setPixels(0, 0, 2, new int[] {0xFF0000, 0x336699}, 0);
+
+	// swap red and blue
+	image.transformColors(new float[] {
+		0, 0, 1, 0, 0,
+		0, 1, 0, 0, 0,
+		1, 0, 0, 0, 0,
+		0, 0, 0, 1, 0,
+	});
+	assertEquals(":a:", 0x0000FF, image.getPixel(0, 0));
+	assertEquals(":b:", 0x996633, image.getPixel(1, 0));
+	assertNull(":c:", image.alphaData);
+
+	// halve the alpha and add to the green
+	image.transformColors(new float[] {
+		1, 0, 0, 0, 0,
+		0, 1, 0, 0, 16,
+		0, 0, 1, 0, 0,
+		0, 0, 0, 0.5f, 0,
+	});
+	assertEquals(":d:", 0x0010FF, image.getPixel(0, 0));
+	assertEquals(":e:", 128, image.getAlpha(0, 0));
+	assertEquals(":f:", 128, image.getAlpha(1, 0));
+
+	try {
+		image.transformColors(null);
+		fail("No exception thrown for matrix == null");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for matrix == null", SWT.ERROR_NULL_ARGUMENT, e);
+	}
+	try {
+		image.transformColors(new float[16]);
+		fail("No exception thrown for matrix with 16 elements");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for matrix with 16 elements", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+}
+
 /* custom */
 ImageData imageData;
 final int IMAGE_DIMENSION = 10;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2016 IBM Corporation and others.
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,18 +12,35 @@
 package org.eclipse.swt.tests.junit;
 
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import org.eclipse.swt.SWT;
 import org.eclipse.swt.SWTException;
+import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.graphics.ImageLoader;
 import org.eclipse.swt.graphics.ImageLoaderEvent;
 import org.eclipse.swt.graphics.ImageLoaderListener;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
 import org.junit.Test;
 
 /**
@@ -73,6 +90,28 @@ public void test_addImageLoaderListenerLorg_eclipse_swt_graphics_ImageLoaderList
 	assertFalse(":f:", loader.hasListeners());
 }
 
+@Test
+public void test_addImageLoaderListener_incrementalRows() throws IOException {
+	ImageLoader loader = new ImageLoader();
+	List<ImageLoaderEvent> events = new ArrayList<>();
+	loader.addImageLoaderListener(events::add);
+	loader.incrementalRows = 8;
+	for (String fileName : new String[] {"target.png", "target.jpg", "target.bmp"}) {
+		events.clear();
+		try (InputStream stream = SwtTestUtil.class.getResourceAsStream(fileName)) {
+			loader.load(stream);
+		}
+		/* 24 rows give two partial copies and the final image */
+		assertEquals(":a:" + fileName, 3, events.size());
+		for (int i = 0; i < events.size(); i++) {
+			ImageLoaderEvent event = events.get(i);
+			assertEquals(":b:" + fileName, i, event.incrementCount);
+			assertEquals(":c:" + fileName, i == events.size() - 1, event.endOfImage);
+		}
+		assertTrue(":d:" + fileName, events.get(events.size() - 1).imageData == loader.data[0]);
+	}
+}
+
 @Test
 public void test_loadLjava_io_InputStream() {
 		ImageLoader loader = new ImageLoader();
@@ -99,6 +138,186 @@ public void test_loadLjava_io_InputStream() {
 		}
 }
 
+@Test
+public void test_loadLjava_io_InputStream_unknownFormat() {
+	ImageLoader loader = new ImageLoader();
+	byte[][] headers = {
+		"not an image".getBytes(),
+		{0x42},
+		// BMP signature with an info header size that neither BMP format accepts
+		{0x42, 0x4D, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 20, 0, 0, 0},
+	};
+	for (int i = 0; i < headers.length; i++) {
+		try {
+			loader.load(new ByteArrayInputStream(headers[i]));
+			fail("No exception thrown for unknown format " + i);
+		} catch (SWTException e) {
+			assertEquals(":a:" + i, SWT.ERROR_UNSUPPORTED_FORMAT, e.code);
+		}
+	}
+
+	/* a known signature on a truncated stream is an invalid image */
+	try {
+		loader.load(new ByteArrayInputStream(new byte[] {'G', 'I', 'F', '8', '9', 'a', 1}));
+		fail("No exception thrown for truncated GIF");
+	} catch (SWTException e) {
+		assertEquals(":b:", SWT.ERROR_INVALID_IMAGE, e.code);
+	}
+}
+
+@Test
+public void test_loadLjava_io_InputStream_loadWidthHeight() throws IOException {
+	ImageLoader loader = new ImageLoader();
+	ImageData full;
+	try (InputStream stream = SwtTestUtil.class.getResourceAsStream("target.jpg")) {
+		full = loader.load(stream)[0];
+	}
+	for (int denom : new int[] {2, 4, 8}) {
+		loader.loadWidth = (full.width + denom - 1) / denom;
+		loader.loadHeight = (full.height + denom - 1) / denom;
+		ImageData scaled;
+		try (InputStream stream = SwtTestUtil.class.getResourceAsStream("target.jpg")) {
+			scaled = loader.load(stream)[0];
+		}
+		assertEquals(":a:" + denom, loader.loadWidth, scaled.width);
+		assertEquals(":b:" + denom, loader.loadHeight, scaled.height);
+	}
+
+	/* a hint larger than the image never scales up */
+	loader.loadWidth = full.width * 2;
+	loader.loadHeight = 0;
+	try (InputStream stream = SwtTestUtil.class.getResourceAsStream("target.jpg")) {
+		assertEquals(":c:", full.width, loader.load(stream)[0].width);
+	}
+
+	/* formats without reduced decoding ignore the hint */
+	loader.loadWidth = 1;
+	loader.loadHeight = 1;
+	try (InputStream stream = SwtTestUtil.class.getResourceAsStream("target.png")) {
+		assertEquals(":d:", full.width, loader.load(stream)[0].width);
+	}
+}
+
+@Test
+public void test_loadLjava_io_InputStream_parallelJPEG() throws Exception {
+	// restart intervals of 5 and 7 MCUs do not divide the 13 and 17 MCUs of a row, in 4:2:0 and 4:4:4 images
+	for (String fileName : new String[] {"restart_420.jpg", "restart_444.jpg"}) {
+		ImageData sequential = loadResource(fileName);
+		ImageData parallel;
+		Object enabled = setStaticField("org.eclipse.swt.internal.image.JPEGDecoder", "parallel", Boolean.TRUE);
+		Object threshold = setStaticField("org.eclipse.swt.internal.image.JPEGDecoder", "parallelThreshold", Integer.valueOf(0));
+		try {
+			parallel = loadResource(fileName);
+		} finally {
+			setStaticField("org.eclipse.swt.internal.image.JPEGDecoder", "parallel", enabled);
+			setStaticField("org.eclipse.swt.internal.image.JPEGDecoder", "parallelThreshold", threshold);
+		}
+		assertEquals(":a:" + fileName, sequential.width, parallel.width);
+		assertEquals(":b:" + fileName, sequential.height, parallel.height);
+		assertArrayEquals(":c:" + fileName, sequential.data, parallel.data);
+	}
+}
+
+@Test
+public void test_loadLjava_io_InputStream_parallelTIFF() throws Exception {
+	// 12 PackBits strips of 4 rows of RGB, and 7 one-dimensional CCITT T.4 strips of 6 rows of 1-bit pixels
+	for (String fileName : new String[] {"packbits_strips.tif", "ccitt_strips.tif"}) {
+		ImageData sequential = loadResource(fileName);
+		ImageData parallel;
+		Object enabled = setStaticField("org.eclipse.swt.internal.image.TIFFDirectory", "parallel", Boolean.TRUE);
+		Object threshold = setStaticField("org.eclipse.swt.internal.image.TIFFDirectory", "parallelThreshold", Integer.valueOf(0));
+		try {
+			parallel = loadResource(fileName);
+		} finally {
+			setStaticField("org.eclipse.swt.internal.image.TIFFDirectory", "parallel", enabled);
+			setStaticField("org.eclipse.swt.internal.image.TIFFDirectory", "parallelThreshold", threshold);
+		}
+		assertEquals(":a:" + fileName, sequential.width, parallel.width);
+		assertEquals(":b:" + fileName, sequential.height, parallel.height);
+		assertEquals(":c:" + fileName, sequential.depth, parallel.depth);
+		assertArrayEquals(":d:" + fileName, sequential.data, parallel.data);
+	}
+	ImageData image = loadResource("packbits_strips.tif");
+	assertEquals(":e:", new RGB(0x33, 0x66, 0x99), image.palette.getRGB(image.getPixel(0, image.height - 1)));
+}
+
+@Test
+public void test_loadAll$Ljava_io_InputStreamLjava_util_concurrent_ExecutorI() throws Exception {
+	try {
+		ImageLoader.loadAll((InputStream[]) null, null, 1);
+		fail("No exception thrown for streams == null");
+	} catch (IllegalArgumentException e) {
+	}
+	try {
+		ImageLoader.loadAll(new InputStream[] {null}, null, 1);
+		fail("No exception thrown for null stream");
+	} catch (IllegalArgumentException e) {
+	}
+	try {
+		ImageLoader.loadAll(new InputStream[0], null, 0);
+		fail("No exception thrown for parallelism 0");
+	} catch (IllegalArgumentException e) {
+	}
+
+	String[] fileNames = {"target.png", "target.jpg", "corrupt.png", "target.gif", "target.bmp", "folder.png"};
+	byte[][] contents = new byte[fileNames.length][];
+	ImageData[] expected = new ImageData[fileNames.length];
+	for (int i = 0; i < fileNames.length; i++) {
+		try (InputStream stream = SwtTestUtil.class.getResourceAsStream(fileNames[i])) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int count;
+			while ((count = stream.read(buffer)) != -1) out.write(buffer, 0, count);
+			contents[i] = out.toByteArray();
+		}
+		if (i != 2) expected[i] = new ImageLoader().load(new ByteArrayInputStream(contents[i]))[0];
+	}
+	InputStream[] streams = new InputStream[contents.length];
+	for (int i = 0; i < streams.length; i++) {
+		streams[i] = new ByteArrayInputStream(contents[i]);
+	}
+	ExecutorService executor = Executors.newFixedThreadPool(4);
+	try {
+		List<CompletableFuture<ImageData[]>> results = ImageLoader.loadAll(streams, executor, 3);
+		assertEquals(":a:", fileNames.length, results.size());
+		for (int i = 0; i < fileNames.length; i++) {
+			if (i == 2) {
+				try {
+					results.get(i).get();
+					fail("No exception thrown for " + fileNames[i]);
+				} catch (ExecutionException e) {
+					assertTrue(":b:", e.getCause() instanceof SWTException);
+					assertEquals(":c:", SWT.ERROR_INVALID_IMAGE, ((SWTException) e.getCause()).code);
+				}
+				continue;
+			}
+			ImageData image = results.get(i).get()[0];
+			assertEquals(":d:" + fileNames[i], expected[i].width, image.width);
+			assertEquals(":e:" + fileNames[i], expected[i].height, image.height);
+			for (int y = 0; y < image.height; y++) {
+				for (int x = 0; x < image.width; x++) {
+					assertEquals(":f:" + fileNames[i], expected[i].getPixel(x, y), image.getPixel(x, y));
+				}
+			}
+		}
+	} finally {
+		executor.shutdown();
+	}
+
+	/* the parallelism bounds the tasks, and cancelled streams are skipped */
+	List<Runnable> tasks = new ArrayList<>();
+	for (int i = 0; i < streams.length; i++) {
+		streams[i] = new ByteArrayInputStream(contents[i]);
+	}
+	List<CompletableFuture<ImageData[]>> results = ImageLoader.loadAll(streams, tasks::add, 2);
+	assertEquals(":g:", 2, tasks.size());
+	results.get(1).cancel(false);
+	for (Runnable task : tasks) task.run();
+	assertTrue(":h:", results.get(1).isCancelled());
+	assertEquals(":i:", contents[1].length, streams[1].available());
+	assertNotNull(":j:", results.get(5).get());
+}
+
 @Test
 public void test_loadLjava_lang_String() {
 	ImageLoader loader = new ImageLoader();
@@ -108,6 +327,47 @@ public void test_loadLjava_lang_String() {
 		fail("No exception thrown for load filename == null");
 	} catch (IllegalArgumentException e) {
 	}
+
+	try {
+		loader.load(new File("nonexistent", "image.png").getPath());
+		fail("No exception thrown for load of a missing file");
+	} catch (SWTException e) {
+		assertEquals(SWT.ERROR_IO, e.code);
+	}
+}
+
+@Test
+public void test_loadLjava_lang_String_savedFile() throws IOException {
+	// the large image is mapped into memory rather than read at once
+	int[][] sizes = {{10, 7}, {400, 300}};
+	for (int[] size : sizes) {
+		ImageData image = new ImageData(size[0], size[1], 24, new PaletteData(0xFF0000, 0xFF00, 0xFF), 1, new byte[size[0] * size[1] * 3]);
+		for (int y = 0; y < image.height; y++) {
+			for (int x = 0; x < image.width; x++) {
+				image.setPixel(x, y, (x * 31) ^ (y << 8) ^ (x * y));
+			}
+		}
+		int[] formats = {SWT.IMAGE_BMP, SWT.IMAGE_PNG, SWT.IMAGE_TIFF};
+		for (int format : formats) {
+			File file = File.createTempFile("swt", ".img");
+			try {
+				ImageLoader loader = new ImageLoader();
+				loader.data = new ImageData[] {image};
+				loader.save(file.getPath(), format);
+				ImageData[] loaded = new ImageLoader().load(file.getPath());
+				assertEquals(1, loaded.length);
+				for (int y = 0; y < image.height; y++) {
+					for (int x = 0; x < image.width; x++) {
+						RGB expected = image.palette.getRGB(image.getPixel(x, y));
+						RGB actual = loaded[0].palette.getRGB(loaded[0].getPixel(x, y));
+						assertEquals("format " + format + " pixel " + x + "," + y, expected, actual);
+					}
+				}
+			} finally {
+				file.delete();
+			}
+		}
+	}
 }
 
 @Test
@@ -157,6 +417,141 @@ public void test_saveLjava_io_OutputStreamI() {
 	}
 }
 
+@Test
+public void test_saveLjava_io_OutputStreamI_directPaletteGIF() {
+	ImageData image = new ImageData(8, 8, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+	for (int y = 0; y < 8; y++) {
+		for (int x = 0; x < 8; x++) {
+			image.setPixel(x, y, x < 4 ? 0x336699 : y < 4 ? 0xFFCC00 : 0x000000);
+		}
+	}
+	ImageLoader loader = new ImageLoader();
+	loader.data = new ImageData[] {image};
+	ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+	loader.save(outStream, SWT.IMAGE_GIF);
+	assertTrue(":a:", loader.data[0] == image);
+
+	ImageData saved = new ImageLoader().load(new ByteArrayInputStream(outStream.toByteArray()))[0];
+	assertEquals(":b:", 8, saved.depth);
+	for (int y = 0; y < 8; y++) {
+		for (int x = 0; x < 8; x++) {
+			assertEquals(":c:", image.palette.getRGB(image.getPixel(x, y)), saved.palette.getRGB(saved.getPixel(x, y)));
+		}
+	}
+}
+
+@Test
+public void test_saveLjava_io_OutputStreamI_noisyGIF() {
+	// enough distinct strings to grow the codes to 12 bits and clear the full table, with runs for the KwKwK codes
+	for (int depth : new int[] {8, 4, 1}) {
+		ImageData image = createNoise(depth == 8 ? 320 : 101, depth == 8 ? 240 : 67, depth, new Random(depth));
+		ImageData[] saved = saveAndLoad(new ImageData[] {image}, SWT.IMAGE_GIF);
+		assertEquals(":a:" + depth, 1, saved.length);
+		assertEquals(":b:" + depth, depth, saved[0].depth);
+		assertPixels(":c:" + depth, image, saved[0]);
+	}
+}
+
+@Test
+public void test_saveLjava_io_OutputStreamI_animatedGIF() {
+	// the codec is reused across frames of other sizes and palettes
+	Random random = new Random(10);
+	ImageData[] frames = {createNoise(200, 150, 8, random), createNoise(33, 17, 8, random), createNoise(120, 90, 8, random), createNoise(7, 5, 8, random)};
+	for (int i = 0; i < frames.length; i++) {
+		frames[i].x = i * 3;
+		frames[i].y = i * 2;
+		frames[i].delayTime = 10 + i;
+		frames[i].disposalMethod = SWT.DM_FILL_BACKGROUND;
+	}
+	ImageLoader loader = new ImageLoader();
+	loader.data = frames;
+	loader.logicalScreenWidth = 210;
+	loader.logicalScreenHeight = 160;
+	ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+	loader.save(outStream, SWT.IMAGE_GIF);
+	ImageData[] saved = new ImageLoader().load(new ByteArrayInputStream(outStream.toByteArray()));
+	assertEquals(":a:", frames.length, saved.length);
+	for (int i = 0; i < frames.length; i++) {
+		assertEquals(":b:" + i, frames[i].x, saved[i].x);
+		assertEquals(":c:" + i, frames[i].y, saved[i].y);
+		assertEquals(":d:" + i, frames[i].delayTime, saved[i].delayTime);
+		assertPixels(":e:" + i, frames[i], saved[i]);
+	}
+}
+
+@Test
+public void test_loadLjava_io_InputStream_interlacedGIF() throws IOException {
+	// noise with a solid row every 10 rows, written interlaced by another encoder
+	String[] fileNames = {"interlaced_noise.gif", "interlaced_noise_2bit.gif"};
+	int[][] sizes = {{97, 61, 256}, {257, 203, 4}};
+	for (int i = 0; i < fileNames.length; i++) {
+		ImageData image = loadResource(fileNames[i]);
+		int width = sizes[i][0], height = sizes[i][1], colors = sizes[i][2];
+		assertEquals(":a:" + i, width, image.width);
+		assertEquals(":b:" + i, height, image.height);
+		Random random = new Random(10);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int index = y % 10 == 0 ? colors - 1 : random.nextInt(colors);
+				assertEquals(":c:" + i + " " + x + "," + y, new RGB(index, 255 - index, index * 7 & 0xFF), image.palette.getRGB(image.getPixel(x, y)));
+			}
+		}
+	}
+}
+
+@Test
+public void test_saveLjava_io_OutputStreamI_multiPageTIFF() {
+	// padded rows and pixels stored in other byte orders are reordered when written
+	ImageData[] pages = {
+		new ImageData(13, 5, 32, new PaletteData(0xFF00, 0xFF0000, 0xFF000000)),
+		new ImageData(7, 9, 4, new PaletteData(new RGB[] {new RGB(0, 0, 0), new RGB(255, 0, 0), new RGB(0, 128, 255), new RGB(255, 255, 255),
+			new RGB(0, 0, 0), new RGB(0, 0, 0), new RGB(0, 0, 0), new RGB(0, 0, 0), new RGB(0, 0, 0), new RGB(0, 0, 0), new RGB(0, 0, 0), new RGB(0, 0, 0),
+			new RGB(0, 0, 0), new RGB(0, 0, 0), new RGB(0, 0, 0), new RGB(0, 0, 0)})),
+		new ImageData(6, 3, 24, new PaletteData(0xFF, 0xFF00, 0xFF0000)),
+	};
+	for (int i = 0; i < pages.length; i++) {
+		ImageData page = pages[i];
+		for (int y = 0; y < page.height; y++) {
+			for (int x = 0; x < page.width; x++) {
+				page.setPixel(x, y, page.palette.isDirect ? page.palette.getPixel(new RGB(x * 19 & 0xFF, y * 27 & 0xFF, (x ^ y) * 11 & 0xFF)) : (x + y) & 3);
+			}
+		}
+	}
+	ImageLoader loader = new ImageLoader();
+	loader.data = pages;
+	ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+	loader.save(outStream, SWT.IMAGE_TIFF);
+	byte[] bytes = outStream.toByteArray();
+
+	ImageData[] saved = new ImageLoader().load(new ByteArrayInputStream(bytes));
+	assertEquals(":a:", pages.length, saved.length);
+	for (int i = 0; i < pages.length; i++) {
+		assertEquals(":b:" + i, pages[i].width, saved[i].width);
+		assertEquals(":c:" + i, pages[i].height, saved[i].height);
+		for (int y = 0; y < pages[i].height; y++) {
+			for (int x = 0; x < pages[i].width; x++) {
+				assertEquals(":d:" + i, pages[i].palette.getRGB(pages[i].getPixel(x, y)), saved[i].palette.getRGB(saved[i].getPixel(x, y)));
+			}
+		}
+	}
+
+	// a single page is loaded on its own
+	loader = new ImageLoader();
+	loader.loadPage = 1;
+	ImageData[] page = loader.load(new ByteArrayInputStream(bytes));
+	assertEquals(":e:", 1, page.length);
+	assertEquals(":f:", pages[1].width, page[0].width);
+	assertEquals(":g:", 4, page[0].depth);
+
+	loader.loadPage = pages.length;
+	try {
+		loader.load(new ByteArrayInputStream(bytes));
+		fail("No exception thrown for a page past the last one");
+	} catch (SWTException e) {
+		assertEquals(":h:", SWT.ERROR_INVALID_IMAGE, e.code);
+	}
+}
+
 @Test
 public void test_saveLjava_lang_StringI() {
 	ImageLoader loader = new ImageLoader();
@@ -168,6 +563,59 @@ public void test_saveLjava_lang_StringI() {
 	}
 }
 
+/* An indexed image of random pixels, broken by runs of a single pixel */
+static ImageData createNoise(int width, int height, int depth, Random random) {
+	RGB[] rgbs = new RGB[1 << depth];
+	for (int i = 0; i < rgbs.length; i++) {
+		rgbs[i] = new RGB(random.nextInt(256), random.nextInt(256), i);
+	}
+	ImageData image = new ImageData(width, height, depth, new PaletteData(rgbs));
+	for (int y = 0; y < height; y++) {
+		for (int x = 0; x < width; x++) {
+			int run = random.nextInt(16) == 0 ? 1 + random.nextInt(40) : 1;
+			int pixel = random.nextInt(rgbs.length);
+			for (int end = Math.min(width, x + run); x < end; x++) {
+				image.setPixel(x, y, pixel);
+			}
+			x--;
+		}
+	}
+	return image;
+}
+
+static ImageData[] saveAndLoad(ImageData[] images, int format) {
+	ImageLoader loader = new ImageLoader();
+	loader.data = images;
+	ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+	loader.save(outStream, format);
+	return new ImageLoader().load(new ByteArrayInputStream(outStream.toByteArray()));
+}
+
+static void assertPixels(String message, ImageData expected, ImageData actual) {
+	assertEquals(message, expected.width, actual.width);
+	assertEquals(message, expected.height, actual.height);
+	for (int y = 0; y < expected.height; y++) {
+		for (int x = 0; x < expected.width; x++) {
+			assertEquals(message + " " + x + "," + y, expected.palette.getRGB(expected.getPixel(x, y)), actual.palette.getRGB(actual.getPixel(x, y)));
+		}
+	}
+}
+
+static ImageData loadResource(String fileName) throws IOException {
+	try (InputStream stream = SwtTestUtil.class.getResourceAsStream(fileName)) {
+		return new ImageLoader().load(stream)[0];
+	}
+}
+
+/* Sets a static field of an internal class and answers its previous value */
+static Object setStaticField(String className, String name, Object value) throws ReflectiveOperationException {
+	Field field = Class.forName(className).getDeclaredField(name);
+	field.setAccessible(true);
+	Object previous = field.get(null);
+	field.set(null, value);
+	return previous;
+}
+
 /* custom */
 boolean loaderListenerCalled;
 }
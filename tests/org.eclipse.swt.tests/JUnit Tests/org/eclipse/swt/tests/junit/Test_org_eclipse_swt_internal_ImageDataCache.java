@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.junit;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.internal.ImageDataCache;
+import org.junit.Test;
+
+/**
+ * Automated Test Suite for class org.eclipse.swt.internal.ImageDataCache
+ *
+ * @see org.eclipse.swt.internal.ImageDataCache
+ */
+public class Test_org_eclipse_swt_internal_ImageDataCache {
+
+/* The number of times the loader ran */
+int loads;
+
+static ImageData createImage(int width) {
+	return new ImageData(width, 10, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+}
+
+Supplier<ImageData> loader(int width) {
+	return () -> {
+		loads++;
+		return createImage(width);
+	};
+}
+
+/* The size an image of the given width takes in a cache */
+static long sizeOf(int width) {
+	ImageDataCache cache = new ImageDataCache(Long.MAX_VALUE);
+	cache.get("probe", 100, () -> createImage(width));
+	return cache.getSize();
+}
+
+@Test
+public void test_ConstructorJ() {
+	// a cache of size 0 is disabled
+	ImageDataCache cache = new ImageDataCache(0);
+	ImageData data = cache.get("a", 100, loader(10));
+	assertNotSame(":a:", data, cache.get("a", 100, loader(10)));
+	assertEquals(":b:", 2, loads);
+	assertEquals(":c:", 0, cache.getSize());
+	assertEquals(":d:", 0, cache.getHitCount());
+	assertEquals(":e:", 0, cache.getMissCount());
+}
+
+@Test
+public void test_getLjava_lang_ObjectILjava_util_function_Supplier() {
+	ImageDataCache cache = new ImageDataCache(Long.MAX_VALUE);
+	ImageData data = cache.get("a", 100, loader(10));
+	assertEquals(":a:", 1, loads);
+	assertEquals(":b:", 0, cache.getHitCount());
+	assertEquals(":c:", 1, cache.getMissCount());
+
+	// the same source and zoom answer the same image without loading it
+	assertSame(":d:", data, cache.get("a", 100, loader(10)));
+	assertSame(":e:", data, cache.get(new String("a"), 100, loader(10)));
+	assertEquals(":f:", 1, loads);
+	assertEquals(":g:", 2, cache.getHitCount());
+	assertEquals(":h:", 1, cache.getMissCount());
+
+	// another zoom or source is another image
+	assertNotSame(":i:", data, cache.get("a", 200, loader(10)));
+	assertNotSame(":j:", data, cache.get("b", 100, loader(10)));
+	assertEquals(":k:", 3, loads);
+	assertEquals(":l:", 3, cache.getMissCount());
+	assertEquals(":m:", 3 * sizeOf(10), cache.getSize());
+
+	// images that could not be loaded are not cached
+	assertNull(":n:", cache.get("c", 100, () -> null));
+	assertNull(":o:", cache.get("c", 100, () -> null));
+	assertEquals(":p:", 5, cache.getMissCount());
+	assertEquals(":q:", 3 * sizeOf(10), cache.getSize());
+
+	cache.clear();
+	assertEquals(":r:", 0, cache.getSize());
+	assertNotSame(":s:", data, cache.get("a", 100, loader(10)));
+	assertEquals(":t:", 2, cache.getHitCount());
+	assertEquals(":u:", 6, cache.getMissCount());
+	assertEquals(":v:", 0, cache.getEvictionCount());
+}
+
+@Test
+public void test_getLjava_lang_ObjectILjava_util_function_Supplier_evictsLeastRecentlyUsed() {
+	long size = sizeOf(10);
+	ImageDataCache cache = new ImageDataCache(2 * size + size / 2);
+	ImageData a = cache.get("a", 100, loader(10));
+	ImageData b = cache.get("b", 100, loader(10));
+	assertEquals(":a:", 2 * size, cache.getSize());
+
+	// using a makes b the least recently used image
+	assertSame(":b:", a, cache.get("a", 100, loader(10)));
+	ImageData c = cache.get("c", 100, loader(10));
+	assertEquals(":c:", 1, cache.getEvictionCount());
+	assertEquals(":d:", 2 * size, cache.getSize());
+	assertSame(":e:", a, cache.get("a", 100, loader(10)));
+	assertSame(":f:", c, cache.get("c", 100, loader(10)));
+	assertEquals(":g:", 3, loads);
+	assertNotSame(":h:", b, cache.get("b", 100, loader(10)));
+	assertEquals(":i:", 4, loads);
+	assertEquals(":j:", 2, cache.getEvictionCount());
+
+	// a large image evicts as many images as needed
+	cache.get("d", 100, loader(20));
+	assertEquals(":k:", sizeOf(20), cache.getSize());
+	assertEquals(":l:", 4, cache.getEvictionCount());
+
+	// an image larger than the cache is answered but not cached
+	ImageDataCache small = new ImageDataCache(size - 1);
+	ImageData data = small.get("a", 100, loader(10));
+	assertNotSame(":m:", data, small.get("a", 100, loader(10)));
+	assertEquals(":n:", 0, small.getSize());
+	assertEquals(":o:", 0, small.getEvictionCount());
+}
+
+@Test
+public void test_getLjava_lang_ObjectILjava_util_function_Supplier_clearedReferences() throws ReflectiveOperationException {
+	ImageDataCache cache = new ImageDataCache(Long.MAX_VALUE);
+	ImageData data = cache.get("a", 100, loader(10));
+	cache.get("b", 100, loader(10));
+
+	// act as the garbage collector reclaiming the image of a
+	Field field = ImageDataCache.class.getDeclaredField("entries");
+	field.setAccessible(true);
+	Map<?, ?> entries = (Map<?, ?>) field.get(cache);
+	for (Object entry : entries.values()) {
+		Reference<?> reference = (Reference<?>) entry;
+		if (reference.get() == data) {
+			reference.clear();
+			reference.enqueue();
+		}
+	}
+
+	// reclaimed images no longer count towards the size and are loaded again
+	assertEquals(":a:", sizeOf(10), cache.getSize());
+	assertNotSame(":b:", data, cache.get("a", 100, loader(10)));
+	assertEquals(":c:", 3, loads);
+	assertEquals(":d:", 3, cache.getMissCount());
+	assertEquals(":e:", 0, cache.getEvictionCount());
+	assertEquals(":f:", 2 * sizeOf(10), cache.getSize());
+}
+
+@Test
+public void test_getShared() throws ReflectiveOperationException {
+	Method method = ImageDataCache.class.getDeclaredMethod("getSharedSize");
+	method.setAccessible(true);
+	String value = System.getProperty("swt.imageCache");
+	try {
+		System.clearProperty("swt.imageCache");
+		assertEquals(":a:", 0L, method.invoke(null));
+		// the size is given in kilobytes
+		System.setProperty("swt.imageCache", "2");
+		assertEquals(":b:", 2048L, method.invoke(null));
+		System.setProperty("swt.imageCache", "-2");
+		assertEquals(":c:", 0L, method.invoke(null));
+		System.setProperty("swt.imageCache", "2KB");
+		assertEquals(":d:", 0L, method.invoke(null));
+	} finally {
+		if (value == null) {
+			System.clearProperty("swt.imageCache");
+		} else {
+			System.setProperty("swt.imageCache", value);
+		}
+	}
+	assertSame(":e:", ImageDataCache.getShared(), ImageDataCache.getShared());
+}
+}